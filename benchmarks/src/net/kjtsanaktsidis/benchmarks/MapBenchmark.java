@@ -0,0 +1,64 @@
+package net.kjtsanaktsidis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times single operations on each map, for every size and key distribution in MapState: get (half of them hits),
+ * put of a key that's already there, iterating over the whole map, and iterating over a range of about 100 keys.
+ * Inserts and removes are timed in pairs, putting a key that isn't there and removing it again, since either on
+ * its own would soon fill up or empty out the map; the score is the average of the two. All single-threaded;
+ * ConcurrentBenchmark and MultiReaderBenchmark in prac-2 cover contention.
+ *
+ * The 10M-key maps need a few GB of heap, hence -Xmx6g; pass -jvmArgs to change it, or -p size=... to leave them out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class MapBenchmark {
+
+    private static final int RANGE = 200;
+
+    @Benchmark
+    public Integer get(MapState s) {
+        int i = s.next();
+        return s.dict.get((i & 1) == 0 ? s.present[i] : s.absent[i]);
+    }
+
+    @Benchmark
+    public Integer update(MapState s) {
+        Integer key = s.present[s.next()];
+        return s.dict.put(key, key);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public Integer putRemove(MapState s) {
+        Integer key = s.absent[s.next()];
+        s.dict.put(key, key);
+        return s.dict.remove(key);
+    }
+
+    @Benchmark
+    public long iterate(MapState s) {
+        long sum = 0;
+        for (Map.Entry<Integer, Integer> e : s.dict.entrySet()) {
+            sum += e.getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long range(MapState s) {
+        int from = s.present[s.next()];
+        long sum = 0;
+        for (Integer value : s.dict.subMap(from, true, from + RANGE, false).values()) {
+            sum += value;
+        }
+        return sum;
+    }
+}
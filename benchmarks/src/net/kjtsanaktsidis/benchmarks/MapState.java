@@ -0,0 +1,93 @@
+package net.kjtsanaktsidis.benchmarks;
+
+import net.kjtsanaktsidis.collections.AVLTree;
+import net.kjtsanaktsidis.prac2.KeyGenerator;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A map of size keys, 0, 2, 4... 2 * (size - 1), and a stream of keys to look up in it, drawn ahead of time from the
+ * distribution so drawing them isn't timed. Each key drawn comes as a present (even) key and an absent (odd) one next
+ * to it, so lookups can hit or miss and puts can insert without overwriting.
+ */
+@State(Scope.Benchmark)
+public class MapState {
+
+    //how many keys are drawn up front; a power of two, so the next one is a mask away
+    private static final int DRAWS = 1 << 18;
+
+    @Param({"skiplist", "avl", "treemap", "cslm"})
+    public String map;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"uniform", "zipfian", "sequential", "hotspot"})
+    public String distribution;
+
+    NavigableMap<Integer, Integer> dict;
+    Integer[] present;
+    Integer[] absent;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (this.map) {
+            case "skiplist":
+                this.dict = new SkipListDict<>();
+                break;
+            case "avl":
+                this.dict = new AVLTree<>();
+                break;
+            case "treemap":
+                this.dict = new TreeMap<>();
+                break;
+            case "cslm":
+                this.dict = new ConcurrentSkipListMap<>();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown map " + this.map);
+        }
+        for (int i = 0; i < this.size; i++) {
+            this.dict.put(2 * i, 2 * i);
+        }
+
+        KeyGenerator keys;
+        switch (this.distribution) {
+            case "uniform":
+                keys = KeyGenerator.uniform(this.size, 25);
+                break;
+            case "zipfian":
+                keys = KeyGenerator.zipfian(this.size, 0.99, 25);
+                break;
+            case "sequential":
+                keys = KeyGenerator.sequential(this.size, 0);
+                break;
+            case "hotspot":
+                keys = KeyGenerator.hotspot(this.size, 0.1, 0.9, 25);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + this.distribution);
+        }
+        this.present = new Integer[DRAWS];
+        this.absent = new Integer[DRAWS];
+        for (int i = 0; i < DRAWS; i++) {
+            int key = keys.next();
+            this.present[i] = 2 * key;
+            this.absent[i] = 2 * key + 1;
+        }
+    }
+
+    /**
+     * @return Where to find the next key to use in present or absent
+     */
+    int next() {
+        int i = this.next;
+        this.next = (i + 1) & (DRAWS - 1);
+        return i;
+    }
+}
@@ -0,0 +1,60 @@
+package net.kjtsanaktsidis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read/write mix on each map: readPercent of the operations are gets (half of them hits), and the rest are split
+ * evenly between putting absent keys and removing them again, so the map settles with about half the absent keys it
+ * touches put in. Those are removed again after each iteration, out of the timed section, so every iteration starts
+ * from the same map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class MixedBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Mix {
+        @Param({"100", "95", "50"})
+        public int readPercent;
+
+        //what each operation is, drawn up front like the keys, one for each key in MapState
+        byte[] rolls;
+
+        @Setup(Level.Trial)
+        public void setup(MapState s) {
+            Random rgen = new Random(25);
+            this.rolls = new byte[s.present.length];
+            for (int i = 0; i < this.rolls.length; i++) {
+                this.rolls[i] = (byte) rgen.nextInt(100);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void restore(MapState s) {
+            for (Integer key : s.absent) {
+                s.dict.remove(key);
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer mixed(MapState s, Mix mix) {
+        int i = s.next();
+        int roll = mix.rolls[i];
+        if (roll < mix.readPercent) {
+            return s.dict.get((i & 1) == 0 ? s.present[i] : s.absent[i]);
+        }
+        else if ((roll & 1) == 0) {
+            return s.dict.put(s.absent[i], s.absent[i]);
+        }
+        else {
+            return s.dict.remove(s.absent[i]);
+        }
+    }
+}
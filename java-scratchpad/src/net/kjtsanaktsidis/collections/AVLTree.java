@@ -2,95 +2,1494 @@ package net.kjtsanaktsidis.collections;
 
 import java.util.*;
 
-public class AVLTree<K extends Comparable, T> implements SortedMap<K, T> {
+/**
+ * Self-balancing binary search tree (AVL tree): the heights of the two subtrees of any node differ by at most one,
+ * so the tree is never more than about 1.44 log2(N) levels deep.
+ * There are no node objects. Each node is an index into a set of parallel arrays holding its children, parent,
+ * height, key and value, so a million entries are six arrays rather than a million objects for the GC to trace,
+ * and the links the searches follow are packed together in memory. Freed nodes go on a free list and get reused.
+ * Index 0 is the null node: it has height 0, so leaves and missing children need no special cases.
+ * Insertion and deletion are iterative, rebalancing on the way back up through the parent links, and stop as soon
+ * as a subtree comes out the same height it was before.
+ */
+public class AVLTree<K, T> extends AbstractMap<K, T> implements NavigableMap<K, T> {
 
+    private static final int NIL = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    //an AVL tree with 2^31 nodes is less than 46 levels tall, so a byte is plenty
+    private byte[] height;
+    private Object[] keys;
+    private Object[] vals;
+
+    private int root;
+    private int count;
+    //Head of the list of freed nodes, which is chained through left[]; NIL if there aren't any
+    private int free;
+    //Every index below this one has been handed out at some point
+    private int used;
+
+    /**
+     * Number of structural modifications (nodes added or removed) so far, which lets the view iterators fail fast
+     */
+    private int modCount;
+
+    private final Comparator<? super K> comparator;
+    //The classes every key and value must belong to, for a checked tree; null otherwise
+    private final Class<K> keyType;
+    private final Class<T> valueType;
+
+    /**
+     * The whole tree as an unbounded view; the navigation methods and the keySet/values/entrySet views are all
+     * implemented in terms of it
+     */
+    private final SubMap all;
+
+    /**
+     * Creates an empty tree, ordered by the keys' natural ordering
+     */
+    public AVLTree() {
+        this(null, null, null);
+    }
+
+    /**
+     * Creates an empty tree with a custom key ordering
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     */
+    public AVLTree(Comparator<? super K> comparator) {
+        this(comparator, null, null);
+    }
+
+    /**
+     * Creates an empty tree, ordered by the keys' natural ordering, that checks the type of every key and value it is
+     * handed at runtime, like Collections.checkedMap(). Looking up or storing anything of the wrong type throws
+     * ClassCastException, even when the tree is empty and there is nothing to compare it against
+     *
+     * @param keyType The class of the keys
+     * @param valueType The class of the values
+     */
+    public AVLTree(Class<K> keyType, Class<T> valueType) {
+        this(null, keyType, valueType);
+    }
+
+    private AVLTree(Comparator<? super K> comparator, Class<K> keyType, Class<T> valueType) {
+        this.comparator = comparator;
+        this.keyType = keyType;
+        this.valueType = valueType;
+        this.left = new int[INITIAL_CAPACITY];
+        this.right = new int[INITIAL_CAPACITY];
+        this.parent = new int[INITIAL_CAPACITY];
+        this.height = new byte[INITIAL_CAPACITY];
+        this.keys = new Object[INITIAL_CAPACITY];
+        this.vals = new Object[INITIAL_CAPACITY];
+        this.root = NIL;
+        this.free = NIL;
+        this.used = 1;
+        this.all = new SubMap(null, false, null, false, false);
+    }
+
+    //Node storage
+
+    @SuppressWarnings({"unchecked"})
+    private K key(int node) {
+        return (K) this.keys[node];
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private T value(int node) {
+        return (T) this.vals[node];
+    }
+
+    /**
+     * Takes a node off the free list, or a fresh one from the end of the arrays, growing them if they are full
+     *
+     * @return The node, set up as a leaf
+     * @complexity amortized O(1): the arrays double in size when they grow
+     */
+    private int newNode(K key, T value, int parentNode) {
+        int node;
+        if (this.free != NIL) {
+            node = this.free;
+            this.free = this.left[node];
+        }
+        else {
+            if (this.used == this.keys.length) {
+                this.grow();
+            }
+            node = this.used++;
+        }
+        this.left[node] = NIL;
+        this.right[node] = NIL;
+        this.parent[node] = parentNode;
+        this.height[node] = 1;
+        this.keys[node] = key;
+        this.vals[node] = value;
+        return node;
+    }
+
+    private void grow() {
+        int capacity = this.keys.length;
+        if (capacity == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Tree is full");
+        }
+        capacity = (int) Math.min(2L * capacity, Integer.MAX_VALUE);
+        this.left = Arrays.copyOf(this.left, capacity);
+        this.right = Arrays.copyOf(this.right, capacity);
+        this.parent = Arrays.copyOf(this.parent, capacity);
+        this.height = Arrays.copyOf(this.height, capacity);
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.vals = Arrays.copyOf(this.vals, capacity);
+    }
+
+    /**
+     * Puts a node on the free list. Its key and value are dropped so the GC can have them, and a null key is what
+     * marks a node as free
+     */
+    private void freeNode(int node) {
+        this.keys[node] = null;
+        this.vals[node] = null;
+        this.left[node] = this.free;
+        this.free = node;
+    }
+
+    //Comparisons and type checks
+
+    @SuppressWarnings({"unchecked"})
+    private int compare(K a, K b) {
+        if (this.comparator == null) {
+            return ((Comparable<? super K>) a).compareTo(b);
+        }
+        else {
+            return this.comparator.compare(a, b);
+        }
+    }
+
+    /**
+     * @return key, as a K
+     * @throws NullPointerException if key is null
+     * @throws ClassCastException if this is a checked tree and key is of the wrong type
+     */
+    @SuppressWarnings({"unchecked"})
+    private K checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return this.keyType == null ? (K) key : this.keyType.cast(key);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private T checkValue(Object value) {
+        return this.valueType == null ? (T) value : this.valueType.cast(value);
+    }
+
+    //Balancing
+
+    private void updateHeight(int node) {
+        this.height[node] = (byte) (Math.max(this.height[this.left[node]], this.height[this.right[node]]) + 1);
+    }
+
+    /**
+     * Puts newChild where oldChild was under parentNode, or at the root if parentNode is NIL
+     */
+    private void replaceChild(int parentNode, int oldChild, int newChild) {
+        if (newChild != NIL) {
+            this.parent[newChild] = parentNode;
+        }
+        if (parentNode == NIL) {
+            this.root = newChild;
+        }
+        else if (this.left[parentNode] == oldChild) {
+            this.left[parentNode] = newChild;
+        }
+        else {
+            this.right[parentNode] = newChild;
+        }
+    }
+
+    /**
+     * Rotates node's right child up into its place
+     *
+     * @return The new root of the subtree
+     */
+    private int rotateLeft(int node) {
+        int up = this.right[node];
+        int middle = this.left[up];
+        this.right[node] = middle;
+        if (middle != NIL) {
+            this.parent[middle] = node;
+        }
+        this.replaceChild(this.parent[node], node, up);
+        this.left[up] = node;
+        this.parent[node] = up;
+        this.updateHeight(node);
+        this.updateHeight(up);
+        return up;
+    }
+
+    /**
+     * Rotates node's left child up into its place
+     *
+     * @return The new root of the subtree
+     */
+    private int rotateRight(int node) {
+        int up = this.left[node];
+        int middle = this.right[up];
+        this.left[node] = middle;
+        if (middle != NIL) {
+            this.parent[middle] = node;
+        }
+        this.replaceChild(this.parent[node], node, up);
+        this.right[up] = node;
+        this.parent[node] = up;
+        this.updateHeight(node);
+        this.updateHeight(up);
+        return up;
+    }
+
+    /**
+     * Recomputes a node's height from its children, and rotates if they now differ by two
+     *
+     * @return The root of the subtree that node was the root of
+     */
+    private int balance(int node) {
+        int skew = this.height[this.left[node]] - this.height[this.right[node]];
+        if (skew > 1) {
+            int child = this.left[node];
+            if (this.height[this.left[child]] < this.height[this.right[child]]) {
+                this.rotateLeft(child);
+            }
+            return this.rotateRight(node);
+        }
+        if (skew < -1) {
+            int child = this.right[node];
+            if (this.height[this.right[child]] < this.height[this.left[child]]) {
+                this.rotateRight(child);
+            }
+            return this.rotateLeft(node);
+        }
+        this.updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Walks up from a node whose subtree has just gained or lost a node, rebalancing as it goes. The heights stored
+     * further up are still the ones from before the change, so once a subtree comes out at its old height nothing
+     * above it can have changed
+     *
+     * @complexity O(log N) worst case; O(1) amortized for insertions, since at most one rotation (single or double)
+     *              is ever needed for those
+     */
+    private void rebalanceFrom(int node) {
+        while (node != NIL) {
+            int oldHeight = this.height[node];
+            int up = this.parent[node];
+            node = this.balance(node);
+            if (this.height[node] == oldHeight) {
+                return;
+            }
+            node = up;
+        }
+    }
+
+    //Searching
+
+    /**
+     * @return The node holding key, or NIL if there isn't one
+     * @complexity O(log N)
+     */
+    private int getNode(Object key) {
+        K k = this.checkKey(key);
+        int node = this.root;
+        while (node != NIL) {
+            int cmp = this.compare(k, this.key(node));
+            if (cmp < 0) {
+                node = this.left[node];
+            }
+            else if (cmp > 0) {
+                node = this.right[node];
+            }
+            else {
+                return node;
+            }
+        }
+        return NIL;
+    }
+
+    private int leftmost(int node) {
+        while (this.left[node] != NIL) {
+            node = this.left[node];
+        }
+        return node;
+    }
+
+    private int rightmost(int node) {
+        while (this.right[node] != NIL) {
+            node = this.right[node];
+        }
+        return node;
+    }
+
+    /**
+     * @return The node with the next key up, or NIL if node has the biggest
+     * @complexity O(log N) worst case, O(1) amortized over a whole in-order walk
+     */
+    private int successor(int node) {
+        if (this.right[node] != NIL) {
+            return this.leftmost(this.right[node]);
+        }
+        int up = this.parent[node];
+        while (up != NIL && node == this.right[up]) {
+            node = up;
+            up = this.parent[up];
+        }
+        return up;
+    }
+
+    private int predecessor(int node) {
+        if (this.left[node] != NIL) {
+            return this.rightmost(this.left[node]);
+        }
+        int up = this.parent[node];
+        while (up != NIL && node == this.left[up]) {
+            node = up;
+            up = this.parent[up];
+        }
+        return up;
+    }
+
+    //Relations for findNear(); GT|EQ is ceiling, LT|EQ is floor
+    private static final int GT = 0;
+    private static final int EQ = 1;
+    private static final int LT = 2;
+
+    /**
+     * Finds the node nearest to a key in the given direction, e.g. GT|EQ for the ceiling
+     *
+     * @param key The key to search for, or null to find the first (GT) or last (LT) node
+     * @param rel Some combination of GT or LT, and EQ
+     * @return The node, or NIL if there isn't one
+     * @complexity O(log N): a single descent, remembering the last node that was on the right side of key
+     */
+    private int findNear(K key, int rel) {
+        if (this.root == NIL) {
+            return NIL;
+        }
+        boolean below = (rel & LT) != 0;
+        if (key == null) {
+            return below ? this.rightmost(this.root) : this.leftmost(this.root);
+        }
+        int node = this.root;
+        int best = NIL;
+        while (node != NIL) {
+            int cmp = this.compare(this.key(node), key);
+            boolean fits = cmp == 0 ? (rel & EQ) != 0 : (cmp < 0) == below;
+            if (fits) {
+                best = node;
+            }
+            //carry on towards key: a better match is always closer to it
+            node = (below ? fits : !fits) ? this.right[node] : this.left[node];
+        }
+        return best;
+    }
+
+    //Map
+
+    /**
+     * Inserts or replaces the value stored against a key
+     *
+     * @return The old value stored against this key, or null if it is new
+     * @complexity O(log N): one descent, then rebalancing back up from the new leaf
+     */
     @Override
-    public Comparator<? super K> comparator() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public T put(K key, T value) {
+        K k = this.checkKey(key);
+        T v = this.checkValue(value);
+        if (this.root == NIL) {
+            //type check, as TreeMap does, so that a bad first key doesn't break the tree later
+            this.compare(k, k);
+            this.root = this.newNode(k, v, NIL);
+            this.count++;
+            this.modCount++;
+            return null;
+        }
+        int node = this.root;
+        int up;
+        int cmp;
+        do {
+            up = node;
+            cmp = this.compare(k, this.key(node));
+            if (cmp < 0) {
+                node = this.left[node];
+            }
+            else if (cmp > 0) {
+                node = this.right[node];
+            }
+            else {
+                T oldval = this.value(node);
+                this.vals[node] = v;
+                return oldval;
+            }
+        } while (node != NIL);
+
+        int leaf = this.newNode(k, v, up);
+        if (cmp < 0) {
+            this.left[up] = leaf;
+        }
+        else {
+            this.right[up] = leaf;
+        }
+        this.count++;
+        this.modCount++;
+        this.rebalanceFrom(up);
+        return null;
     }
 
+    /**
+     * @complexity O(log N)
+     */
     @Override
-    public SortedMap<K, T> subMap(K fromKey, K toKey) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public T get(Object key) {
+        int node = this.getNode(key);
+        return node == NIL ? null : this.value(node);
     }
 
+    /**
+     * @complexity O(log N)
+     */
     @Override
-    public SortedMap<K, T> headMap(K toKey) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public boolean containsKey(Object key) {
+        return this.getNode(key) != NIL;
     }
 
+    /**
+     * @complexity O(N), but a straight scan along the value array rather than a walk of the tree
+     */
     @Override
-    public SortedMap<K, T> tailMap(K fromKey) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public boolean containsValue(Object value) {
+        this.checkValue(value);
+        for (int node = 1; node < this.used; node++) {
+            //free nodes have no key
+            if (this.keys[node] != null && Objects.equals(this.vals[node], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The value stored against key, or null if it wasn't there
+     * @complexity O(log N)
+     */
+    @Override
+    public T remove(Object key) {
+        int node = this.getNode(key);
+        if (node == NIL) {
+            return null;
+        }
+        T oldval = this.value(node);
+        this.deleteNode(node);
+        return oldval;
+    }
+
+    /**
+     * Unlinks a node. A node with two children can't simply be taken out, so instead its successor, which has no
+     * left child, is moved into it, and the successor's node is the one that goes
+     *
+     * @postcondition the tree is rebalanced, and the removed node is on the free list
+     */
+    private void deleteNode(int node) {
+        this.count--;
+        this.modCount++;
+        if (this.left[node] != NIL && this.right[node] != NIL) {
+            int next = this.leftmost(this.right[node]);
+            this.keys[node] = this.keys[next];
+            this.vals[node] = this.vals[next];
+            node = next;
+        }
+        int child = this.left[node] != NIL ? this.left[node] : this.right[node];
+        int up = this.parent[node];
+        this.replaceChild(up, node, child);
+        this.freeNode(node);
+        this.rebalanceFrom(up);
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * Empties the tree, but keeps the arrays at their current size
+     *
+     * @complexity O(capacity), to let go of the keys and values
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, 0, this.used, null);
+        Arrays.fill(this.vals, 0, this.used, null);
+        this.root = NIL;
+        this.count = 0;
+        this.free = NIL;
+        this.used = 1;
+        this.modCount++;
+    }
+
+    /**
+     * Renumbers the nodes in key order and trims the arrays down to size. Nodes are numbered in the order they were
+     * added, so after random inserts an in-order walk jumps all over the arrays; afterwards it reads each of them
+     * straight through, and nodes near each other in the tree tend to share cache lines too. A copying garbage
+     * collector does much the same for TreeMap's node objects behind the scenes.
+     * Worth calling after loading a tree that is then mostly read. Iterators in progress are invalidated
+     *
+     * @complexity O(N), plus room for a second copy of the arrays while it runs
+     */
+    public void compact() {
+        int[] renumbered = new int[this.used];
+        int next = 1;
+        if (this.root != NIL) {
+            for (int node = this.leftmost(this.root); node != NIL; node = this.successor(node)) {
+                renumbered[node] = next++;
+            }
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, this.count + 1);
+        int[] newLeft = new int[capacity];
+        int[] newRight = new int[capacity];
+        int[] newParent = new int[capacity];
+        byte[] newHeight = new byte[capacity];
+        Object[] newKeys = new Object[capacity];
+        Object[] newVals = new Object[capacity];
+        for (int node = 1; node < this.used; node++) {
+            if (this.keys[node] != null) {
+                //renumbered[NIL] is NIL, so missing children stay missing
+                int to = renumbered[node];
+                newLeft[to] = renumbered[this.left[node]];
+                newRight[to] = renumbered[this.right[node]];
+                newParent[to] = renumbered[this.parent[node]];
+                newHeight[to] = this.height[node];
+                newKeys[to] = this.keys[node];
+                newVals[to] = this.vals[node];
+            }
+        }
+        this.left = newLeft;
+        this.right = newRight;
+        this.parent = newParent;
+        this.height = newHeight;
+        this.keys = newKeys;
+        this.vals = newVals;
+        this.root = renumbered[this.root];
+        this.free = NIL;
+        this.used = this.count + 1;
+        this.modCount++;
+    }
+
+    /**
+     * @return The height of the tree: 0 when empty, and otherwise the number of nodes on the longest path down from
+     *         the root, which is at most about 1.44 log2(N + 2)
+     */
+    public int height() {
+        return this.height[this.root];
+    }
+
+    //NavigableMap
+
+    private Entry<K, T> exportEntry(int node) {
+        return node == NIL ? null : new SimpleImmutableEntry<>(this.key(node), this.value(node));
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return this.comparator;
     }
 
     @Override
     public K firstKey() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.all.firstKey();
     }
 
     @Override
     public K lastKey() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.all.lastKey();
     }
 
     @Override
-    public int size() {
-        return 0;  //To change body of implemented methods use File | Settings | File Templates.
+    public Entry<K, T> lowerEntry(K key) {
+        return this.all.lowerEntry(key);
     }
 
     @Override
-    public boolean isEmpty() {
-        return false;  //To change body of implemented methods use File | Settings | File Templates.
+    public K lowerKey(K key) {
+        return this.all.lowerKey(key);
     }
 
     @Override
-    public boolean containsKey(Object key) {
-        return false;  //To change body of implemented methods use File | Settings | File Templates.
+    public Entry<K, T> floorEntry(K key) {
+        return this.all.floorEntry(key);
     }
 
     @Override
-    public boolean containsValue(Object value) {
-        return false;  //To change body of implemented methods use File | Settings | File Templates.
+    public K floorKey(K key) {
+        return this.all.floorKey(key);
     }
 
     @Override
-    public T get(Object key) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public Entry<K, T> ceilingEntry(K key) {
+        return this.all.ceilingEntry(key);
     }
 
     @Override
-    public T put(K key, T value) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public K ceilingKey(K key) {
+        return this.all.ceilingKey(key);
     }
 
     @Override
-    public T remove(Object key) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public Entry<K, T> higherEntry(K key) {
+        return this.all.higherEntry(key);
     }
 
     @Override
-    public void putAll(Map<? extends K, ? extends T> m) {
-        //To change body of implemented methods use File | Settings | File Templates.
+    public K higherKey(K key) {
+        return this.all.higherKey(key);
     }
 
     @Override
-    public void clear() {
-        //To change body of implemented methods use File | Settings | File Templates.
+    public Entry<K, T> firstEntry() {
+        return this.all.firstEntry();
+    }
+
+    @Override
+    public Entry<K, T> lastEntry() {
+        return this.all.lastEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollFirstEntry() {
+        return this.all.pollFirstEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollLastEntry() {
+        return this.all.pollLastEntry();
+    }
+
+    @Override
+    public NavigableMap<K, T> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return this.all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, T> headMap(K toKey, boolean inclusive) {
+        return this.all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, T> tailMap(K fromKey, boolean inclusive) {
+        return this.all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, T> subMap(K fromKey, K toKey) {
+        return this.all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, T> headMap(K toKey) {
+        return this.all.headMap(toKey);
     }
 
     @Override
-    public Set<K> keySet() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public SortedMap<K, T> tailMap(K fromKey) {
+        return this.all.tailMap(fromKey);
+    }
+
+    @Override
+    public NavigableMap<K, T> descendingMap() {
+        return this.all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return this.all.keySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return this.all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return this.all.descendingKeySet();
     }
 
     @Override
     public Collection<T> values() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.all.values();
     }
 
     @Override
     public Set<Entry<K, T>> entrySet() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.all.entrySet();
+    }
+
+    /**
+     * What the entry set's iterators hand out. There is no node object to hand out instead, so this remembers the
+     * node's index, and setValue() writes straight through to it.
+     * Removing a node with two children moves its successor's key into it, so if the key isn't where it was any more
+     * it is looked up again
+     */
+    class NodeEntry implements Entry<K, T> {
+
+        private int node;
+        private final K key;
+
+        NodeEntry(int node) {
+            this.node = node;
+            this.key = AVLTree.this.key(node);
+        }
+
+        private int locate() {
+            if (AVLTree.this.keys[this.node] != this.key) {
+                this.node = AVLTree.this.getNode(this.key);
+                if (this.node == NIL) {
+                    throw new IllegalStateException("Entry has been removed");
+                }
+            }
+            return this.node;
+        }
+
+        @Override
+        public K getKey() {
+            return this.key;
+        }
+
+        @Override
+        public T getValue() {
+            return AVLTree.this.value(this.locate());
+        }
+
+        //not a structural modification, so it doesn't upset any iterators
+        @Override
+        public T setValue(T value) {
+            int node = this.locate();
+            T oldval = AVLTree.this.value(node);
+            AVLTree.this.vals[node] = AVLTree.this.checkValue(value);
+            return oldval;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(this.key, e.getKey()) && Objects.equals(this.getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.key) ^ Objects.hashCode(this.getValue());
+        }
+
+        @Override
+        public String toString() {
+            return this.key + "=" + this.getValue();
+        }
+    }
+
+    /**
+     * A live view of the keys between two (optional) bounds, in ascending or descending order.
+     * Everything is delegated back to the tree after checking the bounds
+     */
+    class SubMap extends AbstractMap<K, T> implements NavigableMap<K, T> {
+
+        //null bounds mean unbounded on that side
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean isUnbounded() {
+            return this.lo == null && this.hi == null;
+        }
+
+        private boolean tooLow(K key) {
+            if (this.lo == null) {
+                return false;
+            }
+            int cmp = AVLTree.this.compare(key, this.lo);
+            return cmp < 0 || (cmp == 0 && !this.loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (this.hi == null) {
+                return false;
+            }
+            int cmp = AVLTree.this.compare(key, this.hi);
+            return cmp > 0 || (cmp == 0 && !this.hiInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !this.tooLow(key) && !this.tooHigh(key);
+        }
+
+        private void checkKeyBounds(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (!this.inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        /**
+         * @return The node with the smallest key in range, or NIL if there isn't one
+         */
+        private int loNode() {
+            int node = AVLTree.this.findNear(this.lo, this.lo == null || this.loInclusive ? GT | EQ : GT);
+            return node == NIL || this.tooHigh(AVLTree.this.key(node)) ? NIL : node;
+        }
+
+        /**
+         * @return The node with the largest key in range, or NIL if there isn't one
+         */
+        private int hiNode() {
+            int node = AVLTree.this.findNear(this.hi, this.hi == null || this.hiInclusive ? LT | EQ : LT);
+            return node == NIL || this.tooLow(AVLTree.this.key(node)) ? NIL : node;
+        }
+
+        private int firstNode() {
+            return this.descending ? this.hiNode() : this.loNode();
+        }
+
+        private int lastNode() {
+            return this.descending ? this.loNode() : this.hiNode();
+        }
+
+        /**
+         * @param rel The relation in the order of this view
+         * @return The node in range closest to key in the given direction, or NIL if there isn't one
+         */
+        private int nearNode(K key, int rel) {
+            AVLTree.this.checkKey(key);
+            if (this.descending) {
+                rel ^= LT;
+            }
+            if (this.tooLow(key)) {
+                return (rel & LT) != 0 ? NIL : this.loNode();
+            }
+            if (this.tooHigh(key)) {
+                return (rel & LT) != 0 ? this.hiNode() : NIL;
+            }
+            int node = AVLTree.this.findNear(key, rel);
+            return node == NIL || !this.inRange(AVLTree.this.key(node)) ? NIL : node;
+        }
+
+        private K nearKey(K key, int rel) {
+            int node = this.nearNode(key, rel);
+            return node == NIL ? null : AVLTree.this.key(node);
+        }
+
+        private Entry<K, T> pollEntry(boolean first) {
+            int node = first ? this.firstNode() : this.lastNode();
+            if (node == NIL) {
+                return null;
+            }
+            Entry<K, T> entry = AVLTree.this.exportEntry(node);
+            AVLTree.this.deleteNode(node);
+            return entry;
+        }
+
+        /**
+         * Makes a view of part of this view. Bounds are given in the order of this view, and must lie inside it
+         */
+        private SubMap newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (this.descending) {
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (this.lo != null) {
+                if (fromKey == null) {
+                    fromKey = this.lo;
+                    fromInclusive = this.loInclusive;
+                }
+                else {
+                    int cmp = AVLTree.this.compare(fromKey, this.lo);
+                    if (cmp < 0 || (cmp == 0 && !this.loInclusive && fromInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            if (this.hi != null) {
+                if (toKey == null) {
+                    toKey = this.hi;
+                    toInclusive = this.hiInclusive;
+                }
+                else {
+                    int cmp = AVLTree.this.compare(toKey, this.hi);
+                    if (cmp > 0 || (cmp == 0 && !this.hiInclusive && toInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, this.descending);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.inRange(AVLTree.this.checkKey(key)) && AVLTree.this.containsKey(key);
+        }
+
+        @Override
+        public T get(Object key) {
+            return this.inRange(AVLTree.this.checkKey(key)) ? AVLTree.this.get(key) : null;
+        }
+
+        @Override
+        public T put(K key, T value) {
+            this.checkKeyBounds(key);
+            return AVLTree.this.put(key, value);
+        }
+
+        @Override
+        public T remove(Object key) {
+            return this.inRange(AVLTree.this.checkKey(key)) ? AVLTree.this.remove(key) : null;
+        }
+
+        /**
+         * @complexity O(1) for the whole tree, otherwise O(log N + size) since the nodes in range are counted
+         */
+        @Override
+        public int size() {
+            if (this.isUnbounded()) {
+                return AVLTree.this.count;
+            }
+            int size = 0;
+            for (NodeIterator it = new NodeIterator(); it.hasNext(); it.nextNode()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.loNode() == NIL;
+        }
+
+        @Override
+        public void clear() {
+            if (this.isUnbounded()) {
+                AVLTree.this.clear();
+                return;
+            }
+            for (NodeIterator it = new NodeIterator(); it.hasNext();) {
+                it.nextNode();
+                it.remove();
+            }
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = AVLTree.this.comparator;
+            if (this.descending) {
+                return Collections.reverseOrder(cmp);
+            }
+            return cmp;
+        }
+
+        @Override
+        public K firstKey() {
+            int node = this.firstNode();
+            if (node == NIL) {
+                throw new NoSuchElementException();
+            }
+            return AVLTree.this.key(node);
+        }
+
+        @Override
+        public K lastKey() {
+            int node = this.lastNode();
+            if (node == NIL) {
+                throw new NoSuchElementException();
+            }
+            return AVLTree.this.key(node);
+        }
+
+        @Override
+        public Entry<K, T> lowerEntry(K key) {
+            return AVLTree.this.exportEntry(this.nearNode(key, LT));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return this.nearKey(key, LT);
+        }
+
+        @Override
+        public Entry<K, T> floorEntry(K key) {
+            return AVLTree.this.exportEntry(this.nearNode(key, LT | EQ));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return this.nearKey(key, LT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> ceilingEntry(K key) {
+            return AVLTree.this.exportEntry(this.nearNode(key, GT | EQ));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return this.nearKey(key, GT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> higherEntry(K key) {
+            return AVLTree.this.exportEntry(this.nearNode(key, GT));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return this.nearKey(key, GT);
+        }
+
+        @Override
+        public Entry<K, T> firstEntry() {
+            return AVLTree.this.exportEntry(this.firstNode());
+        }
+
+        @Override
+        public Entry<K, T> lastEntry() {
+            return AVLTree.this.exportEntry(this.lastNode());
+        }
+
+        @Override
+        public Entry<K, T> pollFirstEntry() {
+            return this.pollEntry(true);
+        }
+
+        @Override
+        public Entry<K, T> pollLastEntry() {
+            return this.pollEntry(false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+            int cmp = AVLTree.this.compare(fromKey, toKey);
+            if (this.descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return this.newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public SubMap headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, K toKey) {
+            return this.subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SubMap headMap(K toKey) {
+            return this.headMap(toKey, false);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey) {
+            return this.tailMap(fromKey, true);
+        }
+
+        @Override
+        public SubMap descendingMap() {
+            return new SubMap(this.lo, this.loInclusive, this.hi, this.hiInclusive, !this.descending);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet(this.descendingMap());
+        }
+
+        @Override
+        public Collection<T> values() {
+            return new Values(this);
+        }
+
+        @Override
+        public Set<Entry<K, T>> entrySet() {
+            return new EntrySet(this);
+        }
+
+        /**
+         * Walks the nodes in range in the order of the view, through the parent links, so it needs no stack. Only
+         * the first node needs a search. The key and value iterators read straight out of the arrays, and only the
+         * entry iterator allocates anything.
+         * Adding or removing keys other than through the iterator makes it throw ConcurrentModificationException
+         */
+        class NodeIterator {
+
+            private int next;
+            private int lastReturned;
+            private int expectedModCount;
+
+            NodeIterator() {
+                this.next = SubMap.this.firstNode();
+                this.lastReturned = NIL;
+                this.expectedModCount = AVLTree.this.modCount;
+            }
+
+            boolean hasNext() {
+                return this.next != NIL;
+            }
+
+            int nextNode() {
+                if (this.next == NIL) {
+                    throw new NoSuchElementException();
+                }
+                if (AVLTree.this.modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                this.lastReturned = this.next;
+                int step = SubMap.this.descending
+                        ? AVLTree.this.predecessor(this.next) : AVLTree.this.successor(this.next);
+                if (step != NIL && (SubMap.this.descending
+                        ? SubMap.this.tooLow(AVLTree.this.key(step)) : SubMap.this.tooHigh(AVLTree.this.key(step)))) {
+                    step = NIL;
+                }
+                this.next = step;
+                return this.lastReturned;
+            }
+
+            void remove() {
+                if (this.lastReturned == NIL) {
+                    throw new IllegalStateException();
+                }
+                if (AVLTree.this.modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                //deleting a node with two children moves its successor, which is our next node, into it
+                if (this.next != NIL && !SubMap.this.descending
+                        && AVLTree.this.left[this.lastReturned] != NIL && AVLTree.this.right[this.lastReturned] != NIL) {
+                    this.next = this.lastReturned;
+                }
+                AVLTree.this.deleteNode(this.lastReturned);
+                this.expectedModCount = AVLTree.this.modCount;
+                this.lastReturned = NIL;
+            }
+        }
+    }
+
+    /**
+     * Live view of the keys of a SubMap
+     */
+    class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final SubMap map;
+
+        KeySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final SubMap.NodeIterator it = this.map.new NodeIterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return AVLTree.this.key(it.nextNode());
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!this.map.containsKey(o)) {
+                return false;
+            }
+            this.map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return this.map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return this.map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return this.map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return this.map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            Entry<K, T> entry = this.map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Entry<K, T> entry = this.map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return this.map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return this.map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return this.map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(this.map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return this.descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(this.map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(this.map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(this.map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * Live view of the values of a SubMap
+     */
+    class Values extends AbstractCollection<T> {
+
+        private final SubMap map;
+
+        Values(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final SubMap.NodeIterator it = this.map.new NodeIterator();
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return AVLTree.this.value(it.nextNode());
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+
+    /**
+     * Live view of the entries of a SubMap
+     */
+    class EntrySet extends AbstractSet<Entry<K, T>> {
+
+        private final SubMap map;
+
+        EntrySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<K, T>> iterator() {
+            final SubMap.NodeIterator it = this.map.new NodeIterator();
+            return new Iterator<Entry<K, T>>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Entry<K, T> next() {
+                    return new NodeEntry(it.nextNode());
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<K, T> e = (Entry<K, T>) o;
+            return this.map.containsKey(e.getKey()) && Objects.equals(this.map.get(e.getKey()), e.getValue());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean remove(Object o) {
+            if (!this.contains(o)) {
+                return false;
+            }
+            this.map.remove(((Entry<K, T>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
     }
 }
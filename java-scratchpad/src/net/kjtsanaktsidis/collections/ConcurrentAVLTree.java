@@ -0,0 +1,1756 @@
+package net.kjtsanaktsidis.collections;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent AVL tree, after Bronson, Casper, Chafi and Olukotun's optimistic relaxed balance tree ("A Practical
+ * Concurrent Binary Search Tree", PPoPP 2010).
+ * Searches take no locks at all. Each node has a version number, which changes whenever a rotation moves the node
+ * down the tree and so shrinks the range of keys its subtree covers. A search reads a node's version, reads the
+ * child it wants, then checks the version again: if it hasn't moved, the key it is after can't have left that
+ * subtree, so it can carry on down without caring what happens above. This is hand-over-hand validation rather than
+ * hand-over-hand locking. If the version has moved, the search backs up one level and tries again from there.
+ * Writers lock only the nodes they change: an insert locks the parent of the new leaf, and a rotation locks the
+ * parent of the subtree and the two or three nodes being rotated, always going downwards so there are no deadlocks.
+ * Removing a node with two children doesn't restructure anything; it just clears the value, leaving a routing node
+ * behind that searches still pass through, and which rebalancing unlinks later once it is down to one child.
+ * Heights are only approximately right while writers are active, and the tree is brought back into balance by
+ * whichever writer notices, so the balance is relaxed rather than strict, but it is a proper AVL tree again as soon
+ * as the writers stop.
+ * Navigation (firstKey(), ceilingEntry() and so on) and iteration are weakly consistent, like
+ * ConcurrentSkipListMap's: they never fail, and reflect every update that finished before they started, but may or may
+ * not see ones that happen while they run. Iterators hand out snapshot entries that don't support setValue().
+ * Null keys and values are not allowed.
+ */
+public class ConcurrentAVLTree<K, T> extends AbstractMap<K, T> implements ConcurrentNavigableMap<K, T> {
+
+    /**
+     * Every node is one of these, the root holder included. The child links are guarded by the node's own lock, and a
+     * node's parent link by the lock of that parent
+     */
+    static final class Node<K, T> {
+        final K key;
+        //null for a routing node, which has been removed but is still in the tree
+        volatile T value;
+        volatile int height;
+        volatile long version;
+        volatile Node<K, T> parent;
+        volatile Node<K, T> left;
+        volatile Node<K, T> right;
+
+        Node(K key, T value, Node<K, T> parent) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+            this.height = 1;
+        }
+
+        Node<K, T> child(int dir) {
+            return dir < 0 ? this.left : this.right;
+        }
+
+        void setChild(int dir, Node<K, T> node) {
+            if (dir < 0) {
+                this.left = node;
+            }
+            else {
+                this.right = node;
+            }
+        }
+    }
+
+    //Versions: the bottom bit marks a node that has been unlinked, the next one a rotation in progress, and the rest
+    //count the rotations that have moved the node down
+    private static final long UNLINKED = 1L;
+    private static final long SHRINKING = 2L;
+    private static final long SHRINK_COUNT_INCREMENT = 4L;
+
+    //How many times to re-read the version of a node that is being rotated before blocking on its lock instead
+    private static final int SPIN_COUNT = 100;
+
+    //What the attempt methods return when the node they started from has changed under them
+    private static final Object RETRY = new Object();
+
+    //What nodeCondition() returns, apart from the height a node should have
+    private static final int NOTHING_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int UNLINK_REQUIRED = -3;
+
+    //What update() does, depending on what's there already
+    private static final int UPDATE_ALWAYS = 0;
+    private static final int UPDATE_IF_ABSENT = 1;
+    private static final int UPDATE_IF_PRESENT = 2;
+    private static final int UPDATE_IF_EQUAL = 3;
+
+    //The root is the holder's right child. The holder never moves, so its version never changes
+    private final Node<K, T> holder;
+    private final AtomicInteger count;
+    private final Comparator<? super K> comparator;
+
+    /**
+     * The whole tree as an unbounded view; the navigation methods and the keySet/values/entrySet views are all
+     * implemented in terms of it
+     */
+    private final SubMap all;
+
+    /**
+     * Creates an empty tree, ordered by the keys' natural ordering
+     */
+    public ConcurrentAVLTree() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty tree with a custom key ordering
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     */
+    public ConcurrentAVLTree(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.holder = new Node<>(null, null, null);
+        this.count = new AtomicInteger();
+        this.all = new SubMap(null, false, null, false, false);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private int compare(K a, K b) {
+        if (this.comparator == null) {
+            return ((Comparable<? super K>) a).compareTo(b);
+        }
+        else {
+            return this.comparator.compare(a, b);
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private K checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return (K) key;
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static boolean isShrinking(long version) {
+        return (version & SHRINKING) != 0;
+    }
+
+    private static long beginChange(long version) {
+        return version | SHRINKING;
+    }
+
+    private static long endChange(long version) {
+        return version + SHRINK_COUNT_INCREMENT;
+    }
+
+    /**
+     * Waits for a rotation that is moving a node to finish: spins for a bit, then blocks on the node's lock, which the
+     * rotation holds
+     */
+    private static void waitUntilNotChanging(Node<?, ?> node) {
+        long version = node.version;
+        if (isShrinking(version)) {
+            for (int i = 0; i < SPIN_COUNT; i++) {
+                if (node.version != version) {
+                    return;
+                }
+            }
+            synchronized (node) {
+                //nothing to do; getting the lock means the rotation is over
+            }
+        }
+    }
+
+    //Searching
+
+    /**
+     * @complexity O(log N), without taking any locks
+     */
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public T get(Object key) {
+        K k = this.checkKey(key);
+        while (true) {
+            Object result = this.attemptGet(k, this.holder, 1, this.holder.version);
+            if (result != RETRY) {
+                return (T) result;
+            }
+        }
+    }
+
+    /**
+     * Searches the subtree under node's child on the dir side for key
+     *
+     * @param nodeV The version node had when the search arrived there
+     * @return The value, null if key isn't there, or RETRY if node has moved since nodeV was read
+     */
+    private Object attemptGet(K key, Node<K, T> node, int dir, long nodeV) {
+        while (true) {
+            Node<K, T> child = node.child(dir);
+            if (node.version != nodeV) {
+                return RETRY;
+            }
+            if (child == null) {
+                return null;
+            }
+            int cmp = this.compare(key, child.key);
+            if (cmp == 0) {
+                return child.value;
+            }
+            long childV = child.version;
+            if (isShrinking(childV)) {
+                waitUntilNotChanging(child);
+            }
+            else if (childV != UNLINKED && child == node.child(dir)) {
+                //the child is still ours and still in place, so key is in its subtree if it is anywhere
+                if (node.version != nodeV) {
+                    return RETRY;
+                }
+                Object result = this.attemptGet(key, child, cmp, childV);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @complexity O(N)
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        for (T v : this.values()) {
+            if (value.equals(v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Relations for findNear(); GT|EQ is ceiling, LT|EQ is floor
+    private static final int GT = 0;
+    private static final int EQ = 1;
+    private static final int LT = 2;
+
+    /**
+     * Finds the entry nearest to a key in the given direction, e.g. GT|EQ for the ceiling
+     *
+     * @param key The key to search for, or null to find the first (GT) or last (LT) entry
+     * @param rel Some combination of GT or LT, and EQ
+     * @return A snapshot of the entry, or null if there isn't one
+     * @complexity O(log N), plus another search for each routing node it lands on
+     */
+    @SuppressWarnings({"unchecked"})
+    private Entry<K, T> findNear(K key, int rel) {
+        while (true) {
+            Object result = this.attemptNear(key, rel, this.holder, 1, this.holder.version, null);
+            if (result == RETRY) {
+                continue;
+            }
+            if (result == null) {
+                return null;
+            }
+            Node<K, T> node = (Node<K, T>) result;
+            T value = node.value;
+            if (value != null) {
+                return new SimpleImmutableEntry<>(node.key, value);
+            }
+            //removed, but still in the tree; look beyond it
+            key = node.key;
+            rel &= ~EQ;
+        }
+    }
+
+    /**
+     * The same descent as attemptGet(), remembering the closest node on the right side of key so far
+     *
+     * @return The nearest node, null if there isn't one, or RETRY
+     */
+    private Object attemptNear(K key, int rel, Node<K, T> node, int dir, long nodeV, Node<K, T> best) {
+        boolean below = (rel & LT) != 0;
+        while (true) {
+            Node<K, T> child = node.child(dir);
+            if (node.version != nodeV) {
+                return RETRY;
+            }
+            if (child == null) {
+                return best;
+            }
+            boolean fits;
+            if (key == null) {
+                //looking for the first or last key; everything on the way is a candidate
+                fits = true;
+            }
+            else {
+                int cmp = this.compare(child.key, key);
+                if (cmp == 0 && (rel & EQ) != 0) {
+                    return child;
+                }
+                fits = cmp != 0 && (cmp < 0) == below;
+            }
+            //carry on towards key: a better match is always closer to it
+            int nextDir = fits != below ? -1 : 1;
+            long childV = child.version;
+            if (isShrinking(childV)) {
+                waitUntilNotChanging(child);
+            }
+            else if (childV != UNLINKED && child == node.child(dir)) {
+                if (node.version != nodeV) {
+                    return RETRY;
+                }
+                Object result = this.attemptNear(key, rel, child, nextDir, childV, fits ? child : best);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    //Updates
+
+    private static boolean shouldUpdate(int func, Object prev, Object expected) {
+        switch (func) {
+            case UPDATE_ALWAYS:
+                return true;
+            case UPDATE_IF_ABSENT:
+                return prev == null;
+            case UPDATE_IF_PRESENT:
+                return prev != null;
+            default:
+                return prev != null && prev.equals(expected);
+        }
+    }
+
+    /**
+     * The one routine behind every kind of put, replace and remove
+     *
+     * @param func One of the UPDATE_ constants, saying whether to go ahead depending on the value that's there
+     * @param expected The value there has to be, for UPDATE_IF_EQUAL
+     * @param newValue The new value, or null to remove the key
+     * @return The value there was before, or null if the key wasn't there; whether it was updated follows from func
+     * @complexity O(log N), locking the node being changed and, to unlink one, its parent. Rebalancing afterwards
+     *              locks each node it fixes on the way back up
+     */
+    @SuppressWarnings({"unchecked"})
+    private T update(K key, int func, Object expected, T newValue) {
+        while (true) {
+            Object result = this.attemptUpdate(key, func, expected, newValue, this.holder, 1, this.holder.version);
+            if (result != RETRY) {
+                return (T) result;
+            }
+        }
+    }
+
+    private Object attemptUpdate(K key, int func, Object expected, T newValue, Node<K, T> node, int dir, long nodeV) {
+        while (true) {
+            Node<K, T> child = node.child(dir);
+            if (node.version != nodeV) {
+                return RETRY;
+            }
+            if (child == null) {
+                //key isn't there
+                if (newValue == null || !shouldUpdate(func, null, expected)) {
+                    return null;
+                }
+                synchronized (node) {
+                    if (node.version != nodeV) {
+                        return RETRY;
+                    }
+                    if (node.child(dir) != null) {
+                        //someone else got in first; have another look
+                        continue;
+                    }
+                    node.setChild(dir, new Node<>(key, newValue, node));
+                }
+                this.count.incrementAndGet();
+                this.fixHeightAndRebalance(node);
+                return null;
+            }
+            int cmp = this.compare(key, child.key);
+            if (cmp == 0) {
+                Object result = this.attemptNodeUpdate(func, expected, newValue, node, child);
+                if (result != RETRY) {
+                    return result;
+                }
+                continue;
+            }
+            long childV = child.version;
+            if (isShrinking(childV)) {
+                waitUntilNotChanging(child);
+            }
+            else if (childV != UNLINKED && child == node.child(dir)) {
+                if (node.version != nodeV) {
+                    return RETRY;
+                }
+                Object result = this.attemptUpdate(key, func, expected, newValue, child, cmp, childV);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the value of a node that has the key. Removing a node with at most one child unlinks it there and then,
+     * which needs its parent locked too; anything else only locks the node itself
+     *
+     * @return The old value, or RETRY if the node has been unlinked or its shape changed
+     */
+    private Object attemptNodeUpdate(int func, Object expected, T newValue, Node<K, T> parent, Node<K, T> node) {
+        if (newValue == null && node.value == null) {
+            //nothing to remove
+            return null;
+        }
+        if (newValue == null && (node.left == null || node.right == null)) {
+            T prev;
+            synchronized (parent) {
+                if (parent.version == UNLINKED || node.parent != parent) {
+                    return RETRY;
+                }
+                synchronized (node) {
+                    prev = node.value;
+                    if (prev == null || !shouldUpdate(func, prev, expected)) {
+                        return prev;
+                    }
+                    if (!this.attemptUnlink_nl(parent, node)) {
+                        return RETRY;
+                    }
+                }
+            }
+            this.count.decrementAndGet();
+            this.fixHeightAndRebalance(parent);
+            return prev;
+        }
+        synchronized (node) {
+            if (node.version == UNLINKED) {
+                return RETRY;
+            }
+            T prev = node.value;
+            if (!shouldUpdate(func, prev, expected)) {
+                return prev;
+            }
+            if (newValue == null && (node.left == null || node.right == null)) {
+                //it lost a child since we looked, so it can be unlinked after all
+                return RETRY;
+            }
+            node.value = newValue;
+            if (prev == null && newValue != null) {
+                this.count.incrementAndGet();
+            }
+            else if (prev != null && newValue == null) {
+                this.count.decrementAndGet();
+            }
+            return prev;
+        }
+    }
+
+    /**
+     * Takes a node with at most one child out of the tree, putting the child in its place.
+     * The caller must hold the locks of both parent and node
+     *
+     * @return Whether it could be done; false if the node has moved, or has two children
+     */
+    private boolean attemptUnlink_nl(Node<K, T> parent, Node<K, T> node) {
+        Node<K, T> parentL = parent.left;
+        Node<K, T> parentR = parent.right;
+        if (parentL != node && parentR != node) {
+            return false;
+        }
+        Node<K, T> nodeL = node.left;
+        Node<K, T> nodeR = node.right;
+        if (nodeL != null && nodeR != null) {
+            return false;
+        }
+        Node<K, T> splice = nodeL != null ? nodeL : nodeR;
+        if (parentL == node) {
+            parent.left = splice;
+        }
+        else {
+            parent.right = splice;
+        }
+        if (splice != null) {
+            splice.parent = parent;
+        }
+        node.version = UNLINKED;
+        node.value = null;
+        return true;
+    }
+
+    @Override
+    public T put(K key, T value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        return this.update(this.checkKey(key), UPDATE_ALWAYS, null, value);
+    }
+
+    @Override
+    public T putIfAbsent(K key, T value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        return this.update(this.checkKey(key), UPDATE_IF_ABSENT, null, value);
+    }
+
+    @Override
+    public T remove(Object key) {
+        return this.update(this.checkKey(key), UPDATE_ALWAYS, null, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        K k = this.checkKey(key);
+        return value != null && value.equals(this.update(k, UPDATE_IF_EQUAL, value, null));
+    }
+
+    @Override
+    public boolean replace(K key, T oldValue, T newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        return oldValue.equals(this.update(this.checkKey(key), UPDATE_IF_EQUAL, oldValue, newValue));
+    }
+
+    @Override
+    public T replace(K key, T value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        return this.update(this.checkKey(key), UPDATE_IF_PRESENT, null, value);
+    }
+
+    /**
+     * @complexity O(1); exact whenever no updates are in progress
+     */
+    @Override
+    public int size() {
+        return this.count.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.all.isEmpty();
+    }
+
+    /**
+     * Removes every key, one at a time, so updates running alongside are never lost
+     *
+     * @complexity O(N log N)
+     */
+    @Override
+    public void clear() {
+        this.all.clear();
+    }
+
+    /**
+     * @return The height of the tree, as for AVLTree.height(). Only exact while no updates are in progress; routing
+     *         nodes count too
+     */
+    public int height() {
+        return height(this.holder.right);
+    }
+
+    //Rebalancing
+
+    /**
+     * @return NOTHING_REQUIRED, REBALANCE_REQUIRED, UNLINK_REQUIRED for a routing node with at most one child, or else
+     *         the height the node should have
+     */
+    private int nodeCondition(Node<K, T> node) {
+        Node<K, T> nodeL = node.left;
+        Node<K, T> nodeR = node.right;
+        if ((nodeL == null || nodeR == null) && node.value == null) {
+            return UNLINK_REQUIRED;
+        }
+        int hN = node.height;
+        int hL0 = height(nodeL);
+        int hR0 = height(nodeR);
+        int hNRepl = 1 + Math.max(hL0, hR0);
+        int bal = hL0 - hR0;
+        if (bal < -1 || bal > 1) {
+            return REBALANCE_REQUIRED;
+        }
+        return hN != hNRepl ? hNRepl : NOTHING_REQUIRED;
+    }
+
+    /**
+     * Walks up from a node whose subtree has changed, fixing heights and rotating where needed, until it reaches a
+     * node that needs nothing doing
+     */
+    private void fixHeightAndRebalance(Node<K, T> node) {
+        while (node != null && node.parent != null) {
+            int condition = this.nodeCondition(node);
+            if (condition == NOTHING_REQUIRED || node.version == UNLINKED) {
+                return;
+            }
+            if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = this.fixHeight_nl(node);
+                }
+            }
+            else {
+                Node<K, T> nodeParent = node.parent;
+                synchronized (nodeParent) {
+                    if (nodeParent.version != UNLINKED && node.parent == nodeParent) {
+                        synchronized (node) {
+                            node = this.rebalance_nl(nodeParent, node);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fixes a node's height, if that's all it needs. The caller must hold its lock
+     *
+     * @return The next node to look at: itself if it needs rebalancing or unlinking, its parent if its height
+     *         changed, or null if nothing did
+     */
+    private Node<K, T> fixHeight_nl(Node<K, T> node) {
+        int condition = this.nodeCondition(node);
+        switch (condition) {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                return node;
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                return node.parent;
+        }
+    }
+
+    /**
+     * Unlinks a routing node, or rotates a node that is out of balance. The caller must hold the locks of node and its
+     * parent
+     *
+     * @return The next node to look at, as for fixHeight_nl()
+     */
+    private Node<K, T> rebalance_nl(Node<K, T> nParent, Node<K, T> n) {
+        Node<K, T> nL = n.left;
+        Node<K, T> nR = n.right;
+        if ((nL == null || nR == null) && n.value == null) {
+            if (this.attemptUnlink_nl(nParent, n)) {
+                return this.fixHeight_nl(nParent);
+            }
+            else {
+                return n;
+            }
+        }
+        int hN = n.height;
+        int hL0 = height(nL);
+        int hR0 = height(nR);
+        int hNRepl = 1 + Math.max(hL0, hR0);
+        int bal = hL0 - hR0;
+        if (bal > 1) {
+            return this.rebalanceToRight_nl(nParent, n, nL, hR0);
+        }
+        else if (bal < -1) {
+            return this.rebalanceToLeft_nl(nParent, n, nR, hL0);
+        }
+        else if (hNRepl != hN) {
+            n.height = hNRepl;
+            return this.fixHeight_nl(nParent);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * n's left subtree is too tall: rotate right, or left then right if the extra height is on the inside
+     */
+    private Node<K, T> rebalanceToRight_nl(Node<K, T> nParent, Node<K, T> n, Node<K, T> nL, int hR0) {
+        synchronized (nL) {
+            int hL = nL.height;
+            if (hL - hR0 <= 1) {
+                //someone else fixed it
+                return n;
+            }
+            Node<K, T> nLR = nL.right;
+            int hLL0 = height(nL.left);
+            int hLR0 = height(nLR);
+            if (hLL0 >= hLR0) {
+                return this.rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR0);
+            }
+            synchronized (nLR) {
+                int hLR = nLR.height;
+                if (hLL0 >= hLR) {
+                    return this.rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR);
+                }
+                int hLRL = height(nLR.left);
+                int b = hLL0 - hLRL;
+                if (b >= -1 && b <= 1 && !((hLL0 == 0 || hLRL == 0) && nL.value == null)) {
+                    return this.rotateRightOverLeft_nl(nParent, n, nL, hR0, hLL0, nLR, hLRL);
+                }
+            }
+            //a double rotation would leave nL out of balance, so straighten it out first
+            return this.rebalanceToLeft_nl(n, nL, nLR, hLL0);
+        }
+    }
+
+    /**
+     * Mirror image of rebalanceToRight_nl()
+     */
+    private Node<K, T> rebalanceToLeft_nl(Node<K, T> nParent, Node<K, T> n, Node<K, T> nR, int hL0) {
+        synchronized (nR) {
+            int hR = nR.height;
+            if (hL0 - hR >= -1) {
+                return n;
+            }
+            Node<K, T> nRL = nR.left;
+            int hRL0 = height(nRL);
+            int hRR0 = height(nR.right);
+            if (hRR0 >= hRL0) {
+                return this.rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL0, hRR0);
+            }
+            synchronized (nRL) {
+                int hRL = nRL.height;
+                if (hRR0 >= hRL) {
+                    return this.rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL, hRR0);
+                }
+                int hRLR = height(nRL.right);
+                int b = hRR0 - hRLR;
+                if (b >= -1 && b <= 1 && !((hRR0 == 0 || hRLR == 0) && nR.value == null)) {
+                    return this.rotateLeftOverRight_nl(nParent, n, hL0, nR, nRL, hRR0, hRLR);
+                }
+            }
+            return this.rebalanceToRight_nl(n, nR, nRL, hRR0);
+        }
+    }
+
+    /**
+     * Rotates nL up into n's place. n moves down, so its version changes, which sends any search passing through it
+     * back up a level
+     *
+     * @return The next node to look at, as for fixHeight_nl()
+     */
+    private Node<K, T> rotateRight_nl(Node<K, T> nParent, Node<K, T> n, Node<K, T> nL, int hR, int hLL,
+                                      Node<K, T> nLR, int hLR) {
+        long nodeV = n.version;
+        Node<K, T> nPL = nParent.left;
+        n.version = beginChange(nodeV);
+
+        n.left = nLR;
+        if (nLR != null) {
+            nLR.parent = n;
+        }
+        nL.right = n;
+        n.parent = nL;
+        if (nPL == n) {
+            nParent.left = nL;
+        }
+        else {
+            nParent.right = nL;
+        }
+        nL.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hLR, hR);
+        n.height = hNRepl;
+        nL.height = 1 + Math.max(hLL, hNRepl);
+        n.version = endChange(nodeV);
+
+        //see if either of the nodes we moved still needs work before carrying on up
+        int balN = hLR - hR;
+        if (balN < -1 || balN > 1) {
+            return n;
+        }
+        if ((nLR == null || hR == 0) && n.value == null) {
+            return n;
+        }
+        int balL = hLL - hNRepl;
+        if (balL < -1 || balL > 1) {
+            return nL;
+        }
+        if (hLL == 0 && nL.value == null) {
+            return nL;
+        }
+        return this.fixHeight_nl(nParent);
+    }
+
+    /**
+     * Mirror image of rotateRight_nl()
+     */
+    private Node<K, T> rotateLeft_nl(Node<K, T> nParent, Node<K, T> n, int hL, Node<K, T> nR, Node<K, T> nRL,
+                                     int hRL, int hRR) {
+        long nodeV = n.version;
+        Node<K, T> nPL = nParent.left;
+        n.version = beginChange(nodeV);
+
+        n.right = nRL;
+        if (nRL != null) {
+            nRL.parent = n;
+        }
+        nR.left = n;
+        n.parent = nR;
+        if (nPL == n) {
+            nParent.left = nR;
+        }
+        else {
+            nParent.right = nR;
+        }
+        nR.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hL, hRL);
+        n.height = hNRepl;
+        nR.height = 1 + Math.max(hNRepl, hRR);
+        n.version = endChange(nodeV);
+
+        int balN = hRL - hL;
+        if (balN < -1 || balN > 1) {
+            return n;
+        }
+        if ((nRL == null || hL == 0) && n.value == null) {
+            return n;
+        }
+        int balR = hRR - hNRepl;
+        if (balR < -1 || balR > 1) {
+            return nR;
+        }
+        if (hRR == 0 && nR.value == null) {
+            return nR;
+        }
+        return this.fixHeight_nl(nParent);
+    }
+
+    /**
+     * Double rotation: nLR comes up into n's place, with nL and n as its children. Both of those move down
+     */
+    private Node<K, T> rotateRightOverLeft_nl(Node<K, T> nParent, Node<K, T> n, Node<K, T> nL, int hR, int hLL,
+                                              Node<K, T> nLR, int hLRL) {
+        long nodeV = n.version;
+        long leftV = nL.version;
+        Node<K, T> nPL = nParent.left;
+        Node<K, T> nLRL = nLR.left;
+        Node<K, T> nLRR = nLR.right;
+        int hLRR = height(nLRR);
+        n.version = beginChange(nodeV);
+        nL.version = beginChange(leftV);
+
+        n.left = nLRR;
+        if (nLRR != null) {
+            nLRR.parent = n;
+        }
+        nL.right = nLRL;
+        if (nLRL != null) {
+            nLRL.parent = nL;
+        }
+        nLR.left = nL;
+        nL.parent = nLR;
+        nLR.right = n;
+        n.parent = nLR;
+        if (nPL == n) {
+            nParent.left = nLR;
+        }
+        else {
+            nParent.right = nLR;
+        }
+        nLR.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hLRR, hR);
+        n.height = hNRepl;
+        int hLRepl = 1 + Math.max(hLL, hLRL);
+        nL.height = hLRepl;
+        nLR.height = 1 + Math.max(hLRepl, hNRepl);
+        n.version = endChange(nodeV);
+        nL.version = endChange(leftV);
+
+        int balN = hLRR - hR;
+        if (balN < -1 || balN > 1) {
+            return n;
+        }
+        if ((nLRR == null || hR == 0) && n.value == null) {
+            return n;
+        }
+        int balLR = hLRepl - hNRepl;
+        if (balLR < -1 || balLR > 1) {
+            return nLR;
+        }
+        return this.fixHeight_nl(nParent);
+    }
+
+    /**
+     * Mirror image of rotateRightOverLeft_nl()
+     */
+    private Node<K, T> rotateLeftOverRight_nl(Node<K, T> nParent, Node<K, T> n, int hL, Node<K, T> nR,
+                                              Node<K, T> nRL, int hRR, int hRLR) {
+        long nodeV = n.version;
+        long rightV = nR.version;
+        Node<K, T> nPL = nParent.left;
+        Node<K, T> nRLL = nRL.left;
+        Node<K, T> nRLR = nRL.right;
+        int hRLL = height(nRLL);
+        n.version = beginChange(nodeV);
+        nR.version = beginChange(rightV);
+
+        n.right = nRLL;
+        if (nRLL != null) {
+            nRLL.parent = n;
+        }
+        nR.left = nRLR;
+        if (nRLR != null) {
+            nRLR.parent = nR;
+        }
+        nRL.right = nR;
+        nR.parent = nRL;
+        nRL.left = n;
+        n.parent = nRL;
+        if (nPL == n) {
+            nParent.left = nRL;
+        }
+        else {
+            nParent.right = nRL;
+        }
+        nRL.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hL, hRLL);
+        n.height = hNRepl;
+        int hRRepl = 1 + Math.max(hRLR, hRR);
+        nR.height = hRRepl;
+        nRL.height = 1 + Math.max(hNRepl, hRRepl);
+        n.version = endChange(nodeV);
+        nR.version = endChange(rightV);
+
+        int balN = hRLL - hL;
+        if (balN < -1 || balN > 1) {
+            return n;
+        }
+        if ((nRLL == null || hL == 0) && n.value == null) {
+            return n;
+        }
+        int balRL = hRRepl - hNRepl;
+        if (balRL < -1 || balRL > 1) {
+            return nRL;
+        }
+        return this.fixHeight_nl(nParent);
+    }
+
+    //NavigableMap
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return this.all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return this.all.lastKey();
+    }
+
+    @Override
+    public Entry<K, T> lowerEntry(K key) {
+        return this.all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return this.all.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, T> floorEntry(K key) {
+        return this.all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return this.all.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, T> ceilingEntry(K key) {
+        return this.all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return this.all.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, T> higherEntry(K key) {
+        return this.all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return this.all.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, T> firstEntry() {
+        return this.all.firstEntry();
+    }
+
+    @Override
+    public Entry<K, T> lastEntry() {
+        return this.all.lastEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollFirstEntry() {
+        return this.all.pollFirstEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollLastEntry() {
+        return this.all.pollLastEntry();
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return this.all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> headMap(K toKey, boolean inclusive) {
+        return this.all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> tailMap(K fromKey, boolean inclusive) {
+        return this.all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> subMap(K fromKey, K toKey) {
+        return this.all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> headMap(K toKey) {
+        return this.all.headMap(toKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> tailMap(K fromKey) {
+        return this.all.tailMap(fromKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> descendingMap() {
+        return this.all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return this.all.keySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return this.all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return this.all.descendingKeySet();
+    }
+
+    @Override
+    public Collection<T> values() {
+        return this.all.values();
+    }
+
+    @Override
+    public Set<Entry<K, T>> entrySet() {
+        return this.all.entrySet();
+    }
+
+    /**
+     * A live view of the keys between two (optional) bounds, in ascending or descending order.
+     * Everything is delegated back to the tree after checking the bounds
+     */
+    class SubMap extends AbstractMap<K, T> implements ConcurrentNavigableMap<K, T> {
+
+        //null bounds mean unbounded on that side
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean isUnbounded() {
+            return this.lo == null && this.hi == null;
+        }
+
+        private boolean tooLow(K key) {
+            if (this.lo == null) {
+                return false;
+            }
+            int cmp = ConcurrentAVLTree.this.compare(key, this.lo);
+            return cmp < 0 || (cmp == 0 && !this.loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (this.hi == null) {
+                return false;
+            }
+            int cmp = ConcurrentAVLTree.this.compare(key, this.hi);
+            return cmp > 0 || (cmp == 0 && !this.hiInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !this.tooLow(key) && !this.tooHigh(key);
+        }
+
+        private void checkKeyBounds(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (!this.inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        /**
+         * @return The entry with the smallest key in range, or null if there isn't one
+         */
+        private Entry<K, T> loEntry() {
+            Entry<K, T> entry = ConcurrentAVLTree.this.findNear(this.lo,
+                    this.lo == null || this.loInclusive ? GT | EQ : GT);
+            return entry == null || this.tooHigh(entry.getKey()) ? null : entry;
+        }
+
+        /**
+         * @return The entry with the largest key in range, or null if there isn't one
+         */
+        private Entry<K, T> hiEntry() {
+            Entry<K, T> entry = ConcurrentAVLTree.this.findNear(this.hi,
+                    this.hi == null || this.hiInclusive ? LT | EQ : LT);
+            return entry == null || this.tooLow(entry.getKey()) ? null : entry;
+        }
+
+        private Entry<K, T> firstEntryInRange() {
+            return this.descending ? this.hiEntry() : this.loEntry();
+        }
+
+        private Entry<K, T> lastEntryInRange() {
+            return this.descending ? this.loEntry() : this.hiEntry();
+        }
+
+        /**
+         * @param rel The relation in the order of this view
+         * @return The entry in range closest to key in the given direction, or null if there isn't one
+         */
+        private Entry<K, T> nearEntry(K key, int rel) {
+            ConcurrentAVLTree.this.checkKey(key);
+            if (this.descending) {
+                rel ^= LT;
+            }
+            if (this.tooLow(key)) {
+                return (rel & LT) != 0 ? null : this.loEntry();
+            }
+            if (this.tooHigh(key)) {
+                return (rel & LT) != 0 ? this.hiEntry() : null;
+            }
+            Entry<K, T> entry = ConcurrentAVLTree.this.findNear(key, rel);
+            return entry == null || !this.inRange(entry.getKey()) ? null : entry;
+        }
+
+        private K nearKey(K key, int rel) {
+            Entry<K, T> entry = this.nearEntry(key, rel);
+            return entry == null ? null : entry.getKey();
+        }
+
+        /**
+         * Removes the first or last entry, as long as nobody changes it first; if they do, it tries again
+         */
+        private Entry<K, T> pollEntry(boolean first) {
+            while (true) {
+                Entry<K, T> entry = first ? this.firstEntryInRange() : this.lastEntryInRange();
+                if (entry == null) {
+                    return null;
+                }
+                if (ConcurrentAVLTree.this.remove(entry.getKey(), entry.getValue())) {
+                    return entry;
+                }
+            }
+        }
+
+        /**
+         * Makes a view of part of this view. Bounds are given in the order of this view, and must lie inside it
+         */
+        private SubMap newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (this.descending) {
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (this.lo != null) {
+                if (fromKey == null) {
+                    fromKey = this.lo;
+                    fromInclusive = this.loInclusive;
+                }
+                else {
+                    int cmp = ConcurrentAVLTree.this.compare(fromKey, this.lo);
+                    if (cmp < 0 || (cmp == 0 && !this.loInclusive && fromInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            if (this.hi != null) {
+                if (toKey == null) {
+                    toKey = this.hi;
+                    toInclusive = this.hiInclusive;
+                }
+                else {
+                    int cmp = ConcurrentAVLTree.this.compare(toKey, this.hi);
+                    if (cmp > 0 || (cmp == 0 && !this.hiInclusive && toInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, this.descending);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.inRange(ConcurrentAVLTree.this.checkKey(key)) && ConcurrentAVLTree.this.containsKey(key);
+        }
+
+        @Override
+        public T get(Object key) {
+            return this.inRange(ConcurrentAVLTree.this.checkKey(key)) ? ConcurrentAVLTree.this.get(key) : null;
+        }
+
+        @Override
+        public T put(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentAVLTree.this.put(key, value);
+        }
+
+        @Override
+        public T remove(Object key) {
+            return this.inRange(ConcurrentAVLTree.this.checkKey(key)) ? ConcurrentAVLTree.this.remove(key) : null;
+        }
+
+        @Override
+        public T putIfAbsent(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentAVLTree.this.putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return this.inRange(ConcurrentAVLTree.this.checkKey(key)) && ConcurrentAVLTree.this.remove(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, T oldValue, T newValue) {
+            this.checkKeyBounds(key);
+            return ConcurrentAVLTree.this.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public T replace(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentAVLTree.this.replace(key, value);
+        }
+
+        /**
+         * @complexity O(1) for the whole tree, otherwise O(size log N) since the entries in range are counted
+         */
+        @Override
+        public int size() {
+            if (this.isUnbounded()) {
+                return ConcurrentAVLTree.this.count.get();
+            }
+            int size = 0;
+            for (EntryIterator it = new EntryIterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.loEntry() == null;
+        }
+
+        @Override
+        public void clear() {
+            for (EntryIterator it = new EntryIterator(); it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = ConcurrentAVLTree.this.comparator;
+            if (this.descending) {
+                return Collections.reverseOrder(cmp);
+            }
+            return cmp;
+        }
+
+        @Override
+        public K firstKey() {
+            Entry<K, T> entry = this.firstEntryInRange();
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            return entry.getKey();
+        }
+
+        @Override
+        public K lastKey() {
+            Entry<K, T> entry = this.lastEntryInRange();
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            return entry.getKey();
+        }
+
+        @Override
+        public Entry<K, T> lowerEntry(K key) {
+            return this.nearEntry(key, LT);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return this.nearKey(key, LT);
+        }
+
+        @Override
+        public Entry<K, T> floorEntry(K key) {
+            return this.nearEntry(key, LT | EQ);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return this.nearKey(key, LT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> ceilingEntry(K key) {
+            return this.nearEntry(key, GT | EQ);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return this.nearKey(key, GT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> higherEntry(K key) {
+            return this.nearEntry(key, GT);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return this.nearKey(key, GT);
+        }
+
+        @Override
+        public Entry<K, T> firstEntry() {
+            return this.firstEntryInRange();
+        }
+
+        @Override
+        public Entry<K, T> lastEntry() {
+            return this.lastEntryInRange();
+        }
+
+        @Override
+        public Entry<K, T> pollFirstEntry() {
+            return this.pollEntry(true);
+        }
+
+        @Override
+        public Entry<K, T> pollLastEntry() {
+            return this.pollEntry(false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+            int cmp = ConcurrentAVLTree.this.compare(fromKey, toKey);
+            if (this.descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return this.newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public SubMap headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, K toKey) {
+            return this.subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SubMap headMap(K toKey) {
+            return this.headMap(toKey, false);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey) {
+            return this.tailMap(fromKey, true);
+        }
+
+        @Override
+        public SubMap descendingMap() {
+            return new SubMap(this.lo, this.loInclusive, this.hi, this.hiInclusive, !this.descending);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet(this.descendingMap());
+        }
+
+        @Override
+        public Collection<T> values() {
+            return new Values(this);
+        }
+
+        @Override
+        public Set<Entry<K, T>> entrySet() {
+            return new EntrySet(this);
+        }
+
+        /**
+         * Weakly consistent iterator over the entries in range, in the order of the view. There are no links to
+         * follow that stay valid while other threads rotate the tree, so each step is a fresh search for the next key
+         * along from the last one. It never throws ConcurrentModificationException
+         */
+        class EntryIterator implements Iterator<Entry<K, T>> {
+
+            private Entry<K, T> next;
+            private Entry<K, T> lastReturned;
+
+            EntryIterator() {
+                this.next = SubMap.this.firstEntryInRange();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            /**
+             * @complexity O(log N)
+             */
+            @Override
+            public Entry<K, T> next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                this.lastReturned = this.next;
+                this.next = SubMap.this.nearEntry(this.lastReturned.getKey(), GT);
+                return this.lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentAVLTree.this.remove(this.lastReturned.getKey());
+                this.lastReturned = null;
+            }
+        }
+    }
+
+    /**
+     * Live view of the keys of a SubMap
+     */
+    class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final SubMap map;
+
+        KeySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.new EntryIterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return this.map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return this.map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return this.map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return this.map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return this.map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            Entry<K, T> entry = this.map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Entry<K, T> entry = this.map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return this.map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return this.map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return this.map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(this.map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return this.descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(this.map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(this.map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(this.map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * Live view of the values of a SubMap
+     */
+    class Values extends AbstractCollection<T> {
+
+        private final SubMap map;
+
+        Values(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.new EntryIterator();
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+
+    /**
+     * Live view of the entries of a SubMap
+     */
+    class EntrySet extends AbstractSet<Entry<K, T>> {
+
+        private final SubMap map;
+
+        EntrySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<K, T>> iterator() {
+            return this.map.new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<K, T> e = (Entry<K, T>) o;
+            return e.getValue() != null && e.getValue().equals(this.map.get(e.getKey()));
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean remove(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<K, T> e = (Entry<K, T>) o;
+            return this.map.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+}
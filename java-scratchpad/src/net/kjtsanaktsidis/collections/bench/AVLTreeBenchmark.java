@@ -0,0 +1,104 @@
+package net.kjtsanaktsidis.collections.bench;
+
+import net.kjtsanaktsidis.collections.AVLTree;
+
+import java.util.*;
+
+/**
+ * Compares AVLTree with TreeMap, and with any other Map classes named on the command line, on random puts, random
+ * gets, a full in-order iteration and random removes, with Integer keys. Also reports the heap each one takes per
+ * entry once full. AVLTree is run twice, the second time calling compact() after the puts, which lays the nodes out in
+ * key order (untimed). To include SkipListDict, put prac-2's classes on the classpath and name
+ * net.kjtsanaktsidis.prac2.SkipListDict.
+ *
+ * Usage: AVLTreeBenchmark [size] [other map classes...]    (defaults to 1M keys)
+ */
+public class AVLTreeBenchmark {
+
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(AVLTree.class);
+        classes.add(AVLTree.class);
+        classes.add(TreeMap.class);
+        for (int i = 1; i < args.length; i++) {
+            classes.add(Class.forName(args[i]));
+        }
+
+        //the same keys for everyone: distinct, in random order, and boxed up front so that isn't timed
+        Random rgen = new Random(19);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        Collections.shuffle(Arrays.asList(keys), rgen);
+        Integer[] probes = keys.clone();
+        Collections.shuffle(Arrays.asList(probes), rgen);
+
+        System.out.printf("%-18s %14s %14s %14s %14s %12s%n", "", "puts/sec", "gets/sec", "iterated/sec", "removes/sec",
+                "bytes/entry");
+        for (int c = 0; c < classes.size(); c++) {
+            Class<?> cls = classes.get(c);
+            boolean compact = c == 1;
+            double[] best = new double[4];
+            long bytes = 0;
+            long sink = 0;
+            //the first round is warm-up, but counts anyway since only the best is kept
+            for (int round = 0; round < ROUNDS; round++) {
+                long before = usedHeap();
+                @SuppressWarnings({"unchecked"})
+                Map<Integer, Integer> map = (Map<Integer, Integer>) cls.getConstructor().newInstance();
+
+                long t0 = System.nanoTime();
+                for (Integer key : keys) {
+                    map.put(key, key);
+                }
+                long t1 = System.nanoTime();
+                if (compact) {
+                    ((AVLTree<Integer, Integer>) map).compact();
+                }
+                long t1b = System.nanoTime();
+                for (Integer key : probes) {
+                    sink += map.get(key);
+                }
+                long t2 = System.nanoTime();
+                for (Integer value : map.values()) {
+                    sink -= value;
+                }
+                long t3 = System.nanoTime();
+                bytes = (usedHeap() - before) / n;
+                for (Integer key : probes) {
+                    map.remove(key);
+                }
+                long t4 = System.nanoTime();
+
+                if (!map.isEmpty()) {
+                    throw new IllegalStateException(cls.getSimpleName() + " didn't remove everything");
+                }
+                best[0] = Math.max(best[0], n / ((t1 - t0) / 1e9));
+                best[1] = Math.max(best[1], n / ((t2 - t1b) / 1e9));
+                best[2] = Math.max(best[2], n / ((t3 - t2) / 1e9));
+                best[3] = Math.max(best[3], n / ((t4 - t3) / 1e9));
+            }
+            if (sink != 0) {
+                throw new IllegalStateException(cls.getSimpleName() + " lost some values");
+            }
+            System.out.printf("%-18s %,14.0f %,14.0f %,14.0f %,14.0f %12d%n",
+                    compact ? "AVLTree compacted" : cls.getSimpleName(),
+                    best[0], best[1], best[2], best[3], bytes);
+        }
+    }
+
+    /**
+     * @return The bytes of heap in use after a few rounds of GC, which includes the boxed keys shared by everyone
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
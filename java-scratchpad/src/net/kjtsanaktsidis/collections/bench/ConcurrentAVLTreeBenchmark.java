@@ -0,0 +1,134 @@
+package net.kjtsanaktsidis.collections.bench;
+
+import net.kjtsanaktsidis.collections.AVLTree;
+import net.kjtsanaktsidis.collections.ConcurrentAVLTree;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throughput of ConcurrentAVLTree under mixes of gets, puts and removes, against ConcurrentSkipListMap and against
+ * AVLTree behind a single lock (Collections.synchronizedSortedMap). Each run prefills half of the key range, then
+ * every thread picks random keys and does a get, or else a put or remove with equal odds, so the size stays put.
+ * Reports total operations per second for each map, read percentage and thread count. With fewer cores than threads
+ * this mostly measures the cost of the synchronization rather than any speedup from it.
+ *
+ * Usage: ConcurrentAVLTreeBenchmark [key range] [millis per run]    (defaults to 100k keys and 1000ms)
+ */
+public class ConcurrentAVLTreeBenchmark {
+
+    private static final String[] MAPS = {"ConcurrentAVLTree", "ConcurrentSkipListMap", "AVLTree + lock"};
+    private static final int[] READ_PERCENTS = {90, 50, 10};
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws InterruptedException {
+        int range = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        System.out.printf("%-22s %6s", "ops/sec", "reads");
+        for (int threads : THREADS) {
+            System.out.printf(" %14s", threads + " threads");
+        }
+        System.out.println();
+        //the first pass is warm-up
+        for (int pass = 0; pass < 2; pass++) {
+            for (int map = 0; map < MAPS.length; map++) {
+                for (int readPercent : READ_PERCENTS) {
+                    StringBuilder line = new StringBuilder(String.format("%-22s %5d%%", MAPS[map], readPercent));
+                    for (int threads : THREADS) {
+                        double opsPerSec = run(newMap(map), range, readPercent, threads, pass == 0 ? millis / 4 : millis);
+                        line.append(String.format(" %,14.0f", opsPerSec));
+                    }
+                    if (pass == 1) {
+                        System.out.println(line);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> newMap(int map) {
+        switch (map) {
+            case 0:
+                return new ConcurrentAVLTree<>();
+            case 1:
+                return new ConcurrentSkipListMap<>();
+            default:
+                return Collections.synchronizedSortedMap(new AVLTree<Integer, Integer>());
+        }
+    }
+
+    private static double run(final Map<Integer, Integer> map, final int range, final int readPercent, int nThreads,
+                              long millis) throws InterruptedException {
+        Random prefill = new Random(20);
+        for (int i = 0; i < range / 2; i++) {
+            int key = prefill.nextInt(range);
+            map.put(key, key);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final long[] ops = new long[nThreads];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random rgen = new Random(id);
+                    long done = 0;
+                    long sink = 0;
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    while (!stop.get()) {
+                        //check the clock flag only every so often
+                        for (int i = 0; i < 256; i++) {
+                            Integer key = rgen.nextInt(range);
+                            int dice = rgen.nextInt(100);
+                            if (dice < readPercent) {
+                                Integer value = map.get(key);
+                                if (value != null) {
+                                    sink += value;
+                                }
+                            }
+                            else if ((dice & 1) == 0) {
+                                map.put(key, key);
+                            }
+                            else {
+                                map.remove(key);
+                            }
+                        }
+                        done += 256;
+                    }
+                    if (sink < 0) {
+                        throw new IllegalStateException("negative values");
+                    }
+                    ops[id] = done;
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+        long t1 = System.nanoTime();
+
+        long total = 0;
+        for (long n : ops) {
+            total += n;
+        }
+        return total / ((t1 - t0) / 1e9);
+    }
+}
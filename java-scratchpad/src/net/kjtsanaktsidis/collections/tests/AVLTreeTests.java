@@ -65,7 +65,7 @@ public class AVLTreeTests {
     @Test(expected = ClassCastException.class)
     public void CantCheckForWrongTypeKey()
     {
-        SortedMap<Integer, String> tree = new AVLTree<Integer, String>();
+        SortedMap<Integer, String> tree = new AVLTree<Integer, String>(Integer.class, String.class);
         tree.containsKey("gheed");
     }
 
@@ -94,7 +94,7 @@ public class AVLTreeTests {
     @Test(expected = ClassCastException.class)
     public void CantCheckForWrongTypeValue()
     {
-        SortedMap<Integer, String> tree = new AVLTree<Integer, String>();
+        SortedMap<Integer, String> tree = new AVLTree<Integer, String>(Integer.class, String.class);
         tree.containsValue(new ArrayList<Integer>());
     }
 
@@ -232,7 +232,7 @@ public class AVLTreeTests {
 
         //can return stuff into it?
         tree.put(66, "sixsix");
-        Assert.assertEquals(66, "sixsix");
+        Assert.assertEquals(tree.get(66), "sixsix");
     }
 
     @Test
@@ -284,5 +284,117 @@ public class AVLTreeTests {
     }
 
     @Test
+    public void CanNavigate()
+    {
+        NavigableMap<Integer, String> tree = new AVLTree<Integer, String>();
+        tree.put(4, "four");
+        tree.put(1, "one");
+        tree.put(9, "nine");
+        tree.put(5, "five");
+        tree.put(0, "zero");
+
+        Assert.assertEquals((int)tree.floorKey(6), 5);
+        Assert.assertEquals((int)tree.floorKey(5), 5);
+        Assert.assertEquals((int)tree.lowerKey(5), 4);
+        Assert.assertEquals((int)tree.ceilingKey(6), 9);
+        Assert.assertEquals((int)tree.higherKey(5), 9);
+        Assert.assertEquals(tree.lowerKey(0), null);
+        Assert.assertEquals(tree.higherKey(9), null);
+        Assert.assertEquals(tree.ceilingEntry(2).getValue(), "four");
+
+        Assert.assertEquals(tree.pollFirstEntry().getKey(), (Integer)0);
+        Assert.assertEquals(tree.pollLastEntry().getKey(), (Integer)9);
+        Assert.assertEquals(new ArrayList<>(tree.keySet()), Arrays.asList(1, 4, 5));
+    }
+
+    @Test
+    public void CanUseSubMapViews()
+    {
+        NavigableMap<Integer, String> tree = new AVLTree<Integer, String>();
+        tree.put(4, "four");
+        tree.put(1, "one");
+        tree.put(9, "nine");
+        tree.put(5, "five");
+        tree.put(0, "zero");
+
+        SortedMap<Integer, String> sub = tree.subMap(1, 9);
+        Assert.assertEquals(new ArrayList<>(sub.keySet()), Arrays.asList(1, 4, 5));
+        Assert.assertEquals(sub.size(), 3);
+        Assert.assertNull(sub.get(9));
+
+        //views are live in both directions
+        tree.put(6, "six");
+        Assert.assertTrue(sub.containsKey(6));
+        sub.remove(4);
+        Assert.assertFalse(tree.containsKey(4));
+        Assert.assertEquals(new ArrayList<>(tree.headMap(5).keySet()), Arrays.asList(0, 1));
+        Assert.assertEquals(new ArrayList<>(tree.tailMap(5).values()), Arrays.asList("five", "six", "nine"));
+
+        NavigableMap<Integer, String> desc = tree.descendingMap();
+        Assert.assertEquals(new ArrayList<>(desc.keySet()), Arrays.asList(9, 6, 5, 1, 0));
+        Assert.assertEquals((int)desc.ceilingKey(7), 6);
+        Assert.assertEquals(new ArrayList<>(desc.headMap(5, true).keySet()), Arrays.asList(9, 6, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void CantPutOutsideSubMap()
+    {
+        NavigableMap<Integer, String> tree = new AVLTree<Integer, String>();
+        tree.headMap(5).put(5, "five");
+    }
+
+    @Test
+    public void CanIterateAndRemove()
+    {
+        //removing a node with two children moves the next one into its place, under the iterator
+        SortedMap<Integer, String> tree = new AVLTree<Integer, String>();
+        for (int i = 0; i < 100; i++) {
+            tree.put(i, Integer.toString(i));
+        }
+        Iterator<Map.Entry<Integer, String>> it = tree.entrySet().iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            seen.add(e.getKey());
+            if (e.getKey() % 3 != 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(seen.size(), 100);
+        Assert.assertEquals(tree.size(), 34);
+        Assert.assertEquals((int)tree.lastKey(), 99);
+    }
 
+    @Test
+    public void StaysBalanced()
+    {
+        AVLTree<Integer, Integer> tree = new AVLTree<Integer, Integer>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        //ascending keys would make a plain binary search tree into a linked list
+        for (int i = 0; i < 4096; i++) {
+            tree.put(i, i);
+            expected.put(i, i);
+        }
+        Assert.assertEquals(tree.height(), 13);
+
+        Random rgen = new Random(19);
+        for (int i = 0; i < 20000; i++) {
+            int key = rgen.nextInt(8192);
+            if (rgen.nextBoolean()) {
+                Assert.assertEquals(tree.remove(key), expected.remove(key));
+            }
+            else {
+                Assert.assertEquals(tree.put(key, i), expected.put(key, i));
+            }
+        }
+        Assert.assertEquals(tree, expected);
+        Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(expected.entrySet()));
+        Assert.assertTrue(tree.height() <= 1.45 * Math.log(tree.size() + 2) / Math.log(2));
+
+        //renumbering the nodes in key order mustn't change anything else
+        tree.compact();
+        Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(expected.entrySet()));
+        tree.put(-1, -1);
+        Assert.assertEquals((int)tree.firstKey(), -1);
+    }
 }
@@ -0,0 +1,409 @@
+package net.kjtsanaktsidis.collections.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.kjtsanaktsidis.collections.ConcurrentAVLTree;
+
+public class ConcurrentAVLTreeTests {
+
+    @Test
+    public void CanGetItems()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        Assert.assertTrue(tree.isEmpty());
+        tree.put(4, "four");
+        tree.put(1, "one");
+        tree.put(9, "nine");
+        tree.put(5, "five");
+        tree.put(0, "zero");
+
+        Assert.assertEquals(tree.get(0), "zero");
+        Assert.assertEquals(tree.get(4), "four");
+        Assert.assertEquals(tree.get(9), "nine");
+        Assert.assertNull(tree.get(3));
+        Assert.assertTrue(tree.containsKey(5));
+        Assert.assertFalse(tree.containsKey(6));
+        Assert.assertTrue(tree.containsValue("one"));
+        Assert.assertEquals(tree.size(), 5);
+    }
+
+    @Test
+    public void CanOverwriteAndRemove()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        TreeMap<Integer, String> model = new TreeMap<>();
+        Random rgen = new Random(20);
+        for (int i = 0; i < 20000; i++) {
+            int key = rgen.nextInt(500);
+            if (rgen.nextInt(3) == 0) {
+                Assert.assertEquals(tree.remove(key), model.remove(key));
+            }
+            else {
+                String value = Integer.toString(i);
+                Assert.assertEquals(tree.put(key, value), model.put(key, value));
+            }
+        }
+        Assert.assertEquals(tree.size(), model.size());
+        Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(model.entrySet()));
+        tree.clear();
+        Assert.assertTrue(tree.isEmpty());
+        Assert.assertEquals(tree.size(), 0);
+    }
+
+    @Test
+    public void CanDoConditionalUpdates()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        Assert.assertNull(tree.putIfAbsent(1, "one"));
+        Assert.assertEquals(tree.putIfAbsent(1, "uno"), "one");
+        Assert.assertNull(tree.replace(2, "two"));
+        Assert.assertFalse(tree.containsKey(2));
+        Assert.assertEquals(tree.replace(1, "ein"), "one");
+        Assert.assertFalse(tree.replace(1, "one", "uno"));
+        Assert.assertTrue(tree.replace(1, "ein", "uno"));
+        Assert.assertFalse(tree.remove(1, "ein"));
+        Assert.assertTrue(tree.remove(1, "uno"));
+        Assert.assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void CanNavigate()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        for (int i = 0; i < 100; i += 10) {
+            tree.put(i, Integer.toString(i));
+        }
+        //a key with two children becomes a routing node; navigation has to skip it
+        tree.remove(30);
+
+        Assert.assertEquals((int) tree.firstKey(), 0);
+        Assert.assertEquals((int) tree.lastKey(), 90);
+        Assert.assertEquals((int) tree.ceilingKey(25), 40);
+        Assert.assertEquals((int) tree.ceilingKey(40), 40);
+        Assert.assertEquals((int) tree.higherKey(40), 50);
+        Assert.assertEquals((int) tree.floorKey(35), 20);
+        Assert.assertEquals((int) tree.lowerKey(40), 20);
+        Assert.assertNull(tree.lowerKey(0));
+        Assert.assertNull(tree.higherKey(90));
+        Assert.assertEquals(tree.ceilingEntry(85).getValue(), "90");
+        Assert.assertEquals((int) tree.descendingMap().firstKey(), 90);
+        Assert.assertEquals((int) tree.descendingMap().ceilingKey(35), 20);
+
+        Assert.assertEquals((int) tree.pollFirstEntry().getKey(), 0);
+        Assert.assertEquals((int) tree.pollLastEntry().getKey(), 90);
+        Assert.assertEquals(tree.size(), 7);
+    }
+
+    @Test
+    public void CanUseSubMapViews()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        for (int i = 0; i < 20; i++) {
+            tree.put(i, Integer.toString(i));
+        }
+        ConcurrentNavigableMap<Integer, String> sub = tree.subMap(5, true, 10, false);
+        Assert.assertEquals(sub.size(), 5);
+        Assert.assertEquals((int) sub.firstKey(), 5);
+        Assert.assertEquals((int) sub.lastKey(), 9);
+        Assert.assertNull(sub.get(10));
+        Assert.assertEquals(new ArrayList<>(sub.descendingKeySet()), Arrays.asList(9, 8, 7, 6, 5));
+        Assert.assertEquals(new ArrayList<>(tree.headMap(3).keySet()), Arrays.asList(0, 1, 2));
+        Assert.assertEquals(new ArrayList<>(tree.tailMap(17, false).keySet()), Arrays.asList(18, 19));
+
+        sub.clear();
+        Assert.assertEquals(tree.size(), 15);
+        Assert.assertNull(tree.get(7));
+        Assert.assertTrue(sub.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void CantPutOutsideSubMap()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        tree.headMap(10).put(10, "ten");
+    }
+
+    @Test
+    public void CanIterateAndRemove()
+    {
+        ConcurrentAVLTree<Integer, String> tree = new ConcurrentAVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            tree.put(i, Integer.toString(i));
+        }
+        for (Iterator<Integer> it = tree.keySet().iterator(); it.hasNext();) {
+            if (it.next() % 3 != 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(tree.size(), 334);
+        int expected = 0;
+        for (Map.Entry<Integer, String> e : tree.entrySet()) {
+            Assert.assertEquals((int) e.getKey(), expected);
+            expected += 3;
+        }
+    }
+
+    @Test
+    public void StaysBalanced()
+    {
+        ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        for (int i = 0; i < 100000; i++) {
+            tree.put(i, i);
+        }
+        //an AVL tree of N nodes is no taller than 1.44 log2(N + 2)
+        Assert.assertTrue(tree.height() <= 24);
+        for (int i = 0; i < 100000; i += 2) {
+            tree.remove(i);
+        }
+        Assert.assertTrue(tree.height() <= 24);
+        Assert.assertEquals(tree.size(), 50000);
+    }
+
+    @Test
+    public void ConcurrentWritersDontLoseUpdates() throws InterruptedException
+    {
+        final ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        final int nThreads = 8;
+        final int opsPerThread = 20000;
+        final int keySpace = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        //Each thread owns the keys that are equal to its number mod nThreads, so it knows exactly what every one of its
+        //operations has to return, even though other threads are rotating the same tree underneath it
+        final List<Map<Integer, Integer>> expected = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            final Map<Integer, Integer> mine = new HashMap<>();
+            expected.add(mine);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        Random rgen = new Random(id);
+                        for (int i = 0; i < opsPerThread; i++) {
+                            int key = rgen.nextInt(keySpace / nThreads) * nThreads + id;
+                            if (rgen.nextInt(3) == 0) {
+                                Integer removed = tree.remove(key);
+                                if (!Objects.equals(removed, mine.remove(key))) {
+                                    throw new AssertionError("remove(" + key + ") returned " + removed);
+                                }
+                            }
+                            else {
+                                Integer old = tree.put(key, i);
+                                if (!Objects.equals(old, mine.put(key, i))) {
+                                    throw new AssertionError("put(" + key + ") returned " + old);
+                                }
+                            }
+                            if (!Objects.equals(tree.get(key), mine.get(key))) {
+                                throw new AssertionError("get(" + key + ") doesn't see our own write");
+                            }
+                            //someone else's key; whatever is there must belong to them
+                            Integer otherKey = rgen.nextInt(keySpace);
+                            Integer otherValue = tree.get(otherKey);
+                            if (otherValue != null && (otherValue < 0 || otherValue >= opsPerThread)) {
+                                throw new AssertionError("get(" + otherKey + ") returned " + otherValue);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        TreeMap<Integer, Integer> all = new TreeMap<>();
+        for (Map<Integer, Integer> mine : expected) {
+            all.putAll(mine);
+        }
+        Assert.assertEquals(tree.size(), all.size());
+        Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(all.entrySet()));
+    }
+
+    @Test
+    public void ConcurrentInsertsOfSameKeysAgree() throws InterruptedException
+    {
+        final ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        final int nThreads = 8;
+        final int nKeys = 5000;
+        final int[] winners = new int[nThreads];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < nKeys; k++) {
+                        if (tree.putIfAbsent(k, id) == null) {
+                            winners[id]++;
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        //exactly one thread must have inserted each key, and the value must be the winner's
+        int total = 0;
+        for (int w : winners) {
+            total += w;
+        }
+        Assert.assertEquals(total, nKeys);
+        Assert.assertEquals(tree.size(), nKeys);
+        int[] counted = new int[nThreads];
+        for (int value : tree.values()) {
+            counted[value]++;
+        }
+        Assert.assertArrayEquals(counted, winners);
+        Assert.assertEquals((int) tree.firstKey(), 0);
+        Assert.assertEquals((int) tree.lastKey(), nKeys - 1);
+    }
+
+    @Test
+    public void ConcurrentReplacesAreAtomic() throws InterruptedException
+    {
+        //every thread increments the same few counters with a replace() loop; if two replaces of the same old value
+        //could both succeed, some increments would go missing
+        final ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        final int nThreads = 8;
+        final int nCounters = 16;
+        final int incrementsPerThread = 5000;
+        for (int k = 0; k < nCounters; k++) {
+            tree.put(k, 0);
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random rgen = new Random(id);
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        int key = rgen.nextInt(nCounters);
+                        while (true) {
+                            Integer old = tree.get(key);
+                            if (tree.replace(key, old, old + 1)) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        int total = 0;
+        for (int value : tree.values()) {
+            total += value;
+        }
+        Assert.assertEquals(total, nThreads * incrementsPerThread);
+    }
+
+    @Test
+    public void ReadersAlwaysFindKeysThatStay() throws InterruptedException
+    {
+        //The odd keys go in first and are never touched again. Writers then add and remove the even keys in
+        //ascending runs, which keeps rotating the nodes the readers are passing through. A search that got lost during
+        //a rotation would miss an odd key, which is never allowed
+        final ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        final int nKeys = 4000;
+        final int nWriters = 2;
+        final int nReaders = 4;
+        for (int k = 1; k < nKeys; k += 2) {
+            tree.put(k, k);
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < nWriters; t++) {
+            final int id = t;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < 10; round++) {
+                        for (int k = id * 2; k < nKeys; k += nWriters * 2) {
+                            tree.put(k, k);
+                        }
+                        for (int k = id * 2; k < nKeys; k += nWriters * 2) {
+                            tree.remove(k);
+                        }
+                    }
+                }
+            });
+        }
+        for (int t = 0; t < nReaders; t++) {
+            final int id = t;
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random rgen = new Random(id);
+                        while (!done.get()) {
+                            int key = rgen.nextInt(nKeys / 2) * 2 + 1;
+                            Integer value = tree.get(key);
+                            if (value == null || value != key) {
+                                throw new AssertionError("get(" + key + ") returned " + value);
+                            }
+                            Integer next = tree.higherKey(key - 1);
+                            if (next == null || next > key) {
+                                throw new AssertionError("higherKey(" + (key - 1) + ") returned " + next);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread t : readers) {
+            t.start();
+        }
+        for (Thread t : writers) {
+            t.start();
+        }
+        for (Thread t : writers) {
+            t.join();
+        }
+        done.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(tree.size(), nKeys / 2);
+        Assert.assertEquals((int) tree.firstKey(), 1);
+    }
+}
@@ -0,0 +1,1502 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A thread-safe, lock-free version of SkipListDict.
+ *
+ * Each level of a tower is linked in with an AtomicMarkableReference, so towers are linked and unlinked with CAS rather
+ * than under a lock. Deleting a tower happens in three steps:
+ *      - its value is CAS'd to null. This is the moment the key stops being in the dictionary
+ *      - its forward links are marked, top level first. Nothing can be linked in after a marked link
+ *      - it is physically unlinked by the next search that runs into it (see find())
+ * get() never writes anything; it just steps over towers that are marked or have no value.
+ * Null keys and null values are not allowed, since a null value is what marks a tower as deleted.
+ *
+ * Iterators and the keySet/values/entrySet/subMap views are weakly consistent: they never throw
+ * ConcurrentModificationException, and reflect some (but not necessarily all) changes made after they were created.
+ */
+public class ConcurrentSkipListDict<K, T> extends AbstractMap<K, T> implements ConcurrentNavigableMap<K, T> {
+
+    /**
+     * Data container for the dictionary.
+     * Each Tower contains a list of forward links, which are marked once the tower is being deleted
+     */
+    class Tower {
+
+        final K key;
+        volatile T value;
+        final AtomicMarkableReference<Tower>[] flinks;
+
+        @SuppressWarnings({"unchecked"})
+        Tower(K key, T value, int height) {
+            this.key = key;
+            this.value = value;
+            this.flinks = (AtomicMarkableReference<Tower>[]) new AtomicMarkableReference<?>[height];
+            for (int i = 0; i < height; i++) {
+                this.flinks[i] = new AtomicMarkableReference<>(null, false);
+            }
+        }
+    }
+
+    @SuppressWarnings({"rawtypes"})
+    private static final AtomicReferenceFieldUpdater<ConcurrentSkipListDict.Tower, Object> valueUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(ConcurrentSkipListDict.Tower.class, Object.class, "value");
+
+    /**
+     * Tallest tower we will ever build. With a coin flip per level this is plenty for 2^32 entries
+     */
+    private static final int MAX_HEIGHT = 32;
+
+    //Relations for findNear(); GT|EQ is ceiling, LT|EQ is floor
+    private static final int GT = 0;
+    private static final int EQ = 1;
+    private static final int LT = 2;
+
+    private final Tower leftSentinel;
+    private final Comparator<? super K> comparator;
+    private final AtomicInteger count;
+
+    /**
+     * Number of levels that have ever had a tower on them (or are about to). Searches start here; it only ever grows,
+     * which is fine since a tower is always linked in on every level below its top too
+     */
+    private final AtomicInteger levels;
+
+    /**
+     * The whole dictionary as an unbounded view; the navigation methods and the keySet/values/entrySet views are all
+     * implemented in terms of it
+     */
+    private final SubMap all;
+
+    /**
+     * Public constructor for the dictionary
+     * Keys are ordered by their natural ordering, so they must implement Comparable
+     */
+    public ConcurrentSkipListDict() {
+        this(null);
+    }
+
+    /**
+     * Public constructor for the dictionary with a custom key ordering
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     */
+    public ConcurrentSkipListDict(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        //The left sentinel is always full height; the right sentinel is just a null link
+        this.leftSentinel = new Tower(null, null, MAX_HEIGHT);
+        this.count = new AtomicInteger(0);
+        this.levels = new AtomicInteger(1);
+        this.all = new SubMap(null, false, null, false, false);
+    }
+
+    /**
+     * Compares two keys using the comparator if one was supplied, or their natural ordering otherwise
+     *
+     * @return <0, 0 or >0 as a is less than, equal to or greater than b
+     */
+    @SuppressWarnings({"unchecked"})
+    private int compare(K a, K b) {
+        if (this.comparator == null) {
+            return ((Comparable<? super K>) a).compareTo(b);
+        }
+        else {
+            return this.comparator.compare(a, b);
+        }
+    }
+
+    private boolean casValue(Tower tower, T expect, T update) {
+        return valueUpdater.compareAndSet(tower, expect, update);
+    }
+
+    /**
+     * Picks a height for a new tower: the number of heads flipped before the first tail, plus one.
+     * Uses a per-thread random generator so inserting threads don't fight over shared RNG state
+     */
+    private int randomHeight() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        return Math.min(Integer.numberOfTrailingZeros(~bits) + 1, MAX_HEIGHT);
+    }
+
+    /**
+     * @param height How many levels of search path it needs to hold; find() fills in no more than that
+     */
+    @SuppressWarnings({"unchecked"})
+    private Tower[] newPath(int height) {
+        return (Tower[]) new ConcurrentSkipListDict<?, ?>.Tower[height];
+    }
+
+    /**
+     * Searches for a key, filling in the towers either side of it on every level.
+     * Any marked (deleted) towers met on the way are unlinked; if that CAS fails the search starts again.
+     *
+     * @param key The key to search for
+     * @param preds Filled in with the rightmost tower smaller than key on each level in use, or on as many as it has
+     *              room for; starting further down is slower, but finds the same towers
+     * @param succs Filled in with the tower after preds[i] on each level in use (i.e. the first >= key), or null at the end
+     * @return Whether succs[0] holds key
+     * @complexity amortized O(log N) if there isn't much contention
+     */
+    private boolean find(K key, Tower[] preds, Tower[] succs) {
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            Tower pred = this.leftSentinel;
+            int cmp = 1;
+            for (int i = Math.min(this.levels.get(), preds.length) - 1; i >= 0; i--) {
+                Tower curr = pred.flinks[i].getReference();
+                cmp = 1;
+                while (curr != null) {
+                    Tower succ = curr.flinks[i].get(marked);
+                    if (marked[0]) {
+                        //curr is being deleted- help unlink it from this level
+                        if (!pred.flinks[i].compareAndSet(curr, succ, false, false)) {
+                            continue retry;
+                        }
+                        curr = succ;
+                    }
+                    else {
+                        cmp = this.compare(curr.key, key);
+                        if (cmp >= 0) {
+                            break;
+                        }
+                        pred = curr;
+                        curr = succ;
+                    }
+                }
+                preds[i] = pred;
+                succs[i] = curr;
+            }
+            return succs[0] != null && cmp == 0;
+        }
+    }
+
+    /**
+     * Searches for the live tower holding a key without modifying anything
+     *
+     * @param key The key to search for
+     * @return The tower holding key, or null if it isn't in the dictionary
+     * @complexity amortized O(log N); wait-free
+     */
+    private Tower findTowerOrNull(K key) {
+        boolean[] marked = {false};
+        Tower pred = this.leftSentinel;
+        for (int i = this.levels.get() - 1; i >= 0; i--) {
+            Tower curr = pred.flinks[i].getReference();
+            while (curr != null) {
+                Tower succ = curr.flinks[i].get(marked);
+                if (!marked[0]) {
+                    int cmp = this.compare(curr.key, key);
+                    if (cmp == 0) {
+                        //if it has no value it's being deleted, and nothing can be inserted in its place until
+                        //it is unlinked from the bottom level; so the key is not here right now
+                        return curr.value != null ? curr : null;
+                    }
+                    if (cmp > 0) {
+                        break;
+                    }
+                    pred = curr;
+                }
+                curr = succ;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the rightmost unmarked tower smaller than (or equal to) a key without modifying anything
+     *
+     * @param key The key to search for, or null to find the rightmost tower of all
+     * @param inclusive Whether a tower holding key counts
+     * @return The tower found, which might be being deleted, or the left sentinel if there isn't one
+     */
+    private Tower findPredecessor(K key, boolean inclusive) {
+        boolean[] marked = {false};
+        Tower pred = this.leftSentinel;
+        for (int i = this.levels.get() - 1; i >= 0; i--) {
+            Tower curr = pred.flinks[i].getReference();
+            while (curr != null) {
+                Tower succ = curr.flinks[i].get(marked);
+                if (!marked[0]) {
+                    if (key != null) {
+                        int cmp = this.compare(curr.key, key);
+                        if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                            break;
+                        }
+                    }
+                    pred = curr;
+                }
+                curr = succ;
+            }
+        }
+        return pred;
+    }
+
+    /**
+     * Finds the live tower closest to a key in the given direction
+     *
+     * @param key The key to search near, or null to find the first (GT) or last (LT) tower
+     * @param rel GT, GT|EQ (ceiling), LT or LT|EQ (floor)
+     * @return The tower found, or null if there is none
+     * @complexity amortized O(log N)
+     */
+    private Tower findNear(K key, int rel) {
+        if ((rel & LT) != 0) {
+            while (true) {
+                Tower pred = this.findPredecessor(key, (rel & EQ) != 0);
+                if (pred == this.leftSentinel) {
+                    return null;
+                }
+                if (pred.value != null) {
+                    return pred;
+                }
+                //that one is being deleted; look for the one before it
+                key = pred.key;
+                rel = LT;
+            }
+        }
+        else {
+            Tower curr = key == null ? this.leftSentinel : this.findPredecessor(key, false);
+            //walk right to the first live tower that is big enough
+            for (curr = curr.flinks[0].getReference(); curr != null; curr = curr.flinks[0].getReference()) {
+                if (curr.value != null) {
+                    if (key == null) {
+                        return curr;
+                    }
+                    int cmp = this.compare(curr.key, key);
+                    if (cmp > 0 || (cmp == 0 && (rel & EQ) != 0)) {
+                        return curr;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Takes a consistent copy of a tower's key/value pair
+     *
+     * @return The entry, or null if the tower has been deleted
+     */
+    private Entry<K, T> snapshot(Tower tower) {
+        T value = tower.value;
+        if (value == null) {
+            return null;
+        }
+        return new SimpleImmutableEntry<>(tower.key, value);
+    }
+
+    /**
+     * Inserts a key/value pair, or updates the value if the key is already there
+     *
+     * @param onlyIfAbsent If true, an existing value is left alone
+     * @return The old value stored against this key, or null if this key is inserted for the first time
+     * @complexity amortized O(log N) if there isn't much contention
+     */
+    private T doPut(K key, T value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int height = this.randomHeight();
+        //Raise the level count before searching, so that find() fills in the search path as high as the new tower
+        int oldLevels = this.levels.get();
+        while (oldLevels < height && !this.levels.compareAndSet(oldLevels, height)) {
+            oldLevels = this.levels.get();
+        }
+        //only as tall as the list is now, rather than MAX_HEIGHT, since this is on every put
+        int pathHeight = Math.max(oldLevels, height);
+        Tower[] preds = this.newPath(pathHeight);
+        Tower[] succs = this.newPath(pathHeight);
+        while (true) {
+            if (this.find(key, preds, succs)) {
+                Tower found = succs[0];
+                T oldval = found.value;
+                if (oldval == null) {
+                    //it is being deleted; rather than wait for the remover, finish marking it and have find() unlink
+                    //it, so it's out of the way when we search again
+                    this.markTower(found);
+                    this.find(key, preds, succs);
+                    continue;
+                }
+                if (onlyIfAbsent || this.casValue(found, oldval, value)) {
+                    return oldval;
+                }
+                //someone else changed it under us; search again
+                continue;
+            }
+
+            Tower nTower = new Tower(key, value, height);
+            for (int i = 0; i < height; i++) {
+                nTower.flinks[i].set(succs[i], false);
+            }
+            //Linking in the bottom level is what actually adds the key
+            if (!preds[0].flinks[0].compareAndSet(succs[0], nTower, false, false)) {
+                continue;
+            }
+            this.count.incrementAndGet();
+            this.linkUpperLevels(nTower, preds, succs);
+            return null;
+        }
+    }
+
+    /**
+     * Links a tower that is already in the bottom level into all of its upper levels
+     *
+     * @postcondition The tower is linked in on every level, unless it was deleted while we were doing so
+     */
+    private void linkUpperLevels(Tower nTower, Tower[] preds, Tower[] succs) {
+        boolean[] marked = {false};
+        for (int i = 1; i < nTower.flinks.length; i++) {
+            while (true) {
+                Tower succ = nTower.flinks[i].get(marked);
+                if (marked[0]) {
+                    //someone is already deleting it, so there's no point linking it any higher
+                    return;
+                }
+                if (succ != succs[i] && !nTower.flinks[i].compareAndSet(succ, succs[i], false, false)) {
+                    continue;
+                }
+                if (preds[i].flinks[i].compareAndSet(succs[i], nTower, false, false)) {
+                    break;
+                }
+                //the neighbours on this level changed; find them again
+                this.find(nTower.key, preds, succs);
+                if (succs[0] != nTower) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks every link of a tower whose value has been set to null, top down, so nothing more can be linked in after
+     * it and searches will unlink it. Anyone who finds such a tower can do this, rather than wait for the thread
+     * deleting it to get round to it
+     */
+    private void markTower(Tower victim) {
+        boolean[] marked = {false};
+        for (int i = victim.flinks.length - 1; i >= 0; i--) {
+            Tower succ = victim.flinks[i].get(marked);
+            while (!marked[0]) {
+                victim.flinks[i].attemptMark(succ, true);
+                succ = victim.flinks[i].get(marked);
+            }
+        }
+    }
+
+    /**
+     * Deletes a key, if it exists
+     *
+     * @param expected If not null, the key is only deleted if this is its value
+     * @return The value that was deleted, or null if nothing was
+     * @complexity amortized O(log N) if there isn't much contention
+     */
+    private T doRemove(K key, Object expected) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Tower[] preds = this.newPath(this.levels.get());
+        Tower[] succs = this.newPath(preds.length);
+        while (true) {
+            if (!this.find(key, preds, succs)) {
+                return null;
+            }
+            Tower victim = succs[0];
+            T oldval = victim.value;
+            if (oldval == null) {
+                //someone else got in first
+                return null;
+            }
+            if (expected != null && !expected.equals(oldval)) {
+                return null;
+            }
+            if (!this.casValue(victim, oldval, null)) {
+                continue;
+            }
+
+            //It's ours to delete now. Mark it so nothing more can be linked in after it...
+            this.markTower(victim);
+            this.count.decrementAndGet();
+            //...and have find() unlink it, on every level it's on, even if the list grew since we started
+            if (preds.length < victim.flinks.length) {
+                preds = this.newPath(victim.flinks.length);
+                succs = this.newPath(victim.flinks.length);
+            }
+            this.find(key, preds, succs);
+            return oldval;
+        }
+    }
+
+    /**
+     * Inserts the specified key/value pair
+     *
+     * @return The old value stored against this key, or null if this key is inserted for the first time
+     * @complexity amortized O(log N) if there isn't much contention
+     */
+    @Override
+    public T put(K key, T value) {
+        return this.doPut(key, value, false);
+    }
+
+    /**
+     * Returns the value stored against this key, or null if the key does not exist
+     *
+     * @complexity amortized O(log N); never blocks or writes to the heap
+     */
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public T get(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Tower searchResult = this.findTowerOrNull((K) key);
+        if (searchResult == null) {
+            return null;
+        }
+        else {
+            //might have been deleted since we found it; null is still the right answer then
+            return searchResult.value;
+        }
+    }
+
+    /**
+     * Deletes the specified key, if it exists
+     *
+     * @return The previous value stored against this key, or null if it did not exist
+     * @complexity amortized O(log N) if there isn't much contention
+     */
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public T remove(Object key) {
+        return this.doRemove((K) key, null);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return this.findTowerOrNull((K) key) != null;
+    }
+
+    /**
+     * Gets the number of elements in this dictionary
+     *
+     * @complexity O(1); only a snapshot if other threads are modifying the dictionary
+     */
+    @Override
+    public int size() {
+        return this.count.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.findNear(null, GT) == null;
+    }
+
+    /**
+     * Whether or not a tower contains the specified value
+     *
+     * @complexity O(N) since a linear search is performed along the bottom of the towers
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        for (Tower cTower = this.leftSentinel.flinks[0].getReference(); cTower != null;
+                cTower = cTower.flinks[0].getReference()) {
+            T cValue = cTower.value;
+            if (cValue != null && value.equals(cValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes all elements from this dictionary, one at a time
+     *
+     * @complexity O(N log N)
+     */
+    @Override
+    public void clear() {
+        this.all.clear();
+    }
+
+    @Override
+    public T putIfAbsent(K key, T value) {
+        return this.doPut(key, value, true);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public boolean remove(Object key, Object value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return value != null && this.doRemove((K) key, value) != null;
+    }
+
+    @Override
+    public boolean replace(K key, T oldValue, T newValue) {
+        if (key == null || oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Tower tower = this.findTowerOrNull(key);
+            if (tower == null) {
+                return false;
+            }
+            T cValue = tower.value;
+            if (cValue == null) {
+                return false;
+            }
+            if (!oldValue.equals(cValue)) {
+                return false;
+            }
+            if (this.casValue(tower, cValue, newValue)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public T replace(K key, T value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Tower tower = this.findTowerOrNull(key);
+            if (tower == null) {
+                return null;
+            }
+            T cValue = tower.value;
+            if (cValue == null) {
+                return null;
+            }
+            if (this.casValue(tower, cValue, value)) {
+                return cValue;
+            }
+        }
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return this.all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return this.all.lastKey();
+    }
+
+    @Override
+    public Entry<K, T> lowerEntry(K key) {
+        return this.all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return this.all.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, T> floorEntry(K key) {
+        return this.all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return this.all.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, T> ceilingEntry(K key) {
+        return this.all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return this.all.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, T> higherEntry(K key) {
+        return this.all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return this.all.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, T> firstEntry() {
+        return this.all.firstEntry();
+    }
+
+    @Override
+    public Entry<K, T> lastEntry() {
+        return this.all.lastEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollFirstEntry() {
+        return this.all.pollFirstEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollLastEntry() {
+        return this.all.pollLastEntry();
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return this.all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> headMap(K toKey, boolean inclusive) {
+        return this.all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> tailMap(K fromKey, boolean inclusive) {
+        return this.all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> subMap(K fromKey, K toKey) {
+        return this.all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> headMap(K toKey) {
+        return this.all.headMap(toKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> tailMap(K fromKey) {
+        return this.all.tailMap(fromKey);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, T> descendingMap() {
+        return this.all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return this.all.keySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return this.all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return this.all.descendingKeySet();
+    }
+
+    @Override
+    public Collection<T> values() {
+        return this.all.values();
+    }
+
+    @Override
+    public Set<Entry<K, T>> entrySet() {
+        return this.all.entrySet();
+    }
+
+    /**
+     * A live view of the keys between two (optional) bounds, in ascending or descending order.
+     * Everything is delegated back to the dictionary after checking the bounds
+     */
+    class SubMap extends AbstractMap<K, T> implements ConcurrentNavigableMap<K, T> {
+
+        //null bounds mean unbounded on that side
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (this.lo == null) {
+                return false;
+            }
+            int cmp = ConcurrentSkipListDict.this.compare(key, this.lo);
+            return cmp < 0 || (cmp == 0 && !this.loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (this.hi == null) {
+                return false;
+            }
+            int cmp = ConcurrentSkipListDict.this.compare(key, this.hi);
+            return cmp > 0 || (cmp == 0 && !this.hiInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !this.tooLow(key) && !this.tooHigh(key);
+        }
+
+        private void checkKeyBounds(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (!this.inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        /**
+         * @return The live tower with the smallest key in range, or null if there isn't one
+         */
+        private Tower loTower() {
+            Tower tower;
+            if (this.lo == null) {
+                tower = ConcurrentSkipListDict.this.findNear(null, GT);
+            }
+            else {
+                tower = ConcurrentSkipListDict.this.findNear(this.lo, this.loInclusive ? GT | EQ : GT);
+            }
+            return tower == null || this.tooHigh(tower.key) ? null : tower;
+        }
+
+        /**
+         * @return The live tower with the largest key in range, or null if there isn't one
+         */
+        private Tower hiTower() {
+            Tower tower;
+            if (this.hi == null) {
+                tower = ConcurrentSkipListDict.this.findNear(null, LT);
+            }
+            else {
+                tower = ConcurrentSkipListDict.this.findNear(this.hi, this.hiInclusive ? LT | EQ : LT);
+            }
+            return tower == null || this.tooLow(tower.key) ? null : tower;
+        }
+
+        private Tower firstTower() {
+            return this.descending ? this.hiTower() : this.loTower();
+        }
+
+        private Tower lastTower() {
+            return this.descending ? this.loTower() : this.hiTower();
+        }
+
+        /**
+         * @param rel The relation in the order of this view
+         * @return The live tower in range closest to key in the given direction, or null if there isn't one
+         */
+        private Tower nearTower(K key, int rel) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (this.descending) {
+                rel ^= LT;
+            }
+            if (this.tooLow(key)) {
+                return (rel & LT) != 0 ? null : this.loTower();
+            }
+            if (this.tooHigh(key)) {
+                return (rel & LT) != 0 ? this.hiTower() : null;
+            }
+            Tower tower = ConcurrentSkipListDict.this.findNear(key, rel);
+            return tower == null || !this.inRange(tower.key) ? null : tower;
+        }
+
+        private Entry<K, T> nearEntry(K key, int rel) {
+            while (true) {
+                Tower tower = this.nearTower(key, rel);
+                if (tower == null) {
+                    return null;
+                }
+                Entry<K, T> entry = ConcurrentSkipListDict.this.snapshot(tower);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        private K nearKey(K key, int rel) {
+            Tower tower = this.nearTower(key, rel);
+            return tower == null ? null : tower.key;
+        }
+
+        private Entry<K, T> pollEntry(boolean first) {
+            while (true) {
+                Tower tower = first ? this.firstTower() : this.lastTower();
+                if (tower == null) {
+                    return null;
+                }
+                T value = tower.value;
+                if (value != null && ConcurrentSkipListDict.this.doRemove(tower.key, value) != null) {
+                    return new SimpleImmutableEntry<>(tower.key, value);
+                }
+            }
+        }
+
+        /**
+         * Makes a view of part of this view. Bounds are given in the order of this view, and must lie inside it
+         */
+        private SubMap newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (this.descending) {
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (this.lo != null) {
+                if (fromKey == null) {
+                    fromKey = this.lo;
+                    fromInclusive = this.loInclusive;
+                }
+                else {
+                    int cmp = ConcurrentSkipListDict.this.compare(fromKey, this.lo);
+                    if (cmp < 0 || (cmp == 0 && !this.loInclusive && fromInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            if (this.hi != null) {
+                if (toKey == null) {
+                    toKey = this.hi;
+                    toInclusive = this.hiInclusive;
+                }
+                else {
+                    int cmp = ConcurrentSkipListDict.this.compare(toKey, this.hi);
+                    if (cmp > 0 || (cmp == 0 && !this.hiInclusive && toInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, this.descending);
+        }
+
+        Iterator<Entry<K, T>> entryIterator() {
+            return new SubMapIterator();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean containsKey(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) && ConcurrentSkipListDict.this.containsKey(key);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public T get(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) ? ConcurrentSkipListDict.this.get(key) : null;
+        }
+
+        @Override
+        public T put(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentSkipListDict.this.put(key, value);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public T remove(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) ? ConcurrentSkipListDict.this.remove(key) : null;
+        }
+
+        /**
+         * @complexity O(N) since it has to count the towers in range
+         */
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator<Entry<K, T>> it = this.entryIterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.loTower() == null;
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            for (Iterator<Entry<K, T>> it = this.entryIterator(); it.hasNext();) {
+                if (value.equals(it.next().getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            for (Iterator<Entry<K, T>> it = this.entryIterator(); it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public T putIfAbsent(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentSkipListDict.this.putIfAbsent(key, value);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean remove(Object key, Object value) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) && ConcurrentSkipListDict.this.remove(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, T oldValue, T newValue) {
+            this.checkKeyBounds(key);
+            return ConcurrentSkipListDict.this.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public T replace(K key, T value) {
+            this.checkKeyBounds(key);
+            return ConcurrentSkipListDict.this.replace(key, value);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = ConcurrentSkipListDict.this.comparator;
+            if (this.descending) {
+                return Collections.reverseOrder(cmp);
+            }
+            return cmp;
+        }
+
+        @Override
+        public K firstKey() {
+            Tower tower = this.firstTower();
+            if (tower == null) {
+                throw new NoSuchElementException();
+            }
+            return tower.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Tower tower = this.lastTower();
+            if (tower == null) {
+                throw new NoSuchElementException();
+            }
+            return tower.key;
+        }
+
+        @Override
+        public Entry<K, T> lowerEntry(K key) {
+            return this.nearEntry(key, LT);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return this.nearKey(key, LT);
+        }
+
+        @Override
+        public Entry<K, T> floorEntry(K key) {
+            return this.nearEntry(key, LT | EQ);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return this.nearKey(key, LT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> ceilingEntry(K key) {
+            return this.nearEntry(key, GT | EQ);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return this.nearKey(key, GT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> higherEntry(K key) {
+            return this.nearEntry(key, GT);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return this.nearKey(key, GT);
+        }
+
+        @Override
+        public Entry<K, T> firstEntry() {
+            while (true) {
+                Tower tower = this.firstTower();
+                if (tower == null) {
+                    return null;
+                }
+                Entry<K, T> entry = ConcurrentSkipListDict.this.snapshot(tower);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        @Override
+        public Entry<K, T> lastEntry() {
+            while (true) {
+                Tower tower = this.lastTower();
+                if (tower == null) {
+                    return null;
+                }
+                Entry<K, T> entry = ConcurrentSkipListDict.this.snapshot(tower);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        @Override
+        public Entry<K, T> pollFirstEntry() {
+            return this.pollEntry(true);
+        }
+
+        @Override
+        public Entry<K, T> pollLastEntry() {
+            return this.pollEntry(false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+            int cmp = ConcurrentSkipListDict.this.compare(fromKey, toKey);
+            if (this.descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return this.newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public SubMap headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, K toKey) {
+            return this.subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SubMap headMap(K toKey) {
+            return this.headMap(toKey, false);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey) {
+            return this.tailMap(fromKey, true);
+        }
+
+        @Override
+        public SubMap descendingMap() {
+            return new SubMap(this.lo, this.loInclusive, this.hi, this.hiInclusive, !this.descending);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet(this.descendingMap());
+        }
+
+        @Override
+        public Collection<T> values() {
+            return new Values(this);
+        }
+
+        @Override
+        public Set<Entry<K, T>> entrySet() {
+            return new EntrySet(this);
+        }
+
+        /**
+         * Walks the towers in range in the order of the view. Ascending iteration follows the bottom level links;
+         * descending iteration has to search for each predecessor, so costs O(log N) a step
+         */
+        class SubMapIterator implements Iterator<Entry<K, T>> {
+
+            private Tower next;
+            private T nextValue;
+            private K lastReturned;
+
+            SubMapIterator() {
+                this.advance(SubMap.this.firstTower());
+            }
+
+            /**
+             * Moves on to the first live, in range tower starting at the given one
+             */
+            private void advance(Tower tower) {
+                while (tower != null) {
+                    if (SubMap.this.descending ? SubMap.this.tooLow(tower.key) : SubMap.this.tooHigh(tower.key)) {
+                        break;
+                    }
+                    T value = tower.value;
+                    if (value != null) {
+                        this.next = tower;
+                        this.nextValue = value;
+                        return;
+                    }
+                    tower = this.step(tower);
+                }
+                this.next = null;
+                this.nextValue = null;
+            }
+
+            private Tower step(Tower tower) {
+                if (SubMap.this.descending) {
+                    return ConcurrentSkipListDict.this.findNear(tower.key, LT);
+                }
+                else {
+                    return tower.flinks[0].getReference();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Entry<K, T> next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                Tower cur = this.next;
+                Entry<K, T> entry = new SimpleImmutableEntry<>(cur.key, this.nextValue);
+                this.lastReturned = cur.key;
+                this.advance(this.step(cur));
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentSkipListDict.this.remove(this.lastReturned);
+                this.lastReturned = null;
+            }
+        }
+    }
+
+    /**
+     * Live view of the keys of a SubMap
+     */
+    class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final SubMap map;
+
+        KeySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.entryIterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return this.map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return this.map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return this.map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return this.map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return this.map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            Entry<K, T> entry = this.map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Entry<K, T> entry = this.map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return this.map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return this.map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return this.map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(this.map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return this.descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(this.map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(this.map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(this.map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * Live view of the values of a SubMap
+     */
+    class Values extends AbstractCollection<T> {
+
+        private final SubMap map;
+
+        Values(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.entryIterator();
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+
+    /**
+     * Live view of the entries of a SubMap. The entries are snapshots, so they don't support setValue()
+     */
+    class EntrySet extends AbstractSet<Entry<K, T>> {
+
+        private final SubMap map;
+
+        EntrySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<K, T>> iterator() {
+            return this.map.entryIterator();
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            T value = this.map.get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return this.map.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.kjtsanaktsidis.prac2;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -10,8 +11,19 @@ import java.util.regex.Pattern;
 public class DictMenuDriver {
 
     private SkipListDict<Integer, String> sl;
-
+    //the p and sp commands keep drawing into the same file, redrawing only the towers that changed since last time
+    private IncrementalSvgSkipListRenderer<Integer, String> renderer;
+    private File printout;
+
+    /**
+     * Runs the menu on stdin, or with "serve [port] [printout file]", serves the same commands over TCP instead; see
+     * DictServer
+     */
     public static void main(String[] args) throws IOException{
+        if (args.length > 0 && args[0].equals("serve")) {
+            DictServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         (new DictMenuDriver()).run();
     }
 
@@ -64,22 +76,21 @@ public class DictMenuDriver {
                     }
                     break;
                 case "p":
-                    sl.resetSearchPathTrace();
-                    showPrintout();
+                    showPrintout(null);
                     break;
                 case "s":
                 case "sp":
-                    sl.resetSearchPathTrace();
                     if (alist.size() == 2) {
                         Integer key = Integer.parseInt(alist.get(1));
-                        if (sl.containsKey(key)) {
+                        SkipListDict<Integer, String>.SearchTrace trace = sl.traceSearch(key);
+                        if (trace.isFound()) {
                             System.out.println("\tFound");
                         }
                         else {
                             System.out.println("\tNot found");
                         }
                         if (alist.get(0).equals("sp")) {
-                           showPrintout();
+                           showPrintout(trace);
                         }
                     }
                     else {
@@ -110,13 +121,24 @@ public class DictMenuDriver {
         }
     }
 
-    public void showPrintout() throws IOException {
-        File tmp = File.createTempFile("printout", ".svg");
-        OutputStreamWriter sw = new OutputStreamWriter(new FileOutputStream(tmp));
-        SvgSkipListRenderer.SkipListToSVG(sl, sw);
-        sw.close();
-        Runtime.getRuntime().exec("\"C:\\Program Files\\Internet Explorer\\iexplore.exe\" \"" +
-                tmp.getAbsoluteFile() + "\"");
+    public void showPrintout(SkipListDict<Integer, String>.SearchTrace trace) throws IOException {
+        if (renderer == null) {
+            renderer = new IncrementalSvgSkipListRenderer<>(sl);
+        }
+        boolean first = printout == null;
+        if (first) {
+            printout = File.createTempFile("printout", ".svg");
+        }
+        try (Writer sw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(printout), "UTF-8"))) {
+            renderer.render(trace, sw);
+        }
+        if (first) {
+            Runtime.getRuntime().exec("\"C:\\Program Files\\Internet Explorer\\iexplore.exe\" \"" +
+                    printout.getAbsoluteFile() + "\"");
+        }
+        else {
+            System.out.println("\tUpdated " + printout.getAbsolutePath() + "; refresh the viewer to see it");
+        }
     }
 
     public void printHelp() {
@@ -0,0 +1,428 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Serves DictMenuDriver's command language over TCP, so the dictionary can be driven by load generators.
+ *
+ * Each command is one line, and gets one line back, in the same order:
+ *   i <key> [value]    OK
+ *   s <key>            Found | Not found
+ *   d <key>            Deleted | Not found
+ *   p                  Printed <file> (the whole list, drawn into the server's printout file)
+ *   sp <key>           Found | Not found, then draws the search path into the printout file
+ *   x                  closes the connection
+ * plus an error message for anything that doesn't parse. Keys are ints; a value may be in double quotes if it has
+ * spaces in it. Lines end with \n, and a \r before it is ignored.
+ *
+ * Clients can pipeline: send as many commands as they like without waiting, and every command that arrives in one
+ * read is parsed straight out of the connection's buffer and run, with the responses collected up and written back
+ * together. Parsing doesn't allocate anything beyond boxing the key and the String for a value being inserted.
+ * Everything runs on one thread with a Selector, so commands from all the connections are run one at a time and the
+ * dictionary needs no locking. When a client stops reading its responses, the server stops reading its commands until
+ * they have gone.
+ */
+public class DictServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //stop running commands when the responses waiting to go out get this close to filling the buffer
+    private static final int RESPONSE_HEADROOM = 512;
+
+    private static final byte[] OK = bytes("OK\n");
+    private static final byte[] FOUND = bytes("Found\n");
+    private static final byte[] NOT_FOUND = bytes("Not found\n");
+    private static final byte[] DELETED = bytes("Deleted\n");
+    private static final byte[] INSERT_ARGS = bytes("Wrong number of args to insert\n");
+    private static final byte[] SEARCH_ARGS = bytes("Wrong number of arguments to search\n");
+    private static final byte[] DELETE_ARGS = bytes("Wrong number of arguments to delete\n");
+    private static final byte[] BAD_KEY = bytes("Keys must be integers\n");
+    private static final byte[] UNKNOWN = bytes("Unknown command\n");
+    private static final byte[] NO_PRINTOUT = bytes("No printout file\n");
+    private static final byte[] TOO_LONG = bytes("Line too long\n");
+
+    private final SkipListDict<Integer, String> dict;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final File printout;
+    private final IncrementalSvgSkipListRenderer<Integer, String> renderer;
+    private volatile boolean closed;
+
+    /**
+     * Per-connection buffers, and where the tokens of the line being parsed are
+     */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        //start and end of up to three tokens
+        final int[] tokens = new int[6];
+        boolean closing;
+    }
+
+    /**
+     * Opens the server socket; call run() to start serving
+     *
+     * @param dict The dictionary to serve
+     * @param port The port to listen on, on the loopback interface, or 0 for any free one
+     * @param printout Where p and sp draw the list, or null to turn them off
+     */
+    public DictServer(SkipListDict<Integer, String> dict, int port, File printout) throws IOException {
+        this.dict = dict;
+        this.printout = printout;
+        this.renderer = printout == null ? null : new IncrementalSvgSkipListRenderer<>(dict);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return The port the server is listening on
+     */
+    public int getPort() {
+        return this.server.socket().getLocalPort();
+    }
+
+    /**
+     * Serves connections until close() is called
+     */
+    public void run() throws IOException {
+        try {
+            while (!this.closed) {
+                this.selector.select();
+                Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            this.accept();
+                        }
+                        else {
+                            this.serve(key);
+                        }
+                    }
+                    catch (IOException e) {
+                        //the client went away; that's its problem, not the server's
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            }
+        }
+        finally {
+            for (SelectionKey key : this.selector.keys()) {
+                key.channel().close();
+            }
+            this.selector.close();
+        }
+    }
+
+    /**
+     * Stops run(), closing every connection
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(this.selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    /**
+     * Writes out what responses it can, then reads and runs whatever commands have arrived, as long as there's room
+     * for their responses
+     */
+    private void serve(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+
+        if (!this.flush(channel, conn)) {
+            //still backed up, so leave the commands where they are
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (conn.closing) {
+            channel.close();
+            return;
+        }
+
+        boolean eof = false;
+        if (key.isReadable() || conn.in.position() > 0) {
+            eof = channel.read(conn.in) < 0;
+            conn.in.flip();
+            this.runCommands(conn);
+            conn.in.compact();
+            if (conn.in.position() == conn.in.capacity() && !this.hasLine(conn.in)) {
+                //a whole buffer without a newline
+                conn.out.put(TOO_LONG);
+                conn.closing = true;
+            }
+        }
+
+        boolean flushed = this.flush(channel, conn);
+        if (flushed && (conn.closing || (eof && !this.hasLine(conn.in)))) {
+            channel.close();
+        }
+        else if (!flushed) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+        else {
+            key.interestOps(SelectionKey.OP_READ);
+            if (conn.in.position() > 0 && this.hasLine(conn.in)) {
+                //commands left over because the responses filled up; come back straight away
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private boolean hasLine(ByteBuffer in) {
+        byte[] buf = in.array();
+        for (int i = 0; i < in.position(); i++) {
+            if (buf[i] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether every response has been written
+     */
+    private boolean flush(SocketChannel channel, Connection conn) throws IOException {
+        if (conn.out.position() == 0) {
+            return true;
+        }
+        conn.out.flip();
+        channel.write(conn.out);
+        boolean done = !conn.out.hasRemaining();
+        conn.out.compact();
+        return done;
+    }
+
+    /**
+     * Runs each complete line in the input buffer, between its position and limit, leaving the position after the
+     * last one run
+     */
+    private void runCommands(Connection conn) {
+        ByteBuffer in = conn.in;
+        byte[] buf = in.array();
+        int limit = in.limit();
+        int start = in.position();
+        for (int i = start; i < limit && !conn.closing; i++) {
+            if (buf[i] != '\n') {
+                continue;
+            }
+            if (conn.out.remaining() < RESPONSE_HEADROOM) {
+                break;
+            }
+            int end = i > start && buf[i - 1] == '\r' ? i - 1 : i;
+            this.runCommand(conn, buf, start, end);
+            start = i + 1;
+            in.position(start);
+        }
+    }
+
+    /**
+     * Splits a line into up to three tokens, like DictMenuDriver does: separated by spaces, with double quotes
+     * around a token that has spaces in it
+     *
+     * @return How many tokens there are; four means too many to care
+     */
+    private static int tokenize(byte[] buf, int start, int end, int[] tokens) {
+        int count = 0;
+        int i = start;
+        while (true) {
+            while (i < end && (buf[i] == ' ' || buf[i] == '\t')) {
+                i++;
+            }
+            if (i == end) {
+                return count;
+            }
+            if (count == 3) {
+                return 4;
+            }
+            int tokenStart;
+            int tokenEnd;
+            if (buf[i] == '"') {
+                tokenStart = i + 1;
+                i = tokenStart;
+                while (i < end && buf[i] != '"') {
+                    i++;
+                }
+                tokenEnd = i;
+                if (i < end) {
+                    i++;
+                }
+            }
+            else {
+                tokenStart = i;
+                while (i < end && buf[i] != ' ' && buf[i] != '\t') {
+                    i++;
+                }
+                tokenEnd = i;
+            }
+            tokens[2 * count] = tokenStart;
+            tokens[2 * count + 1] = tokenEnd;
+            count++;
+        }
+    }
+
+    /**
+     * @return The int in buf[start, end), or null if it isn't one
+     */
+    private static Integer parseKey(byte[] buf, int start, int end) {
+        boolean negative = start < end && buf[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 10) {
+            return null;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return null;
+        }
+        return (int) value;
+    }
+
+    private void runCommand(Connection conn, byte[] buf, int start, int end) {
+        int[] tokens = conn.tokens;
+        int count = tokenize(buf, start, end, tokens);
+        if (count == 0) {
+            return;
+        }
+        ByteBuffer out = conn.out;
+        int cmdLength = tokens[1] - tokens[0];
+        byte cmd = buf[tokens[0]];
+        if (cmdLength == 2 && cmd == 's' && buf[tokens[0] + 1] == 'p') {
+            cmd = 'S';
+        }
+        else if (cmdLength != 1) {
+            out.put(UNKNOWN);
+            return;
+        }
+
+        Integer key = null;
+        if (count >= 2) {
+            key = parseKey(buf, tokens[2], tokens[3]);
+            if (key == null) {
+                out.put(BAD_KEY);
+                return;
+            }
+        }
+        switch (cmd) {
+            case 'i':
+                if (count == 2) {
+                    this.dict.put(key, "");
+                }
+                else if (count == 3) {
+                    this.dict.put(key, new String(buf, tokens[4], tokens[5] - tokens[4], StandardCharsets.UTF_8));
+                }
+                else {
+                    out.put(INSERT_ARGS);
+                    return;
+                }
+                out.put(OK);
+                break;
+            case 's':
+                if (count != 2) {
+                    out.put(SEARCH_ARGS);
+                    return;
+                }
+                out.put(this.dict.containsKey(key) ? FOUND : NOT_FOUND);
+                break;
+            case 'S':
+                if (count != 2) {
+                    out.put(SEARCH_ARGS);
+                    return;
+                }
+                SkipListDict<Integer, String>.SearchTrace trace = this.dict.traceSearch(key);
+                out.put(trace.isFound() ? FOUND : NOT_FOUND);
+                this.print(conn, trace);
+                break;
+            case 'd':
+                if (count != 2) {
+                    out.put(DELETE_ARGS);
+                    return;
+                }
+                out.put(this.dict.remove(key) != null ? DELETED : NOT_FOUND);
+                break;
+            case 'p':
+                this.print(conn, null);
+                break;
+            case 'x':
+                conn.closing = true;
+                break;
+            default:
+                out.put(UNKNOWN);
+        }
+    }
+
+    /**
+     * Draws the list into the printout file. Only the towers that have changed since the last time are redrawn, but
+     * it still writes the whole file, so this is the one slow command
+     */
+    private void print(Connection conn, SkipListDict<Integer, String>.SearchTrace trace) {
+        if (this.printout == null) {
+            conn.out.put(NO_PRINTOUT);
+            return;
+        }
+        String message;
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.printout), "UTF-8"))) {
+            this.renderer.render(trace, w);
+            message = "Printed " + this.printout.getAbsolutePath();
+        }
+        catch (IOException e) {
+            message = "Couldn't write " + this.printout.getAbsolutePath() + ": " + e.getMessage();
+        }
+        //paths are short, but not necessarily short enough for the headroom, so cut the message to fit in it (and in
+        //what's left, in case a search response went first); the newline always goes on the end, since it's what tells
+        //a pipelining client where this response stops
+        byte[] response = bytes(message.replace('\n', ' '));
+        int length = Math.min(response.length, Math.min(RESPONSE_HEADROOM, conn.out.remaining()) - 1);
+        conn.out.put(response, 0, length);
+        conn.out.put((byte) '\n');
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serves a new, empty dictionary
+     *
+     * Usage: DictServer [port] [printout file]    (defaults to port 7070 and no printouts)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        File printout = args.length > 1 ? new File(args[1]) : null;
+        try (DictServer server = new DictServer(new SkipListDict<Integer, String>(), port, printout)) {
+            System.out.println("Listening on port " + server.getPort());
+            server.run();
+        }
+    }
+}
@@ -0,0 +1,698 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A SkipListDict that survives restarts without being memory-mapped: every put/remove/clear is appended to a
+ * write-ahead log before the call returns, and every so often the whole dictionary is written out as a snapshot
+ * so that the log can be thrown away. Opening the directory again loads the newest snapshot and replays the log
+ * written after it.
+ *
+ * Writes use group commit. A background thread writes out whatever log records have piled up since its last fsync
+ * and then fsyncs them all at once, waiting up to the group commit window first so more of them can pile up. A
+ * mutating call returns once its record is on disk, so with many threads writing at once they share fsyncs; a
+ * change is visible to readers as soon as it is made, before then.
+ *
+ * All access is serialized on the dictionary, like Collections.synchronizedMap(), and taking a snapshot holds that
+ * lock while it streams the bottom level out to disk.
+ */
+public class DurableSkipListDict<K, V> extends AbstractMap<K, V> implements Closeable {
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private static final long SNAPSHOT_MAGIC = 0x534b4950534e4150L;
+    private static final String LOG_PREFIX = "log-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int SNAPSHOT_BATCH = 1 << 16;
+
+    /**
+     * Take a snapshot once the log has grown by this much since the last one
+     */
+    public static final long DEFAULT_SNAPSHOT_BYTES = 64L << 20;
+
+    private final Path dir;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final long groupCommitNanos;
+    private final long snapshotBytes;
+    private final SkipListDict<K, V> dict;
+
+    /**
+     * Held by whoever is writing to the log file. Always taken before the dictionary's own lock, never after
+     */
+    private final Object flushLock = new Object();
+
+    //Everything below is guarded by the dictionary's lock
+    private FileChannel log;
+    private long logSeq;
+    private long logBytes;
+
+    /**
+     * Records appended but not yet written to the log file, and a stream for encoding them
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(this.record);
+
+    /**
+     * How many records have been appended, and how many of them are known to be on disk
+     */
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    private boolean recoveredFromSnapshot;
+    private long replayedRecords;
+
+    /**
+     * Opens (or creates) a durable dictionary in a directory, with keys in their natural order, a group commit
+     * window of 1ms and the default snapshot size
+     */
+    public DurableSkipListDict(Path dir, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(dir, keyCodec, valueCodec, null, 1000, DEFAULT_SNAPSHOT_BYTES);
+    }
+
+    /**
+     * Opens (or creates) a durable dictionary in a directory, recovering whatever was in it
+     *
+     * @param comparator Orders the keys, or null for their natural order
+     * @param groupCommitMicros How long the log writer waits for more records to turn up before each fsync; 0 means
+     *                          it fsyncs as soon as the last one finished
+     * @param snapshotBytes How far the log grows before a snapshot is taken
+     * @throws IOException if the directory can't be read or the log can't be opened. Torn records at the end of the
+     *                     log are expected after a crash and are cut off rather than reported
+     * @complexity O(N) to load the snapshot plus O(R log N) to replay R log records
+     */
+    public DurableSkipListDict(Path dir, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<? super K> comparator,
+                               long groupCommitMicros, long snapshotBytes) throws IOException {
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.groupCommitNanos = groupCommitMicros * 1000;
+        this.snapshotBytes = snapshotBytes;
+        this.dict = new SkipListDict<>(comparator);
+
+        Files.createDirectories(dir);
+        this.recover();
+        this.openLog(this.logSeq);
+
+        this.flusher = new Thread("DurableSkipListDict log writer") {
+            @Override
+            public void run() {
+                DurableSkipListDict.this.flushLoop();
+            }
+        };
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    //Recovery
+
+    /**
+     * @return The files in the directory that start with the prefix, by sequence number
+     */
+    private TreeMap<Long, Path> files(String prefix) throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    //a snapshot that never finished
+                    Files.delete(p);
+                }
+                else if (name.startsWith(prefix)) {
+                    found.put(Long.parseLong(name.substring(prefix.length())), p);
+                }
+            }
+        }
+        return found;
+    }
+
+    private Path logFile(long seq) {
+        return this.dir.resolve(String.format("%s%020d", LOG_PREFIX, seq));
+    }
+
+    private Path snapshotFile(long seq) {
+        return this.dir.resolve(String.format("%s%020d", SNAPSHOT_PREFIX, seq));
+    }
+
+    /**
+     * Loads the newest snapshot that is intact, then replays every log from the one the snapshot says follows it
+     *
+     * @postcondition logSeq is the sequence number for a new log file after all the existing ones
+     */
+    private void recover() throws IOException {
+        long startSeq = 0;
+        for (Map.Entry<Long, Path> snap : this.files(SNAPSHOT_PREFIX).descendingMap().entrySet()) {
+            if (this.loadSnapshot(snap.getValue())) {
+                startSeq = snap.getKey();
+                this.recoveredFromSnapshot = true;
+                break;
+            }
+            this.dict.clear();
+        }
+
+        TreeMap<Long, Path> logs = this.files(LOG_PREFIX);
+        for (Path logFile : logs.tailMap(startSeq).values()) {
+            if (!this.replay(logFile)) {
+                //torn tail; nothing after it can have been acknowledged
+                break;
+            }
+        }
+        this.logSeq = logs.isEmpty() ? startSeq : Math.max(startSeq, logs.lastKey() + 1);
+    }
+
+    /**
+     * @return Whether the snapshot was complete and its checksum matched
+     */
+    private boolean loadSnapshot(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream raw = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(raw), crc));
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                return false;
+            }
+            long count = in.readLong();
+            //the snapshot is in key order, so it can be appended in batches without searching
+            List<Entry<K, V>> batch = new ArrayList<>(SNAPSHOT_BATCH);
+            for (long i = 0; i < count; i++) {
+                K key = this.keyCodec.read(in);
+                V value = in.readBoolean() ? this.valueCodec.read(in) : null;
+                batch.add(new SimpleImmutableEntry<>(key, value));
+                if (batch.size() == SNAPSHOT_BATCH || i == count - 1) {
+                    this.dict.bulkLoad(batch.iterator(), false);
+                    batch.clear();
+                }
+            }
+            long expected = crc.getValue();
+            return in.readLong() == expected;
+        }
+        catch (EOFException e) {
+            return false;
+        }
+        catch (IllegalArgumentException e) {
+            //out of order keys, so the checksum would have failed too
+            return false;
+        }
+    }
+
+    /**
+     * Applies every intact record in a log file, and cuts the file off after the last one
+     *
+     * @return Whether the whole file was intact
+     */
+    private boolean replay(Path file) throws IOException {
+        long goodBytes = 0;
+        boolean intact = true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 1) {
+                        intact = false;
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        intact = false;
+                        break;
+                    }
+                    this.apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+                catch (EOFException e) {
+                    intact = false;
+                    break;
+                }
+                goodBytes += 8 + length;
+                this.replayedRecords++;
+            }
+        }
+        if (!intact || Files.size(file) != goodBytes) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(goodBytes);
+                ch.force(true);
+            }
+        }
+        return intact;
+    }
+
+    private void apply(DataInput in) throws IOException {
+        byte op = in.readByte();
+        if (op == PUT) {
+            K key = this.keyCodec.read(in);
+            V value = in.readBoolean() ? this.valueCodec.read(in) : null;
+            this.dict.put(key, value);
+        }
+        else if (op == REMOVE) {
+            this.dict.remove(this.keyCodec.read(in));
+        }
+        else if (op == CLEAR) {
+            this.dict.clear();
+        }
+        else {
+            throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    /**
+     * @return Whether opening the dictionary started from a snapshot
+     */
+    public boolean isRecoveredFromSnapshot() {
+        return this.recoveredFromSnapshot;
+    }
+
+    /**
+     * @return How many log records were replayed on top of the snapshot when the dictionary was opened
+     */
+    public long getReplayedRecords() {
+        return this.replayedRecords;
+    }
+
+    //Logging
+
+    private void openLog(long seq) throws IOException {
+        this.log = FileChannel.open(this.logFile(seq), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.logSeq = seq;
+        this.logBytes = this.log.size();
+    }
+
+    /**
+     * Encodes a record and adds it to the pending batch. Must hold the dictionary's lock
+     *
+     * @return The record's number, to wait on with awaitDurable()
+     */
+    private long append(byte op, K key, V value) {
+        if (this.closed) {
+            throw new IllegalStateException("Dictionary is closed");
+        }
+        try {
+            this.record.reset();
+            this.recordOut.writeByte(op);
+            if (op != CLEAR) {
+                this.keyCodec.write(this.recordOut, key);
+            }
+            if (op == PUT) {
+                this.recordOut.writeBoolean(value != null);
+                if (value != null) {
+                    this.valueCodec.write(this.recordOut, value);
+                }
+            }
+            this.recordOut.flush();
+            CRC32 crc = new CRC32();
+            byte[] payload = this.record.toByteArray();
+            crc.update(payload, 0, payload.length);
+            DataOutputStream out = new DataOutputStream(this.pending);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        catch (IOException e) {
+            //only the codecs can throw here, since we're writing to memory
+            throw new IllegalArgumentException("Could not encode record", e);
+        }
+        this.notifyAll();
+        return ++this.appended;
+    }
+
+    /**
+     * Blocks until the given record is on disk, then takes a snapshot if the log has grown big enough
+     */
+    private void awaitDurable(long recordNo) {
+        boolean wantSnapshot;
+        synchronized (this) {
+            while (this.durable < recordNo && this.failure == null) {
+                try {
+                    this.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the log", e);
+                }
+            }
+            if (this.durable < recordNo) {
+                throw new IllegalStateException("Could not write the log", this.failure);
+            }
+            wantSnapshot = this.logBytes >= this.snapshotBytes;
+        }
+        if (wantSnapshot) {
+            try {
+                synchronized (this.flushLock) {
+                    //several writers can notice at once, but only the first one needs to do it
+                    synchronized (this) {
+                        wantSnapshot = this.logBytes >= this.snapshotBytes;
+                    }
+                    if (wantSnapshot) {
+                        this.snapshot();
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Could not write a snapshot", e);
+            }
+        }
+    }
+
+    /**
+     * The log writer: waits for records, gives others a group commit window to turn up, then writes and fsyncs
+     * them in one go
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                while (this.pending.size() == 0 && !this.closed) {
+                    try {
+                        this.wait();
+                    }
+                    catch (InterruptedException e) {
+                        //nobody is left to write the log, so writers waiting on it have to be told rather than
+                        //left waiting forever
+                        InterruptedIOException failure = new InterruptedIOException("Log writer was interrupted");
+                        failure.initCause(e);
+                        this.failure = failure;
+                        this.notifyAll();
+                        return;
+                    }
+                }
+                if (this.pending.size() == 0) {
+                    return;
+                }
+            }
+            if (this.groupCommitNanos > 0) {
+                //Thread.sleep() would round anything under a millisecond up to one
+                long until = System.nanoTime() + this.groupCommitNanos;
+                long left;
+                while ((left = until - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(left);
+                }
+            }
+            synchronized (this.flushLock) {
+                this.flushPending();
+            }
+        }
+    }
+
+    /**
+     * Writes and fsyncs everything pending. Must hold flushLock but not the dictionary's lock
+     */
+    private void flushPending() {
+        ByteArrayOutputStream batch;
+        long batchEnd;
+        FileChannel channel;
+        synchronized (this) {
+            if (this.pending.size() == 0) {
+                return;
+            }
+            batch = this.pending;
+            this.pending = new ByteArrayOutputStream(batch.size());
+            batchEnd = this.appended;
+            channel = this.log;
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+            synchronized (this) {
+                this.logBytes += batch.size();
+                this.durable = batchEnd;
+                this.notifyAll();
+            }
+        }
+        catch (IOException e) {
+            synchronized (this) {
+                this.failure = e;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the dictionary out in key order as a new snapshot, then deletes the older snapshots and logs it makes
+     * redundant. Writers are blocked while it runs.
+     *
+     * @complexity O(N)
+     * @postcondition the log is empty, and recovery will start from this snapshot
+     */
+    public void snapshot() throws IOException {
+        synchronized (this.flushLock) {
+            this.flushPending();
+            synchronized (this) {
+                if (this.failure != null) {
+                    throw this.failure;
+                }
+                //anything logged from here on goes in a new log that starts after this snapshot
+                this.log.close();
+                long seq = this.logSeq + 1;
+                this.openLog(seq);
+
+                Path temp = this.dir.resolve(this.snapshotFile(seq).getFileName() + TEMP_SUFFIX);
+                CRC32 crc = new CRC32();
+                try (FileOutputStream raw = new FileOutputStream(temp.toFile())) {
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(new CheckedOutputStream(raw, crc), 1 << 16));
+                    out.writeLong(SNAPSHOT_MAGIC);
+                    out.writeLong(this.dict.size());
+                    //entries come out in key order, straight along the bottom level
+                    for (Entry<K, V> e : this.dict.entrySet()) {
+                        this.keyCodec.write(out, e.getKey());
+                        out.writeBoolean(e.getValue() != null);
+                        if (e.getValue() != null) {
+                            this.valueCodec.write(out, e.getValue());
+                        }
+                    }
+                    out.flush();
+                    new DataOutputStream(raw).writeLong(crc.getValue());
+                    raw.getChannel().force(true);
+                }
+                Files.move(temp, this.snapshotFile(seq), StandardCopyOption.ATOMIC_MOVE);
+                this.syncDir();
+
+                for (Map.Entry<Long, Path> old : this.files(SNAPSHOT_PREFIX).headMap(seq).entrySet()) {
+                    Files.delete(old.getValue());
+                }
+                for (Map.Entry<Long, Path> old : this.files(LOG_PREFIX).headMap(seq).entrySet()) {
+                    Files.delete(old.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the directory entries for renamed files durable, where the platform lets us
+     */
+    private void syncDir() {
+        try (FileChannel d = FileChannel.open(this.dir, StandardOpenOption.READ)) {
+            d.force(true);
+        }
+        catch (IOException e) {
+            //not supported everywhere; the rename still happened
+        }
+    }
+
+    /**
+     * Waits for everything logged so far to be written, then closes the log. The dictionary can't be used
+     * afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.flusher.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this.flushLock) {
+            this.flushPending();
+        }
+        synchronized (this) {
+            this.log.close();
+            if (this.failure != null) {
+                throw this.failure;
+            }
+        }
+    }
+
+    //Map interface
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("SkipListDict does not support null keys");
+        }
+        V oldval;
+        long recordNo;
+        synchronized (this) {
+            recordNo = this.append(PUT, key, value);
+            oldval = this.dict.put(key, value);
+        }
+        this.awaitDurable(recordNo);
+        return oldval;
+    }
+
+    /**
+     * Logs every entry and waits for them to be written once, rather than once each
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        long recordNo = 0;
+        synchronized (this) {
+            for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+                if (e.getKey() == null) {
+                    throw new NullPointerException("SkipListDict does not support null keys");
+                }
+                recordNo = this.append(PUT, e.getKey(), e.getValue());
+                this.dict.put(e.getKey(), e.getValue());
+            }
+        }
+        this.awaitDurable(recordNo);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public V remove(Object key) {
+        V oldval;
+        long recordNo;
+        synchronized (this) {
+            if (!this.dict.containsKey(key)) {
+                return null;
+            }
+            recordNo = this.append(REMOVE, (K) key, null);
+            oldval = this.dict.remove(key);
+        }
+        this.awaitDurable(recordNo);
+        return oldval;
+    }
+
+    @Override
+    public void clear() {
+        long recordNo;
+        synchronized (this) {
+            recordNo = this.append(CLEAR, null, null);
+            this.dict.clear();
+        }
+        this.awaitDurable(recordNo);
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        return this.dict.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return this.dict.containsKey(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.dict.size();
+    }
+
+    /**
+     * @return A view of the entries, in key order. setValue() on an entry and remove() on an iterator are logged like
+     *         put() and remove(); like SkipListDict's, an iterator fails fast if the dictionary changes other than
+     *         through it
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                synchronized (DurableSkipListDict.this) {
+                    return new EntryIterator(DurableSkipListDict.this.dict.entrySet().iterator());
+                }
+            }
+
+            @Override
+            public int size() {
+                return DurableSkipListDict.this.size();
+            }
+
+            @Override
+            public void clear() {
+                DurableSkipListDict.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Walks the underlying dictionary's entries under its lock, sending changes through the log
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<Entry<K, V>> it;
+        private K lastKey;
+
+        EntryIterator(Iterator<Entry<K, V>> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (DurableSkipListDict.this) {
+                return this.it.hasNext();
+            }
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            final Entry<K, V> e;
+            synchronized (DurableSkipListDict.this) {
+                e = this.it.next();
+            }
+            this.lastKey = e.getKey();
+            return new SimpleEntry<K, V>(e.getKey(), e.getValue()) {
+                @Override
+                public V setValue(V value) {
+                    DurableSkipListDict.this.put(this.getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            long recordNo;
+            synchronized (DurableSkipListDict.this) {
+                //the underlying iterator checks it's allowed before anything gets logged
+                this.it.remove();
+                recordNo = DurableSkipListDict.this.append(REMOVE, this.lastKey, null);
+            }
+            DurableSkipListDict.this.awaitDurable(recordNo);
+        }
+    }
+}
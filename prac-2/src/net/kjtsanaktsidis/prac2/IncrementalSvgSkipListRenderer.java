@@ -0,0 +1,289 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders one skip list over and over as it changes, redoing only the towers that have changed since last time.
+ * Draws the same picture as StreamingSvgSkipListRenderer, except that the search path is an overlay drawn over the
+ * top, in its own group, so highlighting a different search doesn't touch anything else.
+ *
+ * Each tower's group is cached by the tower itself, along with what it depends on: its height, and how far each link
+ * landing on it has come. SkipListDict.structureVersion() says when any of those might have changed; when it
+ * hasn't, nothing is looked at at all. When it has, one pass along the list finds the towers whose inputs differ,
+ * which after a put() or remove() is the tower itself and about one tower per level, and only those are redrawn.
+ * The rest are copied from the cache, or left out of a delta altogether.
+ *
+ * There are two kinds of output:
+ * - render() writes the whole document, with the towers inside <g id="towers"> and the search path in
+ *   <g id="search">; each tower's group has an id that stays the same for as long as the tower is in the list
+ * - renderDelta() writes just what changed since the last output of either kind, as
+ *   <delta from="version" to="version"> holding, in order to apply them:
+ *   <remove id="..."/> for towers that have gone,
+ *   <shift first="..." last="..." by="..."/> to move a run of unchanged groups (inclusive, in document order) along
+ *   by that many pixels, since everything after a new tower moves along by a column, and
+ *   <put id="..." after="..."> holding the group for a tower that is new or has changed, to replace any group with
+ *   that id and then go after the given one ("" for the front)
+ * The search overlay can be redone on its own with renderOverlay().
+ *
+ * The cache holds every tower's group as a string, so it takes about as much memory as the document; for windows onto
+ * really big dictionaries, use StreamingSvgSkipListRenderer instead.
+ */
+public class IncrementalSvgSkipListRenderer<K, T> {
+
+    private static final int dx = 40;
+
+    /**
+     * What was last drawn for one tower
+     */
+    private static final class Fragment {
+        final String id;
+        //the group's contents, less the opening tag that holds the position
+        String body;
+        //the height drawn, and the width of the link landing on each row, in columns
+        int rows;
+        int[] widths;
+        int column = -1;
+        int oldColumn = -1;
+        //the last pass that saw it, and the last one that redrew it
+        int seen;
+        int drawn;
+
+        Fragment(String id) {
+            this.id = id;
+        }
+    }
+
+    private final SkipListDict<K, T> sl;
+    private final IdentityHashMap<SkipListDict<K, T>.Tower, Fragment> fragments = new IdentityHashMap<>();
+
+    //the towers in the order last drawn, starting with the left sentinel and ending with the right
+    private List<Fragment> order = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private int version = -1;
+    private int previousVersion = -1;
+    private int pass;
+    private int nextId;
+
+    public IncrementalSvgSkipListRenderer(SkipListDict<K, T> sl) {
+        this.sl = sl;
+    }
+
+    /**
+     * @return How many towers the last pass had to redraw
+     */
+    public int redrawn() {
+        int count = 0;
+        for (Fragment f : this.order) {
+            if (f.drawn == this.pass) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Brings the cache up to date with the skip list
+     *
+     * @return Whether anything had changed since the last pass
+     * @complexity O(1) if nothing has, otherwise O(N) to walk the list plus O(1) for each tower redrawn
+     */
+    private boolean update() throws IOException {
+        int current = this.sl.structureVersion();
+        if (current == this.version) {
+            return false;
+        }
+        this.pass++;
+        this.removed.clear();
+        SkipListDict<K, T>.Tower leftSentinel = this.sl.leftSentinel;
+        int sentinelRows = leftSentinel.flinks.length;
+        int[] lastSeen = new int[sentinelRows];
+        List<Fragment> newOrder = new ArrayList<>(this.order.size() + 1);
+
+        int column = 0;
+        SkipListDict<K, T>.Tower tower = leftSentinel;
+        while (true) {
+            boolean isRight = tower == this.sl.rightSentinel;
+            boolean isLeft = tower == leftSentinel;
+            int rows = isRight ? sentinelRows : tower.flinks.length;
+            Fragment f = this.fragments.get(tower);
+            if (f == null) {
+                f = new Fragment("t" + this.nextId++);
+                this.fragments.put(tower, f);
+            }
+            if (f.drawn == 0 || !this.sameInputs(f, rows, !isLeft, column, lastSeen)) {
+                f.rows = rows;
+                f.widths = new int[isLeft ? 0 : rows];
+                for (int r = 0; r < f.widths.length; r++) {
+                    f.widths[r] = column - lastSeen[r];
+                }
+                StringWriter body = new StringWriter();
+                String label = isRight ? null : isLeft ? "" : tower.key.toString();
+                StreamingSvgSkipListRenderer.writeColumnBody(body, column, label, rows, !isLeft, lastSeen, null);
+                f.body = body.toString();
+                f.drawn = this.pass;
+            }
+            f.oldColumn = f.seen == this.pass - 1 ? f.column : -1;
+            f.column = column;
+            f.seen = this.pass;
+            newOrder.add(f);
+            if (isRight) {
+                break;
+            }
+            for (int r = 0; r < rows; r++) {
+                lastSeen[r] = column;
+            }
+            column++;
+            tower = tower.flinks[0];
+        }
+
+        //anything not seen this time has been removed
+        for (Iterator<Fragment> it = this.fragments.values().iterator(); it.hasNext();) {
+            Fragment f = it.next();
+            if (f.seen != this.pass) {
+                this.removed.add(f.id);
+                it.remove();
+            }
+        }
+        this.order = newOrder;
+        this.previousVersion = this.version;
+        this.version = current;
+        return true;
+    }
+
+    private boolean sameInputs(Fragment f, int rows, boolean incoming, int column, int[] lastSeen) {
+        if (f.rows != rows) {
+            return false;
+        }
+        if (incoming) {
+            for (int r = 0; r < rows; r++) {
+                if (f.widths[r] != column - lastSeen[r]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeGroup(Writer out, Fragment f) throws IOException {
+        out.write("<g id=\"");
+        out.write(f.id);
+        out.write("\" transform=\"");
+        StreamingSvgSkipListRenderer.writeTransform(out, f.column);
+        out.write("\">\n");
+        out.write(f.body);
+        out.write("</g>\n");
+    }
+
+    /**
+     * Writes the whole document
+     *
+     * @param trace The search path to highlight, from SkipListDict.traceSearch(), or null for none
+     * @complexity O(N) to write it out, but only the towers that changed since the last output are redrawn
+     */
+    public void render(SkipListDict<K, T>.SearchTrace trace, Writer out) throws IOException {
+        this.update();
+        out.write("<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\">\n<g id=\"towers\">\n");
+        for (Fragment f : this.order) {
+            writeGroup(out, f);
+        }
+        out.write("</g>\n");
+        this.writeOverlay(trace, out);
+        out.write("</svg>\n");
+    }
+
+    /**
+     * Writes the changes since the last output, as described above. Applied to that output, it gives the same
+     * document as render() would now, apart from the search overlay
+     *
+     * @complexity O(1) if the skip list hasn't changed, otherwise O(N) for the pass, but only what changed is written
+     */
+    public void renderDelta(Writer out) throws IOException {
+        boolean changed = this.update();
+        out.write("<?xml version=\"1.0\"?>\n<delta from=\"");
+        out.write(Integer.toString(changed ? this.previousVersion : this.version));
+        out.write("\" to=\"");
+        out.write(Integer.toString(this.version));
+        out.write("\">\n");
+        if (changed) {
+            for (String id : this.removed) {
+                out.write("<remove id=\"" + id + "\"/>\n");
+            }
+            //runs of groups that stay the same but all move along by the same amount
+            Fragment first = null;
+            Fragment last = null;
+            for (Fragment f : this.order) {
+                boolean moved = f.drawn != this.pass && f.column != f.oldColumn;
+                if (first != null && (!moved || f.column - f.oldColumn != first.column - first.oldColumn)) {
+                    writeShift(out, first, last);
+                    first = null;
+                }
+                if (moved) {
+                    if (first == null) {
+                        first = f;
+                    }
+                    last = f;
+                }
+            }
+            if (first != null) {
+                writeShift(out, first, last);
+            }
+            String after = "";
+            for (Fragment f : this.order) {
+                if (f.drawn == this.pass) {
+                    out.write("<put id=\"" + f.id + "\" after=\"" + after + "\">\n");
+                    writeGroup(out, f);
+                    out.write("</put>\n");
+                }
+                after = f.id;
+            }
+        }
+        out.write("</delta>\n");
+    }
+
+    private static void writeShift(Writer out, Fragment first, Fragment last) throws IOException {
+        out.write("<shift first=\"" + first.id + "\" last=\"" + last.id + "\" by=\"" +
+                2 * dx * (first.column - first.oldColumn) + "\"/>\n");
+    }
+
+    /**
+     * Writes just the <g id="search"> group highlighting a search, to go in place of the one in the document
+     *
+     * @throws IllegalStateException If the skip list has changed since the last render() or renderDelta(), since the
+     *                               overlay has to line up with what the viewer has
+     * @complexity O(hops in the search)
+     */
+    public void renderOverlay(SkipListDict<K, T>.SearchTrace trace, Writer out) throws IOException {
+        if (this.sl.structureVersion() != this.version) {
+            throw new IllegalStateException("The skip list has changed since it was last rendered");
+        }
+        this.writeOverlay(trace, out);
+    }
+
+    private void writeOverlay(SkipListDict<K, T>.SearchTrace trace, Writer out) throws IOException {
+        out.write("<g id=\"search\" transform=\"scale(1,-1)translate(0, -400)\">\n");
+        if (trace != null) {
+            for (Map.Entry<SkipListDict<K, T>.Tower, Integer> hop : trace.hops().entrySet()) {
+                int level = hop.getValue();
+                Fragment from = this.fragments.get(hop.getKey());
+                Fragment to = this.fragments.get(hop.getKey().flinks[level]);
+                if (from == null || to == null) {
+                    //not from this skip list, or not from this version of it
+                    continue;
+                }
+                //from the middle of the tower it leaves to the edge of the one it lands on, over the link drawn there
+                String y = Integer.toString((level + 1) * 40 + 20);
+                out.write("<line x1=\"" + (2 * dx * from.column + 20) + "\" x2=\"" + 2 * dx * to.column +
+                        "\" y1=\"" + y + "\" y2=\"" + y + "\" stroke-width=\"3\" stroke=\"" +
+                        StreamingSvgSkipListRenderer.SEARCH_STROKE + "\"/>\n");
+            }
+        }
+        out.write("</g>\n");
+    }
+}
@@ -0,0 +1,56 @@
+package net.kjtsanaktsidis.prac2;
+
+/**
+ * A skip list dictionary specialised for int keys.
+ * Keys are stored and compared as primitives, so get/put/remove/containsKey(int) never box a key or go through
+ * compareTo()/equals(). It can also be used as a Map<Integer, V> through the usual boxed methods.
+ */
+public class IntSkipListDict<V> extends PrimitiveSkipListDict<Integer, V> {
+
+    public IntSkipListDict() {
+        super(Integer.class);
+    }
+
+    @Override
+    Integer box(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Returns the value stored against this key, or null if the key does not exist
+     *
+     * @complexity amortized O(log N); allocates nothing
+     */
+    public V get(int key) {
+        return this.doGet(key);
+    }
+
+    /**
+     * Attempts to find whether or not a tower with the specified key exists
+     *
+     * @complexity amortized O(log N); allocates nothing
+     */
+    public boolean containsKey(int key) {
+        return this.doContainsKey(key);
+    }
+
+    /**
+     * Inserts the specified key/value pair
+     *
+     * @return The old value stored against this key, or null if this key is inserted for the first time
+     * @complexity amortized O(log N); the only allocation is the new tower if the key is not already there
+     */
+    public V put(int key, V value) {
+        return this.doPut(key, value);
+    }
+
+    /**
+     * Deletes the specified key, if it exists
+     *
+     * @return The previous value stored against this key, or null if it did not exist
+     * @complexity amortized O(log N); allocates nothing
+     */
+    public V remove(int key) {
+        return this.doRemove(key);
+    }
+}
@@ -0,0 +1,119 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.util.Random;
+
+/**
+ * Picks keys from 0 to keys - 1 for synthetic workloads, with one of a few distributions:
+ * - uniform: every key equally likely
+ * - zipfian: the key of rank r (from 1) comes up with probability proportional to 1/r^theta, so a few keys are very
+ *   hot and there is a long tail. Uses the method from Gray et al., "Quickly Generating Billion-Record Synthetic
+ *   Databases", as YCSB does: O(keys) to set up, then O(1) per key. The ranks are scattered over the key range, so
+ *   the hot keys aren't all next to each other in the list
+ * - sequential: counts up from a starting key, wrapping around at the end
+ * - hotspot: some fraction of the operations go to a contiguous hot range of keys, the rest to the others
+ * A generator has state, so give each thread its own; seeded ones always produce the same keys.
+ */
+public abstract class KeyGenerator {
+
+    //prime, and more than any key count allowed, so multiplying by it scatters ranks without any collisions
+    private static final long SCATTER = 2147483647L;
+
+    protected final int keys;
+
+    protected KeyGenerator(int keys) {
+        if (keys < 1 || keys >= SCATTER) {
+            throw new IllegalArgumentException("Need between 1 and " + (SCATTER - 1) + " keys, but got " + keys);
+        }
+        this.keys = keys;
+    }
+
+    /**
+     * @return The next key, from 0 to keys - 1
+     */
+    public abstract int next();
+
+    public static KeyGenerator uniform(int keys, long seed) {
+        final Random rgen = new Random(seed);
+        return new KeyGenerator(keys) {
+            @Override
+            public int next() {
+                return rgen.nextInt(this.keys);
+            }
+        };
+    }
+
+    /**
+     * @param theta How skewed it is, between 0 (uniform) and 1 (not included); YCSB uses 0.99
+     */
+    public static KeyGenerator zipfian(int keys, final double theta, long seed) {
+        if (!(theta > 0 && theta < 1)) {
+            throw new IllegalArgumentException("theta must be between 0 and 1, but was " + theta);
+        }
+        final Random rgen = new Random(seed);
+        double zetaN = 0;
+        for (int i = 1; i <= keys; i++) {
+            zetaN += 1 / Math.pow(i, theta);
+        }
+        final double zeta = zetaN;
+        final double zeta2 = 1 + Math.pow(0.5, theta);
+        final double alpha = 1 / (1 - theta);
+        final double eta = (1 - Math.pow(2.0 / keys, 1 - theta)) / (1 - zeta2 / zeta);
+        return new KeyGenerator(keys) {
+            @Override
+            public int next() {
+                double u = rgen.nextDouble();
+                double uz = u * zeta;
+                long rank;
+                if (uz < 1) {
+                    rank = 0;
+                }
+                else if (uz < zeta2) {
+                    rank = 1;
+                }
+                else {
+                    rank = Math.min(this.keys - 1, (long) (this.keys * Math.pow(eta * u - eta + 1, alpha)));
+                }
+                return (int) (rank * SCATTER % this.keys);
+            }
+        };
+    }
+
+    public static KeyGenerator sequential(int keys, final int start) {
+        return new KeyGenerator(keys) {
+            private int next = Math.floorMod(start, keys);
+
+            @Override
+            public int next() {
+                int key = this.next;
+                this.next = key + 1 == this.keys ? 0 : key + 1;
+                return key;
+            }
+        };
+    }
+
+    /**
+     * @param hotKeys How much of the key range is hot, between 0 and 1. The hot range starts somewhere arbitrary, but
+     *                the same for every generator with the same keys and hotKeys, so threads share it
+     * @param hotOps How many of the keys picked are hot ones, between 0 and 1
+     */
+    public static KeyGenerator hotspot(int keys, double hotKeys, final double hotOps, long seed) {
+        if (!(hotKeys > 0 && hotKeys <= 1) || !(hotOps >= 0 && hotOps <= 1)) {
+            throw new IllegalArgumentException("hotKeys must be between 0 (not included) and 1, and hotOps between 0 " +
+                    "and 1, but they were " + hotKeys + " and " + hotOps);
+        }
+        final Random rgen = new Random(seed);
+        final int hot = Math.max(1, (int) (keys * hotKeys));
+        final int hotStart = (int) (SCATTER % (keys - hot + 1));
+        return new KeyGenerator(keys) {
+            @Override
+            public int next() {
+                if (hot == this.keys || rgen.nextDouble() < hotOps) {
+                    return hotStart + rgen.nextInt(hot);
+                }
+                //somewhere outside the hot range
+                int key = rgen.nextInt(this.keys - hot);
+                return key < hotStart ? key : key + hot;
+            }
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.PrintStream;
+
+/**
+ * Counts latencies in log-linear buckets, the way HdrHistogram does: every power of two is split into 128 equal
+ * buckets, so any value is reported to within 1% of what was recorded, from 1ns up to centuries, in a fixed 60KB.
+ * Recording is O(1) and allocates nothing, so it can go in a benchmark's inner loop. Not thread-safe; give each
+ * thread its own and add() them together at the end.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[index(Long.MAX_VALUE) + 1];
+    private long count;
+    private long max;
+    private double sum;
+
+    private static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return The biggest value that goes in a bucket
+     */
+    private static long highestIn(int index) {
+        int shift = Math.max(0, (index >> SUB_BITS) - 1);
+        long lowest = (long) (index - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @param value A latency; negative ones (from a clock going backwards) count as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.counts[index(value)]++;
+        this.count++;
+        this.sum += value;
+        if (value > this.max) {
+            this.max = value;
+        }
+    }
+
+    /**
+     * Adds everything recorded in another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0 : this.sum / this.count;
+    }
+
+    /**
+     * @param q Between 0 and 1
+     * @return A value that at least that fraction of the recorded values are no bigger than, to within 1%; 0 if
+     *         nothing has been recorded
+     * @complexity O(buckets)
+     */
+    public long valueAt(double q) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * this.count));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestIn(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Prints the percentile spectrum: a row for 0%, 50%, 75%, 87.5% and so on, halving the distance to 100% each
+     * time, until there are too few values left to tell the rows apart, then the max. Plotted against the last column,
+     * 1/(1 - percentile), on a log scale, the rows give the usual HdrHistogram latency chart
+     *
+     * @param scale What to divide the values by, e.g. 1000 to print nanoseconds as microseconds
+     */
+    public void print(PrintStream out, double scale) {
+        out.printf("%14s %12s %14s %14s%n", "value", "percentile", "total count", "1/(1-p)");
+        for (double q = 0; this.count > 0; q = (1 + q) / 2) {
+            long rank = Math.max(1, (long) Math.ceil(q * this.count));
+            if (rank >= this.count) {
+                break;
+            }
+            out.printf("%14.3f %12.6f %14d %14.2f%n", this.valueAt(q) / scale, q, rank, 1 / (1 - q));
+        }
+        out.printf("%14.3f %12.6f %14d %14s%n", this.max / scale, 1.0, this.count, "inf");
+        out.printf("#[Mean = %.3f, Max = %.3f, Total count = %d]%n", this.getMean() / scale, this.max / scale,
+                this.count);
+    }
+}
@@ -0,0 +1,169 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the heights of new towers: each tower reaches the next level up with probability p, up to a maximum level.
+ * One random 64-bit word is drawn per tower rather than one coin flip per level. When p is 1/2, 1/4, 1/8... the
+ * height comes straight from the number of trailing zero bits in the word; for any other p it comes from the
+ * logarithm of a uniform random number.
+ * Unseeded generators draw from ThreadLocalRandom, so any number of threads can share one without contending on
+ * shared RNG state. Seeded generators produce the same heights in the same order every run, for reproducible tests
+ * and benchmarks; they are still thread-safe, but each height then costs an atomic add on shared state.
+ */
+public final class LevelGenerator {
+
+    /**
+     * p = 1/2, capped at 32 levels, which is plenty for anything that fits in an int count
+     */
+    public static final LevelGenerator DEFAULT = new LevelGenerator(0.5, 32);
+
+    //SplitMix64 constants, as used by java.util.SplittableRandom
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final double p;
+    private final int maxLevel;
+    //If p is 2^-k, the number of trailing zero bits each level up uses up; 0 if it isn't
+    private final int bitsPerLevel;
+    private final double logP;
+    //null for unseeded generators
+    private final AtomicLong seed;
+
+    /**
+     * Creates an unseeded generator
+     *
+     * @param p The probability that a tower reaching some level also reaches the one above, strictly between 0 and 1
+     * @param maxLevel The tallest a tower can be
+     */
+    public LevelGenerator(double p, int maxLevel) {
+        this(p, maxLevel, null);
+    }
+
+    /**
+     * Creates a generator that always produces the same sequence of heights for the same seed
+     *
+     * @param p The probability that a tower reaching some level also reaches the one above, strictly between 0 and 1
+     * @param maxLevel The tallest a tower can be
+     * @param seed The seed
+     */
+    public LevelGenerator(double p, int maxLevel, long seed) {
+        this(p, maxLevel, new AtomicLong(seed));
+    }
+
+    private LevelGenerator(double p, int maxLevel, AtomicLong seed) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("p must be between 0 and 1, but was " + p);
+        }
+        if (maxLevel < 1) {
+            throw new IllegalArgumentException("maxLevel must be at least 1, but was " + maxLevel);
+        }
+        this.p = p;
+        this.maxLevel = maxLevel;
+        this.logP = Math.log(p);
+        this.seed = seed;
+
+        //is p an exact power of 1/2? Doubles hold those exactly, so this comparison is safe
+        int bits = 0;
+        for (int k = 1; k < 64; k++) {
+            if (p == Math.scalb(1.0, -k)) {
+                bits = k;
+                break;
+            }
+        }
+        this.bitsPerLevel = bits;
+    }
+
+    /**
+     * Works out the maximum level worth having for a list of a given size: log base 1/p of N, at which point only about
+     * one tower is expected to reach the top level
+     *
+     * @param expectedSize How many keys the list is expected to hold
+     * @param p The probability of each level up
+     * @return The maximum level, at least 1
+     */
+    public static int maxLevelFor(long expectedSize, double p) {
+        if (expectedSize <= 1) {
+            return 1;
+        }
+        return Math.max(1, (int) Math.ceil(Math.log(expectedSize) / Math.log(1 / p)));
+    }
+
+    /**
+     * Creates an unseeded generator with its maximum level set for a list of a given size
+     *
+     * @param p The probability of each level up
+     * @param expectedSize How many keys the list is expected to hold
+     * @return The generator
+     */
+    public static LevelGenerator forExpectedSize(double p, long expectedSize) {
+        return new LevelGenerator(p, maxLevelFor(expectedSize, p));
+    }
+
+    /**
+     * @return The height for a new tower, between 1 and the maximum level
+     * @complexity O(1): one random word, then either a trailing zero count or a logarithm
+     */
+    public int generate() {
+        long word = this.nextLong();
+        int height;
+        if (this.bitsPerLevel != 0) {
+            //each level up needs bitsPerLevel more zero bits at the bottom of the word. A word of all zeroes only
+            //turns up once in 2^64 draws, and then gives 64 / bitsPerLevel + 1, which the cap takes care of
+            height = Long.numberOfTrailingZeros(word) / this.bitsPerLevel + 1;
+        }
+        else {
+            //top 53 bits as a uniform double in (0, 1]; the height is then geometric with parameter p
+            double u = ((word >>> 11) + 1) * 0x1.0p-53;
+            height = (int) Math.min(Math.floor(Math.log(u) / this.logP) + 1, this.maxLevel);
+        }
+        return Math.min(height, this.maxLevel);
+    }
+
+    /**
+     * Gives the heights of a perfectly balanced list instead of random ones, for building a list from keys that are
+     * all known up front: the i-th tower gets one more level for each time i divides by 1/p (rounded to a whole
+     * number). For p = 1/2 that's just 1 + the number of trailing zero bits in i. Towers come out on each level in
+     * the same proportions as with generate()
+     *
+     * @param index The position of the tower in the list, from 1
+     * @return The height for that tower, between 1 and the maximum level
+     */
+    public int balancedHeight(long index) {
+        if (this.bitsPerLevel != 0) {
+            return Math.min(Long.numberOfTrailingZeros(index) / this.bitsPerLevel + 1, this.maxLevel);
+        }
+        long base = Math.max(2, Math.round(1 / this.p));
+        int height = 1;
+        while (height < this.maxLevel && index % base == 0) {
+            index /= base;
+            height++;
+        }
+        return height;
+    }
+
+    private long nextLong() {
+        if (this.seed == null) {
+            return ThreadLocalRandom.current().nextLong();
+        }
+        //SplitMix64: a lock-free add on the state, then scramble it
+        long z = this.seed.getAndAdd(GOLDEN_GAMMA) + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return The probability that a tower reaching some level also reaches the one above
+     */
+    public double getP() {
+        return this.p;
+    }
+
+    /**
+     * @return The tallest a tower can be
+     */
+    public int getMaxLevel() {
+        return this.maxLevel;
+    }
+}
@@ -0,0 +1,398 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An OffHeapSkipListDict whose arena is a memory-mapped file, so the dictionary outlives the process.
+ * Opening a file that was closed (or synced) cleanly just maps it and reads the header - nothing is rebuilt, and
+ * the OS pages towers in as searches touch them.
+ *
+ * Crash consistency: the towers are linked from the bottom up and unlinked from the top down, values are never
+ * overwritten in place, and the header (with a CRC32 of itself) is marked dirty and forced to disk before the first
+ * change after a sync. So if the process dies, the bottom level is always an intact sorted list, and opening a file
+ * whose header is dirty walks that list, re-links the upper levels and works out the header fields again. If the
+ * machine dies, pages written since the last sync() may not have made it to disk in order, so every tower carries a
+ * CRC32 of its key, height and value; recovery drops any tower that fails it and carries on from the next intact
+ * tower it can reach. Compaction writes a whole new file and renames it over the old one.
+ */
+public class MappedSkipListDict extends OffHeapSkipListDict implements Closeable {
+
+    /*
+     * Header, in the words reserved at the start of the file:
+     * long magic | int version | int chunkShift | int head | int levels | int count | int top | int garbageWords |
+     * int clean | ... | int CRC32 of everything before it
+     */
+    private static final long MAGIC = 0x534b49504c495354L;
+    private static final int VERSION = 2;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 8;
+    private static final int H_CHUNK_SHIFT = 12;
+    private static final int H_HEAD = 16;
+    private static final int H_LEVELS = 20;
+    private static final int H_COUNT = 24;
+    private static final int H_TOP = 28;
+    private static final int H_GARBAGE = 32;
+    private static final int H_CLEAN = 36;
+    private static final int H_CHECKSUM = 56;
+    private static final int HEADER_WORDS = 8;
+
+    private final Path file;
+    private FileChannel channel;
+
+    /**
+     * Whether the header on disk describes the arena as it is now
+     */
+    private boolean clean;
+    private boolean recovered;
+
+    //scratch space for towerCheck()
+    private final CRC32 towerCrc = new CRC32();
+    private final ByteBuffer towerFields = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Opens the dictionary stored in a file, creating it with 64MB chunks if it doesn't exist
+     */
+    public MappedSkipListDict(Path file) throws IOException {
+        this(file, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Opens the dictionary stored in a file, creating it if it doesn't exist
+     *
+     * @param chunkShift log2 of the chunk size to create a new file with; an existing file keeps the one it has
+     * @throws IOException if the file can't be opened, or exists but its header is not a valid one
+     * @complexity O(1) if the file was closed cleanly, O(N) if it has to be recovered after a crash
+     */
+    public MappedSkipListDict(Path file, int chunkShift) throws IOException {
+        super(storedChunkShift(file, chunkShift), false);
+        this.file = file;
+        //a compaction that never finished; the original is still intact
+        Files.deleteIfExists(compactionFile(file));
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        if (this.channel.size() == 0) {
+            this.reset();
+            this.sync();
+        }
+        else {
+            this.load();
+        }
+    }
+
+    private static Path compactionFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    /**
+     * @return The chunk shift recorded in an existing file's header, or the given one for a new file
+     */
+    private static int storedChunkShift(Path file, int chunkShift) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return chunkShift;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_WORDS * 8).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                //keep reading
+            }
+            checkHeader(header, file);
+            return header.getInt(H_CHUNK_SHIFT);
+        }
+    }
+
+    private static int checksum(ByteBuffer header) {
+        byte[] bytes = new byte[H_CHECKSUM];
+        for (int i = 0; i < H_CHECKSUM; i++) {
+            bytes[i] = header.get(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static void checkHeader(ByteBuffer header, Path file) throws IOException {
+        if (header.limit() < HEADER_WORDS * 8 || header.getLong(H_MAGIC) != MAGIC) {
+            throw new IOException(file + " is not a skip list file");
+        }
+        if (header.getInt(H_CHECKSUM) != checksum(header)) {
+            throw new IOException(file + " has a corrupt header");
+        }
+        if (header.getInt(H_VERSION) != VERSION) {
+            throw new IOException(file + " is version " + header.getInt(H_VERSION) + ", expected " + VERSION);
+        }
+    }
+
+    /**
+     * Maps an existing file and picks up where the header says it left off, recovering if it wasn't closed cleanly
+     */
+    private void load() throws IOException {
+        int chunks = (int) (this.channel.size() >>> this.chunkShift);
+        this.chunks = new ByteBuffer[Math.max(4, Integer.highestOneBit(chunks) * 2)];
+        for (this.chunkCount = 0; this.chunkCount < chunks; this.chunkCount++) {
+            this.chunks[this.chunkCount] = this.newChunk(this.chunkCount);
+        }
+        ByteBuffer header = this.chunks[0];
+        checkHeader(header, this.file);
+        this.head = header.getInt(H_HEAD);
+        this.levels = header.getInt(H_LEVELS);
+        this.count = header.getInt(H_COUNT);
+        this.top = header.getInt(H_TOP);
+        this.garbageWords = header.getInt(H_GARBAGE);
+        this.clean = header.getInt(H_CLEAN) != 0;
+        if (!this.clean) {
+            this.recover();
+            this.recovered = true;
+            this.sync();
+        }
+    }
+
+    /**
+     * Walks the bottom level from the head, re-links every level above it and recounts the header fields. A tower
+     * that is out of range, malformed, out of key order or fails its check is dropped, and the bottom level is
+     * re-linked past it to the next intact tower.
+     *
+     * @complexity O(N)
+     */
+    private void recover() {
+        long fileWords = (long) this.chunkCount << this.wordShift;
+        int[] frontier = new int[MAX_HEIGHT];
+        Arrays.fill(frontier, this.head);
+        int levels = 0;
+        int count = 0;
+        long top = this.head + towerWords(MAX_HEIGHT);
+        long liveWords = top;
+
+        int prev = this.head;
+        long prevKey = 0;
+        int tower = this.linkAt(this.head, 0);
+        while (tower != 0) {
+            if (!this.isIntactTower(tower, fileWords, prev, prevKey)) {
+                //it didn't make it to disk in one piece
+                tower = this.nextIntactTower(tower, fileWords, frontier, prev, prevKey);
+                this.setLink(prev, 0, tower);
+                continue;
+            }
+            int height = this.heightAt(tower);
+            for (int i = 1; i < height; i++) {
+                this.setLink(frontier[i], i, tower);
+                frontier[i] = tower;
+            }
+            levels = Math.max(levels, height);
+            count++;
+            top = Math.max(top, tower + towerWords(height));
+            liveWords += towerWords(height);
+            int value = this.valueAt(tower);
+            if (value != 0) {
+                int words = valueWords(this.valueLength(value));
+                top = Math.max(top, value + words);
+                liveWords += words;
+            }
+            prev = tower;
+            prevKey = this.keyAt(tower);
+            tower = this.linkAt(tower, 0);
+        }
+        for (int i = 1; i < MAX_HEIGHT; i++) {
+            this.setLink(frontier[i], i, 0);
+        }
+
+        this.levels = levels;
+        this.count = count;
+        this.top = (int) top;
+        this.garbageWords = (int) (top - liveWords);
+    }
+
+    /**
+     * Finds where the bottom level carries on after a tower that isn't intact: the tower it links to, if its link
+     * can be read and leads to an intact one, or else the closest intact tower any of the levels above lead to from
+     * before it. Towers only reachable through a dropped tower's bottom link are lost with it
+     *
+     * @param frontier The last tower recovered on each level
+     * @return The next intact tower, or 0 if there are none
+     */
+    private int nextIntactTower(int dropped, long fileWords, int[] frontier, int prev, long prevKey) {
+        int next = 0;
+        if (dropped >= this.firstWord() && dropped < fileWords
+                && this.offset(dropped) + LINKS + 4 <= 1 << this.chunkShift) {
+            int candidate = this.linkAt(dropped, 0);
+            if (this.isIntactTower(candidate, fileWords, prev, prevKey)) {
+                next = candidate;
+            }
+        }
+        for (int i = 1; i < MAX_HEIGHT; i++) {
+            int candidate = this.linkAt(frontier[i], i);
+            if (candidate != 0 && this.isIntactTower(candidate, fileWords, prev, prevKey)
+                    && (next == 0 || this.keyAt(candidate) < this.keyAt(next))) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return Whether a tower is all there and its key comes after the last one recovered
+     */
+    private boolean isIntactTower(int tower, long fileWords, int prev, long prevKey) {
+        return this.isPlausibleTower(tower, fileWords)
+                && (prev == this.head || this.keyAt(tower) > prevKey)
+                && this.checkAt(tower) == this.towerCheck(tower, this.valueAt(tower));
+    }
+
+    private boolean isPlausibleTower(int tower, long fileWords) {
+        int chunkBytes = 1 << this.chunkShift;
+        if (tower < this.firstWord() || tower >= fileWords) {
+            return false;
+        }
+        int height = this.heightAt(tower);
+        if (height < 1 || height > MAX_HEIGHT || this.offset(tower) + towerWords(height) * 8 > chunkBytes) {
+            return false;
+        }
+        int value = this.valueAt(tower);
+        if (value == 0) {
+            return true;
+        }
+        if (value < this.firstWord() || value >= fileWords) {
+            return false;
+        }
+        int length = this.valueLength(value);
+        return length >= 0 && this.offset(value) + 4L + length <= chunkBytes;
+    }
+
+    /**
+     * @return Whether opening the file needed a recovery because it wasn't closed cleanly
+     */
+    public boolean wasRecovered() {
+        return this.recovered;
+    }
+
+    //Arena hooks
+
+    @Override
+    int firstWord() {
+        return HEADER_WORDS;
+    }
+
+    @Override
+    ByteBuffer newChunk(int index) {
+        try {
+            long chunkBytes = 1L << this.chunkShift;
+            return this.channel.map(FileChannel.MapMode.READ_WRITE, index * chunkBytes, chunkBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not map chunk " + index + " of " + this.file, e);
+        }
+    }
+
+    @Override
+    void releaseChunks(ByteBuffer[] oldChunks, int oldChunkCount) {
+        //they go when the mappings are collected
+    }
+
+    @Override
+    void beforeWrite() {
+        if (this.clean) {
+            this.clean = false;
+            this.writeHeader();
+            ((MappedByteBuffer) this.chunks[0]).force();
+        }
+    }
+
+    @Override
+    boolean canOverwriteInPlace() {
+        //a half-written value would survive a crash
+        return false;
+    }
+
+    /**
+     * CRC32 of the tower's key, value address and height, and the value's length and bytes. Links aren't covered,
+     * since they change whenever a neighbour is put or removed
+     */
+    @Override
+    int towerCheck(int tower, int value) {
+        ByteBuffer fields = this.towerFields;
+        fields.putLong(0, this.keyAt(tower));
+        fields.putInt(8, value);
+        fields.putInt(12, this.heightAt(tower));
+        CRC32 crc = this.towerCrc;
+        crc.reset();
+        crc.update(fields.array(), 0, fields.capacity());
+        if (value != 0) {
+            ByteBuffer bytes = this.chunk(value).duplicate();
+            int off = this.offset(value);
+            bytes.limit(off + 4 + this.valueLength(value));
+            bytes.position(off);
+            crc.update(bytes);
+        }
+        return (int) crc.getValue();
+    }
+
+    private void writeHeader() {
+        ByteBuffer header = this.chunks[0];
+        header.putLong(H_MAGIC, MAGIC);
+        header.putInt(H_VERSION, VERSION);
+        header.putInt(H_CHUNK_SHIFT, this.chunkShift);
+        header.putInt(H_HEAD, this.head);
+        header.putInt(H_LEVELS, this.levels);
+        header.putInt(H_COUNT, this.count);
+        header.putInt(H_TOP, this.top);
+        header.putInt(H_GARBAGE, this.garbageWords);
+        header.putInt(H_CLEAN, this.clean ? 1 : 0);
+        header.putInt(H_CHECKSUM, checksum(header));
+    }
+
+    /**
+     * Flushes every change to disk, then writes and flushes a clean header describing them
+     *
+     * @complexity O(number of dirty pages)
+     * @postcondition reopening the file gives back the dictionary as it is now, without a recovery
+     */
+    public void sync() {
+        for (int i = 0; i < this.chunkCount; i++) {
+            ((MappedByteBuffer) this.chunks[i]).force();
+        }
+        this.clean = true;
+        this.writeHeader();
+        ((MappedByteBuffer) this.chunks[0]).force();
+    }
+
+    /**
+     * Compacts into a new file next to this one, syncs it and renames it over this one, so a crash at any point
+     * leaves one complete file or the other
+     */
+    @Override
+    public void compact() {
+        Path newFile = compactionFile(this.file);
+        try {
+            FileChannel oldChannel = this.channel;
+            this.channel = FileChannel.open(newFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            super.compact();
+            this.sync();
+            Files.move(newFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            oldChannel.close();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not compact " + this.file, e);
+        }
+    }
+
+    /**
+     * Syncs and closes the file. The dictionary can't be used afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        this.sync();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,702 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * A skip list dictionary from long keys to byte[] values that keeps all of its towers and values outside the Java
+ * heap, in an arena of direct ByteBuffers. The only heap objects are the dictionary itself and its chunk table, so
+ * the garbage collector has nothing to trace however many entries there are.
+ *
+ * Towers link to each other by arena address rather than by reference. Removing or overwriting an entry leaves a
+ * hole in the arena; once holes make up more than half of it, the live entries are copied in key order into fresh
+ * chunks and the old chunks are let go (compaction). Values are copied in and out, so the byte[]s handed to put()
+ * can be reused and the ones returned by get() belong to the caller.
+ */
+public class OffHeapSkipListDict extends AbstractMap<Long, byte[]> {
+
+    /*
+     * Arena layout. Addresses are ints counting 8-byte words, so the arena can grow to 16GB; address 0 is never
+     * handed out and stands for "no tower" / "null value". Nothing straddles a chunk boundary.
+     *
+     * Tower:  long key | int value address | int check | int height | int link[height]   (padded to 8 bytes)
+     * Value:  int length | bytes                                                          (padded to 8 bytes)
+     *
+     * The value address and check share a word, so they are always written together; see towerCheck().
+     */
+    static final int KEY = 0;
+    static final int VALUE = 8;
+    static final int CHECK = 12;
+    static final int HEIGHT = 16;
+    static final int LINKS = 20;
+
+    static final int MAX_HEIGHT = 32;
+    static final int DEFAULT_CHUNK_SHIFT = 26;
+
+    /**
+     * Don't bother compacting arenas smaller than this many words, whatever fraction of them is garbage
+     */
+    private static final int MIN_COMPACT_WORDS = 1 << 16;
+
+    final int chunkShift;
+    final int wordShift;
+    final int wordMask;
+
+    ByteBuffer[] chunks;
+    int chunkCount;
+
+    /**
+     * Chunks left over from the last compaction, kept around (at most one) so the next allocation doesn't have to
+     * go back to the OS
+     */
+    private ByteBuffer spare;
+
+    /**
+     * Next free word address, and how many words below it belong to removed towers, stale values or chunk tails
+     */
+    int top;
+    int garbageWords;
+
+    /**
+     * Bumped by every compaction, since it moves every tower; iterators use it to notice their position has gone
+     */
+    int epoch;
+
+    /**
+     * Bumped whenever a key is added or removed, so iterators can tell the dictionary changed under them
+     */
+    int modCount;
+
+    int head;
+    int levels;
+    int count;
+
+    /**
+     * Scratch buffer the search fills in with the address of the rightmost tower to the left of the key on each level
+     */
+    private final int[] searchPath = new int[MAX_HEIGHT];
+
+    /**
+     * Public constructor for the dictionary, with 64MB arena chunks
+     */
+    public OffHeapSkipListDict() {
+        this(DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Public constructor for the dictionary
+     *
+     * @param chunkShift log2 of the size in bytes of each arena chunk; values must fit inside one chunk
+     * @postcondition an empty head tower is allocated in the arena
+     */
+    public OffHeapSkipListDict(int chunkShift) {
+        this(chunkShift, true);
+    }
+
+    /**
+     * Constructor for subclasses that bring their own arena, which they must set up themselves if createArena is
+     * false
+     */
+    OffHeapSkipListDict(int chunkShift, boolean createArena) {
+        if (chunkShift < 10 || chunkShift > 30) {
+            throw new IllegalArgumentException("chunkShift must be between 10 and 30");
+        }
+        this.chunkShift = chunkShift;
+        this.wordShift = chunkShift - 3;
+        this.wordMask = (1 << this.wordShift) - 1;
+        if (createArena) {
+            this.reset();
+        }
+    }
+
+    /**
+     * Throws the whole arena away and starts again with a fresh, empty head tower
+     */
+    void reset() {
+        this.spare = null;
+        this.newArena(4);
+        this.epoch++;
+        this.modCount++;
+        this.levels = 0;
+        this.count = 0;
+    }
+
+    /**
+     * Points the dictionary at a new, empty chunk table and allocates the head tower in it
+     */
+    private void newArena(int chunkTableSize) {
+        this.chunks = new ByteBuffer[chunkTableSize];
+        this.chunkCount = 0;
+        this.top = this.firstWord();
+        this.garbageWords = this.firstWord();
+        this.head = this.newTower(0, 0, MAX_HEIGHT);
+    }
+
+    //Hooks for arenas kept somewhere other than in plain direct memory
+
+    /**
+     * @return The first word address handed out; the words before it are reserved (address 0 at least must be)
+     */
+    int firstWord() {
+        return 1;
+    }
+
+    /**
+     * @return A new chunk to become the given chunk number in the arena
+     */
+    ByteBuffer newChunk(int index) {
+        ByteBuffer fresh = this.spare;
+        this.spare = null;
+        if (fresh == null) {
+            fresh = ByteBuffer.allocateDirect(1 << this.chunkShift).order(ByteOrder.nativeOrder());
+        }
+        return fresh;
+    }
+
+    /**
+     * Called after a compaction with the chunks that are no longer in use
+     */
+    void releaseChunks(ByteBuffer[] oldChunks, int oldChunkCount) {
+        //hang on to one for future growth and leave the rest for the collector to free
+        if (oldChunkCount > this.chunkCount) {
+            this.spare = oldChunks[oldChunkCount - 1];
+        }
+    }
+
+    /**
+     * Called before anything in the arena is changed
+     */
+    void beforeWrite() {
+    }
+
+    /**
+     * @return Whether a value can be overwritten where it is when the new one is the same size, rather than always
+     *         being written somewhere new and then swapped in
+     */
+    boolean canOverwriteInPlace() {
+        return true;
+    }
+
+    /**
+     * @return What to store in a tower's check field when it points at the given value; the key and height are
+     *         already in place. Only arenas that have to be checked after a crash need one
+     */
+    int towerCheck(int tower, int value) {
+        return 0;
+    }
+
+    //Arena access
+
+    ByteBuffer chunk(int addr) {
+        return this.chunks[addr >>> this.wordShift];
+    }
+
+    int offset(int addr) {
+        return (addr & this.wordMask) << 3;
+    }
+
+    long keyAt(int tower) {
+        return this.chunk(tower).getLong(this.offset(tower) + KEY);
+    }
+
+    int valueAt(int tower) {
+        return this.chunk(tower).getInt(this.offset(tower) + VALUE);
+    }
+
+    int checkAt(int tower) {
+        return this.chunk(tower).getInt(this.offset(tower) + CHECK);
+    }
+
+    /**
+     * Points a tower at a value, updating its check in the same (aligned, so untearable) 8-byte write
+     */
+    void setValue(int tower, int value) {
+        ByteBuffer buf = this.chunk(tower);
+        long low = value & 0xffffffffL;
+        long high = this.towerCheck(tower, value) & 0xffffffffL;
+        if (buf.order() == ByteOrder.BIG_ENDIAN) {
+            long swap = low;
+            low = high;
+            high = swap;
+        }
+        buf.putLong(this.offset(tower) + VALUE, low | high << 32);
+    }
+
+    int heightAt(int tower) {
+        return this.chunk(tower).getInt(this.offset(tower) + HEIGHT);
+    }
+
+    int linkAt(int tower, int level) {
+        return this.chunk(tower).getInt(this.offset(tower) + LINKS + 4 * level);
+    }
+
+    void setLink(int tower, int level, int to) {
+        this.chunk(tower).putInt(this.offset(tower) + LINKS + 4 * level, to);
+    }
+
+    static int towerWords(int height) {
+        return (LINKS + 4 * height + 7) >>> 3;
+    }
+
+    static int valueWords(int length) {
+        return (4 + length + 7) >>> 3;
+    }
+
+    /**
+     * Bump-allocates some words, moving on to a new chunk if they won't fit in what is left of the current one
+     *
+     * @return The address of the first word
+     */
+    int allocate(int words) {
+        int chunkWords = 1 << this.wordShift;
+        if (words > chunkWords) {
+            throw new IllegalArgumentException("Values can be at most " + ((chunkWords << 3) - 8) + " bytes");
+        }
+        int chunkIndex = this.top >>> this.wordShift;
+        if (chunkIndex < this.chunkCount && (this.top & this.wordMask) + words > chunkWords) {
+            //the tail of this chunk is wasted
+            this.garbageWords += chunkWords - (this.top & this.wordMask);
+            chunkIndex++;
+            this.top = chunkIndex << this.wordShift;
+        }
+        if (chunkIndex == this.chunkCount) {
+            if (chunkIndex >= (Integer.MAX_VALUE >>> this.wordShift)) {
+                throw new OutOfMemoryError("Off-heap arena is full");
+            }
+            if (this.chunkCount == this.chunks.length) {
+                this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+            }
+            this.chunks[this.chunkCount] = this.newChunk(this.chunkCount);
+            this.chunkCount++;
+        }
+        int addr = this.top;
+        this.top += words;
+        return addr;
+    }
+
+    /**
+     * Allocates a tower with every link set to 0
+     */
+    int newTower(long key, int value, int height) {
+        int tower = this.allocate(towerWords(height));
+        ByteBuffer buf = this.chunk(tower);
+        int off = this.offset(tower);
+        buf.putLong(off + KEY, key);
+        buf.putInt(off + HEIGHT, height);
+        for (int i = 0; i < height; i++) {
+            buf.putInt(off + LINKS + 4 * i, 0);
+        }
+        this.setValue(tower, value);
+        return tower;
+    }
+
+    /**
+     * Copies a value into the arena
+     *
+     * @return Its address, or 0 for a null value
+     */
+    private int newValue(byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+        int addr = this.allocate(valueWords(value.length));
+        ByteBuffer buf = this.chunk(addr);
+        int off = this.offset(addr);
+        buf.putInt(off, value.length);
+        for (int i = 0; i < value.length; i++) {
+            buf.put(off + 4 + i, value[i]);
+        }
+        return addr;
+    }
+
+    /**
+     * Copies a value out of the arena
+     */
+    byte[] readValue(int addr) {
+        if (addr == 0) {
+            return null;
+        }
+        ByteBuffer buf = this.chunk(addr);
+        int off = this.offset(addr);
+        byte[] value = new byte[buf.getInt(off)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = buf.get(off + 4 + i);
+        }
+        return value;
+    }
+
+    int valueLength(int addr) {
+        return addr == 0 ? 0 : this.chunk(addr).getInt(this.offset(addr));
+    }
+
+    //Searching
+
+    /**
+     * Searches for a key, optionally recording the search path on the way down
+     *
+     * @param key The key to search for
+     * @param fillPath If set, searchPath[i] is set to the rightmost tower on level i that is smaller than key, for
+     *                 every level in use, and the search carries on to the bottom even if it finds the key
+     * @return The address of the tower the key is found in, or 0 if it does not exist
+     * @complexity amortized O(log N)
+     */
+    private int findTower(long key, boolean fillPath) {
+        int curNode = this.head;
+        //The first tower known to be bigger than key (or the end of the list); no need to compare it again lower down
+        int lastBigger = 0;
+        int found = 0;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            int next = this.linkAt(curNode, i);
+            while (next != lastBigger) {
+                long nextKey = this.keyAt(next);
+                if (nextKey < key) {
+                    curNode = next;
+                    next = this.linkAt(curNode, i);
+                }
+                else {
+                    if (nextKey == key) {
+                        if (!fillPath) {
+                            return next;
+                        }
+                        found = next;
+                    }
+                    lastBigger = next;
+                }
+            }
+            if (fillPath) {
+                this.searchPath[i] = curNode;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The address of the first tower with a key strictly bigger than key, or 0 if there isn't one
+     * @complexity amortized O(log N)
+     */
+    private int findHigher(long key) {
+        int curNode = this.head;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            int next = this.linkAt(curNode, i);
+            while (next != 0 && this.keyAt(next) <= key) {
+                curNode = next;
+                next = this.linkAt(curNode, i);
+            }
+        }
+        return this.linkAt(curNode, 0);
+    }
+
+    //Primitive API
+
+    /**
+     * Returns a copy of the value stored against this key, or null if the key does not exist
+     *
+     * @complexity amortized O(log N); the only allocation is the returned copy
+     */
+    public byte[] get(long key) {
+        int tower = this.findTower(key, false);
+        return tower == 0 ? null : this.readValue(this.valueAt(tower));
+    }
+
+    /**
+     * Attempts to find whether or not a tower with the specified key exists
+     *
+     * @complexity amortized O(log N); allocates nothing
+     */
+    public boolean containsKey(long key) {
+        return this.findTower(key, false) != 0;
+    }
+
+    /**
+     * Inserts a copy of the specified value against the key
+     *
+     * @return A copy of the old value stored against this key, or null if this key is inserted for the first time
+     * @complexity amortized O(log N), plus an O(N) compaction every so often if the entry being replaced tips the
+     *             arena over half garbage
+     */
+    public byte[] put(long key, byte[] value) {
+        this.beforeWrite();
+        int tower = this.findTower(key, true);
+        if (tower != 0) {
+            int oldAddr = this.valueAt(tower);
+            byte[] oldval = this.readValue(oldAddr);
+            int oldWords = oldAddr == 0 ? 0 : valueWords(this.valueLength(oldAddr));
+            if (value != null && oldAddr != 0 && valueWords(value.length) == oldWords && this.canOverwriteInPlace()) {
+                //same footprint, so overwrite it where it is
+                ByteBuffer buf = this.chunk(oldAddr);
+                int off = this.offset(oldAddr);
+                buf.putInt(off, value.length);
+                for (int i = 0; i < value.length; i++) {
+                    buf.put(off + 4 + i, value[i]);
+                }
+            }
+            else {
+                //the new value is complete before the tower points at it
+                int newAddr = this.newValue(value);
+                this.setValue(tower, newAddr);
+                this.garbageWords += oldWords;
+                this.maybeCompact();
+            }
+            return oldval;
+        }
+
+        int height = Math.min(LevelGenerator.DEFAULT.generate(), MAX_HEIGHT);
+        int valueAddr = this.newValue(value);
+        int nTower = this.newTower(key, valueAddr, height);
+        //The search never touched the levels above the ones in use, but there the head is on our left
+        for (int i = this.levels; i < height; i++) {
+            this.searchPath[i] = this.head;
+        }
+        if (height > this.levels) {
+            this.levels = height;
+        }
+        //Link from the bottom up, so the list is valid at every step: a tower linked into only its lower levels is fine
+        for (int i = 0; i < height; i++) {
+            this.setLink(nTower, i, this.linkAt(this.searchPath[i], i));
+            this.setLink(this.searchPath[i], i, nTower);
+        }
+        this.count++;
+        this.modCount++;
+        return null;
+    }
+
+    /**
+     * Deletes the specified key, if it exists
+     *
+     * @return A copy of the previous value stored against this key, or null if it did not exist
+     * @complexity amortized O(log N), plus an O(N) compaction every so often
+     */
+    public byte[] remove(long key) {
+        int tower = this.findTower(key, true);
+        if (tower == 0) {
+            return null;
+        }
+        this.beforeWrite();
+        int height = this.heightAt(tower);
+        //Unlink from the top down, for the same reason put() links from the bottom up
+        for (int i = height - 1; i >= 0; i--) {
+            this.setLink(this.searchPath[i], i, this.linkAt(tower, i));
+        }
+        while (this.levels > 0 && this.linkAt(this.head, this.levels - 1) == 0) {
+            this.levels--;
+        }
+        this.count--;
+        this.modCount++;
+
+        int valueAddr = this.valueAt(tower);
+        byte[] oldval = this.readValue(valueAddr);
+        this.garbageWords += towerWords(height) + (valueAddr == 0 ? 0 : valueWords(this.valueLength(valueAddr)));
+        this.maybeCompact();
+        return oldval;
+    }
+
+    //Arena management
+
+    private void maybeCompact() {
+        if (this.top >= MIN_COMPACT_WORDS && this.garbageWords > this.top / 2) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Copies every live tower and value, in key order, into a fresh set of chunks and lets go of the old ones.
+     * Towers are linked up with a frontier holding the last tower copied onto each level, so no searching is needed,
+     * and afterwards neighbouring keys sit next to each other in memory.
+     *
+     * @complexity O(N); needs room for the live data on top of the current arena while it runs
+     * @postcondition the arena holds no garbage apart from unused chunk tails
+     */
+    public void compact() {
+        this.beforeWrite();
+        ByteBuffer[] oldChunks = this.chunks;
+        int oldChunkCount = this.chunkCount;
+        int oldHead = this.head;
+
+        //fresh arena; the old one is still readable through oldChunks
+        this.newArena(Math.max(4, Integer.highestOneBit(oldChunkCount) * 2));
+
+        int[] frontier = new int[MAX_HEIGHT];
+        Arrays.fill(frontier, this.head);
+        int levels = 0;
+
+        ByteBuffer oldBuf = oldChunks[oldHead >>> this.wordShift];
+        int oldTower = oldBuf.getInt(this.offset(oldHead) + LINKS);
+        while (oldTower != 0) {
+            oldBuf = oldChunks[oldTower >>> this.wordShift];
+            int off = this.offset(oldTower);
+            long key = oldBuf.getLong(off + KEY);
+            int oldValue = oldBuf.getInt(off + VALUE);
+            int height = oldBuf.getInt(off + HEIGHT);
+            int nextOld = oldBuf.getInt(off + LINKS);
+
+            int newValue = 0;
+            if (oldValue != 0) {
+                ByteBuffer valBuf = oldChunks[oldValue >>> this.wordShift];
+                int valOff = this.offset(oldValue);
+                int length = valBuf.getInt(valOff);
+                newValue = this.allocate(valueWords(length));
+                ByteBuffer newBuf = this.chunk(newValue);
+                int newOff = this.offset(newValue);
+                newBuf.putInt(newOff, length);
+                for (int i = 0; i < length; i++) {
+                    newBuf.put(newOff + 4 + i, valBuf.get(valOff + 4 + i));
+                }
+            }
+
+            int newTower = this.newTower(key, newValue, height);
+            for (int i = 0; i < height; i++) {
+                this.setLink(frontier[i], i, newTower);
+                frontier[i] = newTower;
+            }
+            if (height > levels) {
+                levels = height;
+            }
+            oldTower = nextOld;
+        }
+        this.levels = levels;
+        this.epoch++;
+        this.releaseChunks(oldChunks, oldChunkCount);
+    }
+
+    /**
+     * @return How many bytes of direct memory the arena is holding on to, live or not
+     */
+    public long arenaBytes() {
+        long chunkBytes = 1L << this.chunkShift;
+        return (this.chunkCount + (this.spare == null ? 0 : 1)) * chunkBytes;
+    }
+
+    /**
+     * @return How many bytes of the arena are taken up by live towers and values
+     */
+    public long liveBytes() {
+        return ((long) this.top - this.garbageWords) << 3;
+    }
+
+    //Map interface
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * Deletes all elements from this dictionary and releases the arena
+     *
+     * @complexity O(1)
+     */
+    @Override
+    public void clear() {
+        this.beforeWrite();
+        this.reset();
+    }
+
+    @Override
+    public byte[] get(Object key) {
+        return key instanceof Long ? this.get(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && this.containsKey(((Long) key).longValue());
+    }
+
+    @Override
+    public byte[] put(Long key, byte[] value) {
+        return this.put(key.longValue(), value);
+    }
+
+    @Override
+    public byte[] remove(Object key) {
+        return key instanceof Long ? this.remove(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public Set<Entry<Long, byte[]>> entrySet() {
+        return new AbstractSet<Entry<Long, byte[]>>() {
+            @Override
+            public Iterator<Entry<Long, byte[]>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return OffHeapSkipListDict.this.count;
+            }
+        };
+    }
+
+    /**
+     * Walks the bottom level in key order, copying each value out. setValue() on the entries it returns writes
+     * through to the dictionary. If a compaction moves the towers from under it, it picks up again after the last
+     * key it returned; but it fails fast if a key is added or removed other than through the iterator itself
+     */
+    private class EntryIterator implements Iterator<Entry<Long, byte[]>> {
+
+        private int next = OffHeapSkipListDict.this.linkAt(OffHeapSkipListDict.this.head, 0);
+        private int epoch = OffHeapSkipListDict.this.epoch;
+        private int expectedModCount = OffHeapSkipListDict.this.modCount;
+        private long lastKey;
+        private boolean canRemove = false;
+        private boolean started = false;
+
+        private void revalidate() {
+            if (this.epoch != OffHeapSkipListDict.this.epoch) {
+                this.next = this.started
+                        ? OffHeapSkipListDict.this.findHigher(this.lastKey)
+                        : OffHeapSkipListDict.this.linkAt(OffHeapSkipListDict.this.head, 0);
+                this.epoch = OffHeapSkipListDict.this.epoch;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            this.revalidate();
+            return this.next != 0;
+        }
+
+        @Override
+        public Entry<Long, byte[]> next() {
+            this.revalidate();
+            if (this.next == 0) {
+                throw new NoSuchElementException();
+            }
+            if (OffHeapSkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            OffHeapSkipListDict dict = OffHeapSkipListDict.this;
+            final long key = dict.keyAt(this.next);
+            byte[] value = dict.readValue(dict.valueAt(this.next));
+            this.lastKey = key;
+            this.started = true;
+            this.canRemove = true;
+            this.next = dict.linkAt(this.next, 0);
+            return new SimpleEntry<Long, byte[]>(key, value) {
+                @Override
+                public byte[] setValue(byte[] value) {
+                    OffHeapSkipListDict.this.put(key, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (!this.canRemove) {
+                throw new IllegalStateException();
+            }
+            if (OffHeapSkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            OffHeapSkipListDict.this.remove(this.lastKey);
+            this.expectedModCount = OffHeapSkipListDict.this.modCount;
+            this.canRemove = false;
+        }
+    }
+}
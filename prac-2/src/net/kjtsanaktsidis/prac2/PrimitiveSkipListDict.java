@@ -0,0 +1,330 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.util.*;
+
+/**
+ * The skip list behind IntSkipListDict and LongSkipListDict.
+ * Keys are stored and compared as primitive longs, which an int widens to without changing its order, so one
+ * implementation serves both; the subclasses only add the typed methods and say how to box a key.
+ * The typed methods never box a key or go through compareTo()/equals().
+ */
+public abstract class PrimitiveSkipListDict<K extends Number, V> extends AbstractMap<K, V> {
+
+    /**
+     * Data container for the dictionary.
+     * Each Tower contains a list of forward links; the end of each level is a null link rather than a sentinel, so
+     * there is never a need to compare against a sentinel's key
+     */
+    static final class Tower<V> {
+
+        final long key;
+        V value;
+        Tower<V>[] flinks;
+
+        Tower(long key, V value, int height) {
+            this.key = key;
+            this.value = value;
+            this.flinks = newLinks(height);
+        }
+
+        private void grow(int newHeight) {
+            Tower<V>[] newflinks = newLinks(newHeight);
+            System.arraycopy(this.flinks, 0, newflinks, 0, this.flinks.length);
+            this.flinks = newflinks;
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <V> Tower<V>[] newLinks(int height) {
+        return (Tower<V>[]) new Tower<?>[height];
+    }
+
+    /**
+     * The boxed key type; boxed keys of any other type are never in the dictionary
+     */
+    private final Class<K> keyType;
+
+    private final Tower<V> leftSentinel;
+    private int count;
+
+    /**
+     * Number of levels that actually have a tower on them, i.e. the height of the tallest tower
+     */
+    private int levels;
+
+    /**
+     * Scratch buffer the search fills in with the rightmost tower to the left of the key on each level.
+     * It is always as tall as the left sentinel
+     */
+    private Tower<V>[] searchPath;
+
+    /**
+     * Incremented whenever a key is added or removed, so iterators can tell the dictionary changed under them
+     */
+    private int modCount;
+
+    /**
+     * @postcondition an empty left sentinel tower is set up
+     */
+    PrimitiveSkipListDict(Class<K> keyType) {
+        this.keyType = keyType;
+        this.leftSentinel = new Tower<>(0, null, 1);
+        this.searchPath = newLinks(1);
+        this.count = 0;
+        this.levels = 0;
+    }
+
+    /**
+     * @return A key as the subclass's boxed type, for the Map interface
+     */
+    abstract K box(long key);
+
+    /**
+     * Searches for a key, optionally recording the search path on the way down
+     *
+     * @param key The key to search for
+     * @param path If not null, path[i] is set to the rightmost tower on level i that is smaller than key, for every
+     *             level in use. Only guaranteed to be filled in completely if the key is not found
+     * @return The tower the key is found in, or null if it does not exist
+     * @complexity amortized O(log N)
+     */
+    private Tower<V> findTower(long key, Tower<V>[] path) {
+        Tower<V> curNode = this.leftSentinel;
+        //The first tower known to be bigger than key (or the end of the list); no need to compare it again lower down
+        Tower<V> lastBigger = null;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            Tower<V> next = curNode.flinks[i];
+            while (next != lastBigger) {
+                if (next.key < key) {
+                    curNode = next;
+                    next = curNode.flinks[i];
+                }
+                else if (next.key == key) {
+                    return next;
+                }
+                else {
+                    lastBigger = next;
+                }
+            }
+            if (path != null) {
+                path[i] = curNode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fills in the search path for a key all the way to the bottom, even if the key is found on the way
+     *
+     * @param key The key to search for
+     * @return The tower the key is found in, or null if it does not exist
+     * @complexity amortized O(log N)
+     */
+    private Tower<V> findPredecessors(long key) {
+        Tower<V> curNode = this.leftSentinel;
+        Tower<V> lastBigger = null;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            Tower<V> next = curNode.flinks[i];
+            while (next != lastBigger) {
+                if (next.key < key) {
+                    curNode = next;
+                    next = curNode.flinks[i];
+                }
+                else {
+                    lastBigger = next;
+                }
+            }
+            this.searchPath[i] = curNode;
+        }
+        return lastBigger != null && lastBigger.key == key ? lastBigger : null;
+    }
+
+    /**
+     * Returns the value stored against this key, or null if the key does not exist
+     *
+     * @complexity amortized O(log N); allocates nothing
+     */
+    final V doGet(long key) {
+        Tower<V> searchResult = this.findTower(key, null);
+        return searchResult == null ? null : searchResult.value;
+    }
+
+    /**
+     * Attempts to find whether or not a tower with the specified key exists
+     *
+     * @complexity amortized O(log N); allocates nothing
+     */
+    final boolean doContainsKey(long key) {
+        return this.findTower(key, null) != null;
+    }
+
+    /**
+     * Inserts the specified key/value pair
+     *
+     * @return The old value stored against this key, or null if this key is inserted for the first time
+     * @complexity amortized O(log N); the only allocation is the new tower if the key is not already there
+     */
+    final V doPut(long key, V value) {
+        Tower<V> keyNode = this.findTower(key, this.searchPath);
+        if (keyNode != null) {
+            V oldval = keyNode.value;
+            keyNode.value = value;
+            return oldval;
+        }
+
+        int height = LevelGenerator.DEFAULT.generate();
+        Tower<V> nTower = new Tower<>(key, value, height);
+        if (height > this.leftSentinel.flinks.length) {
+            this.leftSentinel.grow(height);
+            Tower<V>[] newPath = newLinks(height);
+            System.arraycopy(this.searchPath, 0, newPath, 0, this.searchPath.length);
+            this.searchPath = newPath;
+        }
+        //The search never touched the levels above the ones in use, but there the sentinel is on our left
+        for (int i = this.levels; i < height; i++) {
+            this.searchPath[i] = this.leftSentinel;
+        }
+        if (height > this.levels) {
+            this.levels = height;
+        }
+
+        for (int i = 0; i < height; i++) {
+            nTower.flinks[i] = this.searchPath[i].flinks[i];
+            this.searchPath[i].flinks[i] = nTower;
+        }
+        this.count++;
+        this.modCount++;
+        return null;
+    }
+
+    /**
+     * Deletes the specified key, if it exists
+     *
+     * @return The previous value stored against this key, or null if it did not exist
+     * @complexity amortized O(log N); allocates nothing
+     */
+    final V doRemove(long key) {
+        Tower<V> searchResult = this.findPredecessors(key);
+        if (searchResult == null) {
+            return null;
+        }
+        for (int i = 0; i < searchResult.flinks.length; i++) {
+            this.searchPath[i].flinks[i] = searchResult.flinks[i];
+        }
+        while (this.levels > 0 && this.leftSentinel.flinks[this.levels - 1] == null) {
+            this.levels--;
+        }
+        this.count--;
+        this.modCount++;
+        return searchResult.value;
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * Deletes all elements from this dictionary
+     *
+     * @complexity O(1) since we just cut every level off the left sentinel
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.leftSentinel.flinks, null);
+        this.count = 0;
+        this.levels = 0;
+        this.modCount++;
+    }
+
+    //Boxed versions of the above for the Map interface
+
+    @Override
+    public V get(Object key) {
+        return this.keyType.isInstance(key) ? this.doGet(((Number) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.keyType.isInstance(key) && this.doContainsKey(((Number) key).longValue());
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return this.doPut(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return this.keyType.isInstance(key) ? this.doRemove(((Number) key).longValue()) : null;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return PrimitiveSkipListDict.this.count;
+            }
+        };
+    }
+
+    /**
+     * Walks the bottom level in key order. The entries it returns write through to the towers.
+     * Fails fast if a key is added or removed other than through the iterator itself
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private Tower<V> next = PrimitiveSkipListDict.this.leftSentinel.flinks[0];
+        private Tower<V> lastReturned = null;
+        private int expectedModCount = PrimitiveSkipListDict.this.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            if (PrimitiveSkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            this.lastReturned = this.next;
+            this.next = this.next.flinks[0];
+            final Tower<V> tower = this.lastReturned;
+            return new SimpleEntry<K, V>(PrimitiveSkipListDict.this.box(tower.key), tower.value) {
+                @Override
+                public V setValue(V value) {
+                    tower.value = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (PrimitiveSkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            PrimitiveSkipListDict.this.doRemove(this.lastReturned.key);
+            this.expectedModCount = PrimitiveSkipListDict.this.modCount;
+            this.lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Wraps any Map, passing every call through to it and recording get/containsKey, put, remove and subMap calls to a
+ * Trace as they're made, for replaying later with TraceReplayer.
+ *
+ * It's as thread-safe as the map it wraps. Recording takes the trace writer's lock, so with many threads the recorder
+ * serializes them a little, and slows each call down by roughly the cost of encoding the record.
+ * Only calls made through the methods above are recorded. The views are read-only, so nothing can change the map
+ * without being recorded; size() and iterating the views work but go unrecorded.
+ */
+public class RecordingMap<K, V> extends AbstractMap<K, V> {
+
+    private final Map<K, V> map;
+    private final Trace.Writer<K> trace;
+
+    public RecordingMap(Map<K, V> map, Trace.Writer<K> trace) {
+        this.map = map;
+        this.trace = trace;
+    }
+
+    private void record(byte op, K key, K to) {
+        try {
+            this.trace.record(op, key, to);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not write to the trace", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        this.record(Trace.GET, (K) key, null);
+        return this.map.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        this.record(Trace.GET, (K) key, null);
+        return this.map.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        this.record(Trace.PUT, key, null);
+        return this.map.put(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        this.record(Trace.REMOVE, (K) key, null);
+        return this.map.remove(key);
+    }
+
+    /**
+     * Looks up a range of keys, recording it as a RANGE
+     *
+     * @return A read-only view of the keys from fromKey (inclusive) to toKey (exclusive)
+     * @throws UnsupportedOperationException If the wrapped map isn't a SortedMap
+     */
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (!(this.map instanceof SortedMap)) {
+            throw new UnsupportedOperationException("Ranges need a SortedMap");
+        }
+        this.record(Trace.RANGE, fromKey, toKey);
+        return Collections.unmodifiableSortedMap(((SortedMap<K, V>) this.map).subMap(fromKey, toKey));
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(this.map).entrySet();
+    }
+}
@@ -1,190 +1,564 @@
 package net.kjtsanaktsidis.prac2;
 
-import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.Consumer;
 
-public class SkipListDict<K extends Comparable<? super K>, T> implements Map<K, T> {
+public class SkipListDict<K, T> extends AbstractMap<K, T> implements NavigableMap<K, T> {
 
     /**
      * Data container for the dictionary.
-     * Each Tower contains a list of forward and backward links
+     * Each Tower contains a list of forward links, plus a single backward link on the bottom level. Removing a tower
+     * uses the predecessors recorded by the search instead of backward links on every level, which saves an array
+     * per tower.
      * We need the tower and it's elements to be package-private so that we can get at them from the SVG renderer
+     * Towers are handed out directly as the entries of entrySet(), so iterating doesn't allocate anything and
+     * setValue() writes straight through to the dictionary.
+     * Each link also knows its span: how many places along the bottom level it jumps. That's what makes positional
+     * access O(log N). Links on the bottom level always span 1, so only the levels above it need storing.
      */
-     class Tower {
+     class Tower implements Entry<K, T> {
 
         Tower flinks[];
-        Tower blinks[];
+        Tower prev;
+        //spans[i - 1] is the span of flinks[i]; null for towers of height 1, which is half of them
+        int spans[];
         K key;
         T value;
         boolean isSentinel;
-        int searchPathFollowed = -1;
 
-        @SuppressWarnings({"unchecked"})
         public Tower(K key, T value, int height) {
-            this.flinks = (Tower[]) Array.newInstance(Tower.class, height);
-            this.blinks = (Tower[]) Array.newInstance(Tower.class, height);
+            this(height, false);
             this.key = key;
             this.value = value;
-            this.isSentinel = false;
         }
 
-        @SuppressWarnings({"unchecked"})
         public Tower(int height, boolean isSentinel) {
-            this.flinks = (Tower[]) Array.newInstance(Tower.class, height);
-            this.blinks = (Tower[]) Array.newInstance(Tower.class, height);
+            this.flinks = newLinks(height);
+            this.spans = height > 1 ? new int[height - 1] : null;
             this.isSentinel = isSentinel;
         }
 
-        @SuppressWarnings({"unchecked"})
         private void grow(int newHeight) {
-            Tower[] newflinks = (Tower[]) Array.newInstance(Tower.class, newHeight);
-            Tower[] newblinks = (Tower[]) Array.newInstance(Tower.class, newHeight);
+            Tower[] newflinks = newLinks(newHeight);
             System.arraycopy(this.flinks, 0, newflinks, 0, this.flinks.length);
-            System.arraycopy(this.blinks, 0, newblinks, 0, this.blinks.length);
             this.flinks = newflinks;
-            this.blinks = newblinks;
+            int[] newspans = new int[newHeight - 1];
+            if (this.spans != null) {
+                System.arraycopy(this.spans, 0, newspans, 0, this.spans.length);
+            }
+            this.spans = newspans;
+        }
+
+        private void shrink(int newHeight) {
+            this.flinks = Arrays.copyOf(this.flinks, newHeight);
+            this.spans = newHeight > 1 ? Arrays.copyOf(this.spans, newHeight - 1) : null;
+        }
+
+        /**
+         * @return The number of places along the bottom level that flinks[level] jumps
+         */
+        int span(int level) {
+            return level == 0 ? 1 : this.spans[level - 1];
+        }
+
+        private void setSpan(int level, int span) {
+            if (level > 0) {
+                this.spans[level - 1] = span;
+            }
+        }
+
+        @Override
+        public K getKey() {
+            return this.key;
+        }
+
+        @Override
+        public T getValue() {
+            return this.value;
+        }
+
+        //not a structural modification, so it doesn't upset any iterators
+        @Override
+        public T setValue(T value) {
+            T oldval = this.value;
+            this.value = value;
+            return oldval;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(this.key, e.getKey()) && Objects.equals(this.value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.key) ^ Objects.hashCode(this.value);
+        }
+
+        @Override
+        public String toString() {
+            return this.key + "=" + this.value;
         }
     }
 
+    /**
+     * Allocates an array of tower links. Tower is an inner class of a generic class, so the array has to be created
+     * with wildcards and cast; this is still a plain allocation, unlike going through reflection
+     */
+    @SuppressWarnings({"unchecked"})
+    private Tower[] newLinks(int height) {
+        return (Tower[]) new SkipListDict<?, ?>.Tower[height];
+    }
+
     Tower leftSentinel;
     Tower rightSentinel;
     private int count;
+    private final Comparator<? super K> comparator;
+    private final LevelGenerator levelGenerator;
+
+    /**
+     * Whether tower heights are kept balanced by promoting and demoting towers rather than picked at random; see
+     * deterministic()
+     */
+    private final boolean deterministic;
+
+    /**
+     * Number of structural modifications (towers added or removed) so far, which lets the view iterators fail fast
+     * instead of walking off into towers that have been unlinked
+     */
+    private int modCount;
+
+    /**
+     * Number of levels that actually have a tower on them, i.e. the height of the tallest tower.
+     * The sentinels are always at least one level taller than this, so searches start here rather than at the top
+     * of the sentinel tower.
+     */
+    private int levels;
+
+    /**
+     * Scratch buffer the search fills in with the rightmost tower to the left of the key on each level.
+     * put() links new towers in straight from it, so inserting only takes one descent and no allocation.
+     * It is always as tall as the sentinels.
+     */
+    private Tower[] searchPath;
+
+    /**
+     * The position of each tower in searchPath, counting the left sentinel as 0 and the first key as 1
+     */
+    private int[] searchRanks;
+
+    /**
+     * The whole dictionary as an unbounded view; the navigation methods and the keySet/values/entrySet views are all
+     * implemented in terms of it
+     */
+    private final SubMap all;
 
     /**
      * Public constructor for the dictionary
+     * Keys are ordered by their natural ordering, so they must implement Comparable
      *
      * @postcondition a left/right sentinel tower are set up and connected
      */
     public SkipListDict()
     {
+        this(null);
+    }
+
+    /**
+     * Public constructor for the dictionary with a custom key ordering
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     * @postcondition a left/right sentinel tower are set up and connected
+     */
+    public SkipListDict(Comparator<? super K> comparator)
+    {
+        this(comparator, LevelGenerator.DEFAULT);
+    }
+
+    /**
+     * Public constructor for the dictionary with a custom key ordering and tower heights
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     * @param levelGenerator Picks the height of each new tower, e.g. a seeded one for reproducible runs
+     * @postcondition a left/right sentinel tower are set up and connected
+     */
+    public SkipListDict(Comparator<? super K> comparator, LevelGenerator levelGenerator)
+    {
+        this(comparator, levelGenerator, false);
+    }
+
+    private SkipListDict(Comparator<? super K> comparator, LevelGenerator levelGenerator, boolean deterministic)
+    {
+        this.comparator = comparator;
+        this.levelGenerator = levelGenerator;
+        this.deterministic = deterministic;
+
         //Set up L/Rsentinels
+        //The right sentinel never links to anything, so it doesn't need any levels of its own
         this.leftSentinel = new Tower(1, true);
-        this.rightSentinel = new Tower(1, true);
+        this.rightSentinel = new Tower(0, true);
         this.leftSentinel.flinks[0] = this.rightSentinel;
-        this.rightSentinel.blinks[0] = this.leftSentinel;
+        this.rightSentinel.prev = this.leftSentinel;
+        this.searchPath = newLinks(1);
+        this.searchRanks = new int[1];
 
         this.count = 0;
+        this.levels = 0;
+        this.all = new SubMap(null, false, null, false, false);
     }
 
     /**
-     * Returns a tower that either contains a key, or sits directly to the left of where the tower
-     * with said key would be if it were inserted (if the key does not exist)
+     * Creates a deterministic (1-2-3) skip list, ordered by the keys' natural ordering; see deterministic(Comparator)
      *
-     * @param key The key to search for
-     * @return A reference to the tower with this key or to the left if key does not exist
+     * @return The new, empty dictionary
+     */
+    public static <K extends Comparable<? super K>, T> SkipListDict<K, T> deterministic() {
+        return deterministic(null);
+    }
+
+    /**
+     * Creates a deterministic skip list, after Munro, Papadakis and Sedgewick's 1-2-3 skip list. No random numbers
+     * are involved: between any two neighbouring towers that reach above some level, there are always one, two or
+     * three towers that stop exactly at that level. put() adds each new tower one level high and promotes the middle
+     * tower of any gap that fills up to four; remove() demotes towers, or borrows one from the next gap along, when a
+     * gap empties. That's a 2-3-4 tree laid out as a skip list, so no key order can make it unbalanced: there are at
+     * most log2(N + 1) levels, and a search makes at most 3 moves right on each of them.
+     * The price is a little extra work on every update, and more tall towers than with p = 1/2, so more memory.
+     *
+     * @param comparator The comparator used to order keys, or null to use their natural ordering
+     * @return The new, empty dictionary
+     */
+    public static <K, T> SkipListDict<K, T> deterministic(Comparator<? super K> comparator) {
+        return new SkipListDict<>(comparator, LevelGenerator.DEFAULT, true);
+    }
+
+    /**
+     * @return Whether this is a deterministic skip list, made by deterministic()
+     */
+    public boolean isDeterministic() {
+        return this.deterministic;
+    }
+
+    /**
+     * @return A counter that changes whenever towers are added or removed, along with the links and heights that change
+     *         with them, but not when only a value changes. Renderers use it to tell whether their picture is stale
+     * @complexity O(1)
+     */
+    public int structureVersion() {
+        return this.modCount;
+    }
+
+    /**
+     * Compares two keys using the comparator if one was supplied, or their natural ordering otherwise
+     *
+     * @return <0, 0 or >0 as a is less than, equal to or greater than b
      */
-    private Tower findTowerOrLeft(K key) {
-        return this.findTowerOrLeft(key, this.leftSentinel);
+    @SuppressWarnings({"unchecked"})
+    int compare(K a, K b) {
+        if (this.comparator == null) {
+            return ((Comparable<? super K>) a).compareTo(b);
+        }
+        else {
+            return this.comparator.compare(a, b);
+        }
     }
 
     /**
      * This method searches for a key, returning the tower that key is found in or null if key does not exist.
-     * It is implemented via a call to findTowerOrLeft()
+     * It is implemented via a call to findTower()
      *
      * @param key The key to search for
      * @return The tower the key is found in, or null if it does not exist
      */
     private Tower findTowerOrNull(K key) {
-        Tower lmostOrVal = this.findTowerOrLeft(key);
-        if (!lmostOrVal.isSentinel && lmostOrVal.key.equals(key)) {
-            return lmostOrVal;
-        }
-        else {
-            return null;
-        }
+        return this.findTower(key, null, null);
     }
 
     /**
-     * Implementation of findTowerOrLeft() that begins searching at a particular tower on the left
+     * Searches for a key, optionally recording the search path on the way down.
+     * This is the one search routine shared by get(), containsKey(), put() and remove()
      *
      * @param key The key to search for
-     * @param curNode The node to beigin searching at
-     * @return The node a key is found in, or if not found, a tower immedietly to the left of it
+     * @param path If not null, path[i] is set to the rightmost tower on level i that is smaller than key, for every
+     *             level in use. The search then always carries on to the bottom level, even once key is found, so
+     *             that the path holds every predecessor of the key's tower
+     * @param ranks Must be given along with path; ranks[i] is set to the position of path[i]
+     * @return The tower the key is found in, or null if it does not exist
      * @complexity amortized O(log N) since it slides sideways and downwards through the towers
      */
-    private Tower findTowerOrLeft(K key, Tower curNode) {
-        //Check if key is us first, to skip the loop
-        if (!curNode.isSentinel && curNode.key.equals(key)) {
-            return curNode;
-        }
+    private Tower findTower(K key, Tower[] path, int[] ranks) {
+        Tower curNode = this.leftSentinel;
+        int rank = 0;
+        //The tower we last compared against and found to be bigger than key. Dropping down a level very often
+        //leaves us looking at that same tower again, so remembering it means each tower is only compared once
+        Tower lastBigger = this.rightSentinel;
+        //The key's tower, if we carry on down after finding it
+        Tower found = null;
 
-        //Search from top to bottom of the links in this node to see if It's smaller than key
-        for (int i = curNode.flinks.length - 1; i >= 0; i--) {
-            if (!curNode.flinks[i].isSentinel) {
-                if (curNode.flinks[i].key.compareTo(key) <= 0) {
-                    curNode.searchPathFollowed = i;
-                    //this node is less than (or equal to) our key, use it as search base
-                    return this.findTowerOrLeft(key, curNode.flinks[i]);
+        //Slide right along each level while the next tower is smaller than key, then drop down a level
+        for (int i = this.levels - 1; i >= 0; i--) {
+            Tower next = curNode.flinks[i];
+            while (next != lastBigger) {
+                int cmp = this.compare(next.key, key);
+                if (cmp < 0) {
+                    if (path != null) {
+                        rank += curNode.span(i);
+                    }
+                    curNode = next;
+                    next = curNode.flinks[i];
                 }
+                else {
+                    if (cmp == 0) {
+                        if (path == null) {
+                            //found it- no need to go any further down
+                            return next;
+                        }
+                        found = next;
+                    }
+                    lastBigger = next;
+                }
+            }
+            if (path != null) {
+                path[i] = curNode;
+                ranks[i] = rank;
             }
         }
-        //If we got here, we must be the largest node that is smaller than key, and key is not found
-        return curNode;
+        //If we got here, curNode is the largest tower smaller than key
+        return found;
     }
 
     /**
-     * Constructs a new tower in the correct position for the input key.
-     * @param leftNode The node immedietly to the left of where we will insert
-     * @param targetKey The key to add to this tower
+     * Constructs a new tower and links it in after the towers in the search path
+     * @param height How tall to make the tower; put() gets one from the level generator
+     * @param path The search path for the new tower's key as filled in by findTower(); the towers on each level that will
+     *             sit immediately to the left of the new tower. If the sentinel has to grow, this.searchPath is
+     *             replaced with a taller copy of path
+     * @param ranks The positions of the towers in path, likewise replaced by a copy in this.searchRanks
      * @return The created tower
-     * @postcondition A new tower is linked in at a poisson-generated height and at the specified position
+     * @postcondition A new tower is linked in at the given height and at the specified position
      *                The links in this tower are set up to point to neighbours it can see
-     * @complexity amortized O(log N): since we do a diagonal left/down search for nodes that will point to the new node
-     *              linking the new tower to its neighbours is also proportional to the height, which is amortized
-     *              O(log N) also (due to RNG distribution)
+     *                The span of every link passing over the new tower, or landing on it, is updated
+     * @complexity amortized O(log N): linking the new tower to its neighbours is proportional to its height, which is
+     *              amortized O(log N) (due to RNG distribution). No searching is done here
      */
-    @SuppressWarnings({"unchecked"})
-    private Tower makeTower(Tower leftNode, K targetKey) {
-        //create a tower to the right of leftNode
-        int height = PoissonGenerator.generate();
+    private Tower makeTower(int height, Tower[] path, int[] ranks) {
         Tower nTower = new Tower(height, false);
 
         //fist things first- do we need to boost up the sentinel tower height?
         if (height >= this.leftSentinel.flinks.length) {
-            int oldheight = this.leftSentinel.flinks.length;
-            this.leftSentinel.grow(height + 1);
-            this.rightSentinel.grow(height + 1);
-            for (int i = oldheight; i < height + 1; i++) {
-                this.leftSentinel.flinks[i] = this.rightSentinel;
-                this.rightSentinel.blinks[i] = this.leftSentinel;
-            }
+            //path is always this.searchPath, which grows along with the sentinel
+            this.growSentinel(height + 1);
+            path = this.searchPath;
+            ranks = this.searchRanks;
         }
-
-        //Now we need to join up all the links on the new tower.
-        //to do this, we want:
-        //      Every tower to the left of the new node that connects to a tower on the right of the new node at a level
-        //      <= the new node height
-        //can do this by following each link from leftsentinel to rightsentinel at a level <= height
-        Tower[] updateTargets = (Tower[])Array.newInstance(Tower.class, height);
-        Tower lSearchNode = this.leftSentinel;
-        for (int i = height-1; i >= 0; i--) {
-            //get the tower we will need to update on this level
-            //"keep looping while i havn't hit something to the right of where this node should be
-            while (!lSearchNode.flinks[i].isSentinel &&
-                    lSearchNode.flinks[i].key.compareTo(targetKey) < 0) {
-                lSearchNode = lSearchNode.flinks[i];
-            }
-            updateTargets[i] = lSearchNode;
+        //The search never touched the levels above the ones in use, but there the sentinel is on our left
+        for (int i = this.levels; i < path.length; i++) {
+            path[i] = this.leftSentinel;
+            ranks[i] = 0;
+        }
+        if (height > this.levels) {
+            this.levels = height;
         }
 
-        //We now have an array of update targets on our LHS we need to make point to us
+        //The search path holds the towers on our LHS on each level we need to make point to us
+        int rank = ranks[0] + 1;
         for (int i = 0; i < height; i++) {
-            nTower.flinks[i] = updateTargets[i].flinks[i];
-            updateTargets[i].flinks[i].blinks[i] = nTower;
-            nTower.blinks[i] = updateTargets[i];
-            updateTargets[i].flinks[i] = nTower;
+            nTower.flinks[i] = path[i].flinks[i];
+            path[i].flinks[i] = nTower;
+            //we split the old link in two; the far end has moved one place further away
+            nTower.setSpan(i, ranks[i] + path[i].span(i) + 1 - rank);
+            path[i].setSpan(i, rank - ranks[i]);
+        }
+        //and the links on the levels above us now pass over one more tower
+        for (int i = height; i < path.length; i++) {
+            path[i].setSpan(i, path[i].span(i) + 1);
+        }
+        nTower.prev = path[0];
+        nTower.flinks[0].prev = nTower;
+
+        return nTower;
+    }
+
+    /**
+     * Makes the left sentinel taller, and the search path with it, which always has to be as tall as the sentinel
+     *
+     * @param height The new height of the sentinel
+     * @postcondition the new sentinel levels link straight to the right sentinel, past all this.count towers, and the
+     *                search path has the left sentinel on them
+     */
+    private void growSentinel(int height) {
+        int oldheight = this.leftSentinel.flinks.length;
+        this.leftSentinel.grow(height);
+        Tower[] newPath = newLinks(height);
+        System.arraycopy(this.searchPath, 0, newPath, 0, oldheight);
+        int[] newRanks = new int[height];
+        System.arraycopy(this.searchRanks, 0, newRanks, 0, oldheight);
+        for (int i = oldheight; i < height; i++) {
+            this.leftSentinel.flinks[i] = this.rightSentinel;
+            this.leftSentinel.setSpan(i, this.count + 1);
+            newPath[i] = this.leftSentinel;
         }
+        this.searchPath = newPath;
+        this.searchRanks = newRanks;
+    }
 
+    /**
+     * Adds a new tower for a key that isn't in the dictionary yet, straight after the towers in this.searchPath
+     *
+     * @param height How tall to make the tower. Deterministic skip lists ignore this: new towers start out one level
+     *               high there, and then the gaps are rebalanced
+     * @return The new tower, with the key and value filled in
+     * @postcondition the search path still holds the rightmost tower smaller than key on each level, with its rank
+     */
+    private Tower insertTower(int height, K key, T value) {
+        Tower nTower = this.makeTower(this.deterministic ? 1 : height, this.searchPath, this.searchRanks);
+        nTower.key = key;
+        nTower.value = value;
+        this.count++;
+        this.modCount++;
+        if (this.deterministic) {
+            this.splitFullGaps(this.searchRanks[0] + 1);
+        }
         return nTower;
     }
 
+    //Deterministic (1-2-3) skip lists
+    //The gap under a link on level l >= 1 is the towers exactly l levels high that it passes over, i.e. one fewer
+    //than the number of links on level l - 1 it spans. Every gap up to the top level in use holds 1, 2 or 3 towers.
+
+    /**
+     * Adds a tower that's exactly level levels high to the level above, by splitting the link over it on that level
+     *
+     * @param tower The tower to promote, which is exactly level levels high
+     * @param pred The tower whose link on level passes over it
+     * @param level The level to add the tower to
+     * @return How many places along the bottom level tower is from pred
+     * @complexity O(1): it walks along the gap below pred's link, which holds at most four towers
+     */
+    private int promote(Tower tower, Tower pred, int level) {
+        int span = 0;
+        for (Tower t = pred; t != tower; t = t.flinks[level - 1]) {
+            span += t.span(level - 1);
+        }
+        tower.grow(level + 1);
+        tower.flinks[level] = pred.flinks[level];
+        tower.setSpan(level, pred.span(level) - span);
+        pred.flinks[level] = tower;
+        pred.setSpan(level, span);
+        return span;
+    }
+
+    /**
+     * Takes a tower out of its top level, joining the links either side of it
+     *
+     * @param tower The tower to demote, which is exactly level + 1 levels high
+     * @param pred The tower whose link on level lands on it
+     * @param level The tower's top level
+     */
+    private void demote(Tower tower, Tower pred, int level) {
+        pred.flinks[level] = tower.flinks[level];
+        pred.setSpan(level, pred.span(level) + tower.span(level));
+        tower.shrink(level);
+    }
+
+    /**
+     * Restores the gap sizes after a new tower one level high has been linked in: a gap that now holds four towers
+     * has its second one promoted, leaving gaps of one and two below, and one more tower in the gap above, which
+     * may in turn be full
+     *
+     * @param rank The position of the new tower
+     * @postcondition every gap holds 1-3 towers, and this.searchPath still holds the rightmost tower smaller than the
+     *                new one on each level
+     * @complexity O(log N) worst case, O(1) amortized: each level only costs a walk along one gap
+     */
+    private void splitFullGaps(int rank) {
+        for (int l = 1; l <= this.levels; l++) {
+            Tower left = this.searchPath[l];
+            Tower right = left.flinks[l];
+            Tower second = left.flinks[l - 1].flinks[l - 1];
+            if (second == right || second.flinks[l - 1] == right || second.flinks[l - 1].flinks[l - 1] == right) {
+                //no more than three
+                return;
+            }
+            if (l == this.levels) {
+                //a new top level; the sentinel has to stay taller than every tower
+                this.levels++;
+                if (this.leftSentinel.flinks.length <= this.levels) {
+                    this.growSentinel(this.levels + 1);
+                }
+            }
+            int span = this.promote(second, left, l);
+            if (this.searchRanks[l] + span < rank) {
+                this.searchPath[l] = second;
+                this.searchRanks[l] += span;
+            }
+        }
+    }
+
+    /**
+     * Restores the gap sizes after a tower has been taken out of a gap on some level, which may have left it empty.
+     * Like a B-tree, an empty gap first tries to borrow a tower from the gap next to it under the same link on the
+     * level above, which just moves one tower up and another down. If that gap only has the one tower, the tower
+     * between them is demoted instead, merging the two into a gap of two, and the gap it came out of on the level
+     * above might now be empty in turn
+     *
+     * @param level The level of the gap that lost a tower; this.searchPath must hold the rightmost tower before it
+     *              on every level in use
+     * @complexity O(log N) worst case, O(1) amortized
+     */
+    private void fillEmptyGaps(int level) {
+        for (int l = level; l <= this.levels; l++) {
+            Tower left = l < this.levels ? this.searchPath[l] : this.leftSentinel;
+            Tower right = left.flinks[l];
+            if (left.flinks[l - 1] != right) {
+                //not empty
+                return;
+            }
+            if (left == this.leftSentinel && right == this.rightSentinel) {
+                //nothing at all on this level any more; remove() takes it out of use
+                return;
+            }
+            if (!right.isSentinel && right.flinks.length == l + 1) {
+                //right is in a gap itself, so the gap on its other side is under the same link on the level above
+                Tower first = right.flinks[l - 1];
+                boolean spare = first.flinks[l - 1] != right.flinks[l];
+                this.demote(right, left, l);
+                if (spare) {
+                    this.promote(first, left, l);
+                    return;
+                }
+            }
+            else {
+                //right is too tall, so left must be in a gap, and the gap before left is the one to use
+                Tower before = l + 1 < this.levels ? this.searchPath[l + 1] : this.leftSentinel;
+                while (before.flinks[l] != left) {
+                    before = before.flinks[l];
+                }
+                Tower last = before.flinks[l - 1];
+                boolean spare = last.flinks[l - 1] != left;
+                while (last.flinks[l - 1] != left) {
+                    last = last.flinks[l - 1];
+                }
+                this.demote(left, before, l);
+                if (spare) {
+                    this.promote(last, before, l);
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Inserts the specified key/value pair
      *
      * @param key What it says on the box
      * @param value ^^
      * @return The old value stored against this key, or null if this key is inserted for the first time
-     * @complexity O(log N) whether or not a new key is created. A call to findTowerOrLeft (O(log N)) is needed,
+     * @complexity O(log N) whether or not a new key is created. A single call to findTower (O(log N)) is needed,
      *              plus possibly a call to makeTower (which is also O(log N)). Hence amortized O(log N)
      * @postcondition: A new tower is created + linked for this key/value pair, or if key iexsits, an existing tower
      *                  has it's value changed
@@ -192,20 +566,19 @@ public class SkipListDict<K extends Comparable<? super K>, T> implements Map<K,
      */
     @Override
     public T put(K key, T value) {
-        //find the insertion point
-        Tower insertionPoint = this.findTowerOrLeft(key);
+        if (key == null) {
+            throw new NullPointerException();
+        }
         //Do we need to insert, or just update?
-        Tower keyNode;
+        Tower keyNode = this.findTower(key, this.searchPath, this.searchRanks);
         T oldval;
-        if (insertionPoint != this.leftSentinel && insertionPoint.key.equals(key)) {
-            keyNode = insertionPoint;
+        if (keyNode != null) {
             oldval = keyNode.value;
         }
         else {
-            //need to create + link
-            keyNode = makeTower(insertionPoint, key);
+            //need to create + link, straight after the towers the search went through
+            keyNode = this.insertTower(this.levelGenerator.generate(), key, value);
             oldval = null;
-            this.count++;
         }
 
         keyNode.key = key;
@@ -213,6 +586,88 @@ public class SkipListDict<K extends Comparable<? super K>, T> implements Map<K,
         return oldval;
     }
 
+    /**
+     * Appends entries that are already in key order after everything in the dictionary, without searching for where
+     * each one goes. The rightmost tower on each level is kept in the search path, and each new tower is simply
+     * linked in after those on its levels and becomes the new rightmost one.
+     *
+     * @param entries The entries to add, in strictly increasing key order, all bigger than any key already here
+     * @param balanced If true, the i-th tower in the dictionary gets its height from LevelGenerator.balancedHeight(i)
+     *                 (for p = 1/2, 1 + the number of trailing zero bits in i), which gives a perfectly balanced list
+     *                 with the same proportion of towers on each level as random heights would. Otherwise heights
+     *                 are random, as with put(). Deterministic skip lists ignore this and rebalance as they go, which
+     *                 only ever touches the right-hand end of the list
+     * @throws IllegalArgumentException if a key is not bigger than the one before it (or than the last key already
+     *                                  in the dictionary); the entries before it will have been added
+     * @complexity O(log N) to find the end of the list, then O(1) amortized per entry, with one comparison each
+     * @postcondition the dictionary holds its old entries followed by the new ones
+     */
+    public void bulkLoad(Iterator<? extends Entry<? extends K, ? extends T>> entries, boolean balanced) {
+        //walk down the right-hand edge to find the rightmost tower on each level
+        Tower curNode = this.leftSentinel;
+        int rank = 0;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            while (curNode.flinks[i] != this.rightSentinel) {
+                rank += curNode.span(i);
+                curNode = curNode.flinks[i];
+            }
+            this.searchPath[i] = curNode;
+            this.searchRanks[i] = rank;
+        }
+        Tower last = this.rightSentinel.prev;
+
+        while (entries.hasNext()) {
+            Entry<? extends K, ? extends T> entry = entries.next();
+            K key = entry.getKey();
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (last != this.leftSentinel && this.compare(last.key, key) >= 0) {
+                throw new IllegalArgumentException("Keys must be in strictly increasing order, but " + key
+                        + " came after " + last.key);
+            }
+            int height = balanced ? this.levelGenerator.balancedHeight(this.count + 1) : this.levelGenerator.generate();
+            last = this.insertTower(height, key, entry.getValue());
+            //we're now the rightmost tower on each of our levels
+            for (int i = 0; i < last.flinks.length; i++) {
+                this.searchPath[i] = last;
+                this.searchRanks[i] = this.count;
+            }
+        }
+    }
+
+    /**
+     * Builds a dictionary from entries that are already sorted by their keys' natural ordering
+     *
+     * @param entries The entries, in strictly increasing key order
+     * @return The new dictionary, with random tower heights as if built with put()
+     * @throws IllegalArgumentException if the keys are not in strictly increasing order
+     * @complexity O(N)
+     */
+    public static <K extends Comparable<? super K>, T> SkipListDict<K, T> fromSorted(
+            Iterator<? extends Entry<? extends K, ? extends T>> entries) {
+        SkipListDict<K, T> dict = new SkipListDict<>();
+        dict.bulkLoad(entries, false);
+        return dict;
+    }
+
+    /**
+     * Builds a dictionary from entries that are already sorted by the given comparator
+     *
+     * @param entries The entries, in strictly increasing key order
+     * @param comparator The ordering the entries are sorted in, or null for their natural ordering
+     * @param balanced Whether to give the towers perfectly balanced heights rather than random ones
+     * @return The new dictionary
+     * @throws IllegalArgumentException if the keys are not in strictly increasing order
+     * @complexity O(N)
+     */
+    public static <K, T> SkipListDict<K, T> fromSorted(Iterator<? extends Entry<? extends K, ? extends T>> entries,
+                                                       Comparator<? super K> comparator, boolean balanced) {
+        SkipListDict<K, T> dict = new SkipListDict<>(comparator);
+        dict.bulkLoad(entries, balanced);
+        return dict;
+    }
+
     /**
      * Returns the value stored against this key, or null if the key does not exist
      *
@@ -237,27 +692,54 @@ public class SkipListDict<K extends Comparable<? super K>, T> implements Map<K,
      *
      * @param key The key to search for and delete
      * @return The previous value stored against this key, or null if it did not exist
-     * @complexity amortized O(log N) since it relies on findTowerOrNull(); backlinks ensure that only work proportional
-     *              to tower height (also O(log N)) needs to be done in addition to this.
+     * @complexity amortized O(log N) since it relies on findTower(); the search path it fills in ensures that only
+     *              work proportional to tower height (also O(log N)) needs to be done in addition to this.
      * @postcondition The tower with this key in it is removed, and neighbouring links updated to reflect this fact
      *                The count is adjusted
      */
     @Override
     @SuppressWarnings({"unchecked"})
     public T remove(Object key) {
-        Tower searchResult = this.findTowerOrNull((K)key);
+        Tower searchResult = this.findTower((K)key, this.searchPath, this.searchRanks);
         if (searchResult == null) {
             return null;
         }
         else {
-            //update the flinks + blinks on search result
-            for (int i = 0; i < searchResult.flinks.length; i++) {
-                Tower left = searchResult.blinks[i];
-                Tower right = searchResult.flinks[i];
-                left.flinks[i] = right;
-                right.blinks[i] = left;
+            int height = searchResult.flinks.length;
+            if (this.deterministic && height > 1) {
+                //Taking a tall tower out would leave a hole in the gaps on every level. The tower just before it is
+                //always one level high, so move that one into its place instead, links and all; the only gap that
+                //loses a tower is then the one that tower came from
+                Tower pred = searchResult.prev;
+                for (int i = 1; i < height; i++) {
+                    this.searchPath[i].flinks[i] = pred;
+                    this.searchPath[i].setSpan(i, this.searchPath[i].span(i) - 1);
+                }
+                pred.flinks = searchResult.flinks;
+                pred.spans = searchResult.spans;
+            }
+            else {
+                //the search path holds the tower to the left of search result on each of its levels
+                for (int i = 0; i < height; i++) {
+                    this.searchPath[i].flinks[i] = searchResult.flinks[i];
+                    this.searchPath[i].setSpan(i, this.searchPath[i].span(i) + searchResult.span(i) - 1);
+                }
+            }
+            //links above it now pass over one tower fewer; above the levels in use that's just the sentinel's
+            for (int i = height; i < this.searchPath.length; i++) {
+                Tower left = i < this.levels ? this.searchPath[i] : this.leftSentinel;
+                left.setSpan(i, left.span(i) - 1);
+            }
+            searchResult.flinks[0].prev = searchResult.prev;
+            if (this.deterministic) {
+                this.fillEmptyGaps(1);
+            }
+            //if that was the tallest tower, searches can start lower down from now on
+            while (this.levels > 0 && this.leftSentinel.flinks[this.levels - 1] == this.rightSentinel) {
+                this.levels--;
             }
             this.count--;
+            this.modCount++;
             return searchResult.value;
         }
     }
@@ -328,61 +810,1511 @@ public class SkipListDict<K extends Comparable<? super K>, T> implements Map<K,
         //just link up the left and right snetinels; everything else will get GC'd
         for (int i = 0; i < this.leftSentinel.flinks.length; i++) {
             this.leftSentinel.flinks[i] = this.rightSentinel;
-            this.rightSentinel.blinks[i] = this.leftSentinel;
+            this.leftSentinel.setSpan(i, 1);
         }
+        this.rightSentinel.prev = this.leftSentinel;
         this.count = 0;
+        this.levels = 0;
+        this.modCount++;
     }
 
-    void resetSearchPathTrace() {
-        Tower cTower = this.leftSentinel;
-        while (cTower != null) {
-            cTower.searchPathFollowed = -1;
-            cTower = cTower.flinks[0];
+    /**
+     * Record of the links a search followed, for drawing the search path.
+     * Tracing is kept out of the normal search so that a get() doesn't have to write anything to the towers
+     */
+    public class SearchTrace {
+
+        private final boolean found;
+        //the towers the search moved right from, and which level link it followed to do so
+        private final IdentityHashMap<Tower, Integer> levelsFollowed;
+
+        private SearchTrace(boolean found, IdentityHashMap<Tower, Integer> levelsFollowed) {
+            this.found = found;
+            this.levelsFollowed = levelsFollowed;
         }
-    }
 
-    //These methods are only here to satisfy java's Map interface, not the requirements for the prac
-    //So i won't bother documenting them
+        /**
+         * @return Whether the key searched for was found
+         */
+        public boolean isFound() {
+            return this.found;
+        }
 
-    @Override
-    public void putAll(Map<? extends K, ? extends T> m) {
-        for (Entry<? extends K, ? extends T> ent : m.entrySet()) {
-            this.put(ent.getKey(), ent.getValue());
+        /**
+         * @return The number of links followed to the right during the search
+         */
+        public int getHopCount() {
+            return this.levelsFollowed.size();
+        }
+
+        /**
+         * @param tower A tower in the dictionary
+         * @return The level of the link the search followed out of this tower, or -1 if it didn't leave from here
+         */
+        int levelFollowed(Tower tower) {
+            Integer level = this.levelsFollowed.get(tower);
+            return level == null ? -1 : level;
+        }
+
+        /**
+         * @return Each tower the search moved right from, with the level of the link it followed
+         */
+        Map<Tower, Integer> hops() {
+            return Collections.unmodifiableMap(this.levelsFollowed);
         }
     }
 
-    @Override
-    public SortedSet<K> keySet() {
-        SortedSet<K> rSet = new TreeSet<>();
-        Tower cTower = this.leftSentinel;
-        while (!cTower.flinks[0].isSentinel) {
-            rSet.add(cTower.flinks[0].key);
-            cTower = cTower.flinks[0];
+    /**
+     * Searches for a key the same way get() does, recording the path taken
+     *
+     * @param key The key to search for
+     * @return A trace of the search path, which can be handed to the SVG renderer
+     * @complexity amortized O(log N) like any search, plus the cost of recording each hop
+     */
+    public SearchTrace traceSearch(K key) {
+        IdentityHashMap<Tower, Integer> levelsFollowed = new IdentityHashMap<>();
+        Tower curNode = this.leftSentinel;
+        Tower lastBigger = this.rightSentinel;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            Tower next = curNode.flinks[i];
+            while (next != lastBigger) {
+                int cmp = this.compare(next.key, key);
+                if (cmp < 0) {
+                    levelsFollowed.put(curNode, i);
+                    curNode = next;
+                    next = curNode.flinks[i];
+                }
+                else if (cmp == 0) {
+                    levelsFollowed.put(curNode, i);
+                    return new SearchTrace(true, levelsFollowed);
+                }
+                else {
+                    lastBigger = next;
+                }
+            }
         }
-        return rSet;
+        return new SearchTrace(false, levelsFollowed);
     }
 
-    @Override
-    public Collection<T> values() {
-        ArrayList<T> rList = new ArrayList<>();
-        Tower cTower = this.leftSentinel;
-        while (!cTower.flinks[0].isSentinel) {
-            rList.add(cTower.flinks[0].value);
-            cTower = cTower.flinks[0];
+    //Finger search
+
+    /**
+     * Creates a cursor, which remembers where its last search went so that searching for a nearby key again is cheap
+     *
+     * @return A new cursor, which starts out with its first search going from the top like any other
+     * @complexity O(1)
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A finger into the dictionary. Towers have no backward links above the bottom level, so instead of climbing up
+     * from the last tower found, a cursor keeps the whole search path from its last search: the rightmost tower
+     * smaller than the key on each level. The next search climbs that path from the bottom until it reaches a level
+     * whose link straddles the new key, and only searches downwards from there. For keys d places away from the
+     * last one, that is O(log d) levels up and down instead of O(log N).
+     * Adding or removing keys other than through this cursor makes its path stale; the next search then just starts
+     * from the top again. A cursor must only be used from one thread at a time, like the dictionary itself.
+     */
+    public class Cursor {
+
+        private Tower[] path;
+        private int[] ranks;
+        //the modCount the path is valid for, or -1 if there isn't a path yet
+        private int expectedModCount;
+
+        private Cursor() {
+            this.path = newLinks(SkipListDict.this.searchPath.length);
+            this.ranks = new int[this.path.length];
+            this.expectedModCount = -1;
+        }
+
+        /**
+         * Searches for a key, starting from the lowest level of the last search path that straddles it, and leaves
+         * the path to it behind for next time
+         *
+         * @return The tower the key is found in, or null if it does not exist
+         * @complexity amortized O(log d), where d is how many places the key is from the last one searched for
+         */
+        private Tower seek(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            int levels = SkipListDict.this.levels;
+            Tower curNode = SkipListDict.this.leftSentinel;
+            Tower lastBigger = SkipListDict.this.rightSentinel;
+            Tower found = null;
+            int rank = 0;
+            int top = levels - 1;
+
+            if (this.expectedModCount == SkipListDict.this.modCount) {
+                //Climb until the path's tower on some level is smaller than key, and its link lands on one that
+                //isn't. Going up, the towers on the path only get further left and the ones they link to further
+                //right, so once either side is known to be fine it stays fine. Tall towers turn up on several
+                //levels in a row, so only compare against each one once
+                boolean leftBelow = false;
+                boolean rightAbove = false;
+                Tower left = null;
+                Tower right = null;
+                int i = 0;
+                for (; i < levels; i++) {
+                    if (!leftBelow && this.path[i] != left) {
+                        left = this.path[i];
+                        leftBelow = left.isSentinel || SkipListDict.this.compare(left.key, key) < 0;
+                    }
+                    if (!rightAbove && this.path[i].flinks[i] != right) {
+                        right = this.path[i].flinks[i];
+                        rightAbove = right.isSentinel || SkipListDict.this.compare(right.key, key) >= 0;
+                    }
+                    if (leftBelow && rightAbove) {
+                        break;
+                    }
+                }
+                if (i < levels) {
+                    //no need to look along this level; carry on down from here
+                    curNode = this.path[i];
+                    rank = this.ranks[i];
+                    lastBigger = curNode.flinks[i];
+                    if (!lastBigger.isSentinel && SkipListDict.this.compare(lastBigger.key, key) == 0) {
+                        found = lastBigger;
+                    }
+                    top = i - 1;
+                }
+            }
+            else if (this.path.length < SkipListDict.this.searchPath.length) {
+                this.path = newLinks(SkipListDict.this.searchPath.length);
+                this.ranks = new int[this.path.length];
+            }
+
+            //the same descent as findTower() from here on
+            for (int i = top; i >= 0; i--) {
+                Tower next = curNode.flinks[i];
+                while (next != lastBigger) {
+                    int cmp = SkipListDict.this.compare(next.key, key);
+                    if (cmp < 0) {
+                        rank += curNode.span(i);
+                        curNode = next;
+                        next = curNode.flinks[i];
+                    }
+                    else {
+                        if (cmp == 0) {
+                            found = next;
+                        }
+                        lastBigger = next;
+                    }
+                }
+                this.path[i] = curNode;
+                this.ranks[i] = rank;
+            }
+            this.expectedModCount = SkipListDict.this.modCount;
+            return found;
+        }
+
+        /**
+         * Gets the value stored against a key, like SkipListDict.get(), but searching from where this cursor last was
+         *
+         * @param key The key to look up
+         * @return The value stored against this key, or null if it does not exist
+         * @complexity amortized O(log d), where d is how many places the key is from the last one searched for
+         */
+        public T get(K key) {
+            Tower tower = this.seek(key);
+            return tower == null ? null : tower.value;
+        }
+
+        /**
+         * @param key The key to look for
+         * @return Whether the key is in the dictionary
+         * @complexity amortized O(log d), as for get()
+         */
+        public boolean containsKey(K key) {
+            return this.seek(key) != null;
+        }
+
+        /**
+         * Inserts or replaces a key/value pair like SkipListDict.put(), key object included, but finds where it goes
+         * from where this cursor last was. Inserting in ascending order through one cursor, e.g. appending to a time
+         * series, never searches from the top
+         *
+         * @param key The key to store the value against
+         * @param value The value
+         * @return The old value stored against this key, or null if this key is inserted for the first time
+         * @complexity amortized O(log d) to find the key. Inserting a tower is still O(log N), since the spans of the
+         *              links passing over it on every level need updating
+         * @postcondition the cursor's path is still valid afterwards, so it can carry straight on from here
+         */
+        public T put(K key, T value) {
+            Tower tower = this.seek(key);
+            if (tower != null) {
+                T oldval = tower.value;
+                tower.key = key;
+                tower.value = value;
+                return oldval;
+            }
+
+            //makeTower() works on the dictionary's own search path, and grows it if the sentinel has to grow
+            int levels = SkipListDict.this.levels;
+            System.arraycopy(this.path, 0, SkipListDict.this.searchPath, 0, levels);
+            System.arraycopy(this.ranks, 0, SkipListDict.this.searchRanks, 0, levels);
+            SkipListDict.this.insertTower(SkipListDict.this.levelGenerator.generate(), key, value);
+
+            //the search path now leads to the new tower on every level
+            if (this.path.length < SkipListDict.this.searchPath.length) {
+                this.path = newLinks(SkipListDict.this.searchPath.length);
+                this.ranks = new int[this.path.length];
+            }
+            System.arraycopy(SkipListDict.this.searchPath, 0, this.path, 0, SkipListDict.this.levels);
+            System.arraycopy(SkipListDict.this.searchRanks, 0, this.ranks, 0, SkipListDict.this.levels);
+            this.expectedModCount = SkipListDict.this.modCount;
+            return null;
         }
-        return rList;
     }
 
-    @Override
-    public Set<Entry<K, T>> entrySet() {
-        Set<Entry<K,T>> rSet = new HashSet<>();
-        Tower cTower = this.leftSentinel;
-        while (!cTower.flinks[0].isSentinel) {
-            Entry<K, T> e = new AbstractMap.SimpleImmutableEntry<>
-                    (cTower.flinks[0].key, cTower.flinks[0].value);
-            rSet.add(e);
-            cTower = cTower.flinks[0];
+    //Batches
+
+    /**
+     * Looks up a batch of keys in one pass. The batch is sorted first, so each search carries on from where the last
+     * one left off, as with a Cursor, instead of starting again from the top
+     *
+     * @param keys The keys to look up, in any order
+     * @return The keys that were found, mapped to their values, in key order
+     * @complexity O(B log B) to sort a batch of B keys, then amortized O(B log(N/B)) for the searches: the ones that
+     *              land close together only climb a little way up before going back down
+     */
+    public Map<K, T> getAll(Collection<? extends K> keys) {
+        List<K> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted, this.comparator);
+        Map<K, T> found = new LinkedHashMap<>();
+        Cursor cursor = new Cursor();
+        for (K key : sorted) {
+            Tower tower = cursor.seek(key);
+            if (tower != null) {
+                found.put(tower.key, tower.value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Inserts or replaces every entry of another map, in key order, using one Cursor for the whole batch.
+     * A SortedMap in the same order as this dictionary is used as it is; anything else is sorted first
+     *
+     * @param m The entries to put
+     * @complexity amortized O(B log(N/B)) to find where a batch of B entries goes, plus O(B log B) to sort them if
+     *              they aren't already. Each new tower still costs O(log N) to link in
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends T> m) {
+        Collection<? extends Entry<? extends K, ? extends T>> entries = m.entrySet();
+        if (!(m instanceof SortedMap && Objects.equals(((SortedMap<?, ?>) m).comparator(), this.comparator))) {
+            List<Entry<? extends K, ? extends T>> sorted = new ArrayList<>(entries);
+            Collections.sort(sorted, new Comparator<Entry<? extends K, ? extends T>>() {
+                @Override
+                public int compare(Entry<? extends K, ? extends T> a, Entry<? extends K, ? extends T> b) {
+                    return SkipListDict.this.compare(a.getKey(), b.getKey());
+                }
+            });
+            entries = sorted;
+        }
+        Cursor cursor = new Cursor();
+        for (Entry<? extends K, ? extends T> ent : entries) {
+            cursor.put(ent.getKey(), ent.getValue());
+        }
+    }
+
+    //Positional access
+
+    /**
+     * Gets the entry at a position in key order. The entry is the dictionary's own, so setValue() on it writes through
+     *
+     * @param index The position, from 0 for the smallest key to size() - 1 for the biggest
+     * @return The entry at that position
+     * @throws IndexOutOfBoundsException if there is no such position
+     * @complexity amortized O(log N): the same descent as a search, but steering by the link spans instead of keys
+     */
+    public Entry<K, T> getByIndex(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+        }
+        //the left sentinel is at position 0, so the entry we want is at index + 1
+        int target = index + 1;
+        Tower curNode = this.leftSentinel;
+        int position = 0;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            while (position + curNode.span(i) <= target) {
+                position += curNode.span(i);
+                curNode = curNode.flinks[i];
+            }
+        }
+        return curNode;
+    }
+
+    /**
+     * Finds the position of a key in key order
+     *
+     * @param key The key to look for
+     * @return The key's index, as used by getByIndex(), if it is in the dictionary. Otherwise
+     *         (-(insertion point) - 1), like Collections.binarySearch(), where the insertion point is the index the key
+     *         would have if it were added
+     * @complexity amortized O(log N)
+     */
+    public int indexOf(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        int[] rank = new int[1];
+        Tower pred = this.findPredecessor(key, rank);
+        Tower next = pred.flinks[0];
+        if (!next.isSentinel && this.compare(next.key, key) == 0) {
+            return rank[0];
+        }
+        return -rank[0] - 1;
+    }
+
+    /**
+     * Counts the keys in a range, without visiting them
+     *
+     * @param from The lowest key to count (inclusive)
+     * @param to The key to count up to (exclusive)
+     * @return The number of keys k with from <= k < to
+     * @throws IllegalArgumentException if from > to
+     * @complexity amortized O(log N): one search for each end of the range
+     */
+    public int countRange(K from, K to) {
+        if (from == null || to == null) {
+            throw new NullPointerException();
+        }
+        if (this.compare(from, to) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        int[] rank = new int[1];
+        this.findPredecessor(to, rank);
+        int below = rank[0];
+        this.findPredecessor(from, rank);
+        return below - rank[0];
+    }
+
+    //NavigableMap
+
+    /**
+     * Finds the rightmost tower whose key is smaller than the given one
+     *
+     * @param rank If not null, rank[0] is set to the position of the tower found, which is also the number of keys
+     *             smaller than the given one
+     * @return That tower, or the left sentinel if every key is at least as big
+     * @complexity amortized O(log N); each tower is compared against at most once, as in findTower()
+     */
+    private Tower findPredecessor(K key, int[] rank) {
+        Tower curNode = this.leftSentinel;
+        Tower lastBigger = this.rightSentinel;
+        int position = 0;
+        for (int i = this.levels - 1; i >= 0; i--) {
+            Tower next = curNode.flinks[i];
+            while (next != lastBigger) {
+                if (this.compare(next.key, key) < 0) {
+                    position += curNode.span(i);
+                    curNode = next;
+                    next = curNode.flinks[i];
+                }
+                else {
+                    lastBigger = next;
+                }
+            }
+        }
+        if (rank != null) {
+            rank[0] = position;
+        }
+        return curNode;
+    }
+
+    /**
+     * Finds the tower nearest to a key in the given direction, e.g. GT|EQ for the ceiling
+     *
+     * @param key The key to search for, or null to find the first (GT) or last (LT) tower
+     * @param rel Some combination of GT or LT, and EQ
+     * @return The tower, or null if there isn't one
+     * @complexity amortized O(log N): one descent, then at most two steps along the bottom level
+     */
+    private Tower findNear(K key, int rel) {
+        if (key == null) {
+            Tower end = (rel & LT) != 0 ? this.rightSentinel.prev : this.leftSentinel.flinks[0];
+            return end.isSentinel ? null : end;
+        }
+        Tower pred = this.findPredecessor(key, null);
+        Tower next = pred.flinks[0];
+        boolean equal = !next.isSentinel && this.compare(next.key, key) == 0;
+        Tower result;
+        if (equal && (rel & EQ) != 0) {
+            result = next;
+        }
+        else if ((rel & LT) != 0) {
+            result = pred;
+        }
+        else {
+            result = equal ? next.flinks[0] : next;
+        }
+        return result.isSentinel ? null : result;
+    }
+
+    /**
+     * Finds where a walk along the bottom level should start to visit the keys from a given one onwards, for the
+     * renderers
+     *
+     * @param key The smallest key wanted, or null for the first tower
+     * @return The first tower with a key at least as big, or the right sentinel if there isn't one
+     * @complexity amortized O(log N)
+     */
+    Tower ceilingTower(K key) {
+        Tower tower = this.findNear(key, GT | EQ);
+        return tower == null ? this.rightSentinel : tower;
+    }
+
+    /**
+     * @return An immutable snapshot of a tower's entry, or null for no tower
+     */
+    private Entry<K, T> exportEntry(Tower tower) {
+        return tower == null ? null : new SimpleImmutableEntry<>(tower.key, tower.value);
+    }
+
+    //Relations for findNear(); GT|EQ is ceiling, LT|EQ is floor
+    private static final int GT = 0;
+    private static final int EQ = 1;
+    private static final int LT = 2;
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return this.all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return this.all.lastKey();
+    }
+
+    @Override
+    public Entry<K, T> lowerEntry(K key) {
+        return this.all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return this.all.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, T> floorEntry(K key) {
+        return this.all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return this.all.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, T> ceilingEntry(K key) {
+        return this.all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return this.all.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, T> higherEntry(K key) {
+        return this.all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return this.all.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, T> firstEntry() {
+        return this.all.firstEntry();
+    }
+
+    @Override
+    public Entry<K, T> lastEntry() {
+        return this.all.lastEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollFirstEntry() {
+        return this.all.pollFirstEntry();
+    }
+
+    @Override
+    public Entry<K, T> pollLastEntry() {
+        return this.all.pollLastEntry();
+    }
+
+    /**
+     * Live view of the keys in a range. Finding either end of it is a single O(log N) descent; iterating it then
+     * just walks along the bottom level
+     */
+    @Override
+    public NavigableMap<K, T> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return this.all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, T> headMap(K toKey, boolean inclusive) {
+        return this.all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, T> tailMap(K fromKey, boolean inclusive) {
+        return this.all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, T> subMap(K fromKey, K toKey) {
+        return this.all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, T> headMap(K toKey) {
+        return this.all.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, T> tailMap(K fromKey) {
+        return this.all.tailMap(fromKey);
+    }
+
+    /**
+     * Live view of the dictionary in reverse order, which walks backwards along the bottom level's prev links
+     */
+    @Override
+    public NavigableMap<K, T> descendingMap() {
+        return this.all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return this.all.keySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return this.all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return this.all.descendingKeySet();
+    }
+
+    @Override
+    public Collection<T> values() {
+        return this.all.values();
+    }
+
+    @Override
+    public Set<Entry<K, T>> entrySet() {
+        return this.all.entrySet();
+    }
+
+    /**
+     * A live view of the keys between two (optional) bounds, in ascending or descending order.
+     * Everything is delegated back to the dictionary after checking the bounds
+     */
+    class SubMap extends AbstractMap<K, T> implements NavigableMap<K, T> {
+
+        //null bounds mean unbounded on that side
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean isUnbounded() {
+            return this.lo == null && this.hi == null;
+        }
+
+        private boolean tooLow(K key) {
+            if (this.lo == null) {
+                return false;
+            }
+            int cmp = SkipListDict.this.compare(key, this.lo);
+            return cmp < 0 || (cmp == 0 && !this.loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (this.hi == null) {
+                return false;
+            }
+            int cmp = SkipListDict.this.compare(key, this.hi);
+            return cmp > 0 || (cmp == 0 && !this.hiInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !this.tooLow(key) && !this.tooHigh(key);
+        }
+
+        private void checkKeyBounds(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (!this.inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        /**
+         * @return The tower with the smallest key in range, or null if there isn't one
+         */
+        private Tower loTower() {
+            Tower tower = SkipListDict.this.findNear(this.lo, this.lo == null || this.loInclusive ? GT | EQ : GT);
+            return tower == null || this.tooHigh(tower.key) ? null : tower;
+        }
+
+        /**
+         * @return The tower with the largest key in range, or null if there isn't one
+         */
+        private Tower hiTower() {
+            Tower tower = SkipListDict.this.findNear(this.hi, this.hi == null || this.hiInclusive ? LT | EQ : LT);
+            return tower == null || this.tooLow(tower.key) ? null : tower;
+        }
+
+        private Tower firstTower() {
+            return this.descending ? this.hiTower() : this.loTower();
+        }
+
+        private Tower lastTower() {
+            return this.descending ? this.loTower() : this.hiTower();
+        }
+
+        /**
+         * @param rel The relation in the order of this view
+         * @return The tower in range closest to key in the given direction, or null if there isn't one
+         */
+        private Tower nearTower(K key, int rel) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (this.descending) {
+                rel ^= LT;
+            }
+            if (this.tooLow(key)) {
+                return (rel & LT) != 0 ? null : this.loTower();
+            }
+            if (this.tooHigh(key)) {
+                return (rel & LT) != 0 ? this.hiTower() : null;
+            }
+            Tower tower = SkipListDict.this.findNear(key, rel);
+            return tower == null || !this.inRange(tower.key) ? null : tower;
+        }
+
+        private K nearKey(K key, int rel) {
+            Tower tower = this.nearTower(key, rel);
+            return tower == null ? null : tower.key;
+        }
+
+        private Entry<K, T> pollEntry(boolean first) {
+            Tower tower = first ? this.firstTower() : this.lastTower();
+            if (tower == null) {
+                return null;
+            }
+            Entry<K, T> entry = SkipListDict.this.exportEntry(tower);
+            SkipListDict.this.remove(tower.key);
+            return entry;
+        }
+
+        /**
+         * Makes a view of part of this view. Bounds are given in the order of this view, and must lie inside it
+         */
+        private SubMap newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (this.descending) {
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (this.lo != null) {
+                if (fromKey == null) {
+                    fromKey = this.lo;
+                    fromInclusive = this.loInclusive;
+                }
+                else {
+                    int cmp = SkipListDict.this.compare(fromKey, this.lo);
+                    if (cmp < 0 || (cmp == 0 && !this.loInclusive && fromInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            if (this.hi != null) {
+                if (toKey == null) {
+                    toKey = this.hi;
+                    toInclusive = this.hiInclusive;
+                }
+                else {
+                    int cmp = SkipListDict.this.compare(toKey, this.hi);
+                    if (cmp > 0 || (cmp == 0 && !this.hiInclusive && toInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, this.descending);
+        }
+
+        Iterator<Entry<K, T>> entryIterator() {
+            return new SubMapIterator();
+        }
+
+        /**
+         * @param view One of KEYS, VALUES or ENTRIES
+         * @param collection The view itself, for its iterator
+         * @return A spliterator over the view that splits along the upper levels, or a sequential one for
+         *         descending views since the upper levels only link forwards
+         */
+        <E> Spliterator<E> spliterator(int view, Collection<E> collection) {
+            if (this.descending) {
+                int characteristics = Spliterator.ORDERED;
+                if (view != VALUES) {
+                    characteristics |= Spliterator.DISTINCT | Spliterator.NONNULL;
+                }
+                return Spliterators.spliteratorUnknownSize(collection.iterator(), characteristics);
+            }
+            Tower first = this.loTower();
+            if (first == null) {
+                Tower end = SkipListDict.this.rightSentinel;
+                return new ViewSpliterator<>(end, end, SkipListDict.this.leftSentinel, -1, 0, view, true);
+            }
+            //only the whole dictionary knows its size up front; the size of anything else is just an upper bound
+            return new ViewSpliterator<>(first, this.hiTower().flinks[0], SkipListDict.this.leftSentinel,
+                    SkipListDict.this.levels - 1, SkipListDict.this.count, view, this.isUnbounded());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean containsKey(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) && SkipListDict.this.containsKey(key);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public T get(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) ? SkipListDict.this.get(key) : null;
+        }
+
+        @Override
+        public T put(K key, T value) {
+            this.checkKeyBounds(key);
+            return SkipListDict.this.put(key, value);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public T remove(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return this.inRange((K) key) ? SkipListDict.this.remove(key) : null;
+        }
+
+        /**
+         * @complexity O(1) for the whole dictionary, otherwise amortized O(log N) since the positions of the first and
+         *              last towers in range can be worked out from the link spans
+         */
+        @Override
+        public int size() {
+            if (this.isUnbounded()) {
+                return SkipListDict.this.count;
+            }
+            Tower first = this.loTower();
+            if (first == null) {
+                return 0;
+            }
+            return SkipListDict.this.indexOf(this.hiTower().key) - SkipListDict.this.indexOf(first.key) + 1;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.loTower() == null;
+        }
+
+        @Override
+        public void clear() {
+            if (this.isUnbounded()) {
+                SkipListDict.this.clear();
+                return;
+            }
+            for (Iterator<Entry<K, T>> it = this.entryIterator(); it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = SkipListDict.this.comparator;
+            if (this.descending) {
+                return Collections.reverseOrder(cmp);
+            }
+            return cmp;
+        }
+
+        @Override
+        public K firstKey() {
+            Tower tower = this.firstTower();
+            if (tower == null) {
+                throw new NoSuchElementException();
+            }
+            return tower.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Tower tower = this.lastTower();
+            if (tower == null) {
+                throw new NoSuchElementException();
+            }
+            return tower.key;
+        }
+
+        @Override
+        public Entry<K, T> lowerEntry(K key) {
+            return SkipListDict.this.exportEntry(this.nearTower(key, LT));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return this.nearKey(key, LT);
+        }
+
+        @Override
+        public Entry<K, T> floorEntry(K key) {
+            return SkipListDict.this.exportEntry(this.nearTower(key, LT | EQ));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return this.nearKey(key, LT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> ceilingEntry(K key) {
+            return SkipListDict.this.exportEntry(this.nearTower(key, GT | EQ));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return this.nearKey(key, GT | EQ);
+        }
+
+        @Override
+        public Entry<K, T> higherEntry(K key) {
+            return SkipListDict.this.exportEntry(this.nearTower(key, GT));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return this.nearKey(key, GT);
+        }
+
+        @Override
+        public Entry<K, T> firstEntry() {
+            return SkipListDict.this.exportEntry(this.firstTower());
+        }
+
+        @Override
+        public Entry<K, T> lastEntry() {
+            return SkipListDict.this.exportEntry(this.lastTower());
+        }
+
+        @Override
+        public Entry<K, T> pollFirstEntry() {
+            return this.pollEntry(true);
+        }
+
+        @Override
+        public Entry<K, T> pollLastEntry() {
+            return this.pollEntry(false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+            int cmp = SkipListDict.this.compare(fromKey, toKey);
+            if (this.descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return this.newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public SubMap headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+            return this.newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SubMap subMap(K fromKey, K toKey) {
+            return this.subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SubMap headMap(K toKey) {
+            return this.headMap(toKey, false);
+        }
+
+        @Override
+        public SubMap tailMap(K fromKey) {
+            return this.tailMap(fromKey, true);
+        }
+
+        @Override
+        public SubMap descendingMap() {
+            return new SubMap(this.lo, this.loInclusive, this.hi, this.hiInclusive, !this.descending);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet(this.descendingMap());
+        }
+
+        @Override
+        public Collection<T> values() {
+            return new Values(this);
+        }
+
+        @Override
+        public Set<Entry<K, T>> entrySet() {
+            return new EntrySet(this);
+        }
+
+        /**
+         * Walks the towers in range in the order of the view, along the bottom level: forwards through flinks[0],
+         * or backwards through prev. Only the first tower needs a search.
+         * The towers themselves are returned as the entries. Adding or removing keys other than through the iterator
+         * makes it throw ConcurrentModificationException
+         */
+        class SubMapIterator implements Iterator<Entry<K, T>> {
+
+            private Tower next;
+            private Tower lastReturned;
+            private int expectedModCount;
+
+            SubMapIterator() {
+                this.next = SubMap.this.firstTower();
+                this.expectedModCount = SkipListDict.this.modCount;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Entry<K, T> next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                if (SkipListDict.this.modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                this.lastReturned = this.next;
+                Tower step = SubMap.this.descending ? this.next.prev : this.next.flinks[0];
+                if (step.isSentinel
+                        || (SubMap.this.descending ? SubMap.this.tooLow(step.key) : SubMap.this.tooHigh(step.key))) {
+                    step = null;
+                }
+                this.next = step;
+                return this.lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                if (SkipListDict.this.modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                SkipListDict.this.remove(this.lastReturned.key);
+                this.expectedModCount = SkipListDict.this.modCount;
+                this.lastReturned = null;
+            }
+        }
+    }
+
+    //What a ViewSpliterator hands out for each tower
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    //Splitting at one of only one or two towers gives lopsided halves, so a spliterator looks for a level with more
+    private static final int SPLIT_TOWERS = 32;
+
+    /**
+     * Spliterator over the run of towers on the bottom level from cur up to, but not including, fence.
+     * Splitting never walks the bottom level. It carries on the search for cur from the last split, goes down to the
+     * highest level with at least SPLIT_TOWERS towers strictly inside the run, and splits at the middle one of those.
+     * Towers of any one height are spread evenly through the list, so the halves come out roughly even, and since each
+     * level has about twice as many towers as the one above only a handful of them get looked at.
+     */
+    class ViewSpliterator<E> implements Spliterator<E> {
+
+        private Tower cur;
+        private final Tower fence;
+        //a tower at or before cur that is taller than level, which the next split searches onwards from
+        private Tower row;
+        private int level;
+        private long estimate;
+        private final int view;
+        //whether estimate is the exact number of towers left
+        private boolean exact;
+        private final int expectedModCount;
+
+        ViewSpliterator(Tower cur, Tower fence, Tower row, int level, long estimate, int view, boolean exact) {
+            this.cur = cur;
+            this.fence = fence;
+            this.row = row;
+            this.level = level;
+            this.estimate = estimate;
+            this.view = view;
+            this.exact = exact;
+            this.expectedModCount = SkipListDict.this.modCount;
+        }
+
+        private boolean isBeforeFence(Tower tower) {
+            if (tower == this.fence || tower.isSentinel) {
+                return false;
+            }
+            return this.fence.isSentinel || SkipListDict.this.compare(tower.key, this.fence.key) < 0;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        private E element(Tower tower) {
+            switch (this.view) {
+                case KEYS:
+                    return (E) tower.key;
+                case VALUES:
+                    return (E) tower.value;
+                default:
+                    return (E) tower;
+            }
+        }
+
+        /**
+         * @complexity amortized O(log N) over all the splits of a spliterator, like a single search for each end
+         */
+        @Override
+        public Spliterator<E> trySplit() {
+            if (this.cur == this.fence) {
+                return null;
+            }
+            //not worth going down to the bottom level; there are only a couple of towers between each one on level 1
+            for (; this.level > 0; this.level--) {
+                //catch the row up with cur on this level
+                Tower next = this.row.flinks[this.level];
+                while (!next.isSentinel && SkipListDict.this.compare(next.key, this.cur.key) <= 0) {
+                    this.row = next;
+                    next = next.flinks[this.level];
+                }
+
+                int inside = 0;
+                for (Tower t = next; this.isBeforeFence(t); t = t.flinks[this.level]) {
+                    inside++;
+                }
+                if (inside >= SPLIT_TOWERS || (inside > 0 && this.level == 1)) {
+                    Tower mid = next;
+                    for (int i = 0; i < inside / 2; i++) {
+                        mid = mid.flinks[this.level];
+                    }
+                    ViewSpliterator<E> prefix = new ViewSpliterator<>(this.cur, mid, this.row, this.level,
+                            this.estimate >>> 1, this.view, false);
+                    this.cur = mid;
+                    this.row = mid;
+                    this.estimate -= prefix.estimate;
+                    this.exact = false;
+                    return prefix;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (SkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.cur == this.fence) {
+                return false;
+            }
+            Tower tower = this.cur;
+            this.cur = tower.flinks[0];
+            if (this.estimate > 0) {
+                this.estimate--;
+            }
+            action.accept(this.element(tower));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Tower tower = this.cur;
+            this.cur = this.fence;
+            this.estimate = 0;
+            for (; tower != this.fence; tower = tower.flinks[0]) {
+                action.accept(this.element(tower));
+            }
+            if (SkipListDict.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = Spliterator.ORDERED;
+            if (this.view != VALUES) {
+                characteristics |= Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+            }
+            if (this.exact) {
+                characteristics |= Spliterator.SIZED;
+            }
+            return characteristics;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public Comparator<? super E> getComparator() {
+            switch (this.view) {
+                case KEYS:
+                    return (Comparator<? super E>) SkipListDict.this.comparator;
+                case ENTRIES:
+                    return (Comparator<? super E>) new Comparator<Entry<K, T>>() {
+                        @Override
+                        public int compare(Entry<K, T> a, Entry<K, T> b) {
+                            return SkipListDict.this.compare(a.getKey(), b.getKey());
+                        }
+                    };
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Live view of the keys of a SubMap
+     */
+    class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final SubMap map;
+
+        KeySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.entryIterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<K> spliterator() {
+            return this.map.spliterator(KEYS, this);
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!this.map.containsKey(o)) {
+                return false;
+            }
+            this.map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return this.map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return this.map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return this.map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return this.map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            Entry<K, T> entry = this.map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Entry<K, T> entry = this.map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return this.map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return this.map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return this.map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(this.map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return this.descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(this.map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(this.map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(this.map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * Live view of the values of a SubMap
+     */
+    class Values extends AbstractCollection<T> {
+
+        private final SubMap map;
+
+        Values(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<Entry<K, T>> it = this.map.entryIterator();
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return this.map.spliterator(VALUES, this);
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+        }
+    }
+
+    /**
+     * Live view of the entries of a SubMap
+     */
+    class EntrySet extends AbstractSet<Entry<K, T>> {
+
+        private final SubMap map;
+
+        EntrySet(SubMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<K, T>> iterator() {
+            return this.map.entryIterator();
+        }
+
+        @Override
+        public Spliterator<Entry<K, T>> spliterator() {
+            return this.map.spliterator(ENTRIES, this);
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<K, T> e = (Entry<K, T>) o;
+            return this.map.containsKey(e.getKey()) && Objects.equals(this.map.get(e.getKey()), e.getValue());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked"})
+        public boolean remove(Object o) {
+            if (!this.contains(o)) {
+                return false;
+            }
+            this.map.remove(((Entry<K, T>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
         }
-        return rSet;
     }
 }
@@ -0,0 +1,196 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders a skip list as SVG straight to a Writer, in one left-to-right pass over the bottom level, without building a
+ * document in memory. The picture is the same as SvgSkipListRenderer's, but it also scales to dictionaries with
+ * millions of keys, and it can render just a window of them:
+ * - a key range, with everything before and after it drawn as a single cut-off column at each end
+ * - a level-of-detail cutoff, which leaves out the levels below it, and the towers that are too short to reach it.
+ *   The columns close up, so a cutoff of 10 draws about one tower in a thousand
+ * Every link is drawn when the pass reaches the tower it lands on, from the last column drawn on that level, so link
+ * widths come from one array indexed by level and never need to look back along the list.
+ * The Writer isn't buffered or closed here; wrap it in a BufferedWriter when it goes to a file.
+ */
+public class StreamingSvgSkipListRenderer {
+
+    private static final int dx = 40;
+
+    private static final String KEY_FILL = "rgb(184, 112, 77)";
+    private static final String LINK_FILL = "rgb(220, 184, 166)";
+    private static final String LINK_STROKE = "rgb(0, 0, 255)";
+    static final String SEARCH_STROKE = "rgb(255, 0, 0)";
+
+    //what the columns standing in for the keys outside a window are labelled
+    private static final String CUT_LABEL = "...";
+
+    /**
+     * Renders the whole skip list
+     */
+    public static <K, T> void render(SkipListDict<K, T> sl, Writer out) throws IOException {
+        render(sl, null, null, null, 0, out);
+    }
+
+    /**
+     * Renders the whole skip list, highlighting the links followed by a search
+     *
+     * @param trace The search path to highlight, from SkipListDict.traceSearch(), or null for none
+     */
+    public static <K, T> void render(SkipListDict<K, T> sl, SkipListDict<K, T>.SearchTrace trace, Writer out)
+            throws IOException {
+        render(sl, trace, null, null, 0, out);
+    }
+
+    /**
+     * Renders a window of the skip list
+     *
+     * @param trace The search path to highlight, or null for none. Only links that leave from inside the window can
+     *              be highlighted
+     * @param fromKey The smallest key to draw (inclusive), or null to start from the left sentinel
+     * @param toKey The largest key to draw (inclusive), or null to carry on to the right sentinel
+     * @param minLevel The lowest level to draw; towers no taller than this are left out altogether
+     * @param out Where the SVG goes. Any IOException from it is passed straight on
+     * @complexity O(log N) to find the start of the window, then O(1) per tower in it, or per tower tall enough to
+     *              be drawn once the first such tower is found. Uses O(height) memory whatever the size of the window
+     */
+    public static <K, T> void render(SkipListDict<K, T> sl, SkipListDict<K, T>.SearchTrace trace, K fromKey, K toKey,
+                                     int minLevel, Writer out) throws IOException {
+        if (minLevel < 0) {
+            throw new IllegalArgumentException("minLevel must not be negative");
+        }
+        int rows = Math.max(0, sl.leftSentinel.flinks.length - minLevel);
+        //the column of the last tower drawn on each row, and whether the search left that tower along that row
+        int[] lastSeen = new int[rows];
+        boolean[] followed = new boolean[rows];
+
+        out.write("<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\">\n");
+        boolean cutLeft = fromKey != null;
+        writeColumn(out, 0, cutLeft ? CUT_LABEL : "", rows, false, lastSeen, followed);
+        if (!cutLeft) {
+            markFollowed(trace, sl.leftSentinel, minLevel, rows, followed);
+        }
+
+        int column = 1;
+        boolean cutRight = false;
+        SkipListDict<K, T>.Tower tower = sl.ceilingTower(fromKey);
+        while (!tower.isSentinel) {
+            if (toKey != null && sl.compare(tower.key, toKey) > 0) {
+                cutRight = true;
+                break;
+            }
+            int towerRows = tower.flinks.length - minLevel;
+            if (towerRows <= 0) {
+                tower = tower.flinks[0];
+                continue;
+            }
+            writeColumn(out, column, tower.key.toString(), towerRows, true, lastSeen, followed);
+            for (int r = 0; r < towerRows; r++) {
+                lastSeen[r] = column;
+            }
+            markFollowed(trace, tower, minLevel, towerRows, followed);
+            column++;
+            //everything between here and the next tower that reaches minLevel would be skipped anyway
+            tower = tower.flinks[minLevel];
+        }
+        writeColumn(out, column, cutRight ? CUT_LABEL : null, rows, true, lastSeen, followed);
+        out.write("</svg>\n");
+    }
+
+    private static <K, T> void markFollowed(SkipListDict<K, T>.SearchTrace trace, SkipListDict<K, T>.Tower tower,
+                                            int minLevel, int rows, boolean[] followed) {
+        int level = trace == null ? -1 : trace.levelFollowed(tower);
+        for (int r = 0; r < rows; r++) {
+            followed[r] = level == r + minLevel;
+        }
+    }
+
+    /**
+     * Writes one column: the links landing in it, then its key box and a box for each row
+     *
+     * @param label The key, or null for no text at all
+     * @param incoming Whether to draw the links landing on each row, from lastSeen. They go first so the boxes cover
+     *                 their ends, as they do in SvgSkipListRenderer
+     */
+    private static void writeColumn(Writer out, int column, String label, int rows, boolean incoming,
+                                    int[] lastSeen, boolean[] followed) throws IOException {
+        out.write("<g transform=\"");
+        writeTransform(out, column);
+        out.write("\">\n");
+        writeColumnBody(out, column, label, rows, incoming, lastSeen, followed);
+        out.write("</g>\n");
+    }
+
+    static void writeTransform(Writer out, int column) throws IOException {
+        out.write("scale(1,-1)translate(");
+        out.write(Integer.toString(2 * dx * column));
+        out.write(", -400)");
+    }
+
+    /**
+     * Writes what goes inside a column's group, for IncrementalSvgSkipListRenderer too
+     *
+     * @param followed Which rows' links to highlight, or null for none
+     */
+    static void writeColumnBody(Writer out, int column, String label, int rows, boolean incoming,
+                                int[] lastSeen, boolean[] followed) throws IOException {
+        if (incoming) {
+            for (int r = 0; r < rows; r++) {
+                writeLink(out, column - lastSeen[r], r + 1, followed != null && followed[r]);
+            }
+        }
+        writeBox(out, 0, KEY_FILL);
+        if (label != null) {
+            out.write("<text font-size=\"24\" x=\"10\" y=\"-8\" transform=\"scale(1,-1)\">");
+            writeEscaped(out, label);
+            out.write("</text>\n");
+        }
+        for (int r = 1; r <= rows; r++) {
+            writeBox(out, r, LINK_FILL);
+        }
+    }
+
+    private static void writeBox(Writer out, int row, String fill) throws IOException {
+        out.write("<rect width=\"40\" height=\"40\" x=\"0\" y=\"");
+        out.write(Integer.toString(row * 40));
+        out.write("\" stroke-width=\"3\" stroke=\"rgb(0, 0, 0)\" fill=\"");
+        out.write(fill);
+        out.write("\"/>\n");
+    }
+
+    /**
+     * Writes a link that lands in the current column, having come the given number of columns from the left
+     */
+    static void writeLink(Writer out, int width, int row, boolean followed) throws IOException {
+        String y = Integer.toString(row * 40 + 20);
+        out.write("<line x1=\"");
+        out.write(Integer.toString(20 - width * 2 * dx));
+        out.write("\" x2=\"20\" y1=\"");
+        out.write(y);
+        out.write("\" y2=\"");
+        out.write(y);
+        out.write("\" stroke-width=\"3\" stroke=\"");
+        out.write(followed ? SEARCH_STROKE : LINK_STROKE);
+        out.write("\"/>\n");
+    }
+
+    static void writeEscaped(Writer out, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+}
@@ -19,14 +19,28 @@ public class SvgSkipListRenderer {
 
     private static final int dx = 40;
 
-    public static void SkipListToSVG(SkipListDict sl, OutputStreamWriter textOut) {
+    public static <K, T> void SkipListToSVG(SkipListDict<K, T> sl, OutputStreamWriter textOut) throws IOException {
+        SkipListToSVG(sl, null, textOut);
+    }
+
+    /**
+     * Renders the skip list, highlighting the links followed by a search
+     *
+     * This builds the whole document in memory first; StreamingSvgSkipListRenderer draws the same picture without doing
+     * so, and is the one to use for anything big
+     *
+     * @param trace The search path to highlight, from SkipListDict.traceSearch(), or null for none
+     * @throws IOException If textOut does
+     */
+    public static <K, T> void SkipListToSVG(SkipListDict<K, T> sl, SkipListDict<K, T>.SearchTrace trace,
+            OutputStreamWriter textOut) throws IOException {
         DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
 
         String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
         Document doc = impl.createDocument(svgNS, "svg", null);
         Element svgRoot = doc.getDocumentElement();
 
-        SkipListDict.Tower curT = sl.leftSentinel;
+        SkipListDict<K, T>.Tower curT = sl.leftSentinel;
         int rightTpos = sl.size();
         int position = 0;
         while (curT != sl.rightSentinel) {
@@ -35,30 +49,20 @@ public class SvgSkipListRenderer {
                 keyS = curT.key.toString();
             ArrayList<Integer> lws = new ArrayList<>();
             for (int i = 0; i < curT.flinks.length; i++) {
-                //count the number of steps back
-                SkipListDict.Tower revT = curT.flinks[i];
-                int width = 0;
-                while (revT != curT) {
-                    revT = revT.blinks[0];
-                    width++;
-                }
-                lws.add(width);
+                //the link's span is how many towers along it lands
+                lws.add(curT.span(i));
             }
 
-            Element gEl = addTower(doc, keyS, position, lws, curT.searchPathFollowed + 1);
+            int sPathFollowed = trace == null ? 0 : trace.levelFollowed(curT) + 1;
+            Element gEl = addTower(doc, keyS, position, lws, sPathFollowed);
             svgRoot.appendChild(gEl);
             position++;
             curT = curT.flinks[0];
         }
         //Draw the right sentinal tower
-        svgRoot.appendChild(rSentTower(doc, position, sl.rightSentinel.blinks.length));
+        svgRoot.appendChild(rSentTower(doc, position, sl.leftSentinel.flinks.length));
 
-        try {
-            DOMUtilities.writeDocument(doc, textOut);
-        }
-        catch (IOException e) {
-
-        }
+        DOMUtilities.writeDocument(doc, textOut);
     }
 
     private static Element rSentTower(Document doc, int position, int nboxes) {
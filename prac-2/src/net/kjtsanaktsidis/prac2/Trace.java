@@ -0,0 +1,218 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.*;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A compact binary record of the operations done to a dictionary, for replaying later with TraceReplayer.
+ *
+ * A trace starts with an 8-byte magic number and a 4-byte version, followed by one record per operation:
+ *   op           1 byte: GET, PUT, REMOVE or RANGE
+ *   thread       varint: which thread did it, numbered from 0 in the order they first turn up
+ *   time         varint: nanoseconds since the record before it (the first is since the trace started)
+ *   key          written with the trace's Codec
+ *   to           for RANGE only, the (exclusive) end of the range, written with the Codec
+ * Varints are unsigned LEB128, 7 bits to a byte, so a typical record with int keys is about 8 bytes. Values aren't
+ * recorded, only that a put happened; replays put the same placeholder value every time.
+ */
+public final class Trace {
+
+    public static final byte GET = 1;
+    public static final byte PUT = 2;
+    public static final byte REMOVE = 3;
+    public static final byte RANGE = 4;
+
+    private static final long MAGIC = 0x534b495054524345L;
+    private static final int VERSION = 1;
+
+    private Trace() {
+    }
+
+    /**
+     * @return The name of an op, for reports
+     */
+    public static String opName(byte op) {
+        switch (op) {
+            case GET:
+                return "get";
+            case PUT:
+                return "put";
+            case REMOVE:
+                return "remove";
+            case RANGE:
+                return "range";
+            default:
+                throw new IllegalArgumentException("Unknown trace op " + op);
+        }
+    }
+
+    /**
+     * Writes a trace. Safe to share between threads; each record is written whole, under the writer's lock
+     */
+    public static final class Writer<K> implements Closeable {
+        private final DataOutputStream out;
+        private final Codec<K> codec;
+        private final long start = System.nanoTime();
+        private long last;
+        //the number given to each thread that has recorded something
+        private final Map<Thread, Integer> threads = new IdentityHashMap<>();
+
+        public Writer(OutputStream out, Codec<K> codec) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            this.codec = codec;
+            this.out.writeLong(MAGIC);
+            this.out.writeInt(VERSION);
+        }
+
+        /**
+         * Records an operation done just now by the current thread
+         *
+         * @param to The end of the range for RANGE, otherwise ignored
+         */
+        public synchronized void record(byte op, K key, K to) throws IOException {
+            Thread current = Thread.currentThread();
+            Integer thread = this.threads.get(current);
+            if (thread == null) {
+                thread = this.threads.size();
+                this.threads.put(current, thread);
+            }
+            //taken under the lock, so times never go backwards
+            this.write(op, thread, System.nanoTime() - this.start, key, to);
+        }
+
+        /**
+         * Writes a record with a given thread and time, for traces made up rather than recorded
+         *
+         * @param nanos When it happens, in nanoseconds since the trace started; a time before the previous record's
+         *              is moved up to it
+         * @param to The end of the range for RANGE, otherwise ignored
+         */
+        public synchronized void write(byte op, int thread, long nanos, K key, K to) throws IOException {
+            opName(op);
+            if (thread < 0) {
+                throw new IllegalArgumentException("Thread numbers can't be negative, but got " + thread);
+            }
+            long delta = Math.max(0, nanos - this.last);
+            this.last += delta;
+            this.out.writeByte(op);
+            writeVarint(this.out, thread);
+            writeVarint(this.out, delta);
+            this.codec.write(this.out, key);
+            if (op == RANGE) {
+                this.codec.write(this.out, to);
+            }
+        }
+
+        public synchronized void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Reads a trace one record at a time: next() moves on to the next record, and the getters describe it
+     */
+    public static final class Reader<K> implements Closeable {
+        private final DataInputStream in;
+        private final Codec<K> codec;
+        private byte op;
+        private int thread;
+        private long nanos;
+        private K key;
+        private K to;
+
+        /**
+         * @throws IOException If the stream doesn't start with a trace header
+         */
+        public Reader(InputStream in, Codec<K> codec) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            this.codec = codec;
+            if (this.in.readLong() != MAGIC) {
+                throw new IOException("Not a trace");
+            }
+            int version = this.in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+        }
+
+        /**
+         * @return Whether there was another record; false at the end of the trace
+         * @throws IOException If the trace can't be read, or stops partway through a record
+         */
+        public boolean next() throws IOException {
+            int b = this.in.read();
+            if (b < 0) {
+                return false;
+            }
+            this.op = (byte) b;
+            try {
+                opName(this.op);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt trace", e);
+            }
+            this.thread = (int) readVarint(this.in);
+            this.nanos += readVarint(this.in);
+            this.key = this.codec.read(this.in);
+            this.to = this.op == RANGE ? this.codec.read(this.in) : null;
+            return true;
+        }
+
+        public byte getOp() {
+            return this.op;
+        }
+
+        public int getThread() {
+            return this.thread;
+        }
+
+        /**
+         * @return When it happened, in nanoseconds since the trace started
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        public K getKey() {
+            return this.key;
+        }
+
+        /**
+         * @return The end of the range for RANGE, otherwise null
+         */
+        public K getTo() {
+            return this.to;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    private static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt trace: varint too long");
+    }
+}
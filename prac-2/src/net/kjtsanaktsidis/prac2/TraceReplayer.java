@@ -0,0 +1,309 @@
+package net.kjtsanaktsidis.prac2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a Trace against a map, with one thread for each thread in the trace, and measures how long every
+ * operation takes.
+ *
+ * The whole trace is read into memory first, so reading it doesn't get timed. Then it can be replayed either:
+ * - at the recorded speed: each thread waits until its next operation is due, relative to when the replay started,
+ *   and latencies are measured from when it was due rather than when it started. If the map can't keep up, the
+ *   time operations spent waiting for the ones before them counts against them, as it would for the clients that
+ *   sent them, rather than being quietly left out
+ * - or at maximum speed: each thread goes through its operations as fast as it can, and latency is just how long each
+ *   call took
+ * Maps that aren't ConcurrentMaps are locked around each operation when there's more than one thread. Ranges are
+ * replayed as a walk over every entry in the range.
+ *
+ * Usage: TraceReplayer trace-file [skiplist|concurrent|avl|treemap|cslm] [recorded|max] [preload keys]
+ *        (defaults to skiplist, recorded speed, and nothing preloaded). Keys are ints. Preloading puts keys 0 to
+ *        N - 1 in before the replay starts. avl is java-scratchpad's AVLTree, which has to be on the classpath
+ */
+public class TraceReplayer<K> {
+
+    //what replayed puts put
+    private static final Object VALUE = "";
+
+    /**
+     * One thread's operations, in order
+     */
+    private static final class Ops {
+        byte[] ops = new byte[1024];
+        long[] nanos = new long[1024];
+        Object[] keys = new Object[1024];
+        //only filled in for ranges
+        Object[] tos = new Object[1024];
+        int count;
+
+        void add(byte op, long nanos, Object key, Object to) {
+            if (this.count == this.ops.length) {
+                int size = this.count * 2;
+                this.ops = Arrays.copyOf(this.ops, size);
+                this.nanos = Arrays.copyOf(this.nanos, size);
+                this.keys = Arrays.copyOf(this.keys, size);
+                this.tos = Arrays.copyOf(this.tos, size);
+            }
+            this.ops[this.count] = op;
+            this.nanos[this.count] = nanos;
+            this.keys[this.count] = key;
+            this.tos[this.count] = to;
+            this.count++;
+        }
+    }
+
+    /**
+     * What a replay measured
+     */
+    public static final class Result {
+        private final long elapsedNanos;
+        //indexed by op
+        private final LatencyHistogram[] latencies;
+
+        private Result(long elapsedNanos, LatencyHistogram[] latencies) {
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        /**
+         * @param op One of Trace's ops
+         * @return The latencies of every operation of that kind, in nanoseconds
+         */
+        public LatencyHistogram getLatencies(byte op) {
+            return this.latencies[op];
+        }
+
+        /**
+         * @return The latencies of every operation, in nanoseconds
+         */
+        public LatencyHistogram getLatencies() {
+            LatencyHistogram all = new LatencyHistogram();
+            for (LatencyHistogram h : this.latencies) {
+                if (h != null) {
+                    all.add(h);
+                }
+            }
+            return all;
+        }
+
+        public double getOpsPerSecond() {
+            return this.getLatencies().getCount() / (this.elapsedNanos / 1e9);
+        }
+
+        /**
+         * Prints the throughput, a summary line for each kind of operation, and the full latency spectrum of them all,
+         * in microseconds
+         */
+        public void print(PrintStream out) {
+            LatencyHistogram all = this.getLatencies();
+            out.printf("%,d ops in %.2fs: %,.0f ops/sec%n", all.getCount(), this.elapsedNanos / 1e9,
+                    this.getOpsPerSecond());
+            out.printf("%-8s %12s %10s %10s %10s %10s %10s%n", "op", "count", "p50 us", "p99 us", "p99.9 us",
+                    "p99.99 us", "max us");
+            for (byte op = Trace.GET; op <= Trace.RANGE; op++) {
+                printSummary(out, Trace.opName(op), this.latencies[op]);
+            }
+            printSummary(out, "all", all);
+            out.println();
+            all.print(out, 1000);
+        }
+
+        private static void printSummary(PrintStream out, String name, LatencyHistogram h) {
+            if (h.getCount() == 0) {
+                return;
+            }
+            out.printf("%-8s %,12d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, h.getCount(), h.valueAt(0.5) / 1e3,
+                    h.valueAt(0.99) / 1e3, h.valueAt(0.999) / 1e3, h.valueAt(0.9999) / 1e3, h.getMax() / 1e3);
+        }
+    }
+
+    private final List<Ops> threads = new ArrayList<>();
+
+    /**
+     * Reads a whole trace into memory
+     */
+    public TraceReplayer(InputStream trace, Codec<K> codec) throws IOException {
+        try (Trace.Reader<K> in = new Trace.Reader<>(trace, codec)) {
+            while (in.next()) {
+                while (this.threads.size() <= in.getThread()) {
+                    this.threads.add(new Ops());
+                }
+                this.threads.get(in.getThread()).add(in.getOp(), in.getNanos(), in.getKey(), in.getTo());
+            }
+        }
+    }
+
+    /**
+     * @return How many threads the trace has, and so how many a replay uses
+     */
+    public int getThreadCount() {
+        return this.threads.size();
+    }
+
+    /**
+     * Replays the trace against a map
+     *
+     * @param map The map to replay it against; ranges need a SortedMap
+     * @param recordedSpeed Whether to replay at the recorded speed, or as fast as possible
+     */
+    public Result replay(final Map<K, Object> map, final boolean recordedSpeed) throws InterruptedException {
+        final Object lock = map instanceof ConcurrentMap || this.threads.size() < 2 ? null : new Object();
+        final LatencyHistogram[][] latencies = new LatencyHistogram[this.threads.size()][Trace.RANGE + 1];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] workers = new Thread[this.threads.size()];
+        //give every thread a moment to get going, so they start together
+        final long start = System.nanoTime() + 10000000L;
+        for (int t = 0; t < workers.length; t++) {
+            final Ops ops = this.threads.get(t);
+            final LatencyHistogram[] mine = latencies[t];
+            for (byte op = Trace.GET; op <= Trace.RANGE; op++) {
+                mine[op] = new LatencyHistogram();
+            }
+            workers[t] = new Thread("TraceReplayer " + t) {
+                @Override
+                public void run() {
+                    try {
+                        waitUntil(start);
+                        long sink = 0;
+                        for (int i = 0; i < ops.count; i++) {
+                            long begin;
+                            if (recordedSpeed) {
+                                begin = start + ops.nanos[i];
+                                waitUntil(begin);
+                            }
+                            else {
+                                begin = System.nanoTime();
+                            }
+                            if (lock == null) {
+                                sink += apply(map, ops.ops[i], ops.keys[i], ops.tos[i]);
+                            }
+                            else {
+                                synchronized (lock) {
+                                    sink += apply(map, ops.ops[i], ops.keys[i], ops.tos[i]);
+                                }
+                            }
+                            mine[ops.ops[i]].record(System.nanoTime() - begin);
+                        }
+                        if (sink < 0) {
+                            throw new IllegalStateException("Found fewer than no entries");
+                        }
+                    }
+                    catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failure[0] != null) {
+            throw new IllegalStateException("Replay failed", failure[0]);
+        }
+
+        LatencyHistogram[] merged = new LatencyHistogram[Trace.RANGE + 1];
+        for (byte op = Trace.GET; op <= Trace.RANGE; op++) {
+            merged[op] = new LatencyHistogram();
+            for (LatencyHistogram[] thread : latencies) {
+                merged[op].add(thread[op]);
+            }
+        }
+        return new Result(elapsed, merged);
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            //sleeping overshoots by tens of microseconds, so spin for the last bit
+            if (remaining > 100000) {
+                LockSupport.parkNanos(remaining - 100000);
+            }
+            else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return How many entries it found, so the JIT can't decide the lookups are pointless
+     */
+    @SuppressWarnings("unchecked")
+    private static <K> int apply(Map<K, Object> map, byte op, Object key, Object to) {
+        switch (op) {
+            case Trace.GET:
+                return map.get(key) == null ? 0 : 1;
+            case Trace.PUT:
+                return map.put((K) key, VALUE) == null ? 0 : 1;
+            case Trace.REMOVE:
+                return map.remove(key) == null ? 0 : 1;
+            default:
+                int found = 0;
+                for (Object value : ((SortedMap<K, Object>) map).subMap((K) key, (K) to).values()) {
+                    if (value != null) {
+                        found++;
+                    }
+                }
+                return found;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, Object> newMap(String name) {
+        switch (name) {
+            case "skiplist":
+                return new SkipListDict<>();
+            case "concurrent":
+                return new ConcurrentSkipListDict<>();
+            case "avl":
+                try {
+                    return (Map<Integer, Object>) Class.forName("net.kjtsanaktsidis.collections.AVLTree")
+                            .getDeclaredConstructor().newInstance();
+                }
+                catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not create an AVLTree; is java-scratchpad on the classpath?",
+                            e);
+                }
+            case "treemap":
+                return new TreeMap<>();
+            case "cslm":
+                return new ConcurrentSkipListMap<>();
+            default:
+                throw new IllegalArgumentException("Unknown map " + name);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplayer trace-file [skiplist|concurrent|avl|treemap|cslm] [recorded|max] " +
+                    "[preload keys]");
+            System.exit(1);
+        }
+        String mapName = args.length > 1 ? args[1] : "skiplist";
+        boolean recordedSpeed = args.length <= 2 || args[2].equals("recorded");
+        int preload = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        TraceReplayer<Integer> replayer;
+        try (InputStream in = new FileInputStream(args[0])) {
+            replayer = new TraceReplayer<>(in, Codec.INTEGER);
+        }
+        Map<Integer, Object> map = newMap(mapName);
+        for (int key = 0; key < preload; key++) {
+            map.put(key, VALUE);
+        }
+        System.out.printf("Replaying %s against %s with %d threads, at %s speed%n", args[0], mapName,
+                replayer.getThreadCount(), recordedSpeed ? "recorded" : "maximum");
+        replayer.replay(map, recordedSpeed).print(System.out);
+    }
+}
@@ -0,0 +1,100 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.*;
+
+/**
+ * Compares SkipListDict.getAll() and putAll() with calling get() and put() once per key, for batches of various
+ * sizes. The keys in a batch are either spread uniformly over the whole dictionary or clustered together in a
+ * window a few times the size of the batch. The puts only overwrite existing keys, so the dictionary stays the same.
+ *
+ * Usage: BatchBenchmark [size]    (defaults to 1M keys)
+ */
+public class BatchBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000, 10000};
+    private static final int KEYS_PER_ROUND = 200000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random rgen = new Random(42);
+        SkipListDict<CountingKey, Integer> dict = new SkipListDict<>();
+        for (int k : SearchBenchmark.shuffledRange(n, rgen)) {
+            dict.put(new CountingKey(k), k);
+        }
+
+        for (boolean clustered : new boolean[]{false, true}) {
+            for (int batchSize : BATCH_SIZES) {
+                List<List<CountingKey>> batches = new ArrayList<>();
+                List<Map<CountingKey, Integer>> updates = new ArrayList<>();
+                for (int b = 0; b < KEYS_PER_ROUND / batchSize; b++) {
+                    List<CountingKey> batch = batch(batchSize, n, clustered, rgen);
+                    batches.add(batch);
+                    //putAll() gets an unsorted map, so it has to sort each batch itself
+                    Map<CountingKey, Integer> update = new HashMap<>();
+                    for (CountingKey key : batch) {
+                        update.put(key, key.value);
+                    }
+                    updates.add(update);
+                }
+
+                double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+                long[] comparisons = new long[4];
+                //the first rounds are warm-up
+                for (int round = 0; round < 4; round++) {
+                    for (int method = 0; method < 4; method++) {
+                        CountingKey.comparisons = 0;
+                        long start = System.nanoTime();
+                        for (int b = 0; b < batches.size(); b++) {
+                            run(dict, batches.get(b), updates.get(b), method);
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        comparisons[method] = CountingKey.comparisons;
+                        if (round >= 2) {
+                            best[method] = Math.min(best[method], elapsed);
+                        }
+                    }
+                }
+                long keys = (long) batches.size() * batchSize;
+                System.out.printf("%-9s batch %,6d: get %5.1f cmp %6.0f ns  getAll %5.1f cmp %6.0f ns  "
+                                + "put %5.1f cmp %6.0f ns  putAll %5.1f cmp %6.0f ns (per key)%n",
+                        clustered ? "clustered" : "uniform", batchSize,
+                        (double) comparisons[0] / keys, best[0] / keys, (double) comparisons[1] / keys, best[1] / keys,
+                        (double) comparisons[2] / keys, best[2] / keys, (double) comparisons[3] / keys, best[3] / keys);
+            }
+        }
+    }
+
+    private static List<CountingKey> batch(int batchSize, int n, boolean clustered, Random rgen) {
+        int window = clustered ? Math.min(n, 4 * batchSize) : n;
+        int base = rgen.nextInt(n - window + 1);
+        List<CountingKey> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new CountingKey(base + rgen.nextInt(window)));
+        }
+        return batch;
+    }
+
+    private static void run(SkipListDict<CountingKey, Integer> dict, List<CountingKey> batch,
+                            Map<CountingKey, Integer> update, int method) {
+        switch (method) {
+            case 0:
+                for (CountingKey key : batch) {
+                    dict.get(key);
+                }
+                break;
+            case 1:
+                dict.getAll(batch);
+                break;
+            case 2:
+                for (CountingKey key : batch) {
+                    dict.put(key, key.value);
+                }
+                break;
+            default:
+                dict.putAll(update);
+                break;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares building a SkipListDict from already-sorted keys by calling put() for each of them, against
+ * SkipListDict.fromSorted() with random and with balanced tower heights. Reports the build time and how many
+ * comparisons each needed.
+ *
+ * Usage: BulkLoadBenchmark [size ...]    (defaults to 1M, 5M, 10M and 50M keys; 50M needs a heap of around 8GB)
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = {1000000, 5000000, 10000000, 50000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        //warm up
+        run(100000, false);
+        for (int size : sizes) {
+            run(size, true);
+        }
+    }
+
+    private static void run(int size, boolean print) {
+        List<Map.Entry<CountingKey, Integer>> entries = new ArrayList<>(size);
+        Integer value = 0;
+        for (int i = 0; i < size; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(new CountingKey(i), value));
+        }
+
+        //collect whatever the last run left behind first, so it isn't charged to this one
+        PrimitiveKeyBenchmark.usedHeap();
+        CountingKey.comparisons = 0;
+        long start = System.nanoTime();
+        SkipListDict<CountingKey, Integer> dict = new SkipListDict<>();
+        for (Map.Entry<CountingKey, Integer> e : entries) {
+            dict.put(e.getKey(), e.getValue());
+        }
+        report(print, "put()", size, start);
+        dict = null;
+
+        for (boolean balanced : new boolean[]{false, true}) {
+            PrimitiveKeyBenchmark.usedHeap();
+            CountingKey.comparisons = 0;
+            start = System.nanoTime();
+            dict = SkipListDict.fromSorted(entries.iterator(), null, balanced);
+            report(print, balanced ? "fromSorted(), balanced" : "fromSorted()", size, start);
+            dict = null;
+        }
+    }
+
+    private static void report(boolean print, String what, int size, long start) {
+        double ms = (System.nanoTime() - start) / 1e6;
+        if (print) {
+            System.out.printf("%,11d keys  %-24s %,10.0f ms %,12.0f keys/sec %6.1f comparisons/key%n", size, what, ms,
+                    size / (ms / 1000), (double) CountingKey.comparisons / size);
+        }
+    }
+}
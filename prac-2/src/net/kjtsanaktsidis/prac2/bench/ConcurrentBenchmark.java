@@ -0,0 +1,99 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.ConcurrentSkipListDict;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of ConcurrentSkipListDict with a SkipListDict behind Collections.synchronizedMap when
+ * shared between a number of threads doing a mix of get/put/remove on random keys.
+ *
+ * Usage: ConcurrentBenchmark [size [readPercent [seconds]]]    (defaults to 1M keys, 90% reads, 2 seconds per run)
+ */
+public class ConcurrentBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int readPercent = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        //one short untimed run of each so neither gets the JIT warm-up charged to it
+        run(Collections.synchronizedMap(new SkipListDict<Integer, Integer>()), size, 1, readPercent, seconds);
+        run(new ConcurrentSkipListDict<Integer, Integer>(), size, 1, readPercent, seconds);
+
+        for (int threads : THREAD_COUNTS) {
+            Map<Integer, Integer> sync = Collections.synchronizedMap(new SkipListDict<Integer, Integer>());
+            double syncOps = run(sync, size, threads, readPercent, seconds);
+            Map<Integer, Integer> conc = new ConcurrentSkipListDict<>();
+            double concOps = run(conc, size, threads, readPercent, seconds);
+            System.out.printf("%2d threads: synchronized SkipListDict %,12.0f ops/sec   ConcurrentSkipListDict %,12.0f ops/sec%n",
+                    threads, syncOps, concOps);
+        }
+    }
+
+    /**
+     * Fills the map with every other key in [0, 2*size), then has each thread hammer it for the given time
+     *
+     * @return Total operations per second over all threads
+     */
+    private static double run(final Map<Integer, Integer> map, final int size, int threads, final int readPercent,
+                              double seconds) throws InterruptedException {
+        for (int i = 0; i < size; i++) {
+            map.put(2 * i, i);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong totalOps = new AtomicLong();
+        final long[] stopAt = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom rgen = ThreadLocalRandom.current();
+                    long ops = 0;
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    while (true) {
+                        //only look at the clock every so often
+                        if ((ops & 0xff) == 0 && System.nanoTime() > stopAt[0]) {
+                            break;
+                        }
+                        int key = rgen.nextInt(2 * size);
+                        int op = rgen.nextInt(100);
+                        if (op < readPercent) {
+                            map.get(key);
+                        }
+                        else if (op % 2 == 0) {
+                            map.put(key, op);
+                        }
+                        else {
+                            map.remove(key);
+                        }
+                        ops++;
+                    }
+                    totalOps.addAndGet(ops);
+                }
+            };
+            workers[t].start();
+        }
+
+        stopAt[0] = System.nanoTime() + (long) (seconds * 1e9);
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        return totalOps.get() / seconds;
+    }
+}
@@ -0,0 +1,30 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+/**
+ * Integer key that counts how many times it is compared against another key
+ */
+final class CountingKey implements Comparable<CountingKey> {
+    static long comparisons = 0;
+    final int value;
+
+    CountingKey(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public int compareTo(CountingKey o) {
+        comparisons++;
+        return Integer.compare(this.value, o.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        comparisons++;
+        return o instanceof CountingKey && ((CountingKey) o).value == this.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.value;
+    }
+}
@@ -0,0 +1,255 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.DictServer;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Drives a DictServer as hard as it can and reports throughput and latency. Each connection has its own thread,
+ * which sends a batch of commands in one write, then reads back the responses, then sends the next; the batch size
+ * (the pipeline depth) is the number of commands in flight on that connection. The mix is half searches, a quarter
+ * inserts and a quarter deletes, over keys chosen at random from a range that starts half full.
+ *
+ * Reports ops/sec, and p50/p99/p99.9/max of the latency of each command, from sending the batch it's in to reading
+ * its response, so deeper pipelines trade latency for throughput. With no host given, it starts a server in-process
+ * on a free port, which puts the client threads on the same CPUs as the server.
+ *
+ * Usage: DictLoadGenerator [connections] [pipeline depth] [seconds] [host:port]    (defaults to 4, 32, 10s,
+ *        and a server in-process)
+ */
+public class DictLoadGenerator {
+
+    private static final int KEYS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        DictServer server = null;
+        Thread serverThread = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            String[] hostPort = args[3].split(":");
+            address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+        }
+        else {
+            SkipListDict<Integer, String> dict = new SkipListDict<>();
+            final DictServer s = new DictServer(dict, 0, null);
+            server = s;
+            serverThread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        s.run();
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            serverThread.start();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        }
+
+        //fill half the key range, the same way the load does
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Client filler = new Client(channel, 1000, new Random(23));
+            for (int key = 0; key < KEYS; key += 2) {
+                filler.add("i " + key + " v\n");
+                if (filler.batched == 1000) {
+                    filler.roundTrip(null);
+                }
+            }
+            filler.roundTrip(null);
+        }
+
+        //a short warm-up, then the run itself
+        run(address, connections, depth, Math.min(2, seconds), false);
+        run(address, connections, depth, seconds, true);
+
+        if (server != null) {
+            server.close();
+            serverThread.join();
+        }
+    }
+
+    private static void run(final InetSocketAddress address, int connections, final int depth, int seconds,
+                            boolean print) throws Exception {
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        final Samples[] samples = new Samples[connections];
+        Thread[] threads = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            final int id = c;
+            samples[c] = new Samples();
+            threads[c] = new Thread() {
+                @Override
+                public void run() {
+                    try (SocketChannel channel = SocketChannel.open(address)) {
+                        Client client = new Client(channel, depth, new Random(23 + id));
+                        while (System.nanoTime() < deadline) {
+                            client.fill();
+                            client.roundTrip(samples[id]);
+                        }
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (print) {
+            Samples all = new Samples();
+            for (Samples s : samples) {
+                all.addAll(s);
+            }
+            long[] sorted = Arrays.copyOf(all.nanos, all.count);
+            Arrays.sort(sorted);
+            System.out.printf("%-12s %-8s %12s %10s %10s %10s %10s%n", "connections", "depth", "ops/sec", "p50 us",
+                    "p99 us", "p99.9 us", "max us");
+            System.out.printf("%-12d %-8d %,12.0f %10.1f %10.1f %10.1f %10.1f%n", connections, depth,
+                    all.count / (elapsed / 1e9), percentile(sorted, 0.5) / 1e3, percentile(sorted, 0.99) / 1e3,
+                    percentile(sorted, 0.999) / 1e3, sorted[sorted.length - 1] / 1e3);
+        }
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * One connection's commands and responses, in buffers reused for every batch
+     */
+    private static class Client {
+        private final SocketChannel channel;
+        private final int depth;
+        private final Random rgen;
+        private final ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        private final byte[] command = new byte[32];
+        int batched;
+
+        Client(SocketChannel channel, int depth, Random rgen) {
+            this.channel = channel;
+            this.depth = depth;
+            this.rgen = rgen;
+        }
+
+        void add(String line) {
+            this.out.put(line.getBytes(StandardCharsets.US_ASCII));
+            this.batched++;
+        }
+
+        /**
+         * Fills the batch with the usual mix of commands
+         */
+        void fill() {
+            for (int i = 0; i < this.depth; i++) {
+                int op = this.rgen.nextInt(4);
+                char c = op < 2 ? 's' : op == 2 ? 'i' : 'd';
+                int key = this.rgen.nextInt(KEYS);
+                //written out by hand to keep the client's own garbage out of the measurements
+                int len = 0;
+                this.command[len++] = (byte) c;
+                this.command[len++] = ' ';
+                len = writeInt(this.command, len, key);
+                if (c == 'i') {
+                    this.command[len++] = ' ';
+                    this.command[len++] = 'v';
+                }
+                this.command[len++] = '\n';
+                this.out.put(this.command, 0, len);
+                this.batched++;
+            }
+        }
+
+        private static int writeInt(byte[] dest, int pos, int value) {
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            for (int i = pos + digits - 1; i >= pos; i--) {
+                dest[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            return pos + digits;
+        }
+
+        /**
+         * Sends the batch and waits for every response, timing each one from when the batch went out
+         */
+        void roundTrip(Samples samples) throws IOException {
+            long sent = System.nanoTime();
+            this.out.flip();
+            while (this.out.hasRemaining()) {
+                this.channel.write(this.out);
+            }
+            this.out.clear();
+            int waiting = this.batched;
+            this.batched = 0;
+            while (waiting > 0) {
+                if (this.channel.read(this.in) < 0) {
+                    throw new IOException("The server hung up");
+                }
+                long now = System.nanoTime();
+                this.in.flip();
+                int lineStart = 0;
+                for (int i = 0; i < this.in.limit(); i++) {
+                    if (this.in.get(i) == '\n') {
+                        byte first = this.in.get(lineStart);
+                        //anything other than OK, Found, Not found or Deleted is an error
+                        if (first != 'O' && first != 'F' && first != 'N' && first != 'D') {
+                            throw new IOException("Unexpected response from the server");
+                        }
+                        if (samples != null) {
+                            samples.add(now - sent);
+                        }
+                        waiting--;
+                        lineStart = i + 1;
+                    }
+                }
+                this.in.position(lineStart);
+                this.in.compact();
+            }
+        }
+    }
+
+    /**
+     * A growable array of latencies
+     */
+    private static class Samples {
+        long[] nanos = new long[1 << 16];
+        int count;
+
+        void add(long sample) {
+            if (this.count == this.nanos.length) {
+                this.nanos = Arrays.copyOf(this.nanos, this.count * 2);
+            }
+            this.nanos[this.count++] = sample;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) {
+                this.add(other.nanos[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Random;
+
+/**
+ * Compares lookups through a SkipListDict.Cursor with plain get() for access patterns with varying locality:
+ * strictly sequential keys, a random walk with small steps, and uniformly random keys. Reports comparisons per
+ * lookup and lookups per second for each.
+ *
+ * Usage: FingerBenchmark [size]    (defaults to 1M keys)
+ */
+public class FingerBenchmark {
+
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random rgen = new Random(42);
+        SkipListDict<CountingKey, Integer> dict = new SkipListDict<>();
+        //every other key, so the walks below hit and miss about equally
+        for (int k : SearchBenchmark.shuffledRange(n, rgen)) {
+            dict.put(new CountingKey(2 * k), k);
+        }
+
+        String[] patterns = {"sequential", "near-sequential", "random"};
+        for (int pattern = 0; pattern < patterns.length; pattern++) {
+            CountingKey[] probes = probes(pattern, n, rgen);
+            double getRate = 0;
+            double cursorRate = 0;
+            double getCmp = 0;
+            double cursorCmp = 0;
+            long sink = 0;
+            //the first rounds are warm-up
+            for (int round = 0; round < 5; round++) {
+                CountingKey.comparisons = 0;
+                long start = System.nanoTime();
+                for (CountingKey probe : probes) {
+                    Integer v = dict.get(probe);
+                    sink += v == null ? 0 : v;
+                }
+                long mid = System.nanoTime();
+                long getComparisons = CountingKey.comparisons;
+
+                CountingKey.comparisons = 0;
+                SkipListDict<CountingKey, Integer>.Cursor cursor = dict.cursor();
+                long mid2 = System.nanoTime();
+                for (CountingKey probe : probes) {
+                    Integer v = cursor.get(probe);
+                    sink -= v == null ? 0 : v;
+                }
+                long end = System.nanoTime();
+
+                getRate = Math.max(getRate, probes.length / ((mid - start) / 1e9));
+                cursorRate = Math.max(cursorRate, probes.length / ((end - mid2) / 1e9));
+                getCmp = (double) getComparisons / probes.length;
+                cursorCmp = (double) CountingKey.comparisons / probes.length;
+            }
+            if (sink != 0) {
+                throw new IllegalStateException("cursor and get() disagree");
+            }
+            System.out.printf("%-16s get(): %5.1f comparisons %,12.0f lookups/sec   cursor: %5.1f comparisons %,12.0f lookups/sec%n",
+                    patterns[pattern], getCmp, getRate, cursorCmp, cursorRate);
+        }
+    }
+
+    private static CountingKey[] probes(int pattern, int n, Random rgen) {
+        CountingKey[] probes = new CountingKey[LOOKUPS];
+        int key = rgen.nextInt(2 * n);
+        for (int i = 0; i < LOOKUPS; i++) {
+            switch (pattern) {
+                case 0:
+                    key = (key + 1) % (2 * n);
+                    break;
+                case 1:
+                    //mostly forwards, a few dozen keys at most either way, like slightly out-of-order timestamps
+                    key = Math.floorMod(key + rgen.nextInt(64) - 16, 2 * n);
+                    break;
+                default:
+                    key = rgen.nextInt(2 * n);
+                    break;
+            }
+            probes[i] = new CountingKey(key);
+        }
+        return probes;
+    }
+}
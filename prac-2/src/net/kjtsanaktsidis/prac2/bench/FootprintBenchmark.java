@@ -0,0 +1,53 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures how much heap a SkipListDict uses per entry on top of its keys and values, and how fast it can be loaded.
+ * Keys are allocated before the measurement starts and every entry shares one value, so the bytes reported are just
+ * the dictionary's own towers and link arrays.
+ *
+ * Usage: FootprintBenchmark [size]    (defaults to 1M keys)
+ */
+public class FootprintBenchmark {
+
+    private static final String VALUE = "value";
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int[] order = SearchBenchmark.shuffledRange(size, new Random(42));
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = order[i];
+        }
+
+        //warm up
+        load(keys);
+
+        double bestSecs = Double.MAX_VALUE;
+        long bytes = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = PrimitiveKeyBenchmark.usedHeap();
+            long start = System.nanoTime();
+            Map<Integer, String> dict = load(keys);
+            bestSecs = Math.min(bestSecs, (System.nanoTime() - start) / 1e9);
+            bytes = PrimitiveKeyBenchmark.usedHeap() - before;
+            if (dict.size() != size) {
+                throw new IllegalStateException();
+            }
+        }
+
+        System.out.printf("n=%d: %.1f bytes/entry, %,.0f puts/sec%n", size, (double) bytes / size, size / bestSecs);
+    }
+
+    private static Map<Integer, String> load(Integer[] keys) {
+        Map<Integer, String> dict = new SkipListDict<>();
+        for (Integer k : keys) {
+            dict.put(k, VALUE);
+        }
+        return dict;
+    }
+}
@@ -0,0 +1,66 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Bulk-loads SkipListDicts and measures the number of key comparisons made per put() and the put() throughput,
+ * for keys arriving both in random and in ascending order.
+ * Only the public Map API is used, so the same benchmark can be run against older versions of the dictionary.
+ *
+ * Usage: InsertBenchmark [size...]    (defaults to 1M keys)
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = {1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int n : sizes) {
+            int[] sorted = new int[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = 2 * i;
+            }
+            run("random", SearchBenchmark.shuffledRange(n, new Random(42)));
+            run("ascending", sorted);
+        }
+    }
+
+    private static void run(String name, int[] keys) {
+        CountingKey[] boxed = new CountingKey[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            boxed[i] = new CountingKey(keys[i]);
+        }
+
+        //one untimed load to warm up, then take the best of a few timed ones
+        load(boxed);
+        long best = Long.MAX_VALUE;
+        long comparisons = 0;
+        for (int round = 0; round < 3; round++) {
+            CountingKey.comparisons = 0;
+            long start = System.nanoTime();
+            load(boxed);
+            long elapsed = System.nanoTime() - start;
+            comparisons = CountingKey.comparisons;
+            best = Math.min(best, elapsed);
+        }
+
+        System.out.printf("n=%d %s: %.1f comparisons/put, %.0f puts/sec%n",
+                keys.length, name, (double) comparisons / keys.length, keys.length / (best / 1e9));
+    }
+
+    private static Map<CountingKey, Integer> load(CountingKey[] keys) {
+        Map<CountingKey, Integer> dict = new SkipListDict<>();
+        for (CountingKey k : keys) {
+            dict.put(k, k.value);
+        }
+        return dict;
+    }
+}
@@ -0,0 +1,104 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the latency distribution of the randomized SkipListDict with the deterministic (1-2-3) one. Every put()
+ * and get() is timed on its own, and the comparisons each get() makes are counted, which shows the shape of the
+ * search paths without any timer or GC noise. Reports p50/p99/p99.99/max of each for three key orders:
+ * random, ascending (the classic bad case for unbalanced trees) and a sliding window, which keeps inserting at one
+ * end and removing from the other, so the deterministic list keeps promoting and demoting towers at both ends.
+ *
+ * Usage: LatencyBenchmark [size]    (defaults to 200k keys)
+ */
+public class LatencyBenchmark {
+
+    private static final String[] ORDERS = {"random", "ascending", "sliding window"};
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        System.out.printf("%-15s %-14s %-14s %8s %8s %8s %10s%n", "order", "list", "", "p50", "p99", "p99.99", "max");
+        //the first pass is warm-up
+        for (int pass = 0; pass < 2; pass++) {
+            for (int order = 0; order < ORDERS.length; order++) {
+                for (boolean deterministic : new boolean[]{false, true}) {
+                    run(order, deterministic, n, pass == 1);
+                }
+            }
+        }
+    }
+
+    private static void run(int order, boolean deterministic, int n, boolean print) {
+        Random rgen = new Random(18);
+        SkipListDict<CountingKey, Integer> dict = deterministic
+                ? SkipListDict.<CountingKey, Integer>deterministic()
+                : new SkipListDict<CountingKey, Integer>();
+        //keys 0 to n - 1; shuffledRange() hands out even numbers
+        int[] shuffled = SearchBenchmark.shuffledRange(n, rgen);
+        CountingKey[] toPut = new CountingKey[n];
+        for (int i = 0; i < n; i++) {
+            toPut[i] = new CountingKey(order == 0 ? shuffled[i] / 2 : i);
+        }
+
+        long[] putNanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            long start = System.nanoTime();
+            dict.put(toPut[i], i);
+            putNanos[i] = System.nanoTime() - start;
+        }
+        if (order == 2) {
+            //slide the window along by another n keys: add one at the top, drop the oldest at the bottom
+            for (int i = 0; i < n; i++) {
+                CountingKey key = new CountingKey(n + i);
+                CountingKey oldest = new CountingKey(i);
+                long start = System.nanoTime();
+                dict.put(key, i);
+                dict.remove(oldest);
+                putNanos[i] = System.nanoTime() - start;
+            }
+        }
+
+        //look up everything that's there, in random order
+        int base = order == 2 ? n : 0;
+        CountingKey[] toGet = new CountingKey[n];
+        shuffled = SearchBenchmark.shuffledRange(n, rgen);
+        for (int i = 0; i < n; i++) {
+            toGet[i] = new CountingKey(base + shuffled[i] / 2);
+        }
+        long[] getNanos = new long[n];
+        long[] getComparisons = new long[n];
+        long sink = 0;
+        for (int i = 0; i < n; i++) {
+            CountingKey.comparisons = 0;
+            long start = System.nanoTime();
+            sink += dict.get(toGet[i]);
+            getNanos[i] = System.nanoTime() - start;
+            getComparisons[i] = CountingKey.comparisons;
+        }
+        if (sink < 0) {
+            throw new IllegalStateException("lost a key");
+        }
+
+        if (print) {
+            String list = deterministic ? "deterministic" : "randomized";
+            report(ORDERS[order], list, order == 2 ? "put+remove ns" : "put ns", putNanos);
+            report(ORDERS[order], list, "get ns", getNanos);
+            report(ORDERS[order], list, "get compares", getComparisons);
+        }
+    }
+
+    private static void report(String order, String list, String what, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-15s %-14s %-14s %8d %8d %8d %10d%n", order, list, what,
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.9999), sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
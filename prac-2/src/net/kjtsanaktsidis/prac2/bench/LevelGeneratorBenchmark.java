@@ -0,0 +1,127 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.LevelGenerator;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures tower heights generated per second, and puts per second into one SkipListDict per thread, with 1 to 32
+ * threads. The "shared Random" rows flip coins one level at a time on a single static java.util.Random, which is
+ * what the old PoissonGenerator did; the others use LevelGenerator, unseeded and seeded.
+ *
+ * Usage: LevelGeneratorBenchmark [seconds]    (defaults to 1 second per run)
+ */
+public class LevelGeneratorBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+    private static final Random SHARED = new Random();
+
+    //what PoissonGenerator.generate() used to do
+    private static int coinFlips() {
+        int i = 0;
+        do {
+            i++;
+        } while (SHARED.nextInt(2) == 0);
+        return i;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+        LevelGenerator unseeded = LevelGenerator.DEFAULT;
+        LevelGenerator seeded = new LevelGenerator(0.5, 32, 42);
+
+        //warm up
+        heights(null, 1, seconds);
+        heights(unseeded, 1, seconds);
+        puts(unseeded, 1, seconds);
+
+        for (int threads : THREAD_COUNTS) {
+            System.out.printf("%2d threads: heights/sec shared Random %,13.0f  LevelGenerator %,13.0f  seeded %,13.0f   "
+                            + "puts/sec LevelGenerator %,11.0f  seeded %,11.0f%n", threads,
+                    heights(null, threads, seconds), heights(unseeded, threads, seconds),
+                    heights(seeded, threads, seconds),
+                    puts(unseeded, threads, seconds), puts(seeded, threads, seconds));
+        }
+    }
+
+    /**
+     * @param gen The generator, or null for the old shared-Random coin flips
+     * @return Heights generated per second over all threads
+     */
+    private static double heights(final LevelGenerator gen, int threads, double seconds) throws InterruptedException {
+        return run(threads, seconds, new Work() {
+            @Override
+            public long iteration(int thread, long i) {
+                return gen == null ? coinFlips() : gen.generate();
+            }
+        });
+    }
+
+    /**
+     * Each thread puts ascending keys into its own dictionary, starting a new one every million keys
+     *
+     * @return Puts per second over all threads
+     */
+    private static double puts(final LevelGenerator gen, int threads, double seconds) throws InterruptedException {
+        final List<SkipListDict<Integer, Integer>> dicts =
+                new ArrayList<>(Collections.<SkipListDict<Integer, Integer>>nCopies(threads, null));
+        return run(threads, seconds, new Work() {
+            @Override
+            public long iteration(int thread, long i) {
+                if (i % 1000000 == 0) {
+                    dicts.set(thread, new SkipListDict<Integer, Integer>(null, gen));
+                }
+                dicts.get(thread).put((int) (i % 1000000), thread);
+                return 1;
+            }
+        });
+    }
+
+    private interface Work {
+        long iteration(int thread, long i);
+    }
+
+    private static double run(int threads, double seconds, final Work work) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong totalOps = new AtomicLong();
+        final long[] stopAt = new long[1];
+        final long[] sink = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    long ops = 0;
+                    long sum = 0;
+                    //only look at the clock every so often
+                    while ((ops & 0xfff) != 0 || System.nanoTime() < stopAt[0]) {
+                        sum += work.iteration(id, ops);
+                        ops++;
+                    }
+                    sink[id] = sum;
+                    totalOps.addAndGet(ops);
+                }
+            };
+            workers[t].start();
+        }
+        stopAt[0] = System.nanoTime() + (long) (seconds * 1e9);
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        return totalOps.get() / seconds;
+    }
+}
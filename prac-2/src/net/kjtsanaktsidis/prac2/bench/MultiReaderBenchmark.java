@@ -0,0 +1,90 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures get() throughput on a SkipListDict shared by a number of reader threads and never modified.
+ * Readers only scale if a get() doesn't write anything to the towers it passes through; any such write dirties a
+ * cache line every other reader then has to fetch again.
+ *
+ * Usage: MultiReaderBenchmark [size [seconds]]    (defaults to 1M keys, 2 seconds per run)
+ */
+public class MultiReaderBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args) throws InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+
+        Map<Integer, Integer> dict = new SkipListDict<>();
+        for (int k : SearchBenchmark.shuffledRange(size, new Random(42))) {
+            dict.put(k, k);
+        }
+
+        //untimed warm-up run
+        run(dict, size, 1, seconds);
+        double single = 0;
+        for (int threads : THREAD_COUNTS) {
+            double ops = run(dict, size, threads, seconds);
+            if (threads == 1) {
+                single = ops;
+            }
+            System.out.printf("%2d readers: %,12.0f gets/sec (%.2fx one reader)%n", threads, ops, ops / single);
+        }
+    }
+
+    /**
+     * @return Total get()s per second over all threads
+     */
+    private static double run(final Map<Integer, Integer> dict, final int size, int threads, double seconds)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong totalOps = new AtomicLong();
+        final AtomicLong totalFound = new AtomicLong();
+        final long[] stopAt = new long[1];
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random rgen = new Random(seed);
+                    long ops = 0;
+                    long found = 0;
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    while ((ops & 0xff) != 0 || System.nanoTime() < stopAt[0]) {
+                        if (dict.get(rgen.nextInt(2 * size)) != null) {
+                            found++;
+                        }
+                        ops++;
+                    }
+                    totalOps.addAndGet(ops);
+                    totalFound.addAndGet(found);
+                }
+            };
+            readers[t].start();
+        }
+
+        stopAt[0] = System.nanoTime() + (long) (seconds * 1e9);
+        start.countDown();
+        for (Thread r : readers) {
+            r.join();
+        }
+        //about half the keys looked up exist; check so the lookups can't be optimised away
+        if (totalFound.get() > totalOps.get()) {
+            throw new IllegalStateException();
+        }
+        return totalOps.get() / seconds;
+    }
+}
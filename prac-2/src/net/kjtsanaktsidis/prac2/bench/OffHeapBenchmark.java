@@ -0,0 +1,114 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.OffHeapSkipListDict;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares OffHeapSkipListDict with SkipListDict<Long, byte[]>: put and get latency percentiles, time spent in GC
+ * while loading and churning the dictionary, how long a full collection takes with it live, and process RSS.
+ * Run each dictionary in its own JVM to get meaningful RSS numbers.
+ *
+ * Usage: OffHeapBenchmark [size [heap|offheap]]    (defaults to 1M keys, both dictionaries)
+ */
+public class OffHeapBenchmark {
+
+    private static final int VALUE_SIZE = 16;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String which = args.length > 1 ? args[1] : "both";
+
+        if (!which.equals("offheap")) {
+            run("SkipListDict<Long>", new SkipListDict<Long, byte[]>(), size);
+        }
+        if (!which.equals("heap")) {
+            run("OffHeapSkipListDict", new OffHeapSkipListDict(), size);
+        }
+    }
+
+    private static void run(String name, Map<Long, byte[]> dict, int size) throws IOException {
+        Random rgen = new Random(42);
+        int[] keys = SearchBenchmark.shuffledRange(size, rgen);
+        byte[] value = new byte[VALUE_SIZE];
+        long[] latencies = new long[size];
+
+        long gcBefore = gcMillis();
+        for (int i = 0; i < size; i++) {
+            long start = System.nanoTime();
+            dict.put((long) keys[i], value);
+            latencies[i] = System.nanoTime() - start;
+        }
+        long loadGc = gcMillis() - gcBefore;
+        String putLatency = percentiles(latencies);
+
+        gcBefore = gcMillis();
+        for (int i = 0; i < size; i++) {
+            long key = rgen.nextInt(2 * size);
+            long start = System.nanoTime();
+            dict.get(key);
+            latencies[i] = System.nanoTime() - start;
+        }
+        String getLatency = percentiles(latencies);
+
+        //churn: replace half the keys with new ones
+        for (int i = 0; i < size / 2; i++) {
+            dict.remove((long) keys[i]);
+            dict.put((long) keys[i] + 1, value);
+        }
+        long churnGc = gcMillis() - gcBefore;
+
+        long start = System.nanoTime();
+        System.gc();
+        double fullGcMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%s, %,d entries%n", name, dict.size());
+        System.out.printf("  put latency (ns) %s%n", putLatency);
+        System.out.printf("  get latency (ns) %s%n", getLatency);
+        System.out.printf("  GC time: %,d ms during load, %,d ms during gets+churn, %.1f ms for a full System.gc()%n",
+                loadGc, churnGc, fullGcMs);
+        System.out.printf("  RSS %,d MB%n", rssKb() / 1024);
+    }
+
+    private static String percentiles(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %,d  p99 %,d  p99.9 %,d  max %,d",
+                sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.99)],
+                sorted[(int) (sorted.length * 0.999)], sorted[sorted.length - 1]);
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * @return Resident set size of this process from /proc, or -1 if that isn't available
+     */
+    private static long rssKb() throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        }
+        catch (IOException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
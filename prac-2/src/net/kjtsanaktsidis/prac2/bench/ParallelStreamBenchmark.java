@@ -0,0 +1,55 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures parallel stream aggregations over a SkipListDict's views with fork/join pools of 1 to 32 threads: a sum
+ * of the values, and a filter/map/reduce over the entries.
+ *
+ * Usage: ParallelStreamBenchmark [size]    (defaults to 1M keys)
+ */
+public class ParallelStreamBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        Random rgen = new Random(42);
+        for (int k : SearchBenchmark.shuffledRange(size, rgen)) {
+            dict.put(k, rgen.nextInt(1000));
+        }
+
+        long sequential = dict.values().stream().mapToLong(Integer::longValue).sum();
+        for (int threads : THREAD_COUNTS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double sumMs = Double.MAX_VALUE;
+            double aggMs = Double.MAX_VALUE;
+            //the first couple of rounds are warm-up
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                long sum = pool.submit(() -> dict.values().parallelStream().mapToLong(Integer::longValue).sum()).get();
+                long mid = System.nanoTime();
+                long agg = pool.submit(() -> dict.entrySet().parallelStream()
+                        .filter(e -> e.getKey() % 3 == 0)
+                        .mapToLong(e -> (long) e.getKey() * e.getValue())
+                        .reduce(0, Long::sum)).get();
+                long end = System.nanoTime();
+                if (sum != sequential || agg < 0) {
+                    throw new IllegalStateException("parallel sum " + sum + " != sequential sum " + sequential);
+                }
+                if (round >= 2) {
+                    sumMs = Math.min(sumMs, (mid - start) / 1e6);
+                    aggMs = Math.min(aggMs, (end - mid) / 1e6);
+                }
+            }
+            pool.shutdown();
+            System.out.printf("%2d threads: sum of values %8.1f ms   filter/map/reduce over entries %8.1f ms%n",
+                    threads, sumMs, aggMs);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.IntSkipListDict;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares IntSkipListDict with SkipListDict<Integer, V> and TreeMap<Integer, V>: heap bytes per entry, put()
+ * throughput while loading random keys, and get() throughput for random lookups (about half of them hits).
+ *
+ * Usage: PrimitiveKeyBenchmark [size]    (defaults to 1M keys)
+ */
+public class PrimitiveKeyBenchmark {
+
+    private static final String VALUE = "value";
+
+    /**
+     * The operations timed for each dictionary, so the int specialisation is called through its primitive methods
+     */
+    private interface Subject {
+        String name();
+
+        Object build(int[] keys);
+
+        long lookupAll(Object dict, int[] probes);
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random rgen = new Random(42);
+        int[] keys = SearchBenchmark.shuffledRange(size, rgen);
+        int[] probes = new int[size];
+        for (int i = 0; i < size; i++) {
+            probes[i] = rgen.nextInt(2 * size);
+        }
+
+        Subject[] subjects = {
+                new Subject() {
+                    public String name() {
+                        return "IntSkipListDict";
+                    }
+
+                    public Object build(int[] keys) {
+                        IntSkipListDict<String> dict = new IntSkipListDict<>();
+                        for (int k : keys) {
+                            dict.put(k, VALUE);
+                        }
+                        return dict;
+                    }
+
+                    @SuppressWarnings({"unchecked"})
+                    public long lookupAll(Object dict, int[] probes) {
+                        IntSkipListDict<String> d = (IntSkipListDict<String>) dict;
+                        long found = 0;
+                        for (int p : probes) {
+                            if (d.get(p) != null) {
+                                found++;
+                            }
+                        }
+                        return found;
+                    }
+                },
+                new MapSubject("SkipListDict<Integer>") {
+                    Map<Integer, String> newMap() {
+                        return new SkipListDict<>();
+                    }
+                },
+                new MapSubject("TreeMap<Integer>") {
+                    Map<Integer, String> newMap() {
+                        return new TreeMap<>();
+                    }
+                }
+        };
+
+        for (Subject subject : subjects) {
+            //warm up
+            subject.lookupAll(subject.build(keys), probes);
+
+            long before = usedHeap();
+            long start = System.nanoTime();
+            Object dict = subject.build(keys);
+            double putSecs = (System.nanoTime() - start) / 1e9;
+            long bytes = usedHeap() - before;
+
+            long found = 0;
+            double best = Double.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                start = System.nanoTime();
+                found = subject.lookupAll(dict, probes);
+                best = Math.min(best, (System.nanoTime() - start) / 1e9);
+            }
+
+            System.out.printf("%-22s %6.1f bytes/entry %,12.0f puts/sec %,12.0f gets/sec (%d hits)%n",
+                    subject.name(), (double) bytes / size, size / putSecs, probes.length / best, found);
+        }
+    }
+
+    private abstract static class MapSubject implements Subject {
+        private final String name;
+
+        MapSubject(String name) {
+            this.name = name;
+        }
+
+        abstract Map<Integer, String> newMap();
+
+        public String name() {
+            return this.name;
+        }
+
+        public Object build(int[] keys) {
+            Map<Integer, String> dict = this.newMap();
+            for (int k : keys) {
+                dict.put(k, VALUE);
+            }
+            return dict;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public long lookupAll(Object dict, int[] probes) {
+            Map<Integer, String> d = (Map<Integer, String>) dict;
+            long found = 0;
+            for (int p : probes) {
+                if (d.get(p) != null) {
+                    found++;
+                }
+            }
+            return found;
+        }
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
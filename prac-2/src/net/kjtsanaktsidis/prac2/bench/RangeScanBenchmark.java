@@ -0,0 +1,77 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares range scans over SkipListDict.subMap with TreeMap.subMap: each scan finds a random starting key and sums
+ * the values of the next rangeSize entries, ascending and then descending.
+ *
+ * Usage: RangeScanBenchmark [size]    (defaults to 1M keys)
+ */
+public class RangeScanBenchmark {
+
+    private static final int[] RANGE_SIZES = {1, 10, 100, 1000, 10000};
+    private static final long ENTRIES_PER_ROUND = 2000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        Random rgen = new Random(42);
+        NavigableMap<Integer, Integer> skipList = new SkipListDict<>();
+        NavigableMap<Integer, Integer> treeMap = new TreeMap<>();
+        //every other key, so half the range starts fall between keys
+        for (int k : SearchBenchmark.shuffledRange(n, rgen)) {
+            skipList.put(2 * k, k);
+            treeMap.put(2 * k, k);
+        }
+
+        for (int rangeSize : RANGE_SIZES) {
+            int scans = (int) Math.max(1, ENTRIES_PER_ROUND / rangeSize);
+            int[] starts = new int[scans];
+            for (int i = 0; i < scans; i++) {
+                starts[i] = rgen.nextInt(2 * n);
+            }
+            System.out.printf("range %,6d: SkipListDict %7.1f / %7.1f ns/entry   TreeMap %7.1f / %7.1f ns/entry (asc / desc)%n",
+                    rangeSize,
+                    time(skipList, starts, rangeSize, false), time(skipList, starts, rangeSize, true),
+                    time(treeMap, starts, rangeSize, false), time(treeMap, starts, rangeSize, true));
+        }
+    }
+
+    /**
+     * @return Best time per scanned entry over a few rounds, after warming up
+     */
+    private static double time(NavigableMap<Integer, Integer> map, int[] starts, int rangeSize, boolean descending) {
+        long sink = 0;
+        long entries = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            entries = 0;
+            for (int from : starts) {
+                //the range is 2*rangeSize wide since only even keys are present
+                NavigableMap<Integer, Integer> range = map.subMap(from, true, from + 2 * rangeSize, false);
+                if (descending) {
+                    range = range.descendingMap();
+                }
+                for (Map.Entry<Integer, Integer> ent : range.entrySet()) {
+                    sink += ent.getValue();
+                    entries++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round >= 2) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) best / Math.max(1, entries);
+    }
+}
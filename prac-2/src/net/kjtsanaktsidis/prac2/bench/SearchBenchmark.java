@@ -0,0 +1,90 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the cost of SkipListDict lookups: the number of key comparisons made per get() and the get() throughput.
+ * Only the public Map API is used, so the same benchmark can be run against older versions of the dictionary.
+ *
+ * Usage: SearchBenchmark [size...]    (defaults to 1M and 10M keys; run with a big enough -Xmx)
+ */
+public class SearchBenchmark {
+
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) {
+        int[] sizes = {1000000, 10000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int n : sizes) {
+            run(n);
+        }
+    }
+
+    private static void run(int n) {
+        Random rgen = new Random(42);
+        Map<CountingKey, Integer> dict = new SkipListDict<>();
+        //insert in shuffled order so the dictionary isn't built from a sorted run
+        int[] order = shuffledRange(n, rgen);
+        for (int k : order) {
+            dict.put(new CountingKey(k), k);
+        }
+
+        CountingKey[] probes = new CountingKey[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            //roughly half hits and half misses
+            probes[i] = new CountingKey(rgen.nextInt(2 * n));
+        }
+
+        //warm up, then take the best of a few timed rounds
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            sink += lookupAll(dict, probes);
+        }
+        long best = Long.MAX_VALUE;
+        long comparisons = 0;
+        for (int round = 0; round < 5; round++) {
+            CountingKey.comparisons = 0;
+            long start = System.nanoTime();
+            sink += lookupAll(dict, probes);
+            long elapsed = System.nanoTime() - start;
+            comparisons = CountingKey.comparisons;
+            best = Math.min(best, elapsed);
+        }
+
+        System.out.printf("n=%d: %.1f comparisons/get, %.0f gets/sec (checksum %d)%n",
+                n, (double) comparisons / LOOKUPS, LOOKUPS / (best / 1e9), sink);
+    }
+
+    private static long lookupAll(Map<CountingKey, Integer> dict, CountingKey[] probes) {
+        long found = 0;
+        for (CountingKey probe : probes) {
+            if (dict.get(probe) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    static int[] shuffledRange(int n, Random rgen) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = 2 * i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rgen.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,87 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.MappedSkipListDict;
+import net.kjtsanaktsidis.prac2.OffHeapSkipListDict;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares getting a dictionary of a given size ready to use at process start: rebuilding a SkipListDict or
+ * OffHeapSkipListDict through put(), against reopening a MappedSkipListDict that was closed cleanly (and, for
+ * comparison, one that has to be recovered). Also times the first few thousand lookups after reopening, which is
+ * where the mapped file gets paged in. The file will be in the page cache, so this is a warm start.
+ *
+ * Usage: StartupBenchmark [size]    (defaults to 1M keys)
+ */
+public class StartupBenchmark {
+
+    private static final byte[] VALUE = new byte[16];
+    private static final int PROBES = 10000;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int[] keys = SearchBenchmark.shuffledRange(size, new Random(42));
+        Path dir = Files.createTempDirectory("startup");
+        Path file = dir.resolve("dict");
+        Path crashed = dir.resolve("crashed");
+
+        MappedSkipListDict mapped = new MappedSkipListDict(file);
+        fill(mapped, keys);
+        //a copy taken with the header dirty is what a killed process leaves behind
+        mapped.put(-1L, VALUE);
+        Files.copy(file, crashed);
+        mapped.close();
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            fill(new SkipListDict<Long, byte[]>(), keys);
+            report("rebuild SkipListDict<Long>", start);
+
+            start = System.nanoTime();
+            fill(new OffHeapSkipListDict(), keys);
+            report("rebuild OffHeapSkipListDict", start);
+
+            start = System.nanoTime();
+            mapped = new MappedSkipListDict(file);
+            report("reopen MappedSkipListDict", start);
+            start = System.nanoTime();
+            probe(mapped, keys);
+            report("  then " + PROBES + " gets", start);
+            mapped.close();
+
+            if (round == 0) {
+                start = System.nanoTime();
+                mapped = new MappedSkipListDict(crashed);
+                report("recover MappedSkipListDict", start);
+                mapped.close();
+            }
+            System.out.println();
+        }
+
+        Files.delete(file);
+        Files.delete(crashed);
+        Files.delete(dir);
+    }
+
+    private static void fill(Map<Long, byte[]> dict, int[] keys) {
+        for (int k : keys) {
+            dict.put((long) k, VALUE);
+        }
+    }
+
+    private static void probe(MappedSkipListDict dict, int[] keys) {
+        Random rgen = new Random(1);
+        for (int i = 0; i < PROBES; i++) {
+            dict.get((long) keys[rgen.nextInt(keys.length)]);
+        }
+    }
+
+    private static void report(String what, long start) {
+        System.out.printf("%-30s %,10.2f ms%n", what, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,149 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.IncrementalSvgSkipListRenderer;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import net.kjtsanaktsidis.prac2.StreamingSvgSkipListRenderer;
+import net.kjtsanaktsidis.prac2.SvgSkipListRenderer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Random;
+
+/**
+ * Compares SvgSkipListRenderer, which builds a Batik DOM, with StreamingSvgSkipListRenderer, for dictionaries of
+ * 10k up to 1M keys. Output goes to a stream that just counts the bytes, so only the rendering is timed.
+ * Reports the time taken, the output size, and the peak heap while rendering over and above what the dictionary
+ * already used (from the JVM's memory pool peaks, so it catches garbage as well as what's still live).
+ * The DOM renderer is skipped above the size given, since it takes minutes and gigabytes there.
+ * Up to the DOM size, it also times IncrementalSvgSkipListRenderer: drawing everything the first time, then the
+ * whole document and just the delta after a single put().
+ * Also renders a window of 1000 keys from the middle of the biggest dictionary at a few level-of-detail cutoffs.
+ *
+ * Usage: SvgRenderBenchmark [largest size] [largest DOM size]    (defaults to 1M and 100k keys)
+ */
+public class SvgRenderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int largestDom = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        System.out.printf("%-10s %-24s %10s %14s %14s%n", "keys", "renderer", "ms", "output bytes", "peak heap MB");
+        //the first, small, round is warm-up
+        render(2000, largestDom, false);
+        SkipListDict<Integer, String> dict = null;
+        for (int n = 10000; n <= largest; n *= 10) {
+            dict = render(n, largestDom, true);
+        }
+
+        if (dict != null) {
+            int from = dict.size() / 2 * 2;
+            for (int minLevel = 0; minLevel <= 8; minLevel += 4) {
+                final SkipListDict<Integer, String> d = dict;
+                final int level = minLevel;
+                final int lo = from;
+                measure(dict.size(), "window, minLevel " + minLevel, new Render() {
+                    @Override
+                    public void run(Writer out) throws IOException {
+                        //a window covering about 1000 keys, since shuffledRange() keys are even
+                        StreamingSvgSkipListRenderer.render(d, null, lo, lo + 2000, level, out);
+                    }
+                }, true);
+            }
+        }
+    }
+
+    private interface Render {
+        void run(Writer out) throws IOException;
+    }
+
+    private static SkipListDict<Integer, String> render(final int n, int largestDom, boolean print) throws IOException {
+        final SkipListDict<Integer, String> dict = new SkipListDict<>();
+        for (int key : SearchBenchmark.shuffledRange(n, new Random(21))) {
+            dict.put(key, "");
+        }
+        if (n <= largestDom) {
+            measure(n, "DOM (Batik)", new Render() {
+                @Override
+                public void run(Writer out) throws IOException {
+                    SvgSkipListRenderer.SkipListToSVG(dict, (OutputStreamWriter) out);
+                }
+            }, print);
+        }
+        measure(n, "streaming", new Render() {
+            @Override
+            public void run(Writer out) throws IOException {
+                StreamingSvgSkipListRenderer.render(dict, out);
+            }
+        }, print);
+        if (n <= largestDom) {
+            final IncrementalSvgSkipListRenderer<Integer, String> renderer = new IncrementalSvgSkipListRenderer<>(dict);
+            measure(n, "incremental, first", new Render() {
+                @Override
+                public void run(Writer out) throws IOException {
+                    renderer.render(null, out);
+                }
+            }, print);
+            //odd keys are never in there already
+            measure(n, "incremental, 1 put", new Render() {
+                @Override
+                public void run(Writer out) throws IOException {
+                    dict.put(n - 1, "");
+                    renderer.render(null, out);
+                }
+            }, print);
+            measure(n, "delta, 1 put", new Render() {
+                @Override
+                public void run(Writer out) throws IOException {
+                    dict.put(n + 1, "");
+                    renderer.renderDelta(out);
+                }
+            }, print);
+        }
+        return dict;
+    }
+
+    private static void measure(int n, String name, Render render, boolean print) throws IOException {
+        CountingStream bytes = new CountingStream();
+        OutputStreamWriter out = new OutputStreamWriter(bytes, "UTF-8");
+        long before = PrimitiveKeyBenchmark.usedHeap();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long t0 = System.nanoTime();
+        render.run(out);
+        out.flush();
+        long t1 = System.nanoTime();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        if (print) {
+            System.out.printf("%-10d %-24s %10.0f %,14d %14.1f%n", n, name, (t1 - t0) / 1e6, bytes.count,
+                    Math.max(0, peak - before) / 1048576.0);
+        }
+    }
+
+    /**
+     * Throws the bytes away, counting them
+     */
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.count += len;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Measures the bytes allocated and the time taken by one full iteration over keySet(), values() and entrySet().
+ * The "copy" rows build the same collections the dictionary used to return (a TreeSet of the keys, an ArrayList of
+ * the values and a HashSet of SimpleImmutableEntry copies) and iterate those, to compare against the live views.
+ *
+ * Usage: ViewBenchmark [size]    (defaults to 1M keys)
+ */
+public class ViewBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        Random rgen = new Random(42);
+        for (int k : SearchBenchmark.shuffledRange(size, rgen)) {
+            //random values, since an entry's hash is key ^ value and the copy goes into a HashSet
+            dict.put(k, rgen.nextInt());
+        }
+
+        //run everything once untimed so the JIT has had a go at it
+        for (int view = 0; view < 3; view++) {
+            iterate(dict, view, false);
+            iterate(dict, view, true);
+        }
+
+        String[] names = {"keySet", "values", "entrySet"};
+        for (int view = 0; view < 3; view++) {
+            for (boolean copy : new boolean[]{true, false}) {
+                long bytes = 0;
+                double best = Double.MAX_VALUE;
+                for (int round = 0; round < 3; round++) {
+                    long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    long start = System.nanoTime();
+                    iterate(dict, view, copy);
+                    best = Math.min(best, (System.nanoTime() - start) / 1e6);
+                    bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+                }
+                System.out.printf("%-8s %-4s %,14d bytes allocated %8.1f ms%n", names[view], copy ? "copy" : "live",
+                        bytes, best);
+            }
+        }
+    }
+
+    /**
+     * Iterates over one of the views, or a copy of it as the dictionary used to make
+     *
+     * @return Something computed from every element, so the JIT can't skip the iteration
+     */
+    private static long iterate(SkipListDict<Integer, Integer> dict, int view, boolean copy) {
+        long sum = 0;
+        switch (view) {
+            case 0: {
+                Collection<Integer> keys = dict.keySet();
+                if (copy) {
+                    keys = new TreeSet<>();
+                    for (Integer k : dict.keySet()) {
+                        keys.add(k);
+                    }
+                }
+                for (Integer k : keys) {
+                    sum += k;
+                }
+                break;
+            }
+            case 1: {
+                Collection<Integer> values = copy ? new ArrayList<>(dict.values()) : dict.values();
+                for (Integer v : values) {
+                    sum += v;
+                }
+                break;
+            }
+            default: {
+                Collection<Map.Entry<Integer, Integer>> entries = dict.entrySet();
+                if (copy) {
+                    entries = new HashSet<>();
+                    for (Map.Entry<Integer, Integer> e : dict.entrySet()) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+                    }
+                }
+                for (Map.Entry<Integer, Integer> e : entries) {
+                    sum += e.getKey() ^ e.getValue();
+                }
+                break;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,114 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.Codec;
+import net.kjtsanaktsidis.prac2.DurableSkipListDict;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures DurableSkipListDict: sustained put() throughput with a number of writer threads for a range of group
+ * commit windows, and then how long it takes to reopen a dictionary of the given size from a snapshot plus a log
+ * tail of a tenth of that size.
+ *
+ * Usage: WalBenchmark [recoverySize [seconds [dir]]]    (defaults to 10M entries, 2 seconds per run, a temp dir)
+ */
+public class WalBenchmark {
+
+    private static final long[] WINDOWS_MICROS = {0, 100, 1000, 10000};
+    private static final int[] THREAD_COUNTS = {1, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        int recoverySize = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        Path base = args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("wal");
+
+        for (long window : WINDOWS_MICROS) {
+            for (int threads : THREAD_COUNTS) {
+                Path dir = base.resolve("throughput");
+                double ops = throughput(dir, window, threads, seconds);
+                System.out.printf("window %,6d us, %2d threads: %,10.0f puts/sec%n", window, threads, ops);
+                delete(dir);
+            }
+        }
+
+        Path dir = base.resolve("recovery");
+        DurableSkipListDict<Long, Long> dict = new DurableSkipListDict<>(dir, Codec.LONG, Codec.LONG, null, 0,
+                Long.MAX_VALUE);
+        int batchSize = 100000;
+        int logged = recoverySize / 10;
+        for (long start = 0; start < recoverySize + logged; start += batchSize) {
+            TreeMap<Long, Long> batch = new TreeMap<>();
+            for (long k = start; k < start + batchSize; k++) {
+                //the log tail overwrites keys already in the snapshot
+                batch.put(k < recoverySize ? k : k - recoverySize, k);
+            }
+            dict.putAll(batch);
+            if (start + batchSize == recoverySize) {
+                long snapStart = System.nanoTime();
+                dict.snapshot();
+                System.out.printf("snapshot of %,d entries: %,.0f ms%n", dict.size(),
+                        (System.nanoTime() - snapStart) / 1e6);
+            }
+        }
+        dict.close();
+        dict = null;
+        System.gc();
+
+        long start = System.nanoTime();
+        dict = new DurableSkipListDict<>(dir, Codec.LONG, Codec.LONG, null, 0, Long.MAX_VALUE);
+        System.out.printf("recovery of %,d entries (%,d log records replayed): %,.0f ms%n", dict.size(),
+                dict.getReplayedRecords(), (System.nanoTime() - start) / 1e6);
+        dict.close();
+        delete(base);
+    }
+
+    private static double throughput(Path dir, long windowMicros, int threads, final double seconds)
+            throws IOException, InterruptedException {
+        final DurableSkipListDict<Long, Long> dict = new DurableSkipListDict<>(dir, Codec.LONG, Codec.LONG, null,
+                windowMicros, Long.MAX_VALUE);
+        final AtomicLong total = new AtomicLong();
+        final long stopAt = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom rgen = ThreadLocalRandom.current();
+                    long ops = 0;
+                    while (System.nanoTime() < stopAt) {
+                        dict.put(rgen.nextLong(1000000), ops);
+                        ops++;
+                    }
+                    total.addAndGet(ops);
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        dict.close();
+        return total.get() / seconds;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
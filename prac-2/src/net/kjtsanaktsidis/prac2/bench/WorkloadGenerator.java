@@ -0,0 +1,89 @@
+package net.kjtsanaktsidis.prac2.bench;
+
+import net.kjtsanaktsidis.prac2.Codec;
+import net.kjtsanaktsidis.prac2.KeyGenerator;
+import net.kjtsanaktsidis.prac2.Trace;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes a synthetic Trace, for TraceReplayer to replay. Each thread gets its own run of operations, mixed in the
+ * given proportions, with keys from the given distribution; ranges cover the 100 keys from the one picked.
+ * Zipfian uses theta = 0.99, and hotspot sends 90% of the operations to 10% of the keys. Sequential threads each
+ * start at their own share of the key range, so they don't all go over the same keys at once.
+ * The operations are spread evenly over time at the given total rate; a rate of 0 puts them all at time 0, for traces
+ * only meant to be replayed at maximum speed.
+ *
+ * Usage: WorkloadGenerator out-file [uniform|zipfian|sequential|hotspot] [ops] [keys] [threads] [get/put/remove/range
+ *        percentages] [ops/sec]    (defaults to uniform, 1M ops over 1M keys, 4 threads, 50/25/20/5, and 0)
+ *
+ * To replay with the key range half full: TraceReplayer out-file skiplist max 500000
+ */
+public class WorkloadGenerator {
+
+    private static final int RANGE_LENGTH = 100;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkloadGenerator out-file [uniform|zipfian|sequential|hotspot] [ops] [keys] " +
+                    "[threads] [get/put/remove/range percentages] [ops/sec]");
+            System.exit(1);
+        }
+        String distribution = args.length > 1 ? args[1] : "uniform";
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        int keys = args.length > 3 ? Integer.parseInt(args[3]) : 1000000;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        String[] mix = (args.length > 5 ? args[5] : "50/25/20/5").split("/");
+        double rate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+
+        int[] cumulative = new int[4];
+        int total = 0;
+        for (int i = 0; i < 4; i++) {
+            total += i < mix.length ? Integer.parseInt(mix[i]) : 0;
+            cumulative[i] = total;
+        }
+        if (total != 100) {
+            throw new IllegalArgumentException("The percentages have to add up to 100, but they add up to " + total);
+        }
+
+        KeyGenerator[] generators = new KeyGenerator[threads];
+        for (int t = 0; t < threads; t++) {
+            generators[t] = generator(distribution, keys, t, threads);
+        }
+        Random rgen = new Random(24);
+        //each thread does one op in every `threads`, so its own ops are spaced that much further apart
+        double nanosPerOp = rate > 0 ? 1e9 / rate : 0;
+
+        long t0 = System.nanoTime();
+        try (Trace.Writer<Integer> out = new Trace.Writer<>(new FileOutputStream(args[0]), Codec.INTEGER)) {
+            for (int i = 0; i < ops; i++) {
+                int thread = i % threads;
+                int roll = rgen.nextInt(100);
+                byte op = roll < cumulative[0] ? Trace.GET : roll < cumulative[1] ? Trace.PUT
+                        : roll < cumulative[2] ? Trace.REMOVE : Trace.RANGE;
+                int key = generators[thread].next();
+                out.write(op, thread, (long) (i * nanosPerOp), key, key + RANGE_LENGTH);
+            }
+        }
+        System.out.printf("Wrote %,d %s ops over %,d keys for %d threads in %.0fms%n", ops, distribution, keys,
+                threads, (System.nanoTime() - t0) / 1e6);
+    }
+
+    private static KeyGenerator generator(String distribution, int keys, int thread, int threads) {
+        long seed = 24 + thread;
+        switch (distribution) {
+            case "uniform":
+                return KeyGenerator.uniform(keys, seed);
+            case "zipfian":
+                return KeyGenerator.zipfian(keys, 0.99, seed);
+            case "sequential":
+                return KeyGenerator.sequential(keys, (int) ((long) keys * thread / threads));
+            case "hotspot":
+                return KeyGenerator.hotspot(keys, 0.1, 0.9, seed);
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+    }
+}
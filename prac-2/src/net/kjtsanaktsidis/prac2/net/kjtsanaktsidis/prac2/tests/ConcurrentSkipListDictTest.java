@@ -0,0 +1,250 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.ConcurrentSkipListDict;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentSkipListDictTest {
+
+    private ConcurrentNavigableMap<Integer, String> getPreparedDict()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = new ConcurrentSkipListDict<>();
+        dict.put(4, "four");
+        dict.put(1, "one");
+        dict.put(9, "nine");
+        dict.put(5, "five");
+        dict.put(0, "zero");
+        return dict;
+    }
+
+    @Test
+    public void canGetItems()
+    {
+        Map<Integer, String> dict = getPreparedDict();
+        Assert.assertEquals(dict.get(0), "zero");
+        Assert.assertEquals(dict.get(1), "one");
+        Assert.assertEquals(dict.get(4), "four");
+        Assert.assertEquals(dict.get(5), "five");
+        Assert.assertEquals(dict.get(9), "nine");
+        Assert.assertEquals(dict.get(-9), null);
+        Assert.assertEquals(dict.get(82), null);
+        Assert.assertEquals(dict.size(), 5);
+    }
+
+    @Test
+    public void canOverwriteAndRemove()
+    {
+        Map<Integer, String> dict = getPreparedDict();
+        Assert.assertEquals(dict.put(4, "FOUR"), "four");
+        Assert.assertEquals(dict.get(4), "FOUR");
+        Assert.assertEquals(dict.size(), 5);
+
+        Assert.assertEquals(dict.remove(4), "FOUR");
+        Assert.assertFalse(dict.containsKey(4));
+        Assert.assertEquals(dict.remove(4), null);
+        Assert.assertEquals(dict.size(), 4);
+
+        dict.clear();
+        Assert.assertTrue(dict.isEmpty());
+        Assert.assertEquals(dict.size(), 0);
+    }
+
+    @Test
+    public void canDoConditionalUpdates()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = getPreparedDict();
+        Assert.assertEquals(dict.putIfAbsent(4, "x"), "four");
+        Assert.assertEquals(dict.putIfAbsent(6, "six"), null);
+        Assert.assertEquals(dict.get(6), "six");
+
+        Assert.assertFalse(dict.replace(6, "seven", "x"));
+        Assert.assertTrue(dict.replace(6, "six", "SIX"));
+        Assert.assertEquals(dict.replace(6, "six"), "SIX");
+        Assert.assertEquals(dict.replace(7, "seven"), null);
+
+        Assert.assertFalse(dict.remove(6, "SIX"));
+        Assert.assertTrue(dict.remove(6, "six"));
+        Assert.assertFalse(dict.containsKey(6));
+    }
+
+    @Test
+    public void canNavigate()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = getPreparedDict();
+        Assert.assertEquals((int)dict.firstKey(), 0);
+        Assert.assertEquals((int)dict.lastKey(), 9);
+        Assert.assertEquals((int)dict.floorKey(6), 5);
+        Assert.assertEquals((int)dict.floorKey(5), 5);
+        Assert.assertEquals((int)dict.lowerKey(5), 4);
+        Assert.assertEquals((int)dict.ceilingKey(6), 9);
+        Assert.assertEquals((int)dict.higherKey(5), 9);
+        Assert.assertEquals(dict.lowerKey(0), null);
+        Assert.assertEquals(dict.higherKey(9), null);
+        Assert.assertEquals(dict.ceilingEntry(2).getValue(), "four");
+
+        Assert.assertEquals(dict.pollFirstEntry().getKey(), (Integer)0);
+        Assert.assertEquals(dict.pollLastEntry().getKey(), (Integer)9);
+        Assert.assertEquals(dict.keySet(), new TreeSet<>(Arrays.asList(1, 4, 5)));
+    }
+
+    @Test
+    public void canUseSubMapViews()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = getPreparedDict();
+        ConcurrentNavigableMap<Integer, String> sub = dict.subMap(1, 9);
+        Assert.assertEquals(new ArrayList<>(sub.keySet()), Arrays.asList(1, 4, 5));
+        Assert.assertEquals(sub.size(), 3);
+        Assert.assertNull(sub.get(9));
+
+        //views are live in both directions
+        dict.put(6, "six");
+        Assert.assertTrue(sub.containsKey(6));
+        sub.remove(4);
+        Assert.assertFalse(dict.containsKey(4));
+
+        ConcurrentNavigableMap<Integer, String> desc = dict.descendingMap();
+        Assert.assertEquals(new ArrayList<>(desc.keySet()), Arrays.asList(9, 6, 5, 1, 0));
+        Assert.assertEquals((int)desc.firstKey(), 9);
+        Assert.assertEquals((int)desc.ceilingKey(7), 6);
+        Assert.assertEquals(new ArrayList<>(desc.headMap(5, true).keySet()), Arrays.asList(9, 6, 5));
+        Assert.assertEquals(new ArrayList<>(dict.tailMap(5, false).descendingKeySet()), Arrays.asList(9, 6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantPutOutsideSubMap()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = getPreparedDict();
+        dict.headMap(5).put(5, "five");
+    }
+
+    @Test
+    public void canIterateAndRemove()
+    {
+        ConcurrentNavigableMap<Integer, String> dict = getPreparedDict();
+        Iterator<Map.Entry<Integer, String>> it = dict.entrySet().iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            seen.add(e.getKey());
+            if (e.getKey() % 2 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(seen, Arrays.asList(0, 1, 4, 5, 9));
+        Assert.assertEquals(new ArrayList<>(dict.values()), Arrays.asList("one", "five", "nine"));
+    }
+
+    @Test
+    public void concurrentWritersDontLoseUpdates() throws InterruptedException
+    {
+        final ConcurrentSkipListDict<Integer, Integer> dict = new ConcurrentSkipListDict<>();
+        final int nThreads = 8;
+        final int opsPerThread = 20000;
+        final int keySpace = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        //Each thread owns the keys that are equal to its number mod nThreads, and tracks what it expects them to hold
+        final List<Map<Integer, Integer>> expected = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            final Map<Integer, Integer> mine = new HashMap<>();
+            expected.add(mine);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        Random rgen = new Random(id);
+                        for (int i = 0; i < opsPerThread; i++) {
+                            int key = rgen.nextInt(keySpace / nThreads) * nThreads + id;
+                            if (rgen.nextInt(3) == 0) {
+                                Integer removed = dict.remove(key);
+                                if (!Objects.equals(removed, mine.remove(key))) {
+                                    throw new AssertionError("remove(" + key + ") returned " + removed);
+                                }
+                            }
+                            else {
+                                Integer old = dict.put(key, i);
+                                if (!Objects.equals(old, mine.put(key, i))) {
+                                    throw new AssertionError("put(" + key + ") returned " + old);
+                                }
+                            }
+                            //someone else's key; whatever is there must belong to them
+                            Integer otherKey = rgen.nextInt(keySpace);
+                            Integer otherValue = dict.get(otherKey);
+                            if (otherValue != null && (otherValue < 0 || otherValue >= opsPerThread)) {
+                                throw new AssertionError("get(" + otherKey + ") returned " + otherValue);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        TreeMap<Integer, Integer> all = new TreeMap<>();
+        for (Map<Integer, Integer> mine : expected) {
+            all.putAll(mine);
+        }
+        Assert.assertEquals(dict.size(), all.size());
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(all.entrySet()));
+    }
+
+    @Test
+    public void concurrentInsertsOfSameKeysAgree() throws InterruptedException
+    {
+        final ConcurrentSkipListDict<Integer, Integer> dict = new ConcurrentSkipListDict<>();
+        final int nThreads = 8;
+        final int nKeys = 5000;
+        final int[] winners = new int[nThreads];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < nKeys; k++) {
+                        if (dict.putIfAbsent(k, id) == null) {
+                            winners[id]++;
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        //exactly one thread must have inserted each key
+        int total = 0;
+        for (int w : winners) {
+            total += w;
+        }
+        Assert.assertEquals(total, nKeys);
+        Assert.assertEquals(dict.size(), nKeys);
+        Assert.assertEquals((int)dict.firstKey(), 0);
+        Assert.assertEquals((int)dict.lastKey(), nKeys - 1);
+    }
+}
@@ -0,0 +1,225 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.DictServer;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DictServerTest {
+
+    private SkipListDict<Integer, String> dict;
+    private DictServer server;
+    private Thread serverThread;
+    private File printout;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        dict = new SkipListDict<>();
+        printout = File.createTempFile("printout", ".svg");
+        server = new DictServer(dict, 0, printout);
+        serverThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        serverThread.start();
+    }
+
+    @After
+    public void stopServer() throws InterruptedException
+    {
+        server.close();
+        serverThread.join();
+        printout.delete();
+    }
+
+    private Socket connect() throws IOException
+    {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static void send(Socket socket, String commands) throws IOException
+    {
+        socket.getOutputStream().write(commands.getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    @Test
+    public void canRunPipelinedCommands() throws IOException
+    {
+        try (Socket socket = connect()) {
+            BufferedReader in = reader(socket);
+            //all in one write, so they arrive together
+            send(socket, "i 5\ni 7 seven\r\ni 9 \"nine and a bit\"\ns 7\ns 8\nd 5\nd 5\n\nbogus\ni x\ns\n");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "Found");
+            Assert.assertEquals(in.readLine(), "Not found");
+            Assert.assertEquals(in.readLine(), "Deleted");
+            Assert.assertEquals(in.readLine(), "Not found");
+            Assert.assertEquals(in.readLine(), "Unknown command");
+            Assert.assertEquals(in.readLine(), "Keys must be integers");
+            Assert.assertEquals(in.readLine(), "Wrong number of arguments to search");
+
+            //commands split across writes still work
+            send(socket, "s ");
+            send(socket, "9\n");
+            Assert.assertEquals(in.readLine(), "Found");
+            send(socket, "x\n");
+            Assert.assertNull(in.readLine());
+        }
+        Assert.assertEquals(dict.get(7), "seven");
+        Assert.assertEquals(dict.get(9), "nine and a bit");
+        Assert.assertFalse(dict.containsKey(5));
+    }
+
+    @Test
+    public void canPrint() throws IOException
+    {
+        try (Socket socket = connect()) {
+            BufferedReader in = reader(socket);
+            send(socket, "i 1\ni 2\nsp 2\n");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "Found");
+            Assert.assertTrue(in.readLine().startsWith("Printed "));
+        }
+        Assert.assertTrue(printout.length() > 0);
+    }
+
+    @Test
+    public void longPrintResponsesStillEndTheirLine() throws IOException
+    {
+        //a printout path too long to fit in a response
+        File dir = printout.getParentFile();
+        for (int i = 0; i < 4; i++) {
+            dir = new File(dir, new String(new char[200]).replace('\0', (char) ('a' + i)));
+        }
+        Assert.assertTrue(dir.mkdirs());
+        File deep = new File(dir, "printout.svg");
+        DictServer deepServer = new DictServer(dict, 0, deep);
+        Thread deepThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    deepServer.run();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        deepThread.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), deepServer.getPort())) {
+            BufferedReader in = reader(socket);
+            send(socket, "i 1\nsp 1\ns 1\n");
+            Assert.assertEquals(in.readLine(), "OK");
+            Assert.assertEquals(in.readLine(), "Found");
+            String printed = in.readLine();
+            Assert.assertTrue(printed.startsWith("Printed "));
+            Assert.assertTrue(printed.length() < deep.getAbsolutePath().length());
+            //the next response is still on a line of its own
+            Assert.assertEquals(in.readLine(), "Found");
+        }
+        finally {
+            deepServer.close();
+            try {
+                deepThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (File f = deep; !f.equals(printout.getParentFile()); f = f.getParentFile()) {
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void keepsUpWithClientsThatDontRead() throws Exception
+    {
+        //far more responses than fit in the socket buffers, written before reading any of them; the server has to
+        //stop reading while the responses back up, and pick up again as they're read
+        final int n = 200000;
+        try (final Socket socket = connect()) {
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                StandardCharsets.UTF_8));
+                        for (int i = 0; i < n; i++) {
+                            out.write(i % 2 == 0 ? "i " + i + "\n" : "s " + (i - 1) + "\n");
+                        }
+                        out.flush();
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            writer.start();
+            Thread.sleep(200);
+            BufferedReader in = reader(socket);
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(in.readLine(), i % 2 == 0 ? "OK" : "Found");
+            }
+            writer.join();
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+        }
+        Assert.assertEquals(dict.size(), n / 2);
+    }
+
+    @Test
+    public void servesManyConnections() throws IOException
+    {
+        Socket[] sockets = new Socket[10];
+        try {
+            for (int c = 0; c < sockets.length; c++) {
+                sockets[c] = connect();
+                send(sockets[c], "i " + c + "\n");
+            }
+            BufferedReader[] readers = new BufferedReader[sockets.length];
+            for (int c = 0; c < sockets.length; c++) {
+                readers[c] = reader(sockets[c]);
+                Assert.assertEquals(readers[c].readLine(), "OK");
+            }
+            //every insert is in by now, whichever connection it came from
+            for (int c = 0; c < sockets.length; c++) {
+                send(sockets[c], "s " + (sockets.length - 1 - c) + "\n");
+                Assert.assertEquals(readers[c].readLine(), "Found");
+            }
+        }
+        finally {
+            for (Socket s : sockets) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+        }
+    }
+}
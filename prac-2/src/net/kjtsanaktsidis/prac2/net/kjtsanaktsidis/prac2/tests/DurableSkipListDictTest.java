@@ -0,0 +1,256 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.Codec;
+import net.kjtsanaktsidis.prac2.DurableSkipListDict;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class DurableSkipListDictTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DurableSkipListDict<Integer, String> open(Path dir) throws IOException
+    {
+        return new DurableSkipListDict<>(dir, Codec.INTEGER, Codec.STRING, null, 0, 1 << 20);
+    }
+
+    private static List<String> names(Path dir, String prefix)
+    {
+        List<String> found = new ArrayList<>();
+        for (String name : dir.toFile().list()) {
+            if (name.startsWith(prefix)) {
+                found.add(name);
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    @Test
+    public void canReopen() throws IOException
+    {
+        Path dir = folder.newFolder().toPath();
+        DurableSkipListDict<Integer, String> dict = open(dir);
+        dict.put(4, "four");
+        dict.put(1, "one");
+        dict.put(9, "nine");
+        dict.clear();
+        dict.put(5, "five");
+        dict.put(0, "zero");
+        dict.put(7, null);
+        dict.put(5, "FIVE");
+        Assert.assertEquals(dict.remove(0), "zero");
+        Assert.assertEquals(dict.remove(0), null);
+        dict.close();
+
+        dict = open(dir);
+        Assert.assertFalse(dict.isRecoveredFromSnapshot());
+        Assert.assertEquals(dict.getReplayedRecords(), 9);
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(5, 7));
+        Assert.assertEquals(dict.get(5), "FIVE");
+        Assert.assertTrue(dict.containsKey(7));
+        Assert.assertNull(dict.get(7));
+        dict.close();
+    }
+
+    @Test
+    public void snapshotReplacesTheLog() throws IOException
+    {
+        Path dir = folder.newFolder().toPath();
+        DurableSkipListDict<Integer, String> dict = open(dir);
+        Map<Integer, String> batch = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.put(i, "v" + i);
+        }
+        dict.putAll(batch);
+        dict.snapshot();
+        dict.remove(3);
+        dict.put(2000, "v2000");
+        dict.close();
+        Assert.assertEquals(names(dir, "snapshot-").size(), 1);
+        Assert.assertEquals(names(dir, "log-").size(), 1);
+
+        dict = open(dir);
+        Assert.assertTrue(dict.isRecoveredFromSnapshot());
+        Assert.assertEquals(dict.getReplayedRecords(), 2);
+        Assert.assertEquals(dict.size(), 1000);
+        Assert.assertFalse(dict.containsKey(3));
+        Assert.assertEquals(dict.get(999), "v999");
+        Assert.assertEquals(dict.get(2000), "v2000");
+        dict.close();
+    }
+
+    @Test
+    public void snapshotsAreTakenAsTheLogGrows() throws IOException
+    {
+        Path dir = folder.newFolder().toPath();
+        DurableSkipListDict<Integer, String> dict =
+                new DurableSkipListDict<>(dir, Codec.INTEGER, Codec.STRING, null, 0, 4096);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random rgen = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            int key = rgen.nextInt(500);
+            if (rgen.nextInt(4) == 0) {
+                Assert.assertEquals(dict.remove(key), expected.remove(key));
+            }
+            else {
+                Assert.assertEquals(dict.put(key, "v" + i), expected.put(key, "v" + i));
+            }
+        }
+        dict.close();
+        Assert.assertEquals(names(dir, "snapshot-").size(), 1);
+
+        dict = open(dir);
+        Assert.assertTrue(dict.isRecoveredFromSnapshot());
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(expected.entrySet()));
+        dict.close();
+    }
+
+    @Test
+    public void tornRecordsAreCutOff() throws IOException
+    {
+        Path dir = folder.newFolder().toPath();
+        DurableSkipListDict<Integer, String> dict = open(dir);
+        dict.put(1, "one");
+        dict.put(2, "two");
+        dict.close();
+
+        //half a record, as if the process died partway through a write
+        File log = dir.resolve(names(dir, "log-").get(0)).toFile();
+        long goodLength = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[]{0, 0, 0, 20, 1, 2, 3});
+        }
+
+        dict = open(dir);
+        Assert.assertEquals(dict.getReplayedRecords(), 2);
+        Assert.assertEquals(log.length(), goodLength);
+        dict.put(3, "three");
+        dict.close();
+
+        dict = open(dir);
+        Assert.assertEquals(new ArrayList<>(dict.values()), Arrays.asList("one", "two", "three"));
+        dict.close();
+    }
+
+    @Test
+    public void concurrentWritersShareCommits() throws Exception
+    {
+        Path dir = folder.newFolder().toPath();
+        final DurableSkipListDict<Integer, String> dict =
+                new DurableSkipListDict<>(dir, Codec.INTEGER, Codec.STRING, null, 500, 1 << 20);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        dict.put(i * 8 + id, "t" + id);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        dict.close();
+
+        DurableSkipListDict<Integer, String> reopened = open(dir);
+        Assert.assertEquals(reopened.size(), 1600);
+        for (int k = 0; k < 1600; k++) {
+            Assert.assertEquals(reopened.get(k), "t" + (k % 8));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void changesThroughTheEntrySetAreLogged() throws IOException
+    {
+        Path dir = folder.newFolder().toPath();
+        DurableSkipListDict<Integer, String> dict = open(dir);
+        for (int k = 0; k < 10; k++) {
+            dict.put(k, "v" + k);
+        }
+        Set<Map.Entry<Integer, String>> entries = dict.entrySet();
+        Iterator<Map.Entry<Integer, String>> it = entries.iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            if (e.getKey() % 2 == 1) {
+                it.remove();
+            }
+            else if (e.getKey() == 4) {
+                e.setValue("FOUR");
+            }
+        }
+        dict.keySet().remove(8);
+        //it's a view, so it sees changes made after it was taken
+        dict.put(20, "twenty");
+        Assert.assertEquals(entries.size(), 5);
+        try {
+            Iterator<Integer> keys = dict.keySet().iterator();
+            keys.next();
+            dict.remove(0);
+            keys.next();
+            Assert.fail("carried on after a remove");
+        }
+        catch (ConcurrentModificationException e) {
+            //expected
+        }
+        dict.close();
+
+        dict = open(dir);
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(2, 4, 6, 20));
+        Assert.assertEquals(dict.get(4), "FOUR");
+        dict.close();
+    }
+
+    @Test
+    public void writersFailIfTheLogWriterIsInterrupted() throws Exception
+    {
+        Path dir = folder.newFolder().toPath();
+        final DurableSkipListDict<Integer, String> dict = open(dir);
+        dict.put(1, "one");
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("DurableSkipListDict log writer")) {
+                t.interrupt();
+                t.join();
+            }
+        }
+        final Throwable[] thrown = new Throwable[1];
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    dict.put(2, "two");
+                }
+                catch (Throwable e) {
+                    thrown[0] = e;
+                }
+            }
+        };
+        writer.start();
+        writer.join(10000);
+        Assert.assertFalse("the writer is still waiting for the log", writer.isAlive());
+        Assert.assertTrue(thrown[0] instanceof IllegalStateException);
+        try {
+            dict.close();
+            Assert.fail("closed as if the log were fine");
+        }
+        catch (IOException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.IncrementalSvgSkipListRenderer;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import net.kjtsanaktsidis.prac2.StreamingSvgSkipListRenderer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class IncrementalSvgSkipListRendererTest {
+
+    private static final Pattern TRANSLATE = Pattern.compile("translate\\((-?\\d+),");
+
+    private Document parse(String xml) throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    private static int translation(Element g)
+    {
+        Matcher m = TRANSLATE.matcher(g.getAttribute("transform"));
+        Assert.assertTrue(m.find());
+        return Integer.parseInt(m.group(1));
+    }
+
+    /**
+     * @return Every box, link and label in absolute coordinates, as sorted strings; red links are listed apart from
+     *         the rest, since the overlay draws them over blue ones
+     */
+    private List<String> shapes(Document doc, boolean red)
+    {
+        List<String> shapes = new ArrayList<>();
+        NodeList groups = doc.getElementsByTagName("g");
+        for (int i = 0; i < groups.getLength(); i++) {
+            Element g = (Element) groups.item(i);
+            if (g.getAttribute("id").equals("towers")) {
+                continue;
+            }
+            int tx = translation(g);
+            for (Node child = g.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (!(child instanceof Element)) {
+                    continue;
+                }
+                Element e = (Element) child;
+                String shape;
+                if (e.getTagName().equals("line")) {
+                    int x1 = Integer.parseInt(e.getAttribute("x1")) + tx;
+                    int x2 = Integer.parseInt(e.getAttribute("x2")) + tx;
+                    boolean isRed = e.getAttribute("stroke").equals("rgb(255, 0, 0)");
+                    if (isRed != red) {
+                        continue;
+                    }
+                    //the overlay stops at the edge of the box the link lands on, rather than its middle
+                    int right = Math.max(x1, x2);
+                    shape = "line " + Math.min(x1, x2) + " " + (right - right % 80 + 20) + " " + e.getAttribute("y1");
+                }
+                else if (red) {
+                    continue;
+                }
+                else if (e.getTagName().equals("rect")) {
+                    shape = "rect " + tx + " " + e.getAttribute("y") + " " + e.getAttribute("fill");
+                }
+                else {
+                    shape = "text " + tx + " " + e.getTextContent();
+                }
+                shapes.add(shape);
+            }
+        }
+        Collections.sort(shapes);
+        return shapes;
+    }
+
+    private SkipListDict<Integer, String> makeDict(int n, Random rgen)
+    {
+        SkipListDict<Integer, String> dict = new SkipListDict<>();
+        for (int i = 0; i < n; i++) {
+            int key = rgen.nextInt(n * 4);
+            dict.put(key, Integer.toString(key));
+        }
+        return dict;
+    }
+
+    private String render(IncrementalSvgSkipListRenderer<Integer, String> renderer,
+                          SkipListDict<Integer, String>.SearchTrace trace) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        renderer.render(trace, out);
+        return out.toString();
+    }
+
+    private String delta(IncrementalSvgSkipListRenderer<Integer, String> renderer) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        renderer.renderDelta(out);
+        return out.toString();
+    }
+
+    /**
+     * Applies a delta to a document, the way a viewer would
+     */
+    private void apply(Document doc, Document delta)
+    {
+        Element towers = null;
+        Map<String, Element> byId = new HashMap<>();
+        NodeList groups = doc.getElementsByTagName("g");
+        for (int i = 0; i < groups.getLength(); i++) {
+            Element g = (Element) groups.item(i);
+            byId.put(g.getAttribute("id"), g);
+        }
+        towers = byId.get("towers");
+
+        for (Node op = delta.getDocumentElement().getFirstChild(); op != null; op = op.getNextSibling()) {
+            if (!(op instanceof Element)) {
+                continue;
+            }
+            Element e = (Element) op;
+            switch (e.getTagName()) {
+                case "remove":
+                    towers.removeChild(byId.remove(e.getAttribute("id")));
+                    break;
+                case "shift":
+                    int by = Integer.parseInt(e.getAttribute("by"));
+                    Element last = byId.get(e.getAttribute("last"));
+                    for (Node n = byId.get(e.getAttribute("first")); ; n = n.getNextSibling()) {
+                        if (!(n instanceof Element)) {
+                            continue;
+                        }
+                        Element g = (Element) n;
+                        g.setAttribute("transform", "scale(1,-1)translate(" + (translation(g) + by) + ", -400)");
+                        if (g == last) {
+                            break;
+                        }
+                    }
+                    break;
+                case "put":
+                    String id = e.getAttribute("id");
+                    Element old = byId.remove(id);
+                    if (old != null) {
+                        towers.removeChild(old);
+                    }
+                    Element g = null;
+                    for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+                        if (n instanceof Element) {
+                            g = (Element) doc.importNode(n, true);
+                        }
+                    }
+                    String after = e.getAttribute("after");
+                    Node before = after.isEmpty() ? towers.getFirstChild() : byId.get(after).getNextSibling();
+                    towers.insertBefore(g, before);
+                    byId.put(id, g);
+                    break;
+                default:
+                    Assert.fail("unexpected delta element " + e.getTagName());
+            }
+        }
+    }
+
+    @Test
+    public void matchesStreamingRenderer() throws Exception
+    {
+        SkipListDict<Integer, String> dict = makeDict(300, new Random(22));
+        SkipListDict<Integer, String>.SearchTrace trace = dict.traceSearch(dict.ceilingKey(700));
+        IncrementalSvgSkipListRenderer<Integer, String> renderer = new IncrementalSvgSkipListRenderer<>(dict);
+
+        StringWriter streamed = new StringWriter();
+        StreamingSvgSkipListRenderer.render(dict, trace, streamed);
+        Document expected = parse(streamed.toString());
+        Document actual = parse(render(renderer, trace));
+        //the overlay leaves the links underneath it blue, so compare the base picture without the trace
+        StringWriter plain = new StringWriter();
+        StreamingSvgSkipListRenderer.render(dict, plain);
+        Assert.assertEquals(shapes(actual, false), shapes(parse(plain.toString()), false));
+        Assert.assertEquals(shapes(actual, true), shapes(expected, true));
+        Assert.assertEquals(shapes(actual, true).size(), trace.getHopCount());
+    }
+
+    @Test
+    public void deltasReproduceFullRenders() throws Exception
+    {
+        Random rgen = new Random(22);
+        SkipListDict<Integer, String> dict = makeDict(500, rgen);
+        IncrementalSvgSkipListRenderer<Integer, String> renderer = new IncrementalSvgSkipListRenderer<>(dict);
+        Document doc = parse(render(renderer, null));
+
+        for (int round = 0; round < 40; round++) {
+            //a few changes at a time, sometimes just the one
+            int changes = round % 2 == 0 ? 1 : 1 + rgen.nextInt(5);
+            for (int i = 0; i < changes; i++) {
+                int key = rgen.nextInt(2000);
+                if (rgen.nextBoolean()) {
+                    dict.put(key, "");
+                }
+                else {
+                    dict.remove(key);
+                }
+            }
+            apply(doc, parse(delta(renderer)));
+
+            //a renderer starting from scratch has to draw the same picture
+            Document fresh = parse(render(new IncrementalSvgSkipListRenderer<>(dict), null));
+            Assert.assertEquals(shapes(doc, false), shapes(fresh, false));
+        }
+    }
+
+    @Test
+    public void onlyRedrawsWhatChanged() throws Exception
+    {
+        Random rgen = new Random(22);
+        SkipListDict<Integer, String> dict = makeDict(2000, rgen);
+        IncrementalSvgSkipListRenderer<Integer, String> renderer = new IncrementalSvgSkipListRenderer<>(dict);
+        render(renderer, null);
+        Assert.assertEquals(renderer.redrawn(), dict.size() + 2);
+
+        for (int i = 0; i < 20; i++) {
+            int key;
+            do {
+                key = rgen.nextInt(8000);
+            } while (dict.containsKey(key));
+            dict.put(key, "");
+            String delta = delta(renderer);
+            //the new tower, the tower each of the links over or onto it lands on, and maybe the sentinels if the list
+            //got taller
+            int redrawn = renderer.redrawn();
+            Assert.assertTrue(redrawn <= 24);
+            Assert.assertEquals(delta.split("<put ").length - 1, redrawn);
+            //everything after the new tower moves along one column, in one go
+            Assert.assertTrue(delta.split("<shift ").length - 1 <= redrawn);
+        }
+
+        //nothing changed, so nothing to do
+        Assert.assertEquals(delta(renderer).split("<put ").length - 1, 0);
+        String again = render(renderer, dict.traceSearch(100));
+        Assert.assertTrue(again.contains("rgb(255, 0, 0)"));
+    }
+
+    @Test
+    public void canRedrawOverlayOnItsOwn() throws Exception
+    {
+        SkipListDict<Integer, String> dict = makeDict(100, new Random(22));
+        IncrementalSvgSkipListRenderer<Integer, String> renderer = new IncrementalSvgSkipListRenderer<>(dict);
+        render(renderer, null);
+        StringWriter overlay = new StringWriter();
+        SkipListDict<Integer, String>.SearchTrace trace = dict.traceSearch(dict.lastKey());
+        renderer.renderOverlay(trace, overlay);
+        Assert.assertEquals(overlay.toString().split("<line ").length - 1, trace.getHopCount());
+
+        dict.put(-1, "");
+        try {
+            renderer.renderOverlay(dict.traceSearch(-1), new StringWriter());
+            Assert.fail("drew an overlay for a picture the viewer doesn't have");
+        }
+        catch (IllegalStateException e) {
+            //expected
+        }
+    }
+}
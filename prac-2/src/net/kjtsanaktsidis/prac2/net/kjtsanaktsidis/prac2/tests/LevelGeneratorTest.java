@@ -0,0 +1,92 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.LevelGenerator;
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LevelGeneratorTest {
+
+    /**
+     * @return How many of the heights reached each level, e.g. [0] is all of them
+     */
+    private int[] levelCounts(LevelGenerator gen, int samples)
+    {
+        int[] counts = new int[gen.getMaxLevel()];
+        for (int i = 0; i < samples; i++) {
+            int height = gen.generate();
+            Assert.assertTrue(height >= 1 && height <= gen.getMaxLevel());
+            for (int l = 0; l < height; l++) {
+                counts[l]++;
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void heightsAreGeometric()
+    {
+        for (double p : new double[]{0.5, 0.25, 0.3}) {
+            int samples = 400000;
+            int[] counts = levelCounts(new LevelGenerator(p, 32, 1234), samples);
+            //each level should have about p times as many towers as the one below, while there are enough to tell
+            for (int l = 1; l < 4; l++) {
+                double ratio = (double) counts[l] / counts[l - 1];
+                Assert.assertEquals(ratio, p, 0.02);
+            }
+        }
+    }
+
+    @Test
+    public void heightsAreCapped()
+    {
+        LevelGenerator gen = new LevelGenerator(0.5, 3, 99);
+        int[] counts = levelCounts(gen, 100000);
+        //about a quarter of the towers would have gone above level 3, and they all stop there
+        Assert.assertEquals((double) counts[2] / counts[0], 0.25, 0.01);
+        Assert.assertEquals(LevelGenerator.maxLevelFor(1000000, 0.5), 20);
+        Assert.assertEquals(LevelGenerator.maxLevelFor(1000000, 0.25), 10);
+        Assert.assertEquals(LevelGenerator.forExpectedSize(0.25, 1000000).getMaxLevel(), 10);
+    }
+
+    @Test
+    public void seededGeneratorsRepeat()
+    {
+        LevelGenerator a = new LevelGenerator(0.5, 32, 42);
+        LevelGenerator b = new LevelGenerator(0.5, 32, 42);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(a.generate(), b.generate());
+        }
+
+        //so do the dictionaries built with them
+        SkipListDict<Integer, Integer> x = new SkipListDict<>(null, new LevelGenerator(0.25, 16, 7));
+        SkipListDict<Integer, Integer> y = new SkipListDict<>(null, new LevelGenerator(0.25, 16, 7));
+        for (int i = 0; i < 1000; i++) {
+            x.put(i * 7919 % 1000, i);
+            y.put(i * 7919 % 1000, i);
+        }
+        for (int k = 0; k < 1000; k += 37) {
+            Assert.assertEquals(x.traceSearch(k).getHopCount(), y.traceSearch(k).getHopCount());
+        }
+    }
+
+    @Test
+    public void balancedHeightsFollowP()
+    {
+        LevelGenerator half = new LevelGenerator(0.5, 32);
+        Assert.assertEquals(half.balancedHeight(1), 1);
+        Assert.assertEquals(half.balancedHeight(2), 2);
+        Assert.assertEquals(half.balancedHeight(8), 4);
+        LevelGenerator quarter = new LevelGenerator(0.25, 3);
+        Assert.assertEquals(quarter.balancedHeight(4), 2);
+        Assert.assertEquals(quarter.balancedHeight(8), 2);
+        Assert.assertEquals(quarter.balancedHeight(64), 3);
+        Assert.assertEquals(new LevelGenerator(0.3, 32).balancedHeight(9), 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadP()
+    {
+        new LevelGenerator(1.0, 32);
+    }
+}
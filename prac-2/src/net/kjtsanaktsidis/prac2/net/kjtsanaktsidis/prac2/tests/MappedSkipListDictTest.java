@@ -0,0 +1,263 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.MappedSkipListDict;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class MappedSkipListDictTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path newFile() throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.delete(file);
+        return file;
+    }
+
+    private static void assertSameContents(Map<Long, byte[]> dict, SortedMap<Long, byte[]> expected)
+    {
+        Assert.assertEquals(dict.size(), expected.size());
+        Iterator<Map.Entry<Long, byte[]>> it = dict.entrySet().iterator();
+        for (Map.Entry<Long, byte[]> e : expected.entrySet()) {
+            Map.Entry<Long, byte[]> actual = it.next();
+            Assert.assertEquals(actual.getKey(), e.getKey());
+            Assert.assertArrayEquals(actual.getValue(), e.getValue());
+        }
+        Assert.assertFalse(it.hasNext());
+    }
+
+    /**
+     * Does some random puts and removes on both maps
+     */
+    private static void churn(MappedSkipListDict dict, SortedMap<Long, byte[]> expected, Random rgen, int ops)
+    {
+        for (int i = 0; i < ops; i++) {
+            long key = rgen.nextInt(3000);
+            if (rgen.nextInt(3) == 0) {
+                Assert.assertArrayEquals(dict.remove(key), expected.remove(key));
+            }
+            else {
+                byte[] value = new byte[rgen.nextInt(24)];
+                rgen.nextBytes(value);
+                Assert.assertArrayEquals(dict.put(key, value), expected.put(key, value));
+            }
+        }
+    }
+
+    @Test
+    public void canReopenAfterClose() throws IOException
+    {
+        Path file = newFile();
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        MappedSkipListDict dict = new MappedSkipListDict(file, 16);
+        churn(dict, expected, new Random(1), 10000);
+        dict.close();
+
+        dict = new MappedSkipListDict(file);
+        Assert.assertFalse(dict.wasRecovered());
+        assertSameContents(dict, expected);
+
+        //and it keeps working
+        churn(dict, expected, new Random(2), 10000);
+        dict.close();
+        dict = new MappedSkipListDict(file);
+        Assert.assertFalse(dict.wasRecovered());
+        assertSameContents(dict, expected);
+        dict.close();
+    }
+
+    @Test
+    public void recoversAfterProcessCrash() throws IOException
+    {
+        Path file = newFile();
+        Path crashed = newFile();
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        MappedSkipListDict dict = new MappedSkipListDict(file, 16);
+        churn(dict, expected, new Random(3), 5000);
+        dict.sync();
+        churn(dict, expected, new Random(4), 5000);
+
+        //what the file looks like if the process is killed now: every write made it to the page cache, but the
+        //header still says what it did at the last sync, and is dirty
+        Files.copy(file, crashed);
+        dict.close();
+
+        MappedSkipListDict recovered = new MappedSkipListDict(crashed);
+        Assert.assertTrue(recovered.wasRecovered());
+        assertSameContents(recovered, expected);
+        churn(recovered, expected, new Random(5), 5000);
+        recovered.close();
+
+        recovered = new MappedSkipListDict(crashed);
+        Assert.assertFalse(recovered.wasRecovered());
+        assertSameContents(recovered, expected);
+        recovered.close();
+    }
+
+    @Test
+    public void recoveryDropsTowersThatNeverReachedDisk() throws IOException
+    {
+        Path file = newFile();
+        Path crashed = newFile();
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        MappedSkipListDict dict = new MappedSkipListDict(file, 16);
+        churn(dict, expected, new Random(6), 20000);
+        Files.copy(file, crashed);
+        dict.close();
+
+        //lose the back half of the file, as if those pages were never written out
+        try (RandomAccessFile raf = new RandomAccessFile(crashed.toFile(), "rw")) {
+            long half = raf.length() / 2;
+            raf.seek(half);
+            raf.write(new byte[(int) (raf.length() - half)]);
+        }
+
+        MappedSkipListDict recovered = new MappedSkipListDict(crashed);
+        Assert.assertTrue(recovered.wasRecovered());
+        Assert.assertTrue(recovered.size() < expected.size());
+        //whatever survived is in the real list, in order
+        Set<Long> survivors = new HashSet<>();
+        long lastKey = Long.MIN_VALUE;
+        for (Map.Entry<Long, byte[]> e : recovered.entrySet()) {
+            Assert.assertTrue(e.getKey() > lastKey);
+            Assert.assertArrayEquals(e.getValue(), expected.get(e.getKey()));
+            survivors.add(e.getKey());
+            lastKey = e.getKey();
+        }
+        //and the upper levels were rebuilt to match
+        for (Long key : expected.keySet()) {
+            Assert.assertEquals(recovered.containsKey(key), survivors.contains(key));
+        }
+        recovered.close();
+    }
+
+    //makes the keys easy to find in the file
+    private static final long KEY_MARK = 0x5a5a5a5a00000000L;
+
+    /**
+     * @return Where in the file the tower with a key starts
+     */
+    private static long towerPosition(Path file, long key) throws IOException
+    {
+        java.nio.ByteBuffer bytes = java.nio.ByteBuffer.wrap(Files.readAllBytes(file))
+                .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        long found = -1;
+        for (int pos = 0; pos + 8 <= bytes.limit(); pos += 8) {
+            if (bytes.getLong(pos) == key) {
+                Assert.assertEquals(found, -1);
+                found = pos;
+            }
+        }
+        Assert.assertTrue(found >= 0);
+        return found;
+    }
+
+    @Test
+    public void recoverySkipsATornTower() throws IOException
+    {
+        Path file = newFile();
+        Path snapshot = newFile();
+        Path crashed = newFile();
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        MappedSkipListDict dict = new MappedSkipListDict(file, 16);
+        for (long k = 0; k < 2000; k++) {
+            byte[] value = Long.toString(k).getBytes();
+            dict.put(KEY_MARK | k, value);
+            expected.put(KEY_MARK | k, value);
+        }
+        dict.sync();
+        //dirty the header, as the next change after a sync would
+        dict.put(KEY_MARK | 2000, new byte[0]);
+        expected.put(KEY_MARK | 2000, new byte[0]);
+        Files.copy(file, snapshot);
+        dict.close();
+        Files.copy(snapshot, crashed);
+
+        //one tower in the middle of the list with a torn key, still in order so only its check can tell; its links
+        //are fine, so only it is lost
+        long torn = KEY_MARK | 1000;
+        long pos = towerPosition(crashed, torn);
+        try (RandomAccessFile raf = new RandomAccessFile(crashed.toFile(), "rw")) {
+            raf.seek(pos + 2);
+            raf.write(1);
+        }
+        MappedSkipListDict recovered = new MappedSkipListDict(crashed);
+        Assert.assertTrue(recovered.wasRecovered());
+        TreeMap<Long, byte[]> survivors = new TreeMap<>(expected);
+        survivors.remove(torn);
+        assertSameContents(recovered, survivors);
+        recovered.close();
+
+        //a short tower in the middle wiped out completely, links and all: everything before it survives, and
+        //after it only the few short towers reachable through nothing but its bottom link are lost
+        Files.copy(snapshot, crashed, StandardCopyOption.REPLACE_EXISTING);
+        long wiped = KEY_MARK | 1000;
+        try (RandomAccessFile raf = new RandomAccessFile(crashed.toFile(), "rw")) {
+            for (; ; wiped++) {
+                pos = towerPosition(crashed, wiped);
+                raf.seek(pos + 16);
+                if (Integer.reverseBytes(raf.readInt()) == 1) {
+                    break;
+                }
+            }
+            raf.seek(pos);
+            raf.write(new byte[24]);
+        }
+        recovered = new MappedSkipListDict(crashed);
+        Assert.assertTrue(recovered.wasRecovered());
+        //what's left after it is the end of the list, missing only a few keys at its start
+        long lost = 0;
+        for (long key = wiped + 1; !recovered.containsKey(key); key++) {
+            lost++;
+        }
+        Assert.assertTrue(lost < 40);
+        survivors = new TreeMap<>(expected);
+        survivors.subMap(wiped, wiped + 1 + lost).clear();
+        assertSameContents(recovered, survivors);
+        recovered.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptHeader() throws IOException
+    {
+        Path file = newFile();
+        MappedSkipListDict dict = new MappedSkipListDict(file, 16);
+        dict.put(1, new byte[1]);
+        dict.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(24);
+            raf.write(99);
+        }
+        new MappedSkipListDict(file);
+    }
+
+    @Test
+    public void compactionReplacesTheFile() throws IOException
+    {
+        Path file = newFile();
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        //small chunks so there is plenty of garbage to compact
+        MappedSkipListDict dict = new MappedSkipListDict(file, 12);
+        churn(dict, expected, new Random(7), 100000);
+        dict.compact();
+        churn(dict, expected, new Random(8), 1000);
+        dict.close();
+        Assert.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".compact")));
+
+        dict = new MappedSkipListDict(file);
+        Assert.assertFalse(dict.wasRecovered());
+        assertSameContents(dict, expected);
+        dict.close();
+    }
+}
@@ -0,0 +1,194 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.OffHeapSkipListDict;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class OffHeapSkipListDictTest {
+
+    private static byte[] bytes(String s)
+    {
+        return s.getBytes();
+    }
+
+    private OffHeapSkipListDict getPreparedDict()
+    {
+        OffHeapSkipListDict dict = new OffHeapSkipListDict();
+        dict.put(4, bytes("four"));
+        dict.put(1, bytes("one"));
+        dict.put(9, bytes("nine"));
+        dict.put(5, bytes("five"));
+        dict.put(0, bytes("zero"));
+        return dict;
+    }
+
+    @Test
+    public void canGetItems()
+    {
+        OffHeapSkipListDict dict = getPreparedDict();
+        Assert.assertArrayEquals(dict.get(0), bytes("zero"));
+        Assert.assertArrayEquals(dict.get(1), bytes("one"));
+        Assert.assertArrayEquals(dict.get(4), bytes("four"));
+        Assert.assertArrayEquals(dict.get(5), bytes("five"));
+        Assert.assertArrayEquals(dict.get(9), bytes("nine"));
+        Assert.assertNull(dict.get(-9));
+        Assert.assertNull(dict.get(82));
+        Assert.assertTrue(dict.containsKey(5));
+        Assert.assertFalse(dict.containsKey(6));
+        Assert.assertEquals(dict.size(), 5);
+    }
+
+    @Test
+    public void canOverwriteRemoveAndClear()
+    {
+        OffHeapSkipListDict dict = getPreparedDict();
+        //same size, bigger and smaller values, and null
+        Assert.assertArrayEquals(dict.put(4, bytes("FOUR")), bytes("four"));
+        Assert.assertArrayEquals(dict.put(4, bytes("a much longer four")), bytes("FOUR"));
+        Assert.assertArrayEquals(dict.put(4, null), bytes("a much longer four"));
+        Assert.assertNull(dict.get(4));
+        Assert.assertTrue(dict.containsKey(4));
+        Assert.assertArrayEquals(dict.put(4, new byte[0]), null);
+        Assert.assertArrayEquals(dict.get(4), new byte[0]);
+
+        Assert.assertArrayEquals(dict.remove(4), new byte[0]);
+        Assert.assertNull(dict.remove(4));
+        Assert.assertFalse(dict.containsKey(4));
+        Assert.assertEquals(dict.size(), 4);
+        dict.clear();
+        Assert.assertTrue(dict.isEmpty());
+        Assert.assertNull(dict.get(0));
+        dict.put(3, bytes("three"));
+        Assert.assertArrayEquals(dict.get(3), bytes("three"));
+    }
+
+    @Test
+    public void valuesAreCopied()
+    {
+        OffHeapSkipListDict dict = new OffHeapSkipListDict();
+        byte[] value = bytes("abc");
+        dict.put(1, value);
+        value[0] = 'x';
+        Assert.assertArrayEquals(dict.get(1), bytes("abc"));
+        dict.get(1)[0] = 'y';
+        Assert.assertArrayEquals(dict.get(1), bytes("abc"));
+    }
+
+    @Test
+    public void worksAsAMap()
+    {
+        Map<Long, byte[]> dict = getPreparedDict();
+        Assert.assertArrayEquals(dict.get((Long)(long)4), bytes("four"));
+        Assert.assertNull(dict.get("four"));
+        for (Map.Entry<Long, byte[]> e : dict.entrySet()) {
+            e.setValue(new String(e.getValue()).toUpperCase().getBytes());
+        }
+        Assert.assertArrayEquals(dict.get((Long)(long)9), bytes("NINE"));
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(0L, 1L, 4L, 5L, 9L));
+
+        Iterator<Long> it = dict.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 2 == 1) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(0L, 4L));
+    }
+
+    @Test
+    public void survivesCompactionAndSpansChunks()
+    {
+        //1KB chunks, so this needs plenty of them and compacts several times
+        OffHeapSkipListDict dict = new OffHeapSkipListDict(10);
+        TreeMap<Long, byte[]> expected = new TreeMap<>();
+        Random rgen = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            long key = rgen.nextInt(5000);
+            if (rgen.nextInt(3) == 0) {
+                Assert.assertArrayEquals(dict.remove(key), expected.remove(key));
+            }
+            else {
+                byte[] value = new byte[rgen.nextInt(40)];
+                rgen.nextBytes(value);
+                Assert.assertArrayEquals(dict.put(key, value), expected.put(key, value));
+            }
+        }
+        Assert.assertEquals(dict.size(), expected.size());
+        Assert.assertTrue(dict.arenaBytes() < 4 * dict.liveBytes() + 4096);
+
+        Iterator<Map.Entry<Long, byte[]>> it = dict.entrySet().iterator();
+        for (Map.Entry<Long, byte[]> e : expected.entrySet()) {
+            Map.Entry<Long, byte[]> actual = it.next();
+            Assert.assertEquals(actual.getKey(), e.getKey());
+            Assert.assertArrayEquals(actual.getValue(), e.getValue());
+        }
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void iteratorSurvivesCompaction()
+    {
+        OffHeapSkipListDict dict = new OffHeapSkipListDict(10);
+        for (long k = 0; k < 1000; k++) {
+            dict.put(k, bytes("v" + k));
+        }
+        Iterator<Long> it = dict.keySet().iterator();
+        List<Long> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            long k = it.next();
+            seen.add(k);
+            it.remove();
+            if (k == 500) {
+                dict.compact();
+            }
+        }
+        Assert.assertEquals(seen.size(), 1000);
+        Assert.assertEquals((long) seen.get(999), 999);
+        Assert.assertTrue(dict.isEmpty());
+    }
+
+    @Test
+    public void iteratorFailsFast()
+    {
+        OffHeapSkipListDict dict = getPreparedDict();
+        Iterator<Long> it = dict.keySet().iterator();
+        Assert.assertEquals((long) it.next(), 0);
+        //the iterator's next tower is 1's; it mustn't hand back a key that's gone
+        dict.remove(1);
+        try {
+            it.next();
+            Assert.fail("returned a removed key");
+        }
+        catch (ConcurrentModificationException e) {
+            //expected
+        }
+
+        it = dict.keySet().iterator();
+        it.next();
+        dict.put(2, bytes("two"));
+        try {
+            it.remove();
+            Assert.fail("removed after a put");
+        }
+        catch (ConcurrentModificationException e) {
+            //expected
+        }
+
+        //overwriting values and compacting don't add or remove keys, so they're allowed
+        it = dict.keySet().iterator();
+        it.next();
+        dict.put(5, bytes("a much longer five"));
+        dict.compact();
+        Assert.assertEquals((long) it.next(), 2);
+        it.remove();
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(0L, 4L, 5L, 9L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsValuesBiggerThanAChunk()
+    {
+        new OffHeapSkipListDict(10).put(1, new byte[2048]);
+    }
+}
@@ -0,0 +1,204 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.IntSkipListDict;
+import net.kjtsanaktsidis.prac2.LongSkipListDict;
+import net.kjtsanaktsidis.prac2.PrimitiveSkipListDict;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.*;
+
+/**
+ * The same tests for IntSkipListDict and LongSkipListDict, through their typed methods
+ */
+@RunWith(Parameterized.class)
+public class PrimitiveSkipListDictTest<K extends Number, D extends PrimitiveSkipListDict<K, String>> {
+
+    /**
+     * Makes one kind of dictionary and calls its typed methods
+     */
+    private static abstract class Subject<K extends Number, D extends PrimitiveSkipListDict<K, String>> {
+        final long minKey;
+        final long maxKey;
+
+        Subject(long minKey, long maxKey) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+        }
+
+        abstract D newDict();
+        abstract K box(long key);
+        abstract String get(D dict, long key);
+        abstract boolean containsKey(D dict, long key);
+        abstract String put(D dict, long key, String value);
+        abstract String remove(D dict, long key);
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> subjects()
+    {
+        Subject<Integer, IntSkipListDict<String>> ints =
+                new Subject<Integer, IntSkipListDict<String>>(Integer.MIN_VALUE, Integer.MAX_VALUE) {
+            IntSkipListDict<String> newDict() { return new IntSkipListDict<>(); }
+            Integer box(long key) { return (int) key; }
+            String get(IntSkipListDict<String> dict, long key) { return dict.get((int) key); }
+            boolean containsKey(IntSkipListDict<String> dict, long key) { return dict.containsKey((int) key); }
+            String put(IntSkipListDict<String> dict, long key, String value) { return dict.put((int) key, value); }
+            String remove(IntSkipListDict<String> dict, long key) { return dict.remove((int) key); }
+        };
+        Subject<Long, LongSkipListDict<String>> longs =
+                new Subject<Long, LongSkipListDict<String>>(Long.MIN_VALUE, Long.MAX_VALUE) {
+            LongSkipListDict<String> newDict() { return new LongSkipListDict<>(); }
+            Long box(long key) { return key; }
+            String get(LongSkipListDict<String> dict, long key) { return dict.get(key); }
+            boolean containsKey(LongSkipListDict<String> dict, long key) { return dict.containsKey(key); }
+            String put(LongSkipListDict<String> dict, long key, String value) { return dict.put(key, value); }
+            String remove(LongSkipListDict<String> dict, long key) { return dict.remove(key); }
+        };
+        return Arrays.asList(new Object[]{"IntSkipListDict", ints}, new Object[]{"LongSkipListDict", longs});
+    }
+
+    private final Subject<K, D> subject;
+
+    public PrimitiveSkipListDictTest(String name, Subject<K, D> subject)
+    {
+        this.subject = subject;
+    }
+
+    private D getPreparedDict()
+    {
+        D dict = this.subject.newDict();
+        this.subject.put(dict, 4, "four");
+        this.subject.put(dict, 1, "one");
+        this.subject.put(dict, 9, "nine");
+        this.subject.put(dict, 5, "five");
+        this.subject.put(dict, 0, "zero");
+        return dict;
+    }
+
+    @Test
+    public void canGetItems()
+    {
+        D dict = getPreparedDict();
+        Assert.assertEquals(this.subject.get(dict, 0), "zero");
+        Assert.assertEquals(this.subject.get(dict, 1), "one");
+        Assert.assertEquals(this.subject.get(dict, 4), "four");
+        Assert.assertEquals(this.subject.get(dict, 5), "five");
+        Assert.assertEquals(this.subject.get(dict, 9), "nine");
+        Assert.assertEquals(this.subject.get(dict, -9), null);
+        Assert.assertEquals(this.subject.get(dict, 82), null);
+        Assert.assertTrue(this.subject.containsKey(dict, 5));
+        Assert.assertFalse(this.subject.containsKey(dict, 6));
+        Assert.assertEquals(dict.size(), 5);
+    }
+
+    @Test
+    public void canRemoveAndClear()
+    {
+        D dict = getPreparedDict();
+        Assert.assertEquals(this.subject.remove(dict, 4), "four");
+        Assert.assertEquals(this.subject.remove(dict, 4), null);
+        Assert.assertFalse(this.subject.containsKey(dict, 4));
+        Assert.assertEquals(dict.size(), 4);
+        dict.clear();
+        Assert.assertTrue(dict.isEmpty());
+        Assert.assertEquals(this.subject.get(dict, 0), null);
+        this.subject.put(dict, 3, "three");
+        Assert.assertEquals(this.subject.get(dict, 3), "three");
+    }
+
+    @Test
+    public void handlesExtremeKeys()
+    {
+        D dict = this.subject.newDict();
+        this.subject.put(dict, this.subject.maxKey, "max");
+        this.subject.put(dict, this.subject.minKey, "min");
+        this.subject.put(dict, 0, "zero");
+        Assert.assertEquals(this.subject.get(dict, this.subject.maxKey), "max");
+        Assert.assertEquals(this.subject.get(dict, this.subject.minKey), "min");
+        Assert.assertEquals(new ArrayList<>(dict.keySet()), Arrays.asList(this.subject.box(this.subject.minKey),
+                this.subject.box(0), this.subject.box(this.subject.maxKey)));
+    }
+
+    @Test
+    public void worksAsAMap()
+    {
+        Map<K, String> dict = getPreparedDict();
+        Assert.assertEquals(dict.get(this.subject.box(4)), "four");
+        Assert.assertEquals(dict.get("four"), null);
+        //the other primitive type's boxes aren't keys, even if they have the same value
+        Assert.assertEquals(dict.get(this.subject.box(4) instanceof Long ? (Object) 4 : (Object) 4L), null);
+        for (Map.Entry<K, String> e : dict.entrySet()) {
+            e.setValue(e.getValue().toUpperCase());
+        }
+        Assert.assertEquals(new ArrayList<>(dict.values()), Arrays.asList("ZERO", "ONE", "FOUR", "FIVE", "NINE"));
+
+        Iterator<K> it = dict.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().longValue() % 2 == 1) {
+                it.remove();
+            }
+        }
+        Map<K, String> expected = new TreeMap<>();
+        expected.put(this.subject.box(0), "ZERO");
+        expected.put(this.subject.box(4), "FOUR");
+        Assert.assertEquals(dict, expected);
+    }
+
+    @Test
+    public void iteratorsFailFast()
+    {
+        D dict = getPreparedDict();
+        Iterator<K> it = dict.keySet().iterator();
+        it.next();
+        this.subject.put(dict, 3, "three");
+        try {
+            it.next();
+            Assert.fail("carried on after a put");
+        }
+        catch (ConcurrentModificationException e) {
+            //expected
+        }
+
+        it = dict.keySet().iterator();
+        it.next();
+        this.subject.remove(dict, 9);
+        try {
+            it.remove();
+            Assert.fail("removed after a remove");
+        }
+        catch (ConcurrentModificationException e) {
+            //expected
+        }
+
+        //replacing a value doesn't change the keys, so that's allowed
+        it = dict.keySet().iterator();
+        it.next();
+        this.subject.put(dict, 5, "FIVE");
+        it.next();
+        it.remove();
+        Assert.assertEquals(dict.size(), 4);
+    }
+
+    @Test
+    public void agreesWithTreeMap()
+    {
+        D dict = this.subject.newDict();
+        TreeMap<K, String> model = new TreeMap<>();
+        Random rgen = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long key = rgen.nextInt(1000);
+            if (rgen.nextBoolean()) {
+                String value = Integer.toString(i);
+                Assert.assertEquals(this.subject.put(dict, key, value), model.put(this.subject.box(key), value));
+            }
+            else {
+                Assert.assertEquals(this.subject.remove(dict, key), model.remove(this.subject.box(key)));
+            }
+            Assert.assertEquals(dict.size(), model.size());
+        }
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(model.entrySet()));
+    }
+}
@@ -4,7 +4,7 @@ import net.kjtsanaktsidis.prac2.SkipListDict;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.util.Map;
+import java.util.*;
 
 public class SkipListDictTest {
 
@@ -109,4 +109,458 @@ public class SkipListDictTest {
         Assert.assertTrue(dict.isEmpty());
     }
 
+    @Test
+    public void canTraceSearch()
+    {
+        SkipListDict<Integer, String> dict = new SkipListDict<>();
+        for (int i = 0; i < 100; i++) {
+            dict.put(i, Integer.toString(i));
+        }
+        SkipListDict<Integer, String>.SearchTrace trace = dict.traceSearch(57);
+        Assert.assertTrue(trace.isFound());
+        Assert.assertTrue(trace.getHopCount() > 0);
+        Assert.assertFalse(dict.traceSearch(1000).isFound());
+        Assert.assertEquals(dict.traceSearch(-1).getHopCount(), 0);
+    }
+
+
+    @Test
+    public void canBulkLoadSortedEntries()
+    {
+        TreeMap<Integer, String> sorted = new TreeMap<>();
+        for (int i = 0; i < 1000; i += 2) {
+            sorted.put(i, "v" + i);
+        }
+        for (boolean balanced : new boolean[]{false, true}) {
+            SkipListDict<Integer, String> dict =
+                    SkipListDict.fromSorted(sorted.entrySet().iterator(), null, balanced);
+            Assert.assertEquals(dict.size(), 500);
+            Assert.assertEquals(dict.get(998), "v998");
+            Assert.assertNull(dict.get(3));
+            Assert.assertEquals(dict.keySet(), sorted.keySet());
+
+            //appending more afterwards, and ordinary puts into the middle, still work
+            dict.bulkLoad(Collections.singletonMap(5000, "v5000").entrySet().iterator(), balanced);
+            dict.put(3, "v3");
+            Assert.assertEquals(dict.get(5000), "v5000");
+            Assert.assertEquals(dict.get(3), "v3");
+            Assert.assertEquals(dict.remove(0), "v0");
+            Assert.assertEquals(dict.size(), 501);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkLoadRejectsUnsortedEntries()
+    {
+        SkipListDict<Integer, String> dict = SkipListDict.fromSorted(
+                Collections.singletonMap(5, "five").entrySet().iterator());
+        dict.bulkLoad(Collections.singletonMap(5, "again").entrySet().iterator(), false);
+    }
+
+    @Test
+    public void canNavigate()
+    {
+        NavigableMap<Integer, String> dict = (NavigableMap<Integer, String>) getPreparedDict();
+        Assert.assertEquals((int)dict.firstKey(), 0);
+        Assert.assertEquals((int)dict.lastKey(), 9);
+        Assert.assertEquals((int)dict.floorKey(6), 5);
+        Assert.assertEquals((int)dict.floorKey(5), 5);
+        Assert.assertEquals((int)dict.lowerKey(5), 4);
+        Assert.assertEquals((int)dict.ceilingKey(6), 9);
+        Assert.assertEquals((int)dict.higherKey(5), 9);
+        Assert.assertEquals(dict.lowerKey(0), null);
+        Assert.assertEquals(dict.floorKey(-1), null);
+        Assert.assertEquals(dict.higherKey(9), null);
+        Assert.assertEquals(dict.ceilingEntry(2).getValue(), "four");
+
+        Assert.assertEquals(dict.pollFirstEntry().getKey(), (Integer)0);
+        Assert.assertEquals(dict.pollLastEntry().getKey(), (Integer)9);
+        Assert.assertEquals(dict.keySet(), new TreeSet<>(Arrays.asList(1, 4, 5)));
+        Assert.assertEquals(dict.size(), 3);
+    }
+
+    @Test
+    public void canUseSubMapViews()
+    {
+        NavigableMap<Integer, String> dict = (NavigableMap<Integer, String>) getPreparedDict();
+        NavigableMap<Integer, String> sub = dict.subMap(1, true, 9, false);
+        Assert.assertEquals(new ArrayList<>(sub.keySet()), Arrays.asList(1, 4, 5));
+        Assert.assertEquals(sub.size(), 3);
+        Assert.assertNull(sub.get(9));
+        Assert.assertEquals((int)sub.lastKey(), 5);
+
+        //views are live in both directions
+        dict.put(6, "six");
+        Assert.assertTrue(sub.containsKey(6));
+        sub.remove(4);
+        Assert.assertFalse(dict.containsKey(4));
+
+        NavigableMap<Integer, String> desc = dict.descendingMap();
+        Assert.assertEquals(new ArrayList<>(desc.keySet()), Arrays.asList(9, 6, 5, 1, 0));
+        Assert.assertEquals((int)desc.firstKey(), 9);
+        Assert.assertEquals((int)desc.ceilingKey(7), 6);
+        Assert.assertEquals((int)desc.higherKey(1), 0);
+        Assert.assertEquals(new ArrayList<>(desc.headMap(5, true).keySet()), Arrays.asList(9, 6, 5));
+        Assert.assertEquals(new ArrayList<>(dict.tailMap(5, false).descendingKeySet()), Arrays.asList(9, 6));
+        Assert.assertEquals(new ArrayList<>(sub.descendingMap().values()), Arrays.asList("six", "five", "one"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantPutOutsideSubMap()
+    {
+        NavigableMap<Integer, String> dict = (NavigableMap<Integer, String>) getPreparedDict();
+        dict.headMap(5, false).put(5, "five");
+    }
+
+    @Test
+    public void canIterateAndRemove()
+    {
+        NavigableMap<Integer, String> dict = (NavigableMap<Integer, String>) getPreparedDict();
+        Iterator<Map.Entry<Integer, String>> it = dict.entrySet().iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            seen.add(e.getKey());
+            if (e.getKey() % 2 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(seen, Arrays.asList(0, 1, 4, 5, 9));
+        Assert.assertEquals(new ArrayList<>(dict.values()), Arrays.asList("one", "five", "nine"));
+
+        //and the same thing backwards, which walks the prev links
+        dict.subMap(0, true, 5, true).clear();
+        Assert.assertEquals(new ArrayList<>(dict.descendingKeySet()), Arrays.asList(9));
+    }
+
+    @Test
+    public void subMapsAgreeWithTreeMap()
+    {
+        Random rgen = new Random(3);
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        TreeMap<Integer, Integer> tree = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            int k = rgen.nextInt(1000);
+            dict.put(k, i);
+            tree.put(k, i);
+        }
+        for (int i = 0; i < 200; i++) {
+            int lo = rgen.nextInt(1100) - 50;
+            int hi = lo + rgen.nextInt(300);
+            boolean loInc = rgen.nextBoolean();
+            boolean hiInc = rgen.nextBoolean();
+            NavigableMap<Integer, Integer> sub = dict.subMap(lo, loInc, hi, hiInc);
+            NavigableMap<Integer, Integer> expected = tree.subMap(lo, loInc, hi, hiInc);
+            Assert.assertEquals(new ArrayList<>(sub.entrySet()), new ArrayList<>(expected.entrySet()));
+            Assert.assertEquals(new ArrayList<>(sub.descendingMap().entrySet()),
+                    new ArrayList<>(expected.descendingMap().entrySet()));
+            int probe = rgen.nextInt(1100) - 50;
+            Assert.assertEquals(sub.floorKey(probe), expected.floorKey(probe));
+            Assert.assertEquals(sub.higherKey(probe), expected.higherKey(probe));
+            Assert.assertEquals(sub.descendingMap().ceilingKey(probe), expected.descendingMap().ceilingKey(probe));
+        }
+    }
+
+    @Test
+    public void entriesWriteThrough()
+    {
+        Map<Integer, String> dict = getPreparedDict();
+        for (Map.Entry<Integer, String> e : dict.entrySet()) {
+            e.setValue(e.getValue().toUpperCase());
+        }
+        Assert.assertEquals(dict.get(4), "FOUR");
+        Assert.assertEquals(new ArrayList<>(dict.values()), Arrays.asList("ZERO", "ONE", "FOUR", "FIVE", "NINE"));
+        Assert.assertTrue(dict.entrySet().contains(new AbstractMap.SimpleEntry<>(9, "NINE")));
+        Assert.assertEquals(dict, new TreeMap<>(dict));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void iteratorsFailFast()
+    {
+        Map<Integer, String> dict = getPreparedDict();
+        Iterator<Integer> it = dict.keySet().iterator();
+        it.next();
+        dict.remove(4);
+        it.next();
+    }
+
+    @Test
+    public void iteratorsToleratePutsOfExistingKeys()
+    {
+        Map<Integer, String> dict = getPreparedDict();
+        List<Integer> seen = new ArrayList<>();
+        for (Integer k : dict.keySet()) {
+            //overwriting a value isn't a structural change
+            dict.put(k, "x");
+            seen.add(k);
+        }
+        Assert.assertEquals(seen, Arrays.asList(0, 1, 4, 5, 9));
+    }
+
+    @Test
+    public void spliteratorsSplitIntoTheWholeRange()
+    {
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        for (int i = 0; i < 10000; i++) {
+            dict.put(i, i);
+        }
+        Spliterator<Integer> whole = dict.keySet().spliterator();
+        Assert.assertTrue(whole.hasCharacteristics(Spliterator.SORTED | Spliterator.SIZED));
+        Assert.assertEquals(whole.estimateSize(), 10000);
+
+        //one split takes the middle tower of an upper level, which is somewhere near the middle of the keys
+        Spliterator<Integer> secondHalf = dict.keySet().spliterator();
+        Spliterator<Integer> firstHalf = secondHalf.trySplit();
+        final int[] firstCount = {0};
+        firstHalf.forEachRemaining(k -> firstCount[0]++);
+        Assert.assertTrue(firstCount[0] > 3000 && firstCount[0] < 7000);
+        //and the rest starts straight after it
+        final int[] splitKey = {-1};
+        Assert.assertTrue(secondHalf.tryAdvance(k -> splitKey[0] = k));
+        Assert.assertEquals(splitKey[0], firstCount[0]);
+
+        //split a few times, then check the pieces cover every key exactly once and in order
+        List<Spliterator<Integer>> pieces = new ArrayList<>();
+        pieces.add(whole);
+        for (int round = 0; round < 4; round++) {
+            List<Spliterator<Integer>> next = new ArrayList<>();
+            for (Spliterator<Integer> piece : pieces) {
+                Spliterator<Integer> prefix = piece.trySplit();
+                if (prefix != null) {
+                    next.add(prefix);
+                }
+                next.add(piece);
+            }
+            pieces = next;
+        }
+        Assert.assertTrue(pieces.size() > 8);
+        final List<Integer> seen = new ArrayList<>();
+        for (Spliterator<Integer> piece : pieces) {
+            int before = seen.size();
+            piece.forEachRemaining(seen::add);
+            //no piece should be more than a small multiple of its fair share
+            Assert.assertTrue(seen.size() - before < 4 * 10000 / pieces.size());
+        }
+        Assert.assertEquals(seen, new ArrayList<>(dict.keySet()));
+    }
+
+    @Test
+    public void canStreamViewsInParallel()
+    {
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        long expected = 0;
+        for (int i = 0; i < 20000; i++) {
+            dict.put(i, 2 * i);
+            expected += 2 * i;
+        }
+        Assert.assertEquals(dict.values().parallelStream().mapToLong(Integer::longValue).sum(), expected);
+        Assert.assertEquals(dict.keySet().parallelStream().filter(k -> k % 3 == 0).count(), 6667);
+        Assert.assertEquals(dict.subMap(100, true, 200, false).entrySet().parallelStream()
+                .mapToInt(Map.Entry::getKey).sum(), 14950);
+        Assert.assertEquals(dict.descendingMap().keySet().stream().findFirst().get(), (Integer)19999);
+    }
+
+    @Test
+    public void canAccessByPosition()
+    {
+        Random rgen = new Random(5);
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        TreeMap<Integer, Integer> tree = new TreeMap<>();
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 2000; i++) {
+                int k = rgen.nextInt(3000);
+                if (rgen.nextInt(3) == 0) {
+                    Assert.assertEquals(dict.remove(k), tree.remove(k));
+                }
+                else {
+                    dict.put(k, i);
+                    tree.put(k, i);
+                }
+            }
+
+            List<Integer> keys = new ArrayList<>(tree.keySet());
+            for (int i = 0; i < keys.size(); i++) {
+                Assert.assertEquals(dict.getByIndex(i).getKey(), keys.get(i));
+            }
+            for (int k = -1; k <= 3000; k++) {
+                Assert.assertEquals(dict.indexOf(k), Collections.binarySearch(keys, k));
+            }
+            for (int i = 0; i < 200; i++) {
+                int from = rgen.nextInt(3000);
+                int to = from + rgen.nextInt(500);
+                Assert.assertEquals(dict.countRange(from, to), tree.subMap(from, to).size());
+                Assert.assertEquals(dict.subMap(from, false, to, true).size(), tree.subMap(from, false, to, true).size());
+            }
+
+            //bulk loading and clearing have to keep the spans right too
+            if (round == 1) {
+                dict.clear();
+                tree.clear();
+                List<Map.Entry<Integer, Integer>> sorted = new ArrayList<>();
+                for (int k = 0; k < 3000; k += 3) {
+                    sorted.add(new AbstractMap.SimpleEntry<>(k, k));
+                    tree.put(k, k);
+                }
+                dict.bulkLoad(sorted.iterator(), false);
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void cantGetPastTheEnd()
+    {
+        SkipListDict<Integer, String> dict = (SkipListDict<Integer, String>) getPreparedDict();
+        Assert.assertEquals(dict.getByIndex(4).getValue(), "nine");
+        dict.getByIndex(5);
+    }
+
+    @Test
+    public void cursorsAgreeWithGet()
+    {
+        Random rgen = new Random(11);
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        for (int i = 0; i < 5000; i++) {
+            dict.put(rgen.nextInt(20000), i);
+        }
+        SkipListDict<Integer, Integer>.Cursor cursor = dict.cursor();
+        int key = 10000;
+        for (int i = 0; i < 20000; i++) {
+            //mostly small steps in either direction, with the odd big jump
+            key += rgen.nextInt(10) == 0 ? rgen.nextInt(20000) - 10000 : rgen.nextInt(40) - 15;
+            Assert.assertEquals(cursor.get(key), dict.get(key));
+            Assert.assertEquals(cursor.containsKey(key + 1), dict.containsKey(key + 1));
+            //changes made behind the cursor's back mustn't confuse it
+            if (i % 100 == 0) {
+                dict.remove(key + rgen.nextInt(10));
+                dict.put(key + rgen.nextInt(10), -i);
+            }
+        }
+    }
+
+    @Test
+    public void canPutThroughCursor()
+    {
+        SkipListDict<Integer, Integer> dict = new SkipListDict<>();
+        TreeMap<Integer, Integer> tree = new TreeMap<>();
+        SkipListDict<Integer, Integer>.Cursor cursor = dict.cursor();
+        Random rgen = new Random(12);
+        for (int i = 0; i < 5000; i++) {
+            int key = 2 * i + rgen.nextInt(5);
+            Assert.assertEquals(cursor.put(key, i), tree.put(key, i));
+        }
+        Assert.assertEquals(dict, tree);
+        //the spans have to be right too
+        List<Integer> keys = new ArrayList<>(tree.keySet());
+        for (int i = 0; i < keys.size(); i += 7) {
+            Assert.assertEquals(dict.getByIndex(i).getKey(), keys.get(i));
+        }
+        Assert.assertEquals(dict.countRange(100, 3000), tree.subMap(100, 3000).size());
+    }
+
+    @Test
+    public void cursorPutReplacesTheKeyLikePut()
+    {
+        SkipListDict<String, Integer> dict = new SkipListDict<>();
+        String first = new String("key");
+        String second = new String("key");
+        String third = new String("key");
+        dict.put(first, 1);
+        Assert.assertEquals(dict.cursor().put(second, 2), (Integer) 1);
+        Assert.assertSame(dict.keySet().iterator().next(), second);
+        Assert.assertEquals(dict.put(third, 3), (Integer) 2);
+        Assert.assertSame(dict.keySet().iterator().next(), third);
+        Assert.assertEquals(dict.size(), 1);
+    }
+
+    @Test
+    public void canGetAndPutBatches()
+    {
+        SkipListDict<Integer, String> dict = (SkipListDict<Integer, String>) getPreparedDict();
+        Map<Integer, String> found = dict.getAll(Arrays.asList(9, 3, 0, 5, 9, -2));
+        Assert.assertEquals(new ArrayList<>(found.keySet()), Arrays.asList(0, 5, 9));
+        Assert.assertEquals(found.get(5), "five");
+
+        //unsorted, sorted in the same order, and sorted in a different order
+        Map<Integer, String> unsorted = new HashMap<>();
+        unsorted.put(7, "seven");
+        unsorted.put(1, "ONE");
+        unsorted.put(12, "twelve");
+        dict.putAll(unsorted);
+        TreeMap<Integer, String> sorted = new TreeMap<>();
+        sorted.put(2, "two");
+        sorted.put(9, "NINE");
+        dict.putAll(sorted);
+        TreeMap<Integer, String> reversed = new TreeMap<>(Collections.<Integer>reverseOrder());
+        reversed.put(3, "three");
+        reversed.put(-1, "minus one");
+        dict.putAll(reversed);
+
+        TreeMap<Integer, String> expected = new TreeMap<>(getPreparedDict());
+        expected.putAll(unsorted);
+        expected.putAll(sorted);
+        expected.putAll(reversed);
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(expected.entrySet()));
+        Assert.assertEquals(dict.indexOf(12), 9);
+    }
+
+    @Test
+    public void deterministicListsAgreeWithTreeMap()
+    {
+        SkipListDict<Integer, Integer> dict = SkipListDict.deterministic();
+        TreeMap<Integer, Integer> tree = new TreeMap<>();
+        Random rgen = new Random(18);
+        for (int i = 0; i < 20000; i++) {
+            int key = rgen.nextInt(2000);
+            if (rgen.nextInt(3) == 0) {
+                Assert.assertEquals(dict.remove(key), tree.remove(key));
+            }
+            else {
+                Assert.assertEquals(dict.put(key, i), tree.put(key, i));
+            }
+        }
+        Assert.assertTrue(dict.isDeterministic());
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(tree.entrySet()));
+        List<Integer> keys = new ArrayList<>(tree.keySet());
+        for (int i = 0; i < keys.size(); i += 7) {
+            Assert.assertEquals(dict.getByIndex(i).getKey(), keys.get(i));
+        }
+
+        //removing through an iterator moves towers around underneath it
+        Iterator<Integer> it = dict.descendingKeySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+        }
+        for (Iterator<Integer> treeIt = tree.keySet().iterator(); treeIt.hasNext(); ) {
+            if (treeIt.next() % 2 == 0) {
+                treeIt.remove();
+            }
+        }
+        Assert.assertEquals(new ArrayList<>(dict.entrySet()), new ArrayList<>(tree.entrySet()));
+    }
+
+    @Test
+    public void deterministicSearchesAreShort()
+    {
+        //ascending, descending and repeatedly emptied and refilled; no more than 3 moves right on each of at most
+        //log2(N + 1) levels, whatever the order
+        int n = 4095;
+        int maxHops = 3 * 12;
+        SkipListDict<Integer, Integer> ascending = SkipListDict.deterministic();
+        SkipListDict<Integer, Integer> descending = SkipListDict.deterministic();
+        SkipListDict<Integer, Integer> churned = SkipListDict.deterministic();
+        for (int i = 0; i < n; i++) {
+            ascending.put(i, i);
+            descending.put(n - i, i);
+            churned.put(i, i);
+            churned.put(n + i, i);
+            churned.remove(i / 2);
+        }
+        for (SkipListDict<Integer, Integer> dict : Arrays.asList(ascending, descending, churned)) {
+            for (int key = 0; key <= 2 * n; key++) {
+                Assert.assertTrue(dict.traceSearch(key).getHopCount() <= maxHops);
+            }
+        }
+    }
 }
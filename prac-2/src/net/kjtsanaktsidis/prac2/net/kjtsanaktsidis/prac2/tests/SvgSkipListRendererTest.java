@@ -0,0 +1,215 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.SkipListDict;
+import net.kjtsanaktsidis.prac2.StreamingSvgSkipListRenderer;
+import net.kjtsanaktsidis.prac2.SvgSkipListRenderer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SvgSkipListRendererTest {
+
+    private static final Pattern TRANSLATE = Pattern.compile("translate\\((-?\\d+),");
+
+    private SkipListDict<Integer, String> makeDict(int n)
+    {
+        SkipListDict<Integer, String> dict = new SkipListDict<>();
+        Random rgen = new Random(21);
+        for (int i = 0; i < n; i++) {
+            int key = rgen.nextInt(n * 4);
+            dict.put(key, Integer.toString(key));
+        }
+        return dict;
+    }
+
+    private Document parse(String svg) throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        return builder.parse(new ByteArrayInputStream(svg.getBytes("UTF-8")));
+    }
+
+    /**
+     * @return Every box, link and label in the picture in absolute coordinates, as sorted strings, so two renderings
+     *         can be compared however they group and order their elements
+     */
+    private List<String> shapes(String svg) throws Exception
+    {
+        List<String> shapes = new ArrayList<>();
+        NodeList groups = parse(svg).getElementsByTagName("g");
+        for (int i = 0; i < groups.getLength(); i++) {
+            Element g = (Element) groups.item(i);
+            Matcher m = TRANSLATE.matcher(g.getAttribute("transform"));
+            Assert.assertTrue(m.find());
+            int tx = Integer.parseInt(m.group(1));
+            for (Node child = g.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (!(child instanceof Element)) {
+                    continue;
+                }
+                Element e = (Element) child;
+                switch (e.getTagName()) {
+                    case "rect":
+                        shapes.add("rect " + tx + " " + e.getAttribute("y") + " " + e.getAttribute("fill"));
+                        break;
+                    case "line":
+                        int x1 = Integer.parseInt(e.getAttribute("x1")) + tx;
+                        int x2 = Integer.parseInt(e.getAttribute("x2")) + tx;
+                        shapes.add("line " + Math.min(x1, x2) + " " + Math.max(x1, x2) + " " + e.getAttribute("y1") +
+                                " " + e.getAttribute("stroke"));
+                        break;
+                    case "text":
+                        shapes.add("text " + tx + " " + e.getTextContent());
+                        break;
+                    default:
+                        Assert.fail("unexpected element " + e.getTagName());
+                }
+            }
+        }
+        Collections.sort(shapes);
+        return shapes;
+    }
+
+    private String renderDom(SkipListDict<Integer, String> dict, SkipListDict<Integer, String>.SearchTrace trace)
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStreamWriter w = new OutputStreamWriter(bytes, "UTF-8");
+        SvgSkipListRenderer.SkipListToSVG(dict, trace, w);
+        w.close();
+        return bytes.toString("UTF-8");
+    }
+
+    @Test
+    public void streamingMatchesDomRenderer() throws Exception
+    {
+        SkipListDict<Integer, String> dict = makeDict(300);
+        int probe = dict.ceilingKey(600);
+        SkipListDict<Integer, String>.SearchTrace trace = dict.traceSearch(probe);
+
+        StringWriter plain = new StringWriter();
+        StreamingSvgSkipListRenderer.render(dict, plain);
+        Assert.assertEquals(shapes(plain.toString()), shapes(renderDom(dict, null)));
+
+        StringWriter traced = new StringWriter();
+        StreamingSvgSkipListRenderer.render(dict, trace, traced);
+        List<String> shapes = shapes(traced.toString());
+        Assert.assertEquals(shapes, shapes(renderDom(dict, trace)));
+        int red = 0;
+        for (String shape : shapes) {
+            if (shape.endsWith("rgb(255, 0, 0)")) {
+                red++;
+            }
+        }
+        Assert.assertEquals(red, trace.getHopCount());
+    }
+
+    @Test
+    public void canRenderEmptyDictionary() throws Exception
+    {
+        SkipListDict<Integer, String> dict = new SkipListDict<>();
+        StringWriter out = new StringWriter();
+        StreamingSvgSkipListRenderer.render(dict, out);
+        Assert.assertEquals(shapes(out.toString()), shapes(renderDom(dict, null)));
+    }
+
+    @Test
+    public void windowsKeepEveryRowConnected() throws Exception
+    {
+        SkipListDict<Integer, String> dict = makeDict(2000);
+        for (int minLevel = 0; minLevel < 4; minLevel++) {
+            StringWriter out = new StringWriter();
+            StreamingSvgSkipListRenderer.render(dict, null, 1000, 5000, minLevel, out);
+            List<String> shapes = shapes(out.toString());
+
+            //each row's links have to run end to end from the first column to the last, without gaps or overlaps
+            Map<Integer, List<int[]>> rows = new TreeMap<>();
+            int labels = 0;
+            for (String shape : shapes) {
+                String[] parts = shape.split(" ");
+                if (parts[0].equals("line")) {
+                    int y = Integer.parseInt(parts[3]);
+                    if (!rows.containsKey(y)) {
+                        rows.put(y, new ArrayList<int[]>());
+                    }
+                    rows.get(y).add(new int[]{Integer.parseInt(parts[1]), Integer.parseInt(parts[2])});
+                }
+                else if (parts[0].equals("text") && parts.length > 2 && !parts[2].equals("...")) {
+                    int key = Integer.parseInt(parts[2]);
+                    Assert.assertTrue(key >= 1000 && key <= 5000);
+                    labels++;
+                }
+            }
+            Integer end = null;
+            for (List<int[]> links : rows.values()) {
+                Collections.sort(links, new Comparator<int[]>() {
+                    @Override
+                    public int compare(int[] a, int[] b) {
+                        return Integer.compare(a[0], b[0]);
+                    }
+                });
+                int x = 20;
+                for (int[] link : links) {
+                    Assert.assertEquals(link[0], x);
+                    x = link[1];
+                }
+                if (end == null) {
+                    end = x;
+                }
+                Assert.assertEquals((int) end, x);
+            }
+            //the labelled columns plus the two cut-off ones
+            Assert.assertEquals((int) end, 20 + 80 * (labels + 1));
+            if (minLevel == 0) {
+                Assert.assertEquals(labels, dict.subMap(1000, true, 5000, true).size());
+            }
+            else {
+                Assert.assertTrue(labels < dict.subMap(1000, true, 5000, true).size());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void streamingPassesOnIOExceptions() throws IOException
+    {
+        Writer broken = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        StreamingSvgSkipListRenderer.render(makeDict(10), broken);
+    }
+
+    @Test(expected = IOException.class)
+    public void domRendererPassesOnIOExceptions() throws IOException
+    {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        //big enough to overflow the writer's buffer, so the failure happens inside the renderer
+        OutputStreamWriter w = new OutputStreamWriter(broken, "UTF-8");
+        SvgSkipListRenderer.SkipListToSVG(makeDict(500), null, w);
+    }
+}
@@ -0,0 +1,230 @@
+package net.kjtsanaktsidis.prac2.net.kjtsanaktsidis.prac2.tests;
+
+import net.kjtsanaktsidis.prac2.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+public class TraceTest {
+
+    @Test
+    public void canReadBackWhatWasWritten() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Trace.Writer<Integer> out = new Trace.Writer<>(bytes, Codec.INTEGER)) {
+            out.write(Trace.PUT, 0, 0, 5, null);
+            out.write(Trace.GET, 3, 1000, -7, null);
+            out.write(Trace.RANGE, 1, 5000000000L, 10, 20);
+            //times can't go backwards
+            out.write(Trace.REMOVE, 200, 10, Integer.MAX_VALUE, null);
+        }
+        //header, then about 8 bytes a record
+        Assert.assertTrue(bytes.size() < 12 + 4 * 8 + 8);
+
+        try (Trace.Reader<Integer> in = new Trace.Reader<>(new ByteArrayInputStream(bytes.toByteArray()),
+                Codec.INTEGER)) {
+            Assert.assertTrue(in.next());
+            Assert.assertEquals(in.getOp(), Trace.PUT);
+            Assert.assertEquals(in.getThread(), 0);
+            Assert.assertEquals(in.getNanos(), 0);
+            Assert.assertEquals((int) in.getKey(), 5);
+            Assert.assertTrue(in.next());
+            Assert.assertEquals(in.getOp(), Trace.GET);
+            Assert.assertEquals(in.getThread(), 3);
+            Assert.assertEquals(in.getNanos(), 1000);
+            Assert.assertEquals((int) in.getKey(), -7);
+            Assert.assertNull(in.getTo());
+            Assert.assertTrue(in.next());
+            Assert.assertEquals(in.getOp(), Trace.RANGE);
+            Assert.assertEquals(in.getNanos(), 5000000000L);
+            Assert.assertEquals((int) in.getKey(), 10);
+            Assert.assertEquals((int) in.getTo(), 20);
+            Assert.assertTrue(in.next());
+            Assert.assertEquals(in.getOp(), Trace.REMOVE);
+            Assert.assertEquals(in.getThread(), 200);
+            Assert.assertEquals(in.getNanos(), 5000000000L);
+            Assert.assertEquals((int) in.getKey(), Integer.MAX_VALUE);
+            Assert.assertFalse(in.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsThingsThatArentTraces() throws IOException
+    {
+        new Trace.Reader<>(new ByteArrayInputStream(new byte[16]), Codec.INTEGER);
+    }
+
+    @Test
+    public void replayingARecordingGivesTheSameDictionary() throws Exception
+    {
+        final SkipListDict<Integer, Object> original = new SkipListDict<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Trace.Writer<Integer> trace = new Trace.Writer<>(bytes, Codec.INTEGER);
+        final RecordingMap<Integer, Object> recording = new RecordingMap<>(original, trace);
+        //two threads, each on its own keys, so the order they're replayed in doesn't matter
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random rgen = new Random(24 + offset);
+                    for (int i = 0; i < 5000; i++) {
+                        int key = rgen.nextInt(1000) * 2 + offset;
+                        int op = rgen.nextInt(4);
+                        if (op == 0) {
+                            recording.put(key, "");
+                        }
+                        else if (op == 1) {
+                            recording.remove(key);
+                        }
+                        else if (op == 2) {
+                            recording.get(key);
+                        }
+                        else {
+                            recording.subMap(key, key + 10).size();
+                        }
+                    }
+                }
+            };
+        }
+        //SkipListDict isn't thread-safe, so they take turns
+        for (Thread t : threads) {
+            t.start();
+            t.join();
+        }
+        trace.close();
+
+        TraceReplayer<Integer> replayer = new TraceReplayer<>(new ByteArrayInputStream(bytes.toByteArray()),
+                Codec.INTEGER);
+        Assert.assertEquals(replayer.getThreadCount(), 2);
+        SkipListDict<Integer, Object> replayed = new SkipListDict<>();
+        TraceReplayer.Result result = replayer.replay(replayed, false);
+        Assert.assertEquals(replayed.keySet(), original.keySet());
+        Assert.assertEquals(result.getLatencies().getCount(), 10000);
+        long perOp = 0;
+        for (byte op = Trace.GET; op <= Trace.RANGE; op++) {
+            perOp += result.getLatencies(op).getCount();
+        }
+        Assert.assertEquals(perOp, 10000);
+
+        //at recorded speed it takes at least as long as the recording did
+        replayed = new SkipListDict<>();
+        long lastNanos = 0;
+        try (Trace.Reader<Integer> in = new Trace.Reader<>(new ByteArrayInputStream(bytes.toByteArray()),
+                Codec.INTEGER)) {
+            while (in.next()) {
+                lastNanos = in.getNanos();
+            }
+        }
+        result = replayer.replay(replayed, true);
+        Assert.assertEquals(replayed.keySet(), original.keySet());
+        Assert.assertTrue(result.getElapsedNanos() >= lastNanos);
+    }
+
+    @Test
+    public void recordingMapCantBeChangedBehindItsBack()
+    {
+        RecordingMap<Integer, Object> recording = new RecordingMap<Integer, Object>(new SkipListDict<Integer, Object>(),
+                null);
+        try {
+            recording.entrySet().clear();
+            Assert.fail("changed the map without recording it");
+        }
+        catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+
+    private static int[] counts(KeyGenerator generator, int keys, int n)
+    {
+        int[] counts = new int[keys];
+        for (int i = 0; i < n; i++) {
+            int key = generator.next();
+            Assert.assertTrue(key >= 0 && key < keys);
+            counts[key]++;
+        }
+        return counts;
+    }
+
+    @Test
+    public void keyGeneratorsHaveTheRightShape()
+    {
+        int keys = 10000;
+        int n = 200000;
+
+        int[] uniform = counts(KeyGenerator.uniform(keys, 24), keys, n);
+        int uniformMax = 0;
+        for (int c : uniform) {
+            uniformMax = Math.max(uniformMax, c);
+        }
+        Assert.assertTrue(uniformMax < 60);
+
+        //with theta = 0.99 and 10k keys, the hottest key gets about 10% of the picks, the second about half that
+        int[] zipfian = counts(KeyGenerator.zipfian(keys, 0.99, 24), keys, n);
+        int[] sorted = zipfian.clone();
+        Arrays.sort(sorted);
+        Assert.assertTrue(sorted[keys - 1] > n / 12 && sorted[keys - 1] < n / 8);
+        Assert.assertTrue(sorted[keys - 2] > sorted[keys - 1] / 3 && sorted[keys - 2] < sorted[keys - 1] * 2 / 3);
+        //and the hot ones aren't all at the bottom of the range
+        Assert.assertTrue(zipfian[0] > n / 12);
+        Assert.assertTrue(zipfian[1] < n / 100);
+
+        KeyGenerator sequential = KeyGenerator.sequential(keys, keys - 2);
+        Assert.assertEquals(sequential.next(), keys - 2);
+        Assert.assertEquals(sequential.next(), keys - 1);
+        Assert.assertEquals(sequential.next(), 0);
+        Assert.assertEquals(sequential.next(), 1);
+
+        //90% of the picks land on 10% of the keys, which are all together
+        int[] hotspot = counts(KeyGenerator.hotspot(keys, 0.1, 0.9, 24), keys, n);
+        int first = -1;
+        int inHot = 0;
+        for (int k = 0; k < keys; k++) {
+            if (hotspot[k] > 100) {
+                if (first < 0) {
+                    first = k;
+                }
+                Assert.assertTrue(k < first + keys / 10);
+                inHot += hotspot[k];
+            }
+        }
+        Assert.assertEquals(inHot / (double) n, 0.9, 0.01);
+        int[] again = counts(KeyGenerator.hotspot(keys, 0.1, 0.9, 25), keys, n);
+        Assert.assertTrue(again[first] > 100);
+    }
+
+    @Test
+    public void histogramIsWithinOnePercent()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        Assert.assertEquals(h.valueAt(0.99), 0);
+        for (long v = 1; v <= 100000; v++) {
+            h.record(v);
+        }
+        Assert.assertEquals(h.getCount(), 100000);
+        Assert.assertEquals(h.getMax(), 100000);
+        Assert.assertEquals(h.getMean(), 50000.5, 0.001);
+        for (double q : new double[]{0.001, 0.5, 0.9, 0.99, 0.999, 1}) {
+            double exact = Math.ceil(q * 100000);
+            Assert.assertEquals(h.valueAt(q), exact, exact * 0.01);
+        }
+        //small values are exact
+        LatencyHistogram small = new LatencyHistogram();
+        small.record(3);
+        small.record(-5);
+        Assert.assertEquals(small.valueAt(0.5), 0);
+        Assert.assertEquals(small.valueAt(1), 3);
+
+        //huge ones are still in range
+        small.record(Long.MAX_VALUE);
+        Assert.assertEquals(small.valueAt(1), Long.MAX_VALUE);
+        small.add(h);
+        Assert.assertEquals(small.getCount(), 100003);
+        Assert.assertEquals(small.valueAt(0.5), h.valueAt(0.5), h.valueAt(0.5) * 0.01);
+    }
+}